@@ -0,0 +1,128 @@
+package org.drizzle.ml.word2vec.benchmarks;
+
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import org.drizzle.ml.word2vec.client.Word2VecClient;
+import org.drizzle.ml.word2vec.handlers.ModelOptions;
+import org.drizzle.ml.word2vec.models.Nd4jVectorWordList;
+import org.drizzle.ml.word2vec.models.Nd4jWordVector;
+import org.drizzle.ml.word2vec.server.ServerRunner;
+import org.drizzle.ml.word2vec.server.TransportOptions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end Word2VecClient calls to a server over the in-process transport and over Netty on localhost
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientBenchmark {
+    private static final String IN_PROCESS_NAME = "w2v-benchmark";
+    private static final long TIMEOUT_MS = 10000L;
+    private static final long MAX_LOAD_TIME_MS = 600000L;
+
+    public enum Transport {
+        IN_PROCESS, NETTY
+    }
+
+    @Param({"100000"})
+    public int vocabularySize;
+
+    @Param({"300"})
+    public int dimension;
+
+    @Param({"IN_PROCESS", "NETTY"})
+    public Transport transport;
+
+    @Param({"100"})
+    public int words;
+
+    @Param({"8"})
+    public int queries;
+
+    private File directory;
+    private ServerRunner serverRunner;
+    private Word2VecClient client;
+    private List<String> wordList;
+    private List<INDArray> queryList;
+    private INDArray queryMatrix;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        SyntheticModel model = SyntheticModel.generate(vocabularySize, dimension);
+        directory = SyntheticModel.createDirectory();
+        File modelFile = model.writeStore(directory);
+
+        ModelOptions options = new ModelOptions().setPersistIndex(false);
+        if (transport == Transport.IN_PROCESS) {
+            serverRunner = new ServerRunner(InProcessServerBuilder.forName(IN_PROCESS_NAME), modelFile, options, new TransportOptions());
+            serverRunner.start();
+            client = new Word2VecClient(InProcessChannelBuilder.forName(IN_PROCESS_NAME), TIMEOUT_MS);
+        } else {
+            serverRunner = new ServerRunner(NettyServerBuilder.forPort(0), modelFile, options, new TransportOptions());
+            serverRunner.start();
+            client = new Word2VecClient(ManagedChannelBuilder.forAddress("localhost", serverRunner.getPort()).usePlaintext(), TIMEOUT_MS);
+        }
+
+        long start = System.currentTimeMillis();
+        while (!client.isReady()) {
+            if (System.currentTimeMillis() - start > MAX_LOAD_TIME_MS) {
+                throw new IllegalStateException("Model not loaded after " + MAX_LOAD_TIME_MS + "ms");
+            }
+            Thread.sleep(100L);
+        }
+
+        Random random = new Random(1);
+        wordList = new ArrayList<>();
+        for (int i = 0; i < words; i++) {
+            wordList.add(SyntheticModel.word(random.nextInt(vocabularySize)));
+        }
+        queryList = new ArrayList<>();
+        for (float[] query : model.queries(queries)) {
+            queryList.add(Nd4j.create(query));
+        }
+        queryMatrix = Nd4j.vstack(queryList);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        client.shutdown();
+        client.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        serverRunner.stop();
+        SyntheticModel.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public List<Nd4jWordVector> getVectorMap() throws InterruptedException {
+        return client.getVectorMap(wordList);
+    }
+
+    @Benchmark
+    public List<Nd4jWordVector> getVectorsBatch() {
+        return client.getVectorsBatch(wordList);
+    }
+
+    @Benchmark
+    public List<Nd4jVectorWordList> getNearestWords() throws InterruptedException {
+        return client.getNearestWords(queryList, 10);
+    }
+
+    @Benchmark
+    public List<Nd4jVectorWordList> getNearestWordsBatch() {
+        return client.getNearestWordsBatch(queryMatrix, 10);
+    }
+}
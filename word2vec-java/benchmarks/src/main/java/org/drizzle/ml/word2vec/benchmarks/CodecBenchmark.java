@@ -0,0 +1,64 @@
+package org.drizzle.ml.word2vec.benchmarks;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.drizzle.ml.word2vec.codec.VectorCodec;
+import org.drizzle.ml.word2vec.service.VectorEncoding;
+import org.drizzle.ml.word2vec.service.Word;
+import org.drizzle.ml.word2vec.service.WordVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protobuf encoding and decoding of a WordVector response with each vector encoding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"300"})
+    public int dimension;
+
+    @Param({"DOUBLE", "FLOAT32", "FLOAT16", "INT8"})
+    public VectorEncoding encoding;
+
+    private float[] vector;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        vector = SyntheticModel.generate(1, dimension).vector(0);
+        encoded = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        WordVector.Builder wordVector = WordVector.newBuilder()
+                .setWord(Word.newBuilder().setWord("benchmark").setEncoding(encoding));
+        if (encoding == VectorEncoding.DOUBLE) {
+            for (float value : vector) {
+                wordVector.addVector(value);
+            }
+        } else {
+            wordVector.setPackedVector(VectorCodec.encode(vector, encoding));
+        }
+        return wordVector.build().toByteArray();
+    }
+
+    @Benchmark
+    public float[] decode() throws InvalidProtocolBufferException {
+        WordVector wordVector = WordVector.parseFrom(encoded);
+        if (wordVector.hasPackedVector()) {
+            return VectorCodec.decode(wordVector.getPackedVector());
+        }
+        float[] values = new float[wordVector.getVectorCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) wordVector.getVector(i);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,55 @@
+package org.drizzle.ml.word2vec.benchmarks;
+
+import com.google.protobuf.ByteString;
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Word vector lookups in the embedding store, the work of GetVectorMap and GetVectorsBatch for each word
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+    private static final int WORDS = 4096;
+
+    @Param({"100000", "1000000"})
+    public int vocabularySize;
+
+    @Param({"300"})
+    public int dimension;
+
+    private BufferEmbeddingStore store;
+    private ByteString[] words;
+    private float[] vector;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        store = SyntheticModel.generate(vocabularySize, dimension).toStore();
+        Random random = new Random(1);
+        words = new ByteString[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = ByteString.copyFromUtf8(SyntheticModel.word(random.nextInt(vocabularySize)));
+        }
+        vector = new float[dimension];
+    }
+
+    @Benchmark
+    public float getWordVector() {
+        int row = store.indexOf(words[next++ & (WORDS - 1)]);
+        store.copyRow(row, vector, 0);
+        return vector[0];
+    }
+
+    @Benchmark
+    public ByteString getWordVectorBytes() {
+        return store.rowBytes(store.indexOf(words[next++ & (WORDS - 1)]));
+    }
+}
@@ -0,0 +1,104 @@
+package org.drizzle.ml.word2vec.benchmarks;
+
+import io.grpc.stub.StreamObserver;
+import org.drizzle.ml.word2vec.handlers.ModelOptions;
+import org.drizzle.ml.word2vec.handlers.ServiceRequestHandler;
+import org.drizzle.ml.word2vec.service.Status;
+import org.drizzle.ml.word2vec.service.VoidMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time from creating a handler until its model is ready, for each model format and index
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelLoadBenchmark {
+
+    public enum LoadCase {
+        /**
+         * word2vec binary file read in parallel, exact search
+         */
+        BINARY,
+        /**
+         * mapped embedding store file, exact search
+         */
+        STORE,
+        /**
+         * binary file read by DL4J with its tree model
+         */
+        TREE,
+        /**
+         * binary file with an HNSW index built on every load
+         */
+        HNSW
+    }
+
+    @Param({"100000"})
+    public int vocabularySize;
+
+    @Param({"300"})
+    public int dimension;
+
+    @Param({"BINARY", "STORE", "TREE", "HNSW"})
+    public LoadCase loadCase;
+
+    private File directory;
+    private File modelFile;
+    private ModelOptions options;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticModel model = SyntheticModel.generate(vocabularySize, dimension);
+        directory = SyntheticModel.createDirectory();
+        modelFile = loadCase == LoadCase.STORE ? model.writeStore(directory) : model.writeBinary(directory);
+
+        options = new ModelOptions().setPersistIndex(false);
+        if (loadCase == LoadCase.TREE) {
+            options.setIndexType(ModelOptions.IndexType.TREE);
+        } else if (loadCase == LoadCase.HNSW) {
+            options.setIndexType(ModelOptions.IndexType.HNSW);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticModel.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public ServiceRequestHandler load() throws InterruptedException {
+        ServiceRequestHandler handler = new ServiceRequestHandler(modelFile, options);
+        while (!isReady(handler)) {
+            Thread.sleep(1L);
+        }
+        return handler;
+    }
+
+    private static boolean isReady(ServiceRequestHandler handler) {
+        AtomicBoolean ready = new AtomicBoolean();
+        handler.getStatus(VoidMessage.getDefaultInstance(), new StreamObserver<>() {
+            @Override
+            public void onNext(Status status) {
+                ready.set(status.getReady());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        return ready.get();
+    }
+}
@@ -0,0 +1,103 @@
+package org.drizzle.ml.word2vec.benchmarks;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.reader.impl.TreeModelUtils;
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.drizzle.ml.word2vec.search.ExactNearestSearch;
+import org.drizzle.ml.word2vec.search.HnswIndex;
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single nearest words query with each index: the exact scan, the DL4J tree model used with --tree and HNSW
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearestWordsBenchmark {
+    private static final int QUERIES = 256;
+    private static final int HNSW_M = 16;
+    private static final int HNSW_EF_CONSTRUCTION = 200;
+    private static final int HNSW_EF_SEARCH = 64;
+
+    public enum Index {
+        EXACT, TREE, HNSW
+    }
+
+    @Param({"10000", "100000"})
+    public int vocabularySize;
+
+    @Param({"300"})
+    public int dimension;
+
+    @Param({"10"})
+    public int limit;
+
+    @Param({"EXACT", "TREE", "HNSW"})
+    public Index index;
+
+    private float[][] queries;
+    private INDArray[] queryArrays;
+    private ExactNearestSearch exactSearch;
+    private HnswIndex hnswIndex;
+    private Word2Vec treeModel;
+    private int[] rows;
+    private float[] similarities;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticModel model = SyntheticModel.generate(vocabularySize, dimension);
+        queries = model.queries(QUERIES);
+        rows = new int[limit];
+        similarities = new float[limit];
+
+        BufferEmbeddingStore store = model.toStore();
+        if (index == Index.EXACT) {
+            exactSearch = new ExactNearestSearch(store);
+        } else if (index == Index.HNSW) {
+            hnswIndex = HnswIndex.build(store, HNSW_M, HNSW_EF_CONSTRUCTION, 42);
+        } else {
+            File directory = SyntheticModel.createDirectory();
+            try {
+                treeModel = WordVectorSerializer.readWord2VecModel(model.writeBinary(directory), true);
+            } finally {
+                SyntheticModel.deleteDirectory(directory);
+            }
+            treeModel.setModelUtils(new TreeModelUtils<VocabWord>());
+            queryArrays = new INDArray[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                queryArrays[i] = Nd4j.create(queries[i]);
+            }
+            // the tree is built by the first query
+            treeModel.wordsNearest(queryArrays[0], limit);
+        }
+    }
+
+    @Benchmark
+    public void wordsNearest(Blackhole blackhole) {
+        int query = next++ & (QUERIES - 1);
+        switch (index) {
+            case EXACT:
+                blackhole.consume(exactSearch.search(queries[query], limit, rows, similarities));
+                break;
+            case HNSW:
+                blackhole.consume(hnswIndex.search(queries[query], limit, HNSW_EF_SEARCH, rows, similarities));
+                break;
+            default:
+                blackhole.consume(treeModel.wordsNearest(queryArrays[query], limit));
+        }
+        blackhole.consume(rows);
+    }
+}
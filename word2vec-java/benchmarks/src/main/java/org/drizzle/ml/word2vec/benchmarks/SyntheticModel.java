@@ -0,0 +1,148 @@
+package org.drizzle.ml.word2vec.benchmarks;
+
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.drizzle.ml.word2vec.store.EmbeddingStoreFormat;
+import org.drizzle.ml.word2vec.store.EmbeddingStoreWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Random model generated locally, so benchmarks do not depend on a downloaded model and give the same numbers on every run.
+ * Words are "w0" to "w&lt;n - 1&gt;" and vector elements are gaussian values from a fixed seed.
+ */
+public final class SyntheticModel {
+    private static final long SEED = 42;
+
+    private final String[] vocabulary;
+    private final float[] values;
+    private final int dimension;
+
+    private SyntheticModel(String[] vocabulary, float[] values, int dimension) {
+        this.vocabulary = vocabulary;
+        this.values = values;
+        this.dimension = dimension;
+    }
+
+    /**
+     * @param vocabularySize number of words
+     * @param dimension      vector dimension
+     * @return generated model
+     */
+    public static SyntheticModel generate(int vocabularySize, int dimension) {
+        Random random = new Random(SEED);
+        String[] vocabulary = new String[vocabularySize];
+        float[] values = new float[vocabularySize * dimension];
+        for (int row = 0; row < vocabularySize; row++) {
+            vocabulary[row] = word(row);
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return new SyntheticModel(vocabulary, values, dimension);
+    }
+
+    public static String word(int row) {
+        return "w" + row;
+    }
+
+    public int size() {
+        return vocabulary.length;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return copy of the vector of a row
+     */
+    public float[] vector(int row) {
+        float[] vector = new float[dimension];
+        System.arraycopy(values, row * dimension, vector, 0, dimension);
+        return vector;
+    }
+
+    /**
+     * @param count number of queries
+     * @return random query vectors, not in the model
+     */
+    public float[][] queries(int count) {
+        Random random = new Random(SEED + 1);
+        float[][] queries = new float[count][dimension];
+        for (float[] query : queries) {
+            for (int i = 0; i < dimension; i++) {
+                query[i] = (float) random.nextGaussian();
+            }
+        }
+        return queries;
+    }
+
+    public BufferEmbeddingStore toStore() {
+        return BufferEmbeddingStore.of(vocabulary, values, dimension);
+    }
+
+    /**
+     * Writes the model in the binary format of the original word2vec tool
+     *
+     * @param directory directory of the file
+     * @return model file
+     */
+    public File writeBinary(File directory) throws IOException {
+        File file = new File(directory, "synthetic-" + vocabulary.length + "x" + dimension + ".bin");
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            output.write((vocabulary.length + " " + dimension + "\n").getBytes(StandardCharsets.UTF_8));
+
+            ByteBuffer vector = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int row = 0; row < vocabulary.length; row++) {
+                output.write((vocabulary[row] + " ").getBytes(StandardCharsets.UTF_8));
+
+                vector.clear();
+                vector.asFloatBuffer().put(values, row * dimension, dimension);
+                output.write(vector.array());
+                output.write('\n');
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Writes the model as an embedding store file
+     *
+     * @param directory directory of the file
+     * @return store file
+     */
+    public File writeStore(File directory) throws IOException {
+        File file = new File(directory, "synthetic-" + vocabulary.length + "x" + dimension + EmbeddingStoreFormat.FILE_EXTENSION);
+        EmbeddingStoreWriter.write(toStore(), file);
+        return file;
+    }
+
+    /**
+     * @return new temporary directory for model files
+     */
+    public static File createDirectory() throws IOException {
+        return Files.createTempDirectory("w2v-benchmark").toFile();
+    }
+
+    /**
+     * Deletes a directory created by {@link #createDirectory()} and its files
+     */
+    public static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
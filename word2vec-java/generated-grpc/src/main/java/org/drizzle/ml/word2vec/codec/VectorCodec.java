@@ -0,0 +1,333 @@
+package org.drizzle.ml.word2vec.codec;
+
+import com.google.protobuf.UnsafeByteOperations;
+import org.drizzle.ml.word2vec.service.PackedMatrix;
+import org.drizzle.ml.word2vec.service.PackedVector;
+import org.drizzle.ml.word2vec.service.VectorEncoding;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes and decodes vectors to and from their packed wire representation.
+ * All multi-byte values are little-endian.
+ */
+public final class VectorCodec {
+    private static final float INT8_MAX = 127f;
+
+    private VectorCodec() {
+
+    }
+
+    /**
+     * Number of bytes used by a single vector element in the given encoding
+     *
+     * @param encoding packed vector encoding
+     * @return bytes per element
+     */
+    public static int bytesPerElement(VectorEncoding encoding) {
+        switch (encoding) {
+            case FLOAT32:
+                return Float.BYTES;
+            case FLOAT16:
+                return Short.BYTES;
+            case INT8:
+                return Byte.BYTES;
+            default:
+                throw new IllegalArgumentException("Encoding " + encoding + " cannot be packed");
+        }
+    }
+
+    /**
+     * Packs a vector using the given encoding
+     *
+     * @param values   source array
+     * @param offset   index of the first element in values
+     * @param length   number of elements to encode
+     * @param encoding target encoding
+     * @return packed vector
+     */
+    public static PackedVector encode(float[] values, int offset, int length, VectorEncoding encoding) {
+        byte[] data = new byte[length * bytesPerElement(encoding)];
+        float scale = pack(values, offset, length, encoding, ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+
+        return PackedVector.newBuilder()
+                .setEncoding(encoding)
+                .setData(UnsafeByteOperations.unsafeWrap(data))
+                .setScale(scale)
+                .build();
+    }
+
+    /**
+     * Packs a whole float vector
+     *
+     * @param values   vector
+     * @param encoding target encoding
+     * @return packed vector
+     */
+    public static PackedVector encode(float[] values, VectorEncoding encoding) {
+        return encode(values, 0, values.length, encoding);
+    }
+
+    /**
+     * Packs a double vector. Values are narrowed to float before encoding
+     *
+     * @param values   vector
+     * @param encoding target encoding
+     * @return packed vector
+     */
+    public static PackedVector encode(double[] values, VectorEncoding encoding) {
+        float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            floats[i] = (float) values[i];
+        }
+        return encode(floats, encoding);
+    }
+
+    /**
+     * Packs a row-major matrix. INT8 rows are scaled independently
+     *
+     * @param values   row-major source array with at least rows * columns elements
+     * @param rows     number of rows
+     * @param columns  number of columns
+     * @param encoding target encoding, DOUBLE is treated as FLOAT32
+     * @return packed matrix
+     * @throws IllegalArgumentException if the packed matrix does not fit in a byte array
+     */
+    public static PackedMatrix encodeMatrix(float[] values, int rows, int columns, VectorEncoding encoding) {
+        VectorEncoding packedEncoding = matrixEncoding(encoding);
+        long bytes = (long) rows * columns * bytesPerElement(packedEncoding);
+        if (rows < 0 || columns < 0 || bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot pack a matrix of " + rows + " x " + columns + " values");
+        }
+        byte[] data = new byte[(int) bytes];
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        PackedMatrix.Builder builder = PackedMatrix.newBuilder()
+                .setEncoding(packedEncoding)
+                .setRows(rows)
+                .setColumns(columns);
+
+        for (int row = 0; row < rows; row++) {
+            float scale = pack(values, row * columns, columns, packedEncoding, buffer);
+            if (packedEncoding == VectorEncoding.INT8) {
+                builder.addScales(scale);
+            }
+        }
+
+        return builder.setData(UnsafeByteOperations.unsafeWrap(data)).build();
+    }
+
+    /**
+     * Unpacks a matrix into a new row-major float array
+     *
+     * @param packed packed matrix
+     * @return row-major matrix values
+     * @throws IllegalArgumentException if the data or the INT8 scales do not match the matrix shape
+     */
+    public static float[] decodeMatrix(PackedMatrix packed) {
+        int rows = packed.getRows();
+        int columns = packed.getColumns();
+        VectorEncoding encoding = matrixEncoding(packed.getEncoding());
+        if (rows < 0 || columns < 0 || (long) rows * columns > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid matrix shape " + rows + " x " + columns);
+        }
+        long expectedBytes = (long) rows * columns * bytesPerElement(encoding);
+        if (packed.getData().size() != expectedBytes) {
+            throw new IllegalArgumentException("Expected " + expectedBytes + " bytes for a " + rows + " x " + columns + " "
+                    + encoding + " matrix but got " + packed.getData().size());
+        }
+        if (encoding == VectorEncoding.INT8 && packed.getScalesCount() != rows) {
+            throw new IllegalArgumentException("Expected " + rows + " INT8 scales but got " + packed.getScalesCount());
+        }
+
+        float[] target = new float[rows * columns];
+        ByteBuffer buffer = packed.getData().asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int row = 0; row < rows; row++) {
+            float scale = encoding == VectorEncoding.INT8 ? packed.getScales(row) : 0f;
+            unpack(buffer, encoding, scale, target, row * columns, columns);
+        }
+        return target;
+    }
+
+    /**
+     * Encoding actually used for a matrix requested with the given encoding
+     *
+     * @param encoding requested encoding
+     * @return packed encoding
+     */
+    public static VectorEncoding matrixEncoding(VectorEncoding encoding) {
+        return encoding == VectorEncoding.DOUBLE ? VectorEncoding.FLOAT32 : encoding;
+    }
+
+    /**
+     * Number of elements in a packed vector
+     *
+     * @param packed packed vector
+     * @return vector dimension
+     * @throws IllegalArgumentException if the encoding cannot be packed or the data is not a whole number of elements
+     */
+    public static int dimension(PackedVector packed) {
+        int bytesPerElement = bytesPerElement(packed.getEncoding());
+        if (packed.getData().size() % bytesPerElement != 0) {
+            throw new IllegalArgumentException("Packed " + packed.getEncoding() + " vector of " + packed.getData().size()
+                    + " bytes is not a whole number of elements");
+        }
+        return packed.getData().size() / bytesPerElement;
+    }
+
+    /**
+     * Unpacks a vector into a new float array
+     *
+     * @param packed packed vector
+     * @return unpacked vector
+     * @throws IllegalArgumentException if the vector is malformed, see {@link #dimension(PackedVector)}
+     */
+    public static float[] decode(PackedVector packed) {
+        float[] target = new float[dimension(packed)];
+        decode(packed, target, 0);
+        return target;
+    }
+
+    /**
+     * Unpacks a vector into an existing array
+     *
+     * @param packed packed vector
+     * @param target destination array, must have at least dimension(packed) elements from offset
+     * @param offset index of the first element written to target
+     * @throws IllegalArgumentException if the vector is malformed, see {@link #dimension(PackedVector)}
+     */
+    public static void decode(PackedVector packed, float[] target, int offset) {
+        ByteBuffer buffer = packed.getData().asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        unpack(buffer, packed.getEncoding(), packed.getScale(), target, offset, dimension(packed));
+    }
+
+    /**
+     * Writes length values to the buffer's current position, returning the INT8 scale used, or zero
+     */
+    private static float pack(float[] values, int offset, int length, VectorEncoding encoding, ByteBuffer buffer) {
+        switch (encoding) {
+            case FLOAT32:
+                for (int i = offset; i < offset + length; i++) {
+                    buffer.putFloat(values[i]);
+                }
+                return 0f;
+            case FLOAT16:
+                for (int i = offset; i < offset + length; i++) {
+                    buffer.putShort(floatToHalf(values[i]));
+                }
+                return 0f;
+            case INT8:
+                float scale = int8Scale(values, offset, length);
+                float inverseScale = scale == 0f ? 0f : 1f / scale;
+                for (int i = offset; i < offset + length; i++) {
+                    buffer.put((byte) Math.round(values[i] * inverseScale));
+                }
+                return scale;
+            default:
+                throw new IllegalArgumentException("Encoding " + encoding + " cannot be packed");
+        }
+    }
+
+    /**
+     * Reads length values from the buffer's current position
+     */
+    private static void unpack(ByteBuffer buffer, VectorEncoding encoding, float scale, float[] target, int offset, int length) {
+        switch (encoding) {
+            case FLOAT32:
+                for (int i = offset; i < offset + length; i++) {
+                    target[i] = buffer.getFloat();
+                }
+                break;
+            case FLOAT16:
+                for (int i = offset; i < offset + length; i++) {
+                    target[i] = halfToFloat(buffer.getShort());
+                }
+                break;
+            case INT8:
+                for (int i = offset; i < offset + length; i++) {
+                    target[i] = buffer.get() * scale;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Encoding " + encoding + " cannot be unpacked");
+        }
+    }
+
+    private static float int8Scale(float[] values, int offset, int length) {
+        float maxAbs = 0f;
+        for (int i = offset; i < offset + length; i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(values[i]));
+        }
+        return maxAbs / INT8_MAX;
+    }
+
+    /**
+     * Converts a float to IEEE 754 half precision, rounding to nearest even
+     */
+    static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int floatExponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+
+        if (floatExponent == 0xff) {
+            // infinity or NaN
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+
+        int exponent = floatExponent - 127 + 15;
+        if (exponent >= 0x1f) {
+            // too large, saturate to infinity
+            return (short) (sign | 0x7c00);
+        }
+
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            // subnormal half, restore the implicit leading bit
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            return (short) (sign | roundShift(mantissa, shift));
+        }
+
+        // a carry into the exponent is still the correctly rounded value
+        return (short) (sign | ((exponent << 10) + roundShift(mantissa, 13)));
+    }
+
+    /**
+     * Shifts a value right, rounding the bits shifted out to nearest, ties to even
+     */
+    private static int roundShift(int value, int shift) {
+        int shifted = value >> shift;
+        int remainder = value & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        if (remainder > halfway || (remainder == halfway && (shifted & 1) != 0)) {
+            shifted++;
+        }
+        return shifted;
+    }
+
+    /**
+     * Converts an IEEE 754 half precision value to float
+     */
+    static float halfToFloat(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
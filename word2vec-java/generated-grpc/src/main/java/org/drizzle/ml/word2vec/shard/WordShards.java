@@ -0,0 +1,63 @@
+package org.drizzle.ml.word2vec.shard;
+
+import com.google.protobuf.ByteString;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Assigns words to vocabulary shards. Servers loading a shard keep the words assigned to it and clients route word
+ * lookups with the same function, so both must agree on it: a 32 bit FNV-1a hash of the UTF-8 bytes of the word.
+ */
+public final class WordShards {
+    private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private WordShards() {
+
+    }
+
+    /**
+     * @param word       UTF-8 encoded word
+     * @param shardCount number of shards
+     * @return shard of the word, from 0 to shardCount - 1
+     */
+    public static int shardOf(ByteString word, int shardCount) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < word.size(); i++) {
+            hash = mix(hash, word.byteAt(i));
+        }
+        return Integer.remainderUnsigned(hash, shardCount);
+    }
+
+    /**
+     * @param word       array holding the UTF-8 encoded word
+     * @param offset     index of the first byte of the word
+     * @param length     length of the word in bytes
+     * @param shardCount number of shards
+     * @return shard of the word, from 0 to shardCount - 1
+     */
+    public static int shardOf(byte[] word, int offset, int length, int shardCount) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash = mix(hash, word[i]);
+        }
+        return Integer.remainderUnsigned(hash, shardCount);
+    }
+
+    /**
+     * @param word       word
+     * @param shardCount number of shards
+     * @return shard of the word, from 0 to shardCount - 1
+     */
+    public static int shardOf(String word, int shardCount) {
+        int hash = FNV_OFFSET_BASIS;
+        for (byte value : word.getBytes(StandardCharsets.UTF_8)) {
+            hash = mix(hash, value);
+        }
+        return Integer.remainderUnsigned(hash, shardCount);
+    }
+
+    private static int mix(int hash, byte value) {
+        return (hash ^ (value & 0xff)) * FNV_PRIME;
+    }
+}
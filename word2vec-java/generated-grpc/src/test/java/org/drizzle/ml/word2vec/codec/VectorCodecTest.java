@@ -0,0 +1,92 @@
+package org.drizzle.ml.word2vec.codec;
+
+import com.google.protobuf.ByteString;
+import org.drizzle.ml.word2vec.service.PackedMatrix;
+import org.drizzle.ml.word2vec.service.PackedVector;
+import org.drizzle.ml.word2vec.service.VectorEncoding;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorCodecTest {
+
+    @Test
+    public void halfRoundTripsEveryValue() {
+        for (int bits = 0; bits < 0x10000; bits++) {
+            short half = (short) bits;
+            float value = VectorCodec.halfToFloat(half);
+            if (Float.isNaN(value)) {
+                assertTrue((bits & 0x7c00) == 0x7c00 && (bits & 0x3ff) != 0);
+            } else {
+                assertEquals(half, VectorCodec.floatToHalf(value), "half " + Integer.toHexString(bits));
+            }
+        }
+    }
+
+    @Test
+    public void halfSubnormals() {
+        assertEquals(0x0001, VectorCodec.floatToHalf(0x1p-24f));
+        assertEquals(0x03ff, VectorCodec.floatToHalf(1023 * 0x1p-24f));
+        assertEquals(0x0400, VectorCodec.floatToHalf(0x1p-14f));
+        assertEquals((short) 0x8001, VectorCodec.floatToHalf(-0x1p-24f));
+        assertEquals(0x1p-24f, VectorCodec.halfToFloat((short) 0x0001));
+
+        // below half the smallest subnormal and float subnormals flush to zero
+        assertEquals(0x0000, VectorCodec.floatToHalf(0x1p-26f));
+        assertEquals(0x0000, VectorCodec.floatToHalf(Float.MIN_VALUE));
+        assertEquals((short) 0x8000, VectorCodec.floatToHalf(-Float.MIN_VALUE));
+    }
+
+    @Test
+    public void halfRoundsToNearestEven() {
+        // ties go to the even mantissa
+        assertEquals(0x3c00, VectorCodec.floatToHalf(1f + 0x1p-11f));
+        assertEquals(0x3c02, VectorCodec.floatToHalf(1f + 3 * 0x1p-11f));
+        assertEquals(0x0000, VectorCodec.floatToHalf(0x1p-25f));
+        assertEquals(0x0002, VectorCodec.floatToHalf(3 * 0x1p-25f));
+
+        // anything past the tie rounds up
+        assertEquals(0x3c01, VectorCodec.floatToHalf(1f + 0x1p-11f + 0x1p-20f));
+        assertEquals(0x0001, VectorCodec.floatToHalf(0x1p-25f + 0x1p-40f));
+        assertEquals(0x3bff, VectorCodec.floatToHalf(1f - 0x1p-12f - 0x1p-20f));
+        assertEquals(0x3c00, VectorCodec.floatToHalf(1f - 0x1p-12f));
+    }
+
+    @Test
+    public void halfOverflowsToInfinity() {
+        assertEquals(0x7bff, VectorCodec.floatToHalf(65504f));
+        assertEquals(0x7bff, VectorCodec.floatToHalf(65519f));
+        assertEquals(0x7c00, VectorCodec.floatToHalf(65520f));
+        assertEquals(0x7c00, VectorCodec.floatToHalf(1e6f));
+        assertEquals((short) 0xfc00, VectorCodec.floatToHalf(-1e6f));
+        assertEquals(0x7c00, VectorCodec.floatToHalf(Float.POSITIVE_INFINITY));
+        assertEquals(Float.NEGATIVE_INFINITY, VectorCodec.halfToFloat((short) 0xfc00));
+    }
+
+    @Test
+    public void halfKeepsNaN() {
+        short half = VectorCodec.floatToHalf(Float.NaN);
+        assertEquals(0x7c00, half & 0x7c00);
+        assertNotEquals(0, half & 0x3ff);
+        assertTrue(Float.isNaN(VectorCodec.halfToFloat(half)));
+    }
+
+    @Test
+    public void rejectsMalformedVectors() {
+        PackedVector vector = VectorCodec.encode(new float[]{1f, 2f, 3f}, VectorEncoding.FLOAT16);
+        assertEquals(3, VectorCodec.dimension(vector));
+        assertArrayEquals(new float[]{1f, 2f, 3f}, VectorCodec.decode(vector));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorCodec.decode(vector.toBuilder().setData(vector.getData().substring(1)).build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorCodec.dimension(vector.toBuilder().setEncoding(VectorEncoding.DOUBLE).build()));
+
+        PackedMatrix matrix = VectorCodec.encodeMatrix(new float[6], 2, 3, VectorEncoding.INT8);
+        assertEquals(6, VectorCodec.decodeMatrix(matrix).length);
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorCodec.decodeMatrix(matrix.toBuilder().setData(ByteString.copyFrom(new byte[5])).build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorCodec.decodeMatrix(matrix.toBuilder().clearScales().build()));
+    }
+}
@@ -0,0 +1,157 @@
+package org.drizzle.ml.word2vec.client;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Channel spreading calls over several channels, possibly to different servers, each counting its calls in progress.
+ * Stubs built on the pool balance every call, streams included, without any change to the calling code.
+ */
+class ChannelPool extends Channel {
+    private final List<Member> members = new ArrayList<>();
+    private final ClientOptions.LoadBalancing loadBalancing;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param channelBuilders    builder of each server address
+     * @param channelsPerAddress channels built from each builder
+     * @param loadBalancing      how channels are selected
+     */
+    ChannelPool(List<? extends ManagedChannelBuilder<?>> channelBuilders, int channelsPerAddress,
+                ClientOptions.LoadBalancing loadBalancing) {
+        if (channelBuilders.isEmpty()) {
+            throw new IllegalArgumentException("At least one channel builder is required");
+        }
+        this.loadBalancing = loadBalancing;
+        // channels of the same address are spread so consecutive round robin picks go to different addresses
+        for (int i = 0; i < Math.max(1, channelsPerAddress); i++) {
+            for (int address = 0; address < channelBuilders.size(); address++) {
+                members.add(new Member(channelBuilders.get(address).build(), address));
+            }
+        }
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> methodDescriptor,
+                                                         CallOptions callOptions) {
+        return select(null).newCall(methodDescriptor, callOptions);
+    }
+
+    @Override
+    public String authority() {
+        return members.get(0).channel.authority();
+    }
+
+    /**
+     * Selects a channel for a call
+     *
+     * @param avoid channel not to select when possible, preferring channels to other addresses, null for none
+     * @return selected channel
+     */
+    Channel select(Channel avoid) {
+        Member avoided = avoid instanceof Member ? (Member) avoid : null;
+        Member selected = null;
+        int start = Math.floorMod(next.getAndIncrement(), members.size());
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get((start + i) % members.size());
+            if (isBetter(member, selected, avoided)) {
+                selected = member;
+                if (loadBalancing == ClientOptions.LoadBalancing.ROUND_ROBIN && (avoided == null || member.address != avoided.address)) {
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private boolean isBetter(Member member, Member selected, Member avoided) {
+        if (selected == null) {
+            return true;
+        }
+        if (avoided != null) {
+            // another address first, then another channel of the same address
+            int memberRank = member.address != avoided.address ? 0 : member != avoided ? 1 : 2;
+            int selectedRank = selected.address != avoided.address ? 0 : selected != avoided ? 1 : 2;
+            if (memberRank != selectedRank) {
+                return memberRank < selectedRank;
+            }
+        }
+        return loadBalancing == ClientOptions.LoadBalancing.LEAST_OUTSTANDING
+                && member.outstanding.get() < selected.outstanding.get();
+    }
+
+    /**
+     * @return calls in progress on each channel
+     */
+    int[] outstandingCalls() {
+        return members.stream().mapToInt(member -> member.outstanding.get()).toArray();
+    }
+
+    void shutdown() {
+        members.forEach(member -> member.channel.shutdown());
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Member member : members) {
+            if (!member.channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Channel of the pool, counting calls from their start until they are closed
+     */
+    private static class Member extends Channel {
+        private final ManagedChannel channel;
+        private final int address;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        Member(ManagedChannel channel, int address) {
+            this.channel = channel;
+            this.address = address;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> methodDescriptor,
+                                                             CallOptions callOptions) {
+            return new ForwardingClientCall.SimpleForwardingClientCall<>(channel.newCall(methodDescriptor, callOptions)) {
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers) {
+                    outstanding.incrementAndGet();
+                    try {
+                        super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                            @Override
+                            public void onClose(io.grpc.Status status, Metadata trailers) {
+                                outstanding.decrementAndGet();
+                                super.onClose(status, trailers);
+                            }
+                        }, headers);
+                    } catch (RuntimeException e) {
+                        outstanding.decrementAndGet();
+                        throw e;
+                    }
+                }
+            };
+        }
+
+        @Override
+        public String authority() {
+            return channel.authority();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.drizzle.ml.word2vec.client;
+
+/**
+ * Connection, balancing and hedging options of a {@link Word2VecClient}
+ */
+public class ClientOptions {
+
+    public enum LoadBalancing {
+        /**
+         * Channels are used in turn
+         */
+        ROUND_ROBIN,
+        /**
+         * Calls go to the channel with the fewest calls in progress, spreading load away from slow servers
+         */
+        LEAST_OUTSTANDING
+    }
+
+    private long asyncTimeoutMs = 1000L;
+    private int maxInFlight = 256;
+    private int channelsPerAddress = 1;
+    private LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+    private double hedgingPercentile = 0;
+    private long minHedgingDelayMs = 1L;
+    private long vectorCacheBytes = 0;
+    private int maxInboundMessageSize = 0;
+
+    /**
+     * @return default deadline of calls in milliseconds, see {@link Word2VecClient#withTimeout(long)}
+     */
+    public long getAsyncTimeoutMs() {
+        return asyncTimeoutMs;
+    }
+
+    public ClientOptions setAsyncTimeoutMs(long asyncTimeoutMs) {
+        this.asyncTimeoutMs = asyncTimeoutMs;
+        return this;
+    }
+
+    /**
+     * @return maximum number of requests of a stream sent and not yet answered
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public ClientOptions setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * @return number of channels, each with its own HTTP/2 connection, built from each channel builder
+     */
+    public int getChannelsPerAddress() {
+        return channelsPerAddress;
+    }
+
+    public ClientOptions setChannelsPerAddress(int channelsPerAddress) {
+        this.channelsPerAddress = channelsPerAddress;
+        return this;
+    }
+
+    public LoadBalancing getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    public ClientOptions setLoadBalancing(LoadBalancing loadBalancing) {
+        this.loadBalancing = loadBalancing;
+        return this;
+    }
+
+    /**
+     * @return latency percentile of recent nearest words calls after which the call is sent again to another channel,
+     * zero to disable hedging
+     */
+    public double getHedgingPercentile() {
+        return hedgingPercentile;
+    }
+
+    public ClientOptions setHedgingPercentile(double hedgingPercentile) {
+        this.hedgingPercentile = hedgingPercentile;
+        return this;
+    }
+
+    /**
+     * @return minimum delay before a hedged call, in milliseconds
+     */
+    public long getMinHedgingDelayMs() {
+        return minHedgingDelayMs;
+    }
+
+    public ClientOptions setMinHedgingDelayMs(long minHedgingDelayMs) {
+        this.minHedgingDelayMs = minHedgingDelayMs;
+        return this;
+    }
+
+    /**
+     * @return memory budget of the local cache of word vectors of each model, zero to disable caching
+     */
+    public long getVectorCacheBytes() {
+        return vectorCacheBytes;
+    }
+
+    public ClientOptions setVectorCacheBytes(long vectorCacheBytes) {
+        this.vectorCacheBytes = vectorCacheBytes;
+        return this;
+    }
+
+    /**
+     * @return largest response accepted in bytes, zero keeps the 4 MiB gRPC default.
+     * Vector batches of many words, like 5000 vectors of 300 floats, need more
+     */
+    public int getMaxInboundMessageSize() {
+        return maxInboundMessageSize;
+    }
+
+    public ClientOptions setMaxInboundMessageSize(int maxInboundMessageSize) {
+        this.maxInboundMessageSize = maxInboundMessageSize;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientOptions{" +
+                "asyncTimeoutMs=" + asyncTimeoutMs +
+                ", maxInFlight=" + maxInFlight +
+                ", channelsPerAddress=" + channelsPerAddress +
+                ", loadBalancing=" + loadBalancing +
+                ", hedgingPercentile=" + hedgingPercentile +
+                ", minHedgingDelayMs=" + minHedgingDelayMs +
+                ", vectorCacheBytes=" + vectorCacheBytes +
+                ", maxInboundMessageSize=" + maxInboundMessageSize +
+                '}';
+    }
+}
@@ -0,0 +1,47 @@
+package org.drizzle.ml.word2vec.client;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the most recent calls, giving the percentile after which a call is hedged.
+ * The percentile is computed again every {@link #REFRESH_INTERVAL} calls rather than on every call.
+ */
+class LatencyTracker {
+    private static final int WINDOW = 1024;
+    // calls needed before hedging, percentiles of fewer calls are not meaningful
+    private static final int MIN_SAMPLES = 32;
+    private static final int REFRESH_INTERVAL = 64;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long[] latencies = new long[WINDOW];
+    private long count;
+    private volatile long thresholdNanos = Long.MAX_VALUE;
+
+    /**
+     * @param percentile    latency percentile, from 0 to 100
+     * @param minDelayNanos minimum threshold
+     */
+    LatencyTracker(double percentile, long minDelayNanos) {
+        this.percentile = percentile;
+        this.minDelayNanos = minDelayNanos;
+    }
+
+    synchronized void record(long latencyNanos) {
+        latencies[(int) (count % WINDOW)] = latencyNanos;
+        count++;
+        if (count >= MIN_SAMPLES && count % REFRESH_INTERVAL == MIN_SAMPLES % REFRESH_INTERVAL) {
+            long[] sorted = Arrays.copyOf(latencies, (int) Math.min(count, WINDOW));
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile / 100d * sorted.length) - 1);
+            thresholdNanos = Math.max(minDelayNanos, sorted[Math.max(0, index)]);
+        }
+    }
+
+    /**
+     * @return latency after which a call is hedged, Long.MAX_VALUE until enough calls are recorded
+     */
+    long thresholdNanos() {
+        return thresholdNanos;
+    }
+}
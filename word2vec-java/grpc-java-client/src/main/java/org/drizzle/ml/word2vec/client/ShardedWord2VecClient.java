@@ -0,0 +1,308 @@
+package org.drizzle.ml.word2vec.client;
+
+import org.drizzle.ml.word2vec.models.Nd4jVectorWordList;
+import org.drizzle.ml.word2vec.models.Nd4jWordVector;
+import org.drizzle.ml.word2vec.service.ModelStatus;
+import org.drizzle.ml.word2vec.service.SearchMode;
+import org.drizzle.ml.word2vec.service.VectorEncoding;
+import org.drizzle.ml.word2vec.shard.WordShards;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Client of a model split in vocabulary shards, each served by its own server started with --shard and --shard-count.
+ * <p>
+ * Word lookups are routed to the shard holding each word, as assigned by {@link WordShards}. Nearest words queries are sent
+ * to every shard, each returning its own top words, and the results are merged by similarity, so each server only scans
+ * its share of the vocabulary. Shard calls run concurrently on the executor and fail as the underlying client calls do.
+ */
+public class ShardedWord2VecClient {
+    private final List<Word2VecClient> shards;
+    private final Executor executor;
+    // null when the executor is given by the caller, who shuts it down
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * Creates a client calling the shards on a cached pool of daemon threads, released by {@link #shutdown()}
+     *
+     * @param shards client of each shard, in shard order
+     */
+    public ShardedWord2VecClient(List<Word2VecClient> shards) {
+        this(shards, shardExecutor(), true);
+    }
+
+    /**
+     * @param shards   client of each shard, in shard order
+     * @param executor executor running the blocking shard calls, not shut down by {@link #shutdown()}
+     */
+    public ShardedWord2VecClient(List<Word2VecClient> shards, Executor executor) {
+        this(shards, executor, false);
+    }
+
+    private ShardedWord2VecClient(List<Word2VecClient> shards, Executor executor, boolean ownsExecutor) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.executor = executor;
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * Closes the channels of every shard client and the shard call threads created by this client,
+     * calls in progress are completed
+     */
+    public void shutdown() {
+        shards.forEach(Word2VecClient::shutdown);
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Waits for the shard channels and threads to terminate after {@link #shutdown()}
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of the timeout
+     * @return true if all channels and threads terminated
+     * @throws InterruptedException
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean terminated = true;
+        for (Word2VecClient shard : shards) {
+            terminated &= shard.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        if (ownedExecutor != null) {
+            terminated &= ownedExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        return terminated;
+    }
+
+    /**
+     * Checks that every shard is ready to process requests
+     *
+     * @return true if all shards are ready
+     * @throws IllegalStateException if a server does not serve the shard expected from its position
+     */
+    public boolean isReady() {
+        boolean ready = true;
+        for (int i = 0; i < shards.size(); i++) {
+            ModelStatus status = shards.get(i).getModelStatus();
+            if (status.getReady() && (status.getShard() != i || status.getShardCount() != shards.size())) {
+                throw new IllegalStateException("Server of shard " + i + " of " + shards.size()
+                        + " serves shard " + status.getShard() + " of " + status.getShardCount());
+            }
+            ready &= status.getReady();
+        }
+        return ready;
+    }
+
+    /**
+     * Returns the vectors for all words given, looking each word up in its shard. Words not found in the model are not
+     * included in the response. Vectors are transferred as packed float32 values.
+     *
+     * @param words list of words to find vectors
+     * @return pairs vector -> word, in the same order as words
+     */
+    public List<Nd4jWordVector> getVectorsBatch(List<String> words) {
+        return getVectorsBatch(words, VectorEncoding.FLOAT32);
+    }
+
+    /**
+     * Returns the vectors for all words given, looking each word up in its shard with a specific wire encoding.
+     * Words not found in the model are not included in the response.
+     *
+     * @param words    list of words to find vectors
+     * @param encoding vector encoding used in the responses
+     * @return pairs vector -> word, in the same order as words
+     */
+    public List<Nd4jWordVector> getVectorsBatch(List<String> words, VectorEncoding encoding) {
+        List<List<String>> shardWords = new ArrayList<>();
+        shards.forEach(shard -> shardWords.add(new ArrayList<>()));
+        for (String word : words) {
+            shardWords.get(WordShards.shardOf(word, shards.size())).add(word);
+        }
+
+        Map<String, Nd4jWordVector> vectors = new HashMap<>();
+        for (List<Nd4jWordVector> shardVectors : callShards(shard -> shardWords.get(shard).isEmpty()
+                ? List.<Nd4jWordVector>of()
+                : shards.get(shard).getVectorsBatch(shardWords.get(shard), encoding))) {
+            shardVectors.forEach(wordVector -> vectors.put(wordVector.getWord(), wordVector));
+        }
+
+        List<Nd4jWordVector> results = new ArrayList<>();
+        for (String word : words) {
+            Nd4jWordVector wordVector = vectors.get(word);
+            if (wordVector != null) {
+                results.add(wordVector);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the top limit words nearest to each row of a query matrix, searched in all shards.
+     *
+     * @param vectors matrix with one query vector per row
+     * @param limit   maximum number of words returned for each vector
+     * @return list of nearest words and their similarities for each row, in row order
+     */
+    public List<Nd4jVectorWordList> getNearestWordsBatch(INDArray vectors, int limit) {
+        return getNearestWordsBatch(vectors, limit, SearchMode.DEFAULT, 0);
+    }
+
+    /**
+     * Returns the top limit words nearest to each row of a query matrix, searched in all shards with the given mode.
+     *
+     * @param vectors  matrix with one query vector per row
+     * @param limit    maximum number of words returned for each vector
+     * @param mode     search mode, DEFAULT uses the server index
+     * @param efSearch candidate list size for approximate searches, zero uses the server default
+     * @return list of nearest words and their similarities for each row, in row order
+     */
+    public List<Nd4jVectorWordList> getNearestWordsBatch(INDArray vectors, int limit, SearchMode mode, int efSearch) {
+        if (vectors.isEmpty()) {
+            return List.of();
+        }
+
+        List<List<Nd4jVectorWordList>> shardResults =
+                callShards(shard -> shards.get(shard).getNearestWordsBatch(vectors, limit, mode, efSearch));
+
+        List<Nd4jVectorWordList> results = new ArrayList<>();
+        for (int row = 0; row < vectors.rows(); row++) {
+            List<ScoredWord> candidates = new ArrayList<>();
+            for (List<Nd4jVectorWordList> shardResult : shardResults) {
+                Nd4jVectorWordList nearest = shardResult.get(row);
+                for (int i = 0; i < nearest.getWords().size(); i++) {
+                    candidates.add(new ScoredWord(nearest.getWords().get(i), nearest.getSimilarities().get(i)));
+                }
+            }
+            Collections.sort(candidates);
+
+            List<String> words = new ArrayList<>();
+            List<Float> similarities = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, candidates.size()); i++) {
+                words.add(candidates.get(i).word);
+                similarities.add(candidates.get(i).similarity);
+            }
+            results.add(new Nd4jVectorWordList(vectors.getRow(row), words, similarities));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the top limit words nearest to the sum of the normalized positive word vectors minus the normalized negative
+     * word vectors, for example king - man + woman. The input vectors are fetched from their shards and combined locally,
+     * the combination is then searched in all shards. Input words are not included in the results and words not found
+     * in the model are ignored.
+     *
+     * @param positive words added to the query
+     * @param negative words subtracted from the query
+     * @param limit    maximum number of words returned
+     * @return nearest words, most similar first
+     */
+    public List<String> getNearestToWords(List<String> positive, List<String> negative, int limit) {
+        List<String> inputWords = new ArrayList<>(positive);
+        inputWords.addAll(negative);
+        Map<String, INDArray> normalized = new HashMap<>();
+        for (Nd4jWordVector wordVector : getVectorsBatch(inputWords)) {
+            INDArray vector = wordVector.getVector().reshape(1, wordVector.getVector().length());
+            normalized.put(wordVector.getWord(), vector.div(vector.norm2Number()));
+        }
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        INDArray query = Nd4j.zeros(1, normalized.values().iterator().next().length());
+        for (int i = 0; i < inputWords.size(); i++) {
+            INDArray vector = normalized.get(inputWords.get(i));
+            if (vector != null && i < positive.size()) {
+                query.addi(vector);
+            } else if (vector != null) {
+                query.subi(vector);
+            }
+        }
+        Set<String> found = normalized.keySet();
+
+        // input words are usually among the nearest, search enough words to fill the limit without them
+        List<String> nearest = getNearestWordsBatch(query, limit + found.size()).get(0).getWords();
+        List<String> results = new ArrayList<>();
+        for (String word : nearest) {
+            if (!found.contains(word) && results.size() < limit) {
+                results.add(word);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Calls every shard concurrently
+     *
+     * @param call call of the shard with the given index
+     * @return result of each shard, in shard order
+     */
+    private <T> List<T> callShards(IntFunction<T> call) {
+        List<CompletableFuture<T>> calls = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            calls.add(CompletableFuture.supplyAsync(() -> call.apply(shard), executor));
+        }
+
+        List<T> results = new ArrayList<>();
+        for (CompletableFuture<T> shardCall : calls) {
+            try {
+                results.add(shardCall.join());
+            } catch (CompletionException e) {
+                // rethrow the shard call failure, usually a StatusRuntimeException
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    private static ExecutorService shardExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Word2Vec-shard-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Word found by a shard, ordered by descending similarity
+     */
+    private static class ScoredWord implements Comparable<ScoredWord> {
+        private final String word;
+        private final float similarity;
+
+        ScoredWord(String word, float similarity) {
+            this.word = word;
+            this.similarity = similarity;
+        }
+
+        @Override
+        public int compareTo(ScoredWord other) {
+            return Float.compare(other.similarity, similarity);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.drizzle.ml.word2vec.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Least recently used cache of word vectors within a memory budget.
+ * <p>
+ * Vectors are kept in a float arena, allocated in segments as the cache fills up, each word owning a slot of one vector.
+ * Evicted slots are reused by the next words cached, so a full cache does not allocate. Vectors are copied out of the
+ * arena, a view of a slot would change when its word is evicted.
+ */
+class VectorCache {
+    private static final int SEGMENT_SLOTS = 4096;
+
+    private final long budgetBytes;
+    private final List<float[]> segments = new ArrayList<>();
+    // access ordered, the eldest entry is the least recently used
+    private final LinkedHashMap<String, Integer> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private int dimension;
+    private int capacity;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param budgetBytes maximum size of the cached vectors
+     */
+    VectorCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @return dimension of the cached vectors, zero while the cache is empty
+     */
+    synchronized int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Copies the cached vector of a word
+     *
+     * @param word      word to find
+     * @param dimension expected vector dimension
+     * @param target    destination array
+     * @param offset    offset of the vector in the destination array
+     * @return false if the word is not cached with the expected dimension
+     */
+    synchronized boolean copyTo(String word, int dimension, float[] target, int offset) {
+        Integer slot = dimension == this.dimension ? slots.get(word) : null;
+        if (slot == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        System.arraycopy(segments.get(slot / SEGMENT_SLOTS), (slot % SEGMENT_SLOTS) * dimension, target, offset, dimension);
+        return true;
+    }
+
+    /**
+     * Caches the vector of a word, evicting the least recently used word when the budget is reached.
+     * A vector with another dimension than the cached ones, after a model change, empties the cache first.
+     *
+     * @param word   word
+     * @param vector vector of the word
+     */
+    synchronized void put(String word, float[] vector) {
+        if (vector.length == 0) {
+            return;
+        }
+        if (vector.length != dimension) {
+            invalidateAll();
+            dimension = vector.length;
+            capacity = (int) Math.min(Integer.MAX_VALUE, budgetBytes / (Float.BYTES * (long) dimension));
+        }
+        if (capacity == 0) {
+            return;
+        }
+
+        Integer slot = slots.get(word);
+        if (slot == null) {
+            slot = slots.size();
+            if (slot == capacity) {
+                Iterator<Map.Entry<String, Integer>> eldest = slots.entrySet().iterator();
+                slot = eldest.next().getValue();
+                eldest.remove();
+            } else if (slot == segments.size() * SEGMENT_SLOTS) {
+                segments.add(new float[Math.min(SEGMENT_SLOTS, capacity - slot) * dimension]);
+            }
+            slots.put(word, slot);
+        }
+        System.arraycopy(vector, 0, segments.get(slot / SEGMENT_SLOTS), (slot % SEGMENT_SLOTS) * dimension, dimension);
+    }
+
+    /**
+     * Removes all cached vectors and releases the arena
+     */
+    synchronized void invalidateAll() {
+        slots.clear();
+        segments.clear();
+        dimension = 0;
+        capacity = 0;
+    }
+
+    synchronized int size() {
+        return slots.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+}
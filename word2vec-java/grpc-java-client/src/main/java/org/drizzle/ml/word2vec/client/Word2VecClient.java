@@ -1,8 +1,16 @@
 package org.drizzle.ml.word2vec.client;
 
-import io.grpc.ManagedChannel;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Channel;
+import io.grpc.Deadline;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
+import org.drizzle.ml.word2vec.codec.VectorCodec;
 import org.drizzle.ml.word2vec.models.Nd4jVectorWordList;
 import org.drizzle.ml.word2vec.models.Nd4jWordVector;
 import org.drizzle.ml.word2vec.service.*;
@@ -12,16 +20,59 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * Client of the Word2Vec service.
+ * <p>
+ * Calls are spread over a pool of channels, possibly to several replicas of the server, see {@link ClientOptions}.
+ * When hedging is enabled, nearest words batch and word arithmetic calls still unanswered after a latency percentile of
+ * recent calls of the same method, and for batches of the same size class, are sent again to another channel, preferably
+ * to another address, and the first response is used.
+ * <p>
+ * With a vector cache budget, float32 word vectors fetched by {@link #getVectorMap(List)} and {@link #getVectorsBatch(List)}
+ * are kept locally and only the words not cached are requested from the server.
+ * <p>
+ * Stream calls also have non-blocking variants, returning a {@link CompletableFuture} of all responses or a
+ * {@link Flow.Publisher} emitting the responses as the server streams them, with the subscriber demand driving the
+ * transport flow control. Both fail with the call error, a StatusRuntimeException, deadlines included.
+ */
 public class Word2VecClient {
     private static final Logger logger = LoggerFactory.getLogger(Word2VecClient.class);
 
+    private final ChannelPool channelPool;
     private final Word2VecServiceGrpc.Word2VecServiceStub asyncStub;
     private final Word2VecServiceGrpc.Word2VecServiceBlockingStub blockingStub;
     private final long asyncTimeoutMs;
+    private final int maxInFlight;
+    // model named in requests, empty for the server default model
+    private final String model;
+    // latencies of recent calls of each method and batch size, null when hedging is disabled
+    private final Map<String, LatencyTracker> latencyTrackers;
+    private final double hedgingPercentile;
+    private final long minHedgingDelayNanos;
+    // cache of each model, shared by the clients derived from this one
+    private final Map<String, VectorCache> vectorCaches;
+    private final long vectorCacheBytes;
 
     /**
      * Creates a socket based client, connecting to a specific host and port
@@ -42,54 +93,301 @@ public class Word2VecClient {
      * @param asyncTimeoutMs timeout for async calls in milliseconds
      */
     public Word2VecClient(ManagedChannelBuilder<?> channelBuilder, long asyncTimeoutMs) {
-        ManagedChannel channel = channelBuilder.build();
-        asyncStub = Word2VecServiceGrpc.newStub(channel);
-        blockingStub = Word2VecServiceGrpc.newBlockingStub(channel);
+        this(List.of(channelBuilder), new ClientOptions().setAsyncTimeoutMs(asyncTimeoutMs));
+    }
+
+    /**
+     * Creates a client with a custom channel and a limit on stream requests waiting for their response
+     *
+     * @param channelBuilder channel builder
+     * @param asyncTimeoutMs timeout for async calls in milliseconds
+     * @param maxInFlight    maximum number of requests of a stream sent and not yet answered
+     */
+    public Word2VecClient(ManagedChannelBuilder<?> channelBuilder, long asyncTimeoutMs, int maxInFlight) {
+        this(List.of(channelBuilder), new ClientOptions().setAsyncTimeoutMs(asyncTimeoutMs).setMaxInFlight(maxInFlight));
+    }
+
+    /**
+     * Creates a client balancing its calls over the channels of several server replicas
+     *
+     * @param channelBuilders channel builder of each replica
+     * @param options         client options
+     */
+    public Word2VecClient(List<? extends ManagedChannelBuilder<?>> channelBuilders, ClientOptions options) {
+        if (options.getMaxInboundMessageSize() > 0) {
+            channelBuilders.forEach(builder -> builder.maxInboundMessageSize(options.getMaxInboundMessageSize()));
+        }
+        channelPool = new ChannelPool(channelBuilders, options.getChannelsPerAddress(), options.getLoadBalancing());
+        asyncStub = Word2VecServiceGrpc.newStub(channelPool);
+        blockingStub = Word2VecServiceGrpc.newBlockingStub(channelPool);
+        this.asyncTimeoutMs = options.getAsyncTimeoutMs();
+        this.maxInFlight = Math.max(1, options.getMaxInFlight());
+        this.model = "";
+        this.latencyTrackers = options.getHedgingPercentile() > 0 ? new ConcurrentHashMap<>() : null;
+        this.hedgingPercentile = options.getHedgingPercentile();
+        this.minHedgingDelayNanos = TimeUnit.MILLISECONDS.toNanos(options.getMinHedgingDelayMs());
+        this.vectorCaches = new ConcurrentHashMap<>();
+        this.vectorCacheBytes = options.getVectorCacheBytes();
+    }
+
+    private Word2VecClient(Word2VecClient client, String model, long asyncTimeoutMs) {
+        this.channelPool = client.channelPool;
+        this.asyncStub = client.asyncStub;
+        this.blockingStub = client.blockingStub;
         this.asyncTimeoutMs = asyncTimeoutMs;
+        this.maxInFlight = client.maxInFlight;
+        this.model = model;
+        this.latencyTrackers = client.latencyTrackers;
+        this.hedgingPercentile = client.hedgingPercentile;
+        this.minHedgingDelayNanos = client.minHedgingDelayNanos;
+        this.vectorCaches = client.vectorCaches;
+        this.vectorCacheBytes = client.vectorCacheBytes;
+    }
+
+    /**
+     * Returns a client sending its requests to another model hosted by the server, sharing the channel of this client
+     *
+     * @param model model name, empty for the server default model
+     * @return client of the model
+     */
+    public Word2VecClient forModel(String model) {
+        return new Word2VecClient(this, model, asyncTimeoutMs);
     }
 
     /**
-     * Checks the service status and returns true if it is ready to
+     * Returns a client with another deadline for its calls, sharing the channels of this client
+     *
+     * @param asyncTimeoutMs timeout for calls in milliseconds
+     * @return client with the timeout
+     */
+    public Word2VecClient withTimeout(long asyncTimeoutMs) {
+        return new Word2VecClient(this, model, asyncTimeoutMs);
+    }
+
+    /**
+     * Closes the channels of this client and of the clients derived from it, calls in progress are completed
+     */
+    public void shutdown() {
+        channelPool.shutdown();
+    }
+
+    /**
+     * Waits for the channels to terminate after {@link #shutdown()}
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of the timeout
+     * @return true if all channels terminated
+     * @throws InterruptedException
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return channelPool.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Asks the server to load a new version of the model of this client from its file.
+     * The current version serves requests until the new one is ready, see {@link #getStatus()} for the load progress.
+     *
+     * Cached vectors of the model are dropped.
+     *
+     * @return model status when the load started
+     */
+    public ModelStatus reloadModel() {
+        invalidateVectorCache();
+        return blockingStub.reloadModel(ModelReload.newBuilder().setModel(model).build());
+    }
+
+    /**
+     * Drops the cached vectors of the model of this client, for example after the model was reloaded by another client
+     */
+    public void invalidateVectorCache() {
+        VectorCache cache = vectorCaches.get(model);
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * @return number of words found in the vector cache of the model of this client
+     */
+    public long getVectorCacheHits() {
+        VectorCache cache = vectorCaches.get(model);
+        return cache == null ? 0 : cache.hits();
+    }
+
+    /**
+     * @return number of words requested from the server because they were not in the vector cache
+     */
+    public long getVectorCacheMisses() {
+        VectorCache cache = vectorCaches.get(model);
+        return cache == null ? 0 : cache.misses();
+    }
+
+    /**
+     * Checks the service status and returns true if the model of this client is ready to
      * process requests
      *
      * @return true if ready to process requests
      */
     public boolean isReady() {
-        return blockingStub.getStatus(VoidMessage.newBuilder().build())
-                .getReady();
+        Status status = blockingStub.getStatus(VoidMessage.newBuilder().build());
+        if (model.isEmpty()) {
+            return status.getReady();
+        }
+        return status.getModelsList().stream()
+                .anyMatch(modelStatus -> modelStatus.getModel().equals(model) && modelStatus.getReady());
+    }
+
+    /**
+     * Returns the status of the model of this client, including its version and the vocabulary shard it serves
+     *
+     * @return model status, with only the model name set if the server does not host the model
+     */
+    public ModelStatus getModelStatus() {
+        Status status = blockingStub.getStatus(VoidMessage.newBuilder().build());
+        // servers report the default model first
+        String name = model.isEmpty() && status.getModelsCount() > 0 ? status.getModels(0).getModel() : model;
+        return status.getModelsList().stream()
+                .filter(modelStatus -> modelStatus.getModel().equals(name))
+                .findFirst()
+                .orElse(ModelStatus.newBuilder().setModel(name).build());
+    }
+
+    /**
+     * Returns the service status, including the current loading phase and its progress while the model is not ready
+     * and the status of every hosted model
+     *
+     * @return service status
+     */
+    public Status getStatus() {
+        return blockingStub.getStatus(VoidMessage.newBuilder().build());
+    }
+
+    /**
+     * Returns the server metrics: latency percentiles of each RPC and processing stage, call and message counters and
+     * gauges such as the search queue depth and model load times
+     *
+     * @return server metrics since the server started
+     */
+    public Metrics getMetrics() {
+        return blockingStub.getMetrics(VoidMessage.newBuilder().build());
     }
 
     /**
      * Returns a list of pairs vector -> word for each word given
-     * It will return an empty list in case of a timeout, e.i the all is taking longer than asyncTimeoutMs to complete.
+     * Vectors are transferred as packed float32 values.
+     * It will return an empty list in case of a timeout, e.i the all is taking longer than asyncTimeoutMs to complete, or of a failed call.
      *
      * @param words list of words to find vectors
      * @return pairs vector -> word
      * @throws InterruptedException
      */
     public List<Nd4jWordVector> getVectorMap(List<String> words) throws InterruptedException {
+        return getVectorMap(words, VectorEncoding.FLOAT32);
+    }
+
+    /**
+     * Returns a list of pairs vector -> word for each word given, using a specific wire encoding for the vectors.
+     * FLOAT16 and INT8 trade precision for smaller responses, DOUBLE uses the legacy unpacked representation.
+     * It will return an empty list in case of a timeout, e.i the all is taking longer than asyncTimeoutMs to complete, or of a failed call.
+     *
+     * @param words    list of words to find vectors
+     * @param encoding vector encoding used in responses
+     * @return pairs vector -> word
+     * @throws InterruptedException
+     */
+    public List<Nd4jWordVector> getVectorMap(List<String> words, VectorEncoding encoding) throws InterruptedException {
+        VectorCache cache = vectorCache(encoding);
+        if (cache == null) {
+            return fetchVectorMap(words, encoding);
+        }
+        return getCachedVectors(words, cache, misses -> {
+            List<Nd4jWordVector> fetched = fetchVectorMap(misses, encoding);
+            // a timeout returns no vectors
+            if (fetched.size() != misses.size()) {
+                return null;
+            }
+            // one response per word, placeholders included
+            Map<String, Nd4jWordVector> byWord = new HashMap<>();
+            for (int i = 0; i < misses.size(); i++) {
+                byWord.put(misses.get(i), fetched.get(i));
+            }
+            return byWord;
+        });
+    }
+
+    private List<Nd4jWordVector> fetchVectorMap(List<String> words, VectorEncoding encoding) throws InterruptedException {
         var responseObserver = new WordVectorResponseObserver();
-        StreamObserver<Word> requestObserver = asyncStub.getVectorMap(responseObserver);
+        Iterator<String> wordIterator = words.iterator();
+        var requestSender = new RequestSender<Word, WordVector>(responseObserver,
+                () -> wordRequest(wordIterator.next(), encoding), wordIterator::hasNext, false);
 
-        words.forEach(word -> requestObserver.onNext(Word.newBuilder().setWord(word).build()));
-        requestObserver.onCompleted();
+        asyncStub.withDeadlineAfter(asyncTimeoutMs, TimeUnit.MILLISECONDS).getVectorMap(requestSender);
+        requestSender.start();
 
         List<Nd4jWordVector> results = new ArrayList<>();
 
         for (WordVector wordVector : responseObserver.getWordVectors()) {
-            results.add(
-                    new Nd4jWordVector(wordVector.getWord().getWord(),
-                            Nd4j.create(wordVector.getVectorList()))
-            );
+            results.add(toWordVector(wordVector));
         }
 
         return results;
     }
 
+    /**
+     * Returns the pairs vector -> word for each word given without blocking, vectors transferred as packed float32 values.
+     * The future fails with a StatusRuntimeException if the call fails, including when it takes longer than asyncTimeoutMs.
+     * The vector cache is not used.
+     *
+     * @param words list of words to find vectors
+     * @return future of the pairs vector -> word, in the same order as words
+     */
+    public CompletableFuture<List<Nd4jWordVector>> getVectorMapAsync(List<String> words) {
+        return getVectorMapAsync(words, VectorEncoding.FLOAT32);
+    }
+
+    /**
+     * Returns the pairs vector -> word for each word given without blocking, using a specific wire encoding.
+     * The future fails with a StatusRuntimeException if the call fails, including when it takes longer than asyncTimeoutMs.
+     * The vector cache is not used.
+     *
+     * @param words    list of words to find vectors
+     * @param encoding vector encoding used in responses
+     * @return future of the pairs vector -> word, in the same order as words
+     */
+    public CompletableFuture<List<Nd4jWordVector>> getVectorMapAsync(List<String> words, VectorEncoding encoding) {
+        return collect(streamVectorMap(words, encoding));
+    }
+
+    /**
+     * Returns a publisher emitting the pair vector -> word of each word given as the server streams them.
+     * The call starts when the publisher is subscribed, which can only happen once. Responses are requested from the server
+     * as the subscriber signals demand, requests are sent while responses are consumed.
+     * The subscriber gets a StatusRuntimeException if the call fails, including when it takes longer than asyncTimeoutMs.
+     *
+     * @param words    list of words to find vectors
+     * @param encoding vector encoding used in responses
+     * @return publisher of the pairs vector -> word, in the same order as words
+     */
+    public Flow.Publisher<Nd4jWordVector> streamVectorMap(List<String> words, VectorEncoding encoding) {
+        Iterator<String> wordIterator = words.iterator();
+        return new ResponsePublisher<Word, WordVector, Nd4jWordVector>(
+                responseObserver -> asyncStub.withDeadlineAfter(asyncTimeoutMs, TimeUnit.MILLISECONDS).getVectorMap(responseObserver),
+                () -> wordRequest(wordIterator.next(), encoding), wordIterator::hasNext, this::toWordVector);
+    }
+
+    private Word wordRequest(String word, VectorEncoding encoding) {
+        return Word.newBuilder().setWord(word).setEncoding(encoding).setModel(model).build();
+    }
+
+    private Nd4jWordVector toWordVector(WordVector wordVector) {
+        return new Nd4jWordVector(wordVector.getWord().getWord(),
+                toINDArray(wordVector.hasPackedVector(), wordVector.getPackedVector(), wordVector.getVectorList()));
+    }
+
     /**
      * Returns the top limit words nearest to each vector given.
      * For each vector, a list of words is returned in the response
-     * It will return an empty list in case of a timeout, e.i the all is taking longer than asyncTimeoutMs to complete.
+     * It will return an empty list in case of a timeout, e.i the all is taking longer than asyncTimeoutMs to complete, or of a failed call.
      *
      * @param vectors list of vectors to find nearest words
      * @param limit   maximum number of words returned
@@ -97,47 +395,876 @@ public class Word2VecClient {
      * @throws InterruptedException
      */
     public List<Nd4jVectorWordList> getNearestWords(List<INDArray> vectors, int limit) throws InterruptedException {
+        return getNearestWords(vectors, limit, SearchMode.DEFAULT);
+    }
+
+    /**
+     * Returns the top limit words nearest to each vector given, choosing between exact and approximate search.
+     * Approximate search is only faster when the server was started with an approximate index, otherwise results are exact.
+     * It will return an empty list in case of a timeout, e.i the all is taking longer than asyncTimeoutMs to complete, or of a failed call.
+     *
+     * @param vectors list of vectors to find nearest words
+     * @param limit   maximum number of words returned
+     * @param mode    search mode, DEFAULT uses the server index
+     * @return list of nearest words for each vector
+     * @throws InterruptedException
+     */
+    public List<Nd4jVectorWordList> getNearestWords(List<INDArray> vectors, int limit, SearchMode mode) throws InterruptedException {
         var responseObserver = new VectorWordListResponseObserver();
-        StreamObserver<NearestToVector> requestObserver = asyncStub.getNearestWords(responseObserver);
+        Iterator<INDArray> vectorIterator = vectors.iterator();
+        var requestSender = new RequestSender<NearestToVector, VectorWordList>(responseObserver,
+                () -> nearestWordsRequest(vectorIterator.next(), limit, mode), vectorIterator::hasNext, false);
+
+        asyncStub.withDeadlineAfter(asyncTimeoutMs, TimeUnit.MILLISECONDS).getNearestWords(requestSender);
+        requestSender.start();
+
+        List<VectorWordList> responses = responseObserver.getVectorWords();
+        List<Nd4jVectorWordList> results = new ArrayList<>();
+        for (int i = 0; i < responses.size(); i++) {
+            results.add(toVectorWordList(vectors.get(i), responses.get(i)));
+        }
+        return results;
+    }
 
-        for (INDArray vector : vectors) {
-            NearestToVector.Builder builder = NearestToVector.newBuilder()
-                    .setLimit(limit);
+    /**
+     * Returns the top limit words nearest to each vector given without blocking.
+     * The future fails with a StatusRuntimeException if the call fails, including when it takes longer than asyncTimeoutMs.
+     *
+     * @param vectors list of vectors to find nearest words
+     * @param limit   maximum number of words returned
+     * @param mode    search mode, DEFAULT uses the server index
+     * @return future of the nearest words for each vector
+     */
+    public CompletableFuture<List<Nd4jVectorWordList>> getNearestWordsAsync(List<INDArray> vectors, int limit, SearchMode mode) {
+        return collect(streamNearestWords(vectors, limit, mode));
+    }
+
+    /**
+     * Returns a publisher emitting the top limit words nearest to each vector given as the server streams them.
+     * The call starts when the publisher is subscribed, which can only happen once. Responses are requested from the server
+     * as the subscriber signals demand, requests are sent while responses are consumed.
+     * The subscriber gets a StatusRuntimeException if the call fails, including when it takes longer than asyncTimeoutMs.
+     *
+     * @param vectors list of vectors to find nearest words
+     * @param limit   maximum number of words returned
+     * @param mode    search mode, DEFAULT uses the server index
+     * @return publisher of the nearest words for each vector, in the same order as vectors
+     */
+    public Flow.Publisher<Nd4jVectorWordList> streamNearestWords(List<INDArray> vectors, int limit, SearchMode mode) {
+        Iterator<INDArray> vectorIterator = vectors.iterator();
+        // responses arrive in request order, each is paired with the next query vector
+        Iterator<INDArray> queryIterator = vectors.iterator();
+        return new ResponsePublisher<NearestToVector, VectorWordList, Nd4jVectorWordList>(
+                responseObserver -> asyncStub.withDeadlineAfter(asyncTimeoutMs, TimeUnit.MILLISECONDS).getNearestWords(responseObserver),
+                () -> nearestWordsRequest(vectorIterator.next(), limit, mode), vectorIterator::hasNext,
+                response -> toVectorWordList(queryIterator.next(), response));
+    }
+
+    private NearestToVector nearestWordsRequest(INDArray vector, int limit, SearchMode mode) {
+        return NearestToVector.newBuilder()
+                .setModel(model)
+                .setLimit(limit)
+                .setMode(mode)
+                .setPackedVector(VectorCodec.encode(vector.toFloatVector(), VectorEncoding.FLOAT32))
+                // responses arrive in request order, the query vectors are paired locally instead of echoed
+                .setOmitVector(true)
+                .build();
+    }
+
+    private static Nd4jVectorWordList toVectorWordList(INDArray vector, VectorWordList response) {
+        List<String> words = new ArrayList<>();
+        response.getWordsList().forEach(requestWord -> words.add(requestWord.getWord()));
+        return new Nd4jVectorWordList(vector, words);
+    }
+
+    /**
+     * Returns the vectors for all words given in a single call. Words not found in the model are not included in the response.
+     * Vectors are transferred as packed float32 values.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param words list of words to find vectors
+     * @return pairs vector -> word, in the same order as words
+     */
+    public List<Nd4jWordVector> getVectorsBatch(List<String> words) {
+        return getVectorsBatch(words, VectorEncoding.FLOAT32);
+    }
 
-            for (long i = 0; i < vector.length(); i++) {
-                builder.addVector(vector.getDouble(i));
+    /**
+     * Returns the vectors for all words given in a single call, using a specific wire encoding.
+     * Words not found in the model are not included in the response.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param words    list of words to find vectors
+     * @param encoding vector encoding used in the response
+     * @return pairs vector -> word, in the same order as words
+     */
+    public List<Nd4jWordVector> getVectorsBatch(List<String> words, VectorEncoding encoding) {
+        if (words.isEmpty()) {
+            return List.of();
+        }
+        VectorCache cache = vectorCache(encoding);
+        if (cache == null) {
+            return fetchVectorsBatch(words, encoding);
+        }
+        return getCachedVectors(words, cache, misses -> {
+            Map<String, Nd4jWordVector> byWord = new HashMap<>();
+            fetchVectorsBatch(misses, encoding).forEach(wordVector -> byWord.put(wordVector.getWord(), wordVector));
+            return byWord;
+        });
+    }
+
+    private List<Nd4jWordVector> fetchVectorsBatch(List<String> words, VectorEncoding encoding) {
+        VectorBatch response = blockingStub.withDeadlineAfter(asyncTimeoutMs, TimeUnit.MILLISECONDS)
+                .getVectorsBatch(WordBatch.newBuilder()
+                        .setModel(model)
+                        .addAllWords(words)
+                        .setEncoding(encoding)
+                        .build());
+
+        INDArray matrix = toINDArray(response.getVectors());
+        Set<Integer> missing = new HashSet<>(response.getMissingList());
+
+        List<Nd4jWordVector> results = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            if (!missing.contains(i)) {
+                results.add(new Nd4jWordVector(words.get(i), matrix.getRow(i)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds the vocabulary words matching each word in a single call, for words that may not be in the model as written.
+     * Vectors are transferred as packed float32 values.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param words      words to find
+     * @param limit      maximum number of matches returned for each word
+     * @param ignoreCase match characters regardless of case
+     * @param prefix     also match the vocabulary words starting with each word
+     * @param maxEdits   maximum number of inserted, deleted, substituted or transposed characters, from 0 to 2
+     * @return matches of each word with their vectors, best first, in the same order as words
+     */
+    public List<List<Nd4jWordVector>> lookupWords(List<String> words, int limit, boolean ignoreCase, boolean prefix, int maxEdits) {
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        WordMatchesBatch response = blockingStub.withDeadlineAfter(asyncTimeoutMs, TimeUnit.MILLISECONDS)
+                .lookupWords(WordLookup.newBuilder()
+                        .setModel(model)
+                        .addAllWords(words)
+                        .setLimit(limit)
+                        .setIgnoreCase(ignoreCase)
+                        .setPrefix(prefix)
+                        .setMaxEdits(maxEdits)
+                        .setEncoding(VectorEncoding.FLOAT32)
+                        .build());
+
+        List<List<Nd4jWordVector>> results = new ArrayList<>();
+        for (WordMatches matches : response.getResultsList()) {
+            List<Nd4jWordVector> wordVectors = new ArrayList<>();
+            if (matches.getWordsCount() > 0) {
+                INDArray matrix = toINDArray(matches.getVectors());
+                for (int i = 0; i < matches.getWordsCount(); i++) {
+                    wordVectors.add(new Nd4jWordVector(matches.getWords(i).getWord(), matrix.getRow(i)));
+                }
             }
+            results.add(wordVectors);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the top limit words nearest to each row of a query matrix, computed by the server in a single pass.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param vectors matrix with one query vector per row
+     * @param limit   maximum number of words returned for each vector
+     * @return list of nearest words for each row, in row order
+     */
+    public List<Nd4jVectorWordList> getNearestWordsBatch(INDArray vectors, int limit) {
+        return getNearestWordsBatch(vectors, limit, SearchMode.DEFAULT, 0);
+    }
 
-            requestObserver.onNext(builder.build());
+    /**
+     * Returns the top limit words nearest to each row of a query matrix, choosing between exact and approximate search.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param vectors  matrix with one query vector per row
+     * @param limit    maximum number of words returned for each vector
+     * @param mode     search mode, DEFAULT uses the server index
+     * @param efSearch candidate list size for approximate searches, higher values trade latency for recall. Zero uses the server default
+     * @return list of nearest words for each row, in row order
+     */
+    public List<Nd4jVectorWordList> getNearestWordsBatch(INDArray vectors, int limit, SearchMode mode, int efSearch) {
+        if (vectors.isEmpty()) {
+            return List.of();
         }
 
-        requestObserver.onCompleted();
+        int rows = vectors.rows();
+        int columns = vectors.columns();
+        float[] values = vectors.dup('c').data().asFloat();
+
+        NearestToVectorBatch request = NearestToVectorBatch.newBuilder()
+                .setModel(model)
+                .setVectors(VectorCodec.encodeMatrix(values, rows, columns, VectorEncoding.FLOAT32))
+                .setLimit(limit)
+                .setMode(mode)
+                .setEfSearch(efSearch)
+                .build();
+        // batches of very different sizes take very different times, each size class has its own latencies
+        String latencyKey = "getNearestWordsBatch/" + (Integer.SIZE - Integer.numberOfLeadingZeros(rows));
+        NearestWordsBatch response = hedged(latencyKey, stub -> stub.getNearestWordsBatch(request));
 
         List<Nd4jVectorWordList> results = new ArrayList<>();
-        for (VectorWordList vectorWord : responseObserver.getVectorWords()) {
+        for (int i = 0; i < response.getResultsCount(); i++) {
             List<String> words = new ArrayList<>();
-            vectorWord.getWordsList().forEach(requestWord -> words.add(requestWord.getWord()));
+            response.getResults(i).getWordsList().forEach(word -> words.add(word.getWord()));
+            results.add(new Nd4jVectorWordList(vectors.getRow(i), words, response.getResults(i).getSimilaritiesList()));
+        }
+        return results;
+    }
 
-            results.add(
-                    new Nd4jVectorWordList(
-                            Nd4j.create(vectorWord.getVectorList()),
-                            words
-                    )
-            );
+    /**
+     * Returns the top limit words nearest to the sum of the positive word vectors minus the negative word vectors,
+     * for example king - man + woman, computed by the server from its own vectors. Input words are not included in the results
+     * and words not found in the model are ignored.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param positive words added to the query
+     * @param negative words subtracted from the query
+     * @param limit    maximum number of words returned
+     * @return nearest words, most similar first
+     */
+    public List<String> getNearestToWords(List<String> positive, List<String> negative, int limit) {
+        Map<String, Float> positiveWeights = new LinkedHashMap<>();
+        positive.forEach(word -> positiveWeights.put(word, 1f));
+        Map<String, Float> negativeWeights = new LinkedHashMap<>();
+        negative.forEach(word -> negativeWeights.put(word, 1f));
+        return getNearestToWords(positiveWeights, negativeWeights, limit, SearchMode.DEFAULT);
+    }
+
+    /**
+     * Returns the top limit words nearest to a weighted combination of word vectors, computed by the server.
+     * A sentence centroid is the sum of its words with positive weights, for example.
+     * Input words are not included in the results and words not found in the model are ignored.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param positive words added to the query and their weights
+     * @param negative words subtracted from the query and their weights
+     * @param limit    maximum number of words returned
+     * @param mode     search mode, DEFAULT uses the server index
+     * @return nearest words, most similar first
+     */
+    public List<String> getNearestToWords(Map<String, Float> positive, Map<String, Float> negative, int limit, SearchMode mode) {
+        WordAnalogy.Builder request = WordAnalogy.newBuilder()
+                .setModel(model)
+                .setLimit(limit)
+                .setMode(mode);
+        positive.forEach((word, weight) -> request.addPositive(WeightedWord.newBuilder().setWord(word).setWeight(weight)));
+        negative.forEach((word, weight) -> request.addNegative(WeightedWord.newBuilder().setWord(word).setWeight(weight)));
+
+        WordAnalogy analogy = request.build();
+        NearestWords response = hedged("getNearestToWords", stub -> stub.getNearestToWords(analogy));
+
+        List<String> words = new ArrayList<>();
+        response.getWordsList().forEach(word -> words.add(word.getWord()));
+        return words;
+    }
+
+    /**
+     * Returns one vector per document, pooled by the server from the vectors of the document tokens.
+     * Tokens not found in the model are skipped, documents without any token in the model get a zero vector.
+     * Vectors are transferred as packed float32 values.
+     * It will return an empty list in case of a timeout, e.i the all is taking longer than asyncTimeoutMs to complete, or of a failed call.
+     *
+     * @param documents tokens of each document
+     * @param pooling   how token vectors are combined
+     * @return document vectors, in the same order as documents
+     * @throws InterruptedException
+     */
+    public List<INDArray> getDocumentVectors(List<List<String>> documents, Pooling pooling) throws InterruptedException {
+        Iterator<List<String>> documentIterator = documents.iterator();
+        return getDocumentVectors(() -> Document.newBuilder().addAllTokens(documentIterator.next()), documentIterator::hasNext, pooling);
+    }
+
+    /**
+     * Returns one vector per text, pooled by the server from the vectors of the text words, split on whitespace.
+     * Words not found in the model are skipped, texts without any word in the model get a zero vector.
+     * Vectors are transferred as packed float32 values.
+     * It will return an empty list in case of a timeout, e.i the all is taking longer than asyncTimeoutMs to complete, or of a failed call.
+     *
+     * @param texts   texts to embed
+     * @param pooling how word vectors are combined
+     * @return text vectors, in the same order as texts
+     * @throws InterruptedException
+     */
+    public List<INDArray> getTextVectors(List<String> texts, Pooling pooling) throws InterruptedException {
+        Iterator<String> textIterator = texts.iterator();
+        return getDocumentVectors(() -> Document.newBuilder().setText(textIterator.next()), textIterator::hasNext, pooling);
+    }
+
+    private List<INDArray> getDocumentVectors(Supplier<Document.Builder> nextDocument, BooleanSupplier hasNextDocument,
+                                              Pooling pooling) throws InterruptedException {
+        var responseObserver = new DocumentVectorResponseObserver();
+        var requestSender = new RequestSender<Document, DocumentVector>(responseObserver,
+                () -> nextDocument.get().setModel(model).setPooling(pooling).setEncoding(VectorEncoding.FLOAT32).build(),
+                hasNextDocument, false);
+
+        asyncStub.withDeadlineAfter(asyncTimeoutMs, TimeUnit.MILLISECONDS).getDocumentVectors(requestSender);
+        requestSender.start();
+
+        List<INDArray> results = new ArrayList<>();
+        for (DocumentVector documentVector : responseObserver.getDocumentVectors()) {
+            results.add(toINDArray(documentVector.hasPackedVector(), documentVector.getPackedVector(), documentVector.getVectorList()));
         }
         return results;
     }
 
+    /**
+     * Returns the cosine similarity of two words, zero if any of them is not found in the model.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param word  first word
+     * @param other second word
+     * @return cosine similarity
+     */
+    public float getSimilarity(String word, String other) {
+        return getPairSimilarities(List.of(word), List.of(other))[0];
+    }
+
+    /**
+     * Returns the cosine similarity of each pair of words, left.get(i) and right.get(i), computed by the server in a single call.
+     * Pairs with a word not found in the model have zero similarity.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param left  first word of each pair
+     * @param right second word of each pair, as many as left
+     * @return similarity of each pair
+     */
+    public float[] getPairSimilarities(List<String> left, List<String> right) {
+        float[] similarities = new float[left.size()];
+        getSimilarities(left, right, true).forEachRemaining(block -> copyBlock(block, similarities, block.getFirstRow()));
+        return similarities;
+    }
+
+    /**
+     * Returns the cosine similarity of every left word to every right word, computed by the server with blocked matrix
+     * multiplications and streamed in blocks of rows. Similarities of words not found in the model are zero.
+     * The call fails with a StatusRuntimeException if it takes longer than asyncTimeoutMs.
+     *
+     * @param left  words of the matrix rows
+     * @param right words of the matrix columns
+     * @return left.size() x right.size() similarity matrix
+     */
+    public INDArray getSimilarityMatrix(List<String> left, List<String> right) {
+        float[] similarities = new float[left.size() * right.size()];
+        getSimilarities(left, right, false).forEachRemaining(block ->
+                copyBlock(block, similarities, block.getFirstRow() * right.size()));
+        return Nd4j.create(similarities, new int[]{left.size(), right.size()}, 'c');
+    }
+
+    private Iterator<SimilarityBlock> getSimilarities(List<String> left, List<String> right, boolean pairs) {
+        return blockingStub.withDeadlineAfter(asyncTimeoutMs, TimeUnit.MILLISECONDS)
+                .getSimilarities(SimilarityRequest.newBuilder()
+                        .setModel(model)
+                        .addAllLeft(left)
+                        .addAllRight(right)
+                        .setPairs(pairs)
+                        .setEncoding(VectorEncoding.FLOAT32)
+                        .build());
+    }
+
+    /**
+     * @return vector cache of the model of this client, null if caching is disabled or the encoding is not float32
+     */
+    private VectorCache vectorCache(VectorEncoding encoding) {
+        if (vectorCacheBytes <= 0 || encoding != VectorEncoding.FLOAT32) {
+            return null;
+        }
+        return vectorCaches.computeIfAbsent(model, name -> new VectorCache(vectorCacheBytes));
+    }
+
+    /**
+     * Returns the vectors of the words, copying the cached ones in a single matrix and fetching the others once each
+     *
+     * @param words words to find vectors
+     * @param cache vector cache
+     * @param fetch fetches the vectors of the words not cached, by word, returning null if the call timed out
+     * @return vectors in the same order as words, words without a fetched vector are left out
+     */
+    private <E extends Exception> List<Nd4jWordVector> getCachedVectors(List<String> words, VectorCache cache,
+                                                                        VectorFetch<E> fetch) throws E {
+        int dimension = cache.dimension();
+        float[] values = new float[words.size() * dimension];
+        boolean[] cached = new boolean[words.size()];
+        Set<String> misses = new LinkedHashSet<>();
+        int hits = 0;
+        for (int i = 0; i < words.size(); i++) {
+            cached[i] = cache.copyTo(words.get(i), dimension, values, i * dimension);
+            if (cached[i]) {
+                hits++;
+            } else {
+                misses.add(words.get(i));
+            }
+        }
+
+        Map<String, Nd4jWordVector> fetched = Map.of();
+        if (!misses.isEmpty()) {
+            fetched = fetch.fetch(new ArrayList<>(misses));
+            if (fetched == null) {
+                return List.of();
+            }
+            for (Map.Entry<String, Nd4jWordVector> wordVector : fetched.entrySet()) {
+                if (!wordVector.getValue().getWord().isEmpty()) {
+                    cache.put(wordVector.getKey(), wordVector.getValue().getVector().toFloatVector());
+                }
+            }
+        }
+
+        // cached vectors are views of one matrix instead of one array each
+        INDArray matrix = hits > 0 ? Nd4j.create(values, new int[]{words.size(), dimension}, 'c') : null;
+        List<Nd4jWordVector> results = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            Nd4jWordVector wordVector = cached[i] ? new Nd4jWordVector(words.get(i), matrix.getRow(i)) : fetched.get(words.get(i));
+            if (wordVector != null) {
+                results.add(wordVector);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Subscribes to a publisher and collects all its items
+     *
+     * @return future of the items, failed with the publisher error
+     */
+    private static <V> CompletableFuture<List<V>> collect(Flow.Publisher<V> publisher) {
+        CompletableFuture<List<V>> result = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<V>() {
+            private final List<V> items = new ArrayList<>();
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(V item) {
+                items.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(items);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Makes a unary call, sent again to another channel if unanswered after the hedging threshold when hedging is enabled.
+     * Both calls share the deadline, the first response is returned and the other call is cancelled.
+     *
+     * @param latencyKey method, and size class if any, whose recent latencies give the hedging threshold
+     * @param call       call made with a future stub of the selected channel
+     * @return first response
+     */
+    private <R> R hedged(String latencyKey, Function<Word2VecServiceGrpc.Word2VecServiceFutureStub, ListenableFuture<R>> call) {
+        LatencyTracker latencyTracker = latencyTrackers == null ? null
+                : latencyTrackers.computeIfAbsent(latencyKey, key -> new LatencyTracker(hedgingPercentile, minHedgingDelayNanos));
+        Deadline deadline = Deadline.after(asyncTimeoutMs, TimeUnit.MILLISECONDS);
+        Channel primaryChannel = channelPool.select(null);
+        long start = System.nanoTime();
+        ListenableFuture<R> primary = call.apply(Word2VecServiceGrpc.newFutureStub(primaryChannel).withDeadline(deadline));
+        ListenableFuture<R> hedge = null;
+        try {
+            R response;
+            long threshold = latencyTracker == null ? Long.MAX_VALUE : latencyTracker.thresholdNanos();
+            if (threshold < deadline.timeRemaining(TimeUnit.NANOSECONDS)) {
+                try {
+                    response = primary.get(threshold, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    logger.trace("No response after {}ns, hedging call", threshold);
+                    hedge = call.apply(Word2VecServiceGrpc.newFutureStub(channelPool.select(primaryChannel)).withDeadline(deadline));
+                    response = firstSuccess(primary, hedge).get();
+                }
+            } else {
+                response = primary.get();
+            }
+            if (latencyTracker != null) {
+                latencyTracker.record(System.nanoTime() - start);
+            }
+            return response;
+        } catch (ExecutionException e) {
+            // rethrow the call failure, usually a StatusRuntimeException
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw io.grpc.Status.fromThrowable(e.getCause()).asRuntimeException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw io.grpc.Status.CANCELLED.withDescription("Interrupted while waiting for the response").withCause(e).asRuntimeException();
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @return future completed by the first of the calls to succeed, failing with the last failure if both fail
+     */
+    private static <R> CompletableFuture<R> firstSuccess(ListenableFuture<R> primary, ListenableFuture<R> hedge) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        FutureCallback<R> callback = new FutureCallback<>() {
+            @Override
+            public void onSuccess(R response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(throwable);
+                }
+            }
+        };
+        Futures.addCallback(primary, callback, MoreExecutors.directExecutor());
+        Futures.addCallback(hedge, callback, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    private static void copyBlock(SimilarityBlock block, float[] target, int offset) {
+        float[] values = VectorCodec.decodeMatrix(block.getSimilarities());
+        System.arraycopy(values, 0, target, offset, values.length);
+    }
+
+    private INDArray toINDArray(PackedMatrix packedMatrix) {
+        return Nd4j.create(VectorCodec.decodeMatrix(packedMatrix),
+                new int[]{packedMatrix.getRows(), packedMatrix.getColumns()}, 'c');
+    }
+
+    private INDArray toINDArray(boolean isPacked, PackedVector packedVector, List<Double> vectorList) {
+        if (isPacked) {
+            return Nd4j.create(VectorCodec.decode(packedVector));
+        }
+        return Nd4j.create(vectorList);
+    }
+
     /**
      * Inner classes
      */
 
+    /**
+     * Fetches word vectors from the server
+     */
+    private interface VectorFetch<E extends Exception> {
+        Map<String, Nd4jWordVector> fetch(List<String> words) throws E;
+    }
+
+    /**
+     * Sends the requests of a stream as the call becomes ready, keeping at most maxInFlight requests without a response.
+     * Requests are built only when sent, so large inputs are not buffered as messages by the transport.
+     * With manual inbound flow control, responses are only requested from the server through {@link #request(long)}
+     */
+    private class RequestSender<T, R> implements ClientResponseObserver<T, R> {
+        private final StreamObserver<R> responseObserver;
+        private final Supplier<T> nextRequest;
+        private final BooleanSupplier hasNextRequest;
+        private final boolean manualInbound;
+        private ClientCallStreamObserver<T> requestObserver;
+        private int inFlight;
+        private boolean started;
+        private boolean completed;
+        private boolean cancelled;
+        // the stub requests the first response when the call starts
+        private boolean firstResponseRequested = true;
+        // responses requested from the transport and not yet received
+        private long requested = 1;
+        // responses requested before the call started
+        private long pendingCount;
+        // responses requested by the subscriber and not yet delivered, with manual inbound flow control
+        private long demand;
+        // the response requested by the stub, held until the subscriber requests it
+        private R bufferedResponse;
+        // set while the buffered response is delivered, completion and failure wait for it
+        private boolean delivering;
+        // responses requested by the subscriber while the buffered response is delivered
+        private long deliveringCount;
+        // completion or failure received while a response is buffered
+        private Runnable bufferedTermination;
+
+        RequestSender(StreamObserver<R> responseObserver, Supplier<T> nextRequest, BooleanSupplier hasNextRequest,
+                      boolean manualInbound) {
+            this.responseObserver = responseObserver;
+            this.nextRequest = nextRequest;
+            this.hasNextRequest = hasNextRequest;
+            this.manualInbound = manualInbound;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<T> requestObserver) {
+            this.requestObserver = requestObserver;
+            if (manualInbound) {
+                requestObserver.disableAutoInboundFlowControl();
+            }
+            requestObserver.setOnReadyHandler(this::sendRequests);
+        }
+
+        /**
+         * Starts sending requests, called once the call is started
+         */
+        synchronized void start() {
+            started = true;
+            if (cancelled) {
+                requestObserver.cancel("Cancelled by the client", null);
+                return;
+            }
+            if (pendingCount > 0) {
+                requestResponses(pendingCount);
+            }
+            sendRequests();
+        }
+
+        /**
+         * Requests more responses from the server, with manual inbound flow control.
+         * A response received before any request is delivered first
+         *
+         * @param count number of responses
+         */
+        void request(long count) {
+            R response;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                demand = count > Long.MAX_VALUE - demand ? Long.MAX_VALUE : demand + count;
+                if (delivering) {
+                    // requested from the transport once delivered, so responses are not signalled concurrently
+                    deliveringCount = count > Long.MAX_VALUE - deliveringCount ? Long.MAX_VALUE : deliveringCount + count;
+                    return;
+                }
+                if (bufferedResponse == null) {
+                    requestResponses(count);
+                    return;
+                }
+                response = bufferedResponse;
+                bufferedResponse = null;
+                delivering = true;
+                demand--;
+            }
+
+            deliver(response);
+            Runnable termination;
+            synchronized (this) {
+                delivering = false;
+                termination = bufferedTermination;
+                bufferedTermination = null;
+                // nothing else is requested from the transport until the buffered response is delivered
+                if (termination == null && !cancelled) {
+                    requestResponses(count > Long.MAX_VALUE - deliveringCount ? Long.MAX_VALUE : count + deliveringCount);
+                }
+                deliveringCount = 0;
+            }
+            if (termination != null) {
+                termination.run();
+            }
+        }
+
+        private void requestResponses(long count) {
+            if (!started) {
+                pendingCount = count > Long.MAX_VALUE - pendingCount ? Long.MAX_VALUE : pendingCount + count;
+                return;
+            }
+            if (firstResponseRequested) {
+                firstResponseRequested = false;
+                count--;
+            }
+            // the transport counts requested responses as an int
+            int transportCount = (int) Math.min(count, Integer.MAX_VALUE - requested);
+            if (transportCount > 0) {
+                requested += transportCount;
+                requestObserver.request(transportCount);
+            }
+        }
+
+        /**
+         * Cancels the call, the response observer gets no further signal
+         */
+        synchronized void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                completed = true;
+                bufferedResponse = null;
+                bufferedTermination = null;
+                // a call not started yet is cancelled when it starts
+                if (started) {
+                    requestObserver.cancel("Cancelled by the client", null);
+                }
+            }
+        }
+
+        synchronized void sendRequests() {
+            while (started && !completed && inFlight < maxInFlight && requestObserver.isReady()) {
+                if (hasNextRequest.getAsBoolean()) {
+                    requestObserver.onNext(nextRequest.get());
+                    inFlight++;
+                } else {
+                    completed = true;
+                    requestObserver.onCompleted();
+                }
+            }
+        }
+
+        @Override
+        public void onNext(R response) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                requested--;
+                if (manualInbound) {
+                    // only the response requested by the stub arrives without demand
+                    if (demand == 0) {
+                        bufferedResponse = response;
+                        return;
+                    }
+                    demand--;
+                }
+            }
+            deliver(response);
+        }
+
+        private void deliver(R response) {
+            responseObserver.onNext(response);
+            synchronized (this) {
+                inFlight--;
+            }
+            sendRequests();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (this) {
+                completed = true;
+                if (cancelled) {
+                    return;
+                }
+                if (bufferedResponse != null || delivering) {
+                    bufferedTermination = () -> responseObserver.onError(throwable);
+                    return;
+                }
+            }
+            responseObserver.onError(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (this) {
+                if (bufferedResponse != null || delivering) {
+                    bufferedTermination = responseObserver::onCompleted;
+                    return;
+                }
+            }
+            responseObserver.onCompleted();
+        }
+    }
+
+    /**
+     * Publisher of the responses of a stream call, started by its only subscriber
+     *
+     * @param <T> request type
+     * @param <R> response type
+     * @param <V> type of the items published, converted from the responses
+     */
+    private class ResponsePublisher<T, R, V> implements Flow.Publisher<V> {
+        // starts the call when subscribed, deadlines are set there so they run from the subscription
+        private final Function<StreamObserver<R>, StreamObserver<T>> call;
+        private final Supplier<T> nextRequest;
+        private final BooleanSupplier hasNextRequest;
+        private final Function<R, V> converter;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        ResponsePublisher(Function<StreamObserver<R>, StreamObserver<T>> call, Supplier<T> nextRequest,
+                          BooleanSupplier hasNextRequest, Function<R, V> converter) {
+            this.call = call;
+            this.nextRequest = nextRequest;
+            this.hasNextRequest = hasNextRequest;
+            this.converter = converter;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super V> subscriber) {
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long count) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("The responses of a call can only be subscribed once"));
+                return;
+            }
+
+            var requestSender = new RequestSender<T, R>(new StreamObserver<>() {
+                @Override
+                public void onNext(R response) {
+                    subscriber.onNext(converter.apply(response));
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    subscriber.onError(throwable);
+                }
+
+                @Override
+                public void onCompleted() {
+                    subscriber.onComplete();
+                }
+            }, nextRequest, hasNextRequest, true);
+
+            // demand signalled before the call starts is requested from the server once it does
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long count) {
+                    if (count <= 0) {
+                        requestSender.cancel();
+                        subscriber.onError(new IllegalArgumentException("Requested " + count + " responses, must be positive"));
+                        return;
+                    }
+                    requestSender.request(count);
+                }
+
+                @Override
+                public void cancel() {
+                    requestSender.cancel();
+                }
+            });
+            call.apply(requestSender);
+            requestSender.start();
+        }
+    }
+
     /**
      * Processes responses to WordVector requests
      */
     private class WordVectorResponseObserver implements StreamObserver<WordVector> {
         private final List<WordVector> wordVectors = new ArrayList<>();
         private final CountDownLatch countLatch = new CountDownLatch(1);
+        // set when the call fails, a partial response is not returned
+        private volatile boolean failed;
 
         @Override
         public void onNext(WordVector wordVector) {
@@ -148,6 +1275,7 @@ public class Word2VecClient {
         @Override
         public void onError(Throwable throwable) {
             logger.error("Error processing getVectorMap response", throwable);
+            failed = true;
             countLatch.countDown();
         }
 
@@ -157,19 +1285,56 @@ public class Word2VecClient {
         }
 
         List<WordVector> getWordVectors() throws InterruptedException {
-            if (countLatch.await(asyncTimeoutMs, TimeUnit.MILLISECONDS)) {
+            if (countLatch.await(asyncTimeoutMs, TimeUnit.MILLISECONDS) && !failed) {
                 return wordVectors;
             }
             return List.of();
         }
     }
 
+    /**
+     * Processes responses to Document requests
+     */
+    private class DocumentVectorResponseObserver implements StreamObserver<DocumentVector> {
+        private final List<DocumentVector> documentVectors = new ArrayList<>();
+        private final CountDownLatch countLatch = new CountDownLatch(1);
+        // set when the call fails, a partial response is not returned
+        private volatile boolean failed;
+
+        @Override
+        public void onNext(DocumentVector documentVector) {
+            logger.trace("Received document vector {}", documentVector);
+            documentVectors.add(documentVector);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            logger.error("Error processing getDocumentVectors response", throwable);
+            failed = true;
+            countLatch.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            countLatch.countDown();
+        }
+
+        List<DocumentVector> getDocumentVectors() throws InterruptedException {
+            if (countLatch.await(asyncTimeoutMs, TimeUnit.MILLISECONDS) && !failed) {
+                return documentVectors;
+            }
+            return List.of();
+        }
+    }
+
     /**
      * Processes responses for VectorWordList requests
      */
     private class VectorWordListResponseObserver implements StreamObserver<VectorWordList> {
         private final List<VectorWordList> vectorWords = new ArrayList<>();
         private final CountDownLatch countLatch = new CountDownLatch(1);
+        // set when the call fails, a partial response is not returned
+        private volatile boolean failed;
 
         @Override
         public void onNext(VectorWordList vectorWordList) {
@@ -180,6 +1345,7 @@ public class Word2VecClient {
         @Override
         public void onError(Throwable throwable) {
             logger.error("Error processing getNearestWords response", throwable);
+            failed = true;
             countLatch.countDown();
         }
 
@@ -189,7 +1355,7 @@ public class Word2VecClient {
         }
 
         public List<VectorWordList> getVectorWords() throws InterruptedException {
-            if (countLatch.await(asyncTimeoutMs, TimeUnit.MILLISECONDS)) {
+            if (countLatch.await(asyncTimeoutMs, TimeUnit.MILLISECONDS) && !failed) {
                 return vectorWords;
             }
             return List.of();
@@ -11,11 +11,17 @@ import java.util.Objects;
 public class Nd4jVectorWordList {
     private final INDArray vector;
     private final List<String> words;
+    private final List<Float> similarities;
 
 
     public Nd4jVectorWordList(INDArray vector, List<String> words) {
+        this(vector, words, List.of());
+    }
+
+    public Nd4jVectorWordList(INDArray vector, List<String> words, List<Float> similarities) {
         this.vector = vector;
         this.words = words;
+        this.similarities = similarities;
     }
 
     public INDArray getVector() {
@@ -26,11 +32,19 @@ public class Nd4jVectorWordList {
         return words;
     }
 
+    /**
+     * @return cosine similarity of each word to the vector, empty when the call does not return similarities
+     */
+    public List<Float> getSimilarities() {
+        return similarities;
+    }
+
     @Override
     public String toString() {
         return "Nd4jVectorWordList{" +
                 "vector=" + vector +
                 ", words=" + words +
+                ", similarities=" + similarities +
                 '}';
     }
 
@@ -40,11 +54,12 @@ public class Nd4jVectorWordList {
         if (o == null || getClass() != o.getClass()) return false;
         Nd4jVectorWordList that = (Nd4jVectorWordList) o;
         return Objects.equals(vector, that.vector) &&
-                Objects.equals(words, that.words);
+                Objects.equals(words, that.words) &&
+                Objects.equals(similarities, that.similarities);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(vector, words);
+        return Objects.hash(vector, words, similarities);
     }
 }
@@ -0,0 +1,155 @@
+package org.drizzle.ml.word2vec.handlers;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Request observer of a bidirectional stream that bounds the number of requests in flight.
+ * <p>
+ * Inbound flow control is manual: up to window requests are pulled from the transport and one more is only requested
+ * after a response is sent and the transport is ready to send more. A client that does not read its responses therefore
+ * stops the server from reading its requests, instead of responses piling up in the transport buffers.
+ * <p>
+ * Requests are processed on the call thread or, when an executor is given, on the executor in request order.
+ * Observers not backed by a server call, as in direct calls to the handler, are not flow controlled.
+ * <p>
+ * A request failing, out of memory included, or not run by the executor ends the stream with an error.
+ *
+ * @param <T> request type
+ * @param <R> response type
+ */
+abstract class FlowControlledStreamObserver<T, R> implements StreamObserver<T> {
+    private static final Logger logger = LoggerFactory.getLogger(FlowControlledStreamObserver.class);
+
+    private final StreamObserver<R> responseObserver;
+    private final ServerCallStreamObserver<R> serverCall;
+    private final Executor executor;
+    private final Object lock = new Object();
+    // last queued task, each request runs after the previous one so responses keep the request order
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    // requests not made because the transport was not ready, made by the on ready handler
+    private int deferredRequests;
+    private volatile boolean failed;
+
+    /**
+     * @param responseObserver response observer of the call
+     * @param window           maximum number of requests received and not yet answered
+     * @param executor         executor processing the requests, null to process them on the call thread
+     */
+    FlowControlledStreamObserver(StreamObserver<R> responseObserver, int window, Executor executor) {
+        this.responseObserver = responseObserver;
+        this.executor = executor;
+
+        if (responseObserver instanceof ServerCallStreamObserver) {
+            serverCall = (ServerCallStreamObserver<R>) responseObserver;
+            serverCall.disableAutoInboundFlowControl();
+            serverCall.setOnReadyHandler(this::requestDeferred);
+            serverCall.request(Math.max(1, window));
+        } else {
+            serverCall = null;
+        }
+    }
+
+    /**
+     * Processes a request, called for one request at a time
+     *
+     * @param request stream request
+     * @return response to send, null to send none
+     */
+    abstract R process(T request);
+
+    @Override
+    public void onNext(T request) {
+        if (executor == null) {
+            respond(request);
+        } else {
+            synchronized (lock) {
+                tail = tail.thenRunAsync(() -> respond(request), executor);
+            }
+        }
+    }
+
+    @Override
+    public void onCompleted() {
+        if (executor == null) {
+            complete();
+        } else {
+            synchronized (lock) {
+                // runs even if a request task failed or was rejected, so the call is always closed
+                tail = tail.whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        complete();
+                    } else if (!failed) {
+                        fail(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    }
+                });
+            }
+        }
+    }
+
+    private void respond(T request) {
+        if (failed || (serverCall != null && serverCall.isCancelled())) {
+            return;
+        }
+
+        try {
+            R response = process(request);
+            if (response != null) {
+                responseObserver.onNext(response);
+            }
+        } catch (StatusRuntimeException e) {
+            // request errors, such as an unknown model, are sent as they are
+            logger.debug("Stream request failed", e);
+            failed = true;
+            responseObserver.onError(e);
+            return;
+        } catch (RuntimeException | OutOfMemoryError e) {
+            fail(e);
+            return;
+        }
+        requestNext();
+    }
+
+    private void fail(Throwable e) {
+        logger.error("Unable to process stream request", e);
+        failed = true;
+        responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+    }
+
+    private void complete() {
+        if (!failed && (serverCall == null || !serverCall.isCancelled())) {
+            responseObserver.onCompleted();
+        }
+    }
+
+    private void requestNext() {
+        if (serverCall == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            if (serverCall.isReady()) {
+                serverCall.request(1);
+            } else {
+                deferredRequests++;
+            }
+        }
+    }
+
+    private void requestDeferred() {
+        synchronized (lock) {
+            if (deferredRequests > 0 && serverCall.isReady()) {
+                serverCall.request(deferredRequests);
+                deferredRequests = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.drizzle.ml.word2vec.handlers;
+
+import org.drizzle.ml.word2vec.service.ModelStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A named model served by the handler.
+ * <p>
+ * Reloads read the model file again in the background while the current version keeps serving requests. The new version
+ * is warmed up and swapped in atomically, requests acquiring the model afterwards get the new version and the previous one
+ * is released once the requests using it complete. Mapped store files are read from the page cache, so both versions of
+ * a mapped model only take heap memory for their indexes during the swap.
+ */
+class HostedModel {
+    private static final Logger logger = LoggerFactory.getLogger(HostedModel.class);
+
+    private final String name;
+    private final File modelFile;
+    private final ModelOptions options;
+    private final AtomicReference<LoadedModel> current = new AtomicReference<>();
+    // latest load, reported by the model status
+    private volatile ModelLoader loader;
+    private boolean loading;
+    // set once the model is no longer served
+    private volatile boolean closed;
+    private long lastVersion;
+    private volatile long lastLoadNanos;
+
+    HostedModel(String name, File modelFile, ModelOptions options) {
+        this.name = name;
+        this.modelFile = modelFile;
+        this.options = options;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Starts loading a new version of the model file in the background
+     *
+     * @return false if a load is already in progress or the model is closed
+     */
+    synchronized boolean reload() {
+        if (loading || closed) {
+            return false;
+        }
+        loading = true;
+        long version = ++lastVersion;
+        ModelLoader versionLoader = new ModelLoader(modelFile, options);
+        loader = versionLoader;
+
+        Thread loadingThread = new Thread(() -> load(versionLoader, version), "Word2Vec-model-loader-" + name);
+        loadingThread.start();
+        return true;
+    }
+
+    private void load(ModelLoader versionLoader, long version) {
+        try {
+            // the first version is served as soon as it is loaded, reloads are warmed up first
+            long start = System.nanoTime();
+            boolean first = current.get() == null;
+            LoadedModel loaded = versionLoader.load(version, !first, first ? this::swap : null);
+            lastLoadNanos = System.nanoTime() - start;
+            LoadedModel previous = swap(loaded);
+            if (previous != null && previous.partial()) {
+                logger.info("Model {} version {} fully loaded", name, version);
+            } else if (previous != null) {
+                logger.info("Model {} version {} replaced by version {}", name, previous.version(), version);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to load model file " + modelFile, e);
+            // a model that failed to load is not served partially
+            LoadedModel partial = current.get();
+            if (partial != null && partial.partial() && current.compareAndSet(partial, null)) {
+                partial.release();
+            }
+        } finally {
+            synchronized (this) {
+                loading = false;
+            }
+        }
+    }
+
+    /**
+     * Makes a version current, releasing the previous one
+     *
+     * @return previous version, null if none
+     */
+    private LoadedModel swap(LoadedModel model) {
+        LoadedModel previous = current.getAndSet(model);
+        if (previous != null) {
+            previous.release();
+        }
+        // a version loaded after the model was closed is not served, unless close already released it
+        if (closed && current.compareAndSet(model, null)) {
+            model.release();
+        }
+        return previous;
+    }
+
+    /**
+     * Stops serving the model: releases the current version, freed after the requests still using it, and the version
+     * of a load in progress once loaded
+     */
+    void close() {
+        closed = true;
+        LoadedModel model = current.getAndSet(null);
+        if (model != null) {
+            model.release();
+        }
+    }
+
+    /**
+     * Acquires the current version, released by the caller with {@link LoadedModel#release()} when done
+     *
+     * @return current version, null if no version is loaded yet
+     */
+    LoadedModel acquire() {
+        while (true) {
+            LoadedModel model = current.get();
+            // a version released after a swap cannot be retained, the next read gets its replacement
+            if (model == null || model.retain()) {
+                return model;
+            }
+        }
+    }
+
+    /**
+     * @return current version, null if no version is loaded yet. Not retained, only for status reports
+     */
+    LoadedModel current() {
+        return current.get();
+    }
+
+    /**
+     * @return time taken by the latest successful load, warm up included, zero before the first load completes
+     */
+    long lastLoadNanos() {
+        return lastLoadNanos;
+    }
+
+    ModelStatus status() {
+        LoadedModel model = current.get();
+        ModelLoader latest = loader;
+        return ModelStatus.newBuilder()
+                .setModel(name)
+                .setReady(model != null && model.searchable())
+                .setPartial(model != null && model.partial())
+                .setLoadedRows(model == null ? 0 : model.store().size())
+                .setRows(model == null ? 0 : model.rows())
+                .setPhase(latest == null ? ModelLoader.LOAD_PHASE_STARTING : latest.phase())
+                .setProgress(latest == null ? 0f : latest.progress())
+                .setVersion(model == null ? 0 : model.version())
+                .setShard(options.getShard())
+                .setShardCount(options.getShardCount())
+                .build();
+    }
+}
@@ -0,0 +1,209 @@
+package org.drizzle.ml.word2vec.handlers;
+
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.drizzle.ml.word2vec.search.HnswIndex;
+import org.drizzle.ml.word2vec.search.NearestSearch;
+import org.drizzle.ml.word2vec.service.SearchMode;
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.drizzle.ml.word2vec.store.PartialEmbeddingStore;
+import org.drizzle.ml.word2vec.store.PrunedEmbeddingStore;
+import org.drizzle.ml.word2vec.store.VectorProjection;
+import org.drizzle.ml.word2vec.store.VocabularyTrie;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One loaded version of a model: its store, nearest words indexes, vocabulary trie and response cache.
+ * <p>
+ * Partial versions serve a model while it is loaded for the first time, with the rows loaded so far, an exact scan over
+ * them and no response cache. They only serve nearest words requests once enough rows are loaded.
+ * <p>
+ * Versions with a vector projection search nearest words among reduced vectors, query vectors are projected before
+ * they are searched. The store keeps the model vectors, returned by word lookups.
+ * <p>
+ * Versions of pruned models only search the most frequent words, the store also serves the other words to lookups.
+ * <p>
+ * Versions are reference counted. The hosted model holds one reference while the version is current and each request
+ * holds one while it uses the version, so a version replaced by a reload keeps serving the requests already using it
+ * and is released after the last of them. The last release closes its stores, freeing their memory, and drops its
+ * indexes.
+ */
+final class LoadedModel {
+    private final long version;
+    private final EmbeddingStore store;
+    // read by nearest words searches but not served, null when searches only read the store
+    private final EmbeddingStore searchOnlyStore;
+    private NearestSearch scanSearch;
+    // only set when the tree model is used
+    private Word2Vec treeModel;
+    private HnswIndex hnswIndex;
+    // null when caching is disabled
+    private ResponseCache responseCache;
+    private final int defaultEfSearch;
+    private final boolean searchable;
+    // null unless nearest words are searched among reduced vectors
+    private final VectorProjection projection;
+    // null when word lookups are disabled and for partial versions
+    private VocabularyTrie wordTrie;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    LoadedModel(long version, EmbeddingStore store, NearestSearch scanSearch, Word2Vec treeModel, HnswIndex hnswIndex,
+                ResponseCache responseCache, int defaultEfSearch) {
+        this(version, store, scanSearch, treeModel, hnswIndex, responseCache, defaultEfSearch, true);
+    }
+
+    LoadedModel(long version, EmbeddingStore store, NearestSearch scanSearch, Word2Vec treeModel, HnswIndex hnswIndex,
+                ResponseCache responseCache, int defaultEfSearch, boolean searchable) {
+        this(version, store, null, scanSearch, treeModel, hnswIndex, responseCache, defaultEfSearch, searchable, null, null);
+    }
+
+    /**
+     * @param searchOnlyStore store only read by nearest words searches, closed with the version: the reduced vectors
+     *                        of a projected version or the vectors reranking quantized ones. Null when searches only
+     *                        read the store
+     */
+    LoadedModel(long version, EmbeddingStore store, EmbeddingStore searchOnlyStore, NearestSearch scanSearch,
+                Word2Vec treeModel, HnswIndex hnswIndex, ResponseCache responseCache, int defaultEfSearch,
+                boolean searchable, VectorProjection projection, VocabularyTrie wordTrie) {
+        this.version = version;
+        this.store = store;
+        this.searchOnlyStore = searchOnlyStore;
+        this.scanSearch = scanSearch;
+        this.treeModel = treeModel;
+        this.hnswIndex = hnswIndex;
+        this.responseCache = responseCache;
+        this.defaultEfSearch = defaultEfSearch;
+        this.searchable = searchable;
+        this.projection = projection;
+        this.wordTrie = wordTrie;
+    }
+
+    long version() {
+        return version;
+    }
+
+    EmbeddingStore store() {
+        return store;
+    }
+
+    /**
+     * @return store of the words searched for nearest words, which leaves out the words of pruned models only served
+     * by lookups
+     */
+    EmbeddingStore keptStore() {
+        return store instanceof PrunedEmbeddingStore ? ((PrunedEmbeddingStore) store).kept() : store;
+    }
+
+    Word2Vec treeModel() {
+        return treeModel;
+    }
+
+    ResponseCache responseCache() {
+        return responseCache;
+    }
+
+    VocabularyTrie wordTrie() {
+        return wordTrie;
+    }
+
+    /**
+     * @return false for partial versions not serving nearest words requests yet
+     */
+    boolean searchable() {
+        return searchable;
+    }
+
+    /**
+     * @return true if the version only holds the rows of the model loaded so far
+     */
+    boolean partial() {
+        return store instanceof PartialEmbeddingStore;
+    }
+
+    /**
+     * @return number of rows of the model, including rows not loaded yet by partial versions
+     */
+    int rows() {
+        return partial() ? ((PartialEmbeddingStore) store).rows() : store.size();
+    }
+
+    /**
+     * @return true if nearest words are searched among reduced vectors
+     */
+    boolean projected() {
+        return projection != null;
+    }
+
+    boolean useHnsw(SearchMode mode) {
+        return hnswIndex != null && mode != SearchMode.EXACT;
+    }
+
+    /**
+     * Searches the nearest rows with the index selected by the search mode
+     *
+     * @param vector       query vector, with the dimension of the store
+     * @param limit        maximum number of rows
+     * @param mode         search mode
+     * @param ef           requested candidate list size, zero for the default
+     * @param rows         destination of the rows, most similar first
+     * @param similarities destination of the similarities, null when not needed
+     * @return number of rows found
+     */
+    int nearestRows(float[] vector, int limit, SearchMode mode, int ef, int[] rows, float[] similarities) {
+        float[] query = vector;
+        if (projection != null) {
+            query = new float[projection.targetDimension()];
+            projection.project(vector, 0, query, 0);
+        }
+        return useHnsw(mode)
+                ? hnswIndex.search(query, limit, ef > 0 ? ef : defaultEfSearch, rows, similarities)
+                : scanSearch.search(query, limit, rows, similarities);
+    }
+
+    /**
+     * Reads every searched vector once with an exact scan, so mapped store pages are resident before requests are served
+     */
+    void warmUp() {
+        float[] query = new float[store.dimension()];
+        Arrays.fill(query, 1f);
+        nearestRows(query, 1, SearchMode.EXACT, 0, new int[1], null);
+    }
+
+    /**
+     * Acquires a reference, failing once the version has been released
+     *
+     * @return false if the version was already released
+     */
+    boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference. The last one closes the stores and drops the indexes, which are no longer read
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            if (responseCache != null) {
+                responseCache.invalidateAll();
+            }
+            responseCache = null;
+            scanSearch = null;
+            treeModel = null;
+            hnswIndex = null;
+            wordTrie = null;
+            store.close();
+            if (searchOnlyStore != null) {
+                searchOnlyStore.close();
+            }
+        }
+    }
+}
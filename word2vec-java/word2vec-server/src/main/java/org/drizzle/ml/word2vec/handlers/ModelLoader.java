@@ -0,0 +1,545 @@
+package org.drizzle.ml.word2vec.handlers;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.reader.impl.TreeModelUtils;
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.drizzle.ml.word2vec.search.*;
+import org.drizzle.ml.word2vec.shard.WordShards;
+import org.drizzle.ml.word2vec.store.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Loads one version of a model file with its nearest words index, reporting the current phase and its progress
+ */
+class ModelLoader {
+    private static final Logger logger = LoggerFactory.getLogger(ModelLoader.class);
+    private static final String HNSW_INDEX_EXTENSION = ".hnsw";
+    private static final long HNSW_SEED = 42;
+    private static final int PQ_TRAINING_ROWS = 100_000;
+    private static final int PQ_ITERATIONS = 10;
+    private static final long QUANTIZATION_SEED = 42;
+    private static final int PCA_TRAINING_ROWS = 50_000;
+    private static final long PROJECTION_SEED = 42;
+    private static final String PROJECTION_EXTENSION = ".proj";
+
+    static final String LOAD_PHASE_STARTING = "starting";
+    static final String LOAD_PHASE_MODEL = "loading model";
+    static final String LOAD_PHASE_QUANTIZATION = "quantizing vectors";
+    static final String LOAD_PHASE_REDUCTION = "reducing dimensions";
+    static final String LOAD_PHASE_INDEX = "building index";
+    static final String LOAD_PHASE_WARM_UP = "warming up";
+    static final String LOAD_PHASE_READY = "ready";
+    static final String LOAD_PHASE_FAILED = "failed";
+
+    private final File modelFile;
+    private final ModelOptions options;
+    private volatile String phase = LOAD_PHASE_STARTING;
+    private volatile float progress;
+    private final ProgressListener progressListener =
+            (done, total) -> progress = total == 0 ? 1f : (float) done / total;
+
+    // set while loading
+    private EmbeddingStore store;
+    // vectors searched for nearest words, the store itself unless dimensions are reduced
+    private EmbeddingStore searchStore;
+    // reduced vectors or vectors reranking quantized ones, read by searches but not served. Null when none
+    private EmbeddingStore searchOnlyStore;
+    private NearestSearch scanSearch;
+    // null unless dimensions are reduced
+    private VectorProjection projection;
+    private Word2Vec treeModel;
+    private HnswIndex hnswIndex;
+    private VocabularyTrie wordTrie;
+    // serves the words left out by maxWords, null when every word is kept
+    private PrunedEmbeddingStore prunedWords;
+    private long version;
+    // null when partial versions are not served
+    private Consumer<LoadedModel> partialVersions;
+    private LoadedModel partialModel;
+
+    ModelLoader(File modelFile, ModelOptions options) {
+        this.modelFile = modelFile;
+        this.options = options;
+    }
+
+    String phase() {
+        return phase;
+    }
+
+    float progress() {
+        return LOAD_PHASE_READY.equals(phase) ? 1f : progress;
+    }
+
+    /**
+     * Loads the model file, called once per loader
+     *
+     * @param version version number of the loaded model
+     * @param warmUp  read every vector before returning
+     * @return loaded model
+     */
+    LoadedModel load(long version, boolean warmUp) throws IOException {
+        return load(version, warmUp, null);
+    }
+
+    /**
+     * Loads the model file, called once per loader
+     *
+     * @param version         version number of the loaded model
+     * @param warmUp          read every vector before returning
+     * @param partialVersions receives partial versions serving the rows loaded so far, see {@link ModelOptions#getPartialRows()},
+     *                        on the loading threads and never after this method returns. Null to only return the full version
+     * @return loaded model
+     */
+    LoadedModel load(long version, boolean warmUp, Consumer<LoadedModel> partialVersions) throws IOException {
+        this.version = version;
+        this.partialVersions = options.getPartialRows() > 0 && !options.isSharded() && options.getMaxWords() == 0
+                && options.getQuantization() == ModelOptions.Quantization.NONE
+                && options.getReduction() == ModelOptions.Reduction.NONE ? partialVersions : null;
+        ForkJoinPool pool = new ForkJoinPool(options.getLoaderThreads());
+        try {
+            long start = System.currentTimeMillis();
+            loadModel(pool);
+            loadHnswIndex(pool);
+            buildWordTrie();
+
+            LoadedModel model = new LoadedModel(version, store, searchOnlyStore, scanSearch, treeModel, hnswIndex,
+                    options.getCacheSize() > 0 ? new ResponseCache(options.getCacheSize()) : null,
+                    options.getHnswEfSearch(), true, projection, wordTrie);
+            if (warmUp) {
+                setPhase(LOAD_PHASE_WARM_UP);
+                model.warmUp();
+            }
+
+            setPhase(LOAD_PHASE_READY);
+            logger.info("Model {} version {} ready in {}ms", modelFile, version, System.currentTimeMillis() - start);
+            return model;
+        } catch (IOException | RuntimeException e) {
+            setPhase(LOAD_PHASE_FAILED);
+            // partial versions hold their own references to the memory of the model
+            if (store != null) {
+                store.close();
+            }
+            if (searchOnlyStore != null) {
+                searchOnlyStore.close();
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void loadModel(ForkJoinPool pool) throws IOException {
+        boolean useTreeModel = options.getIndexType() == ModelOptions.IndexType.TREE;
+        if (useTreeModel && options.isSharded()) {
+            logger.warn("Tree model is not available for vocabulary shards, using exact search");
+            useTreeModel = false;
+        }
+        if (useTreeModel && (options.getMaxWords() > 0 || options.getReduction() != ModelOptions.Reduction.NONE)) {
+            logger.warn("Tree model is not available for pruned or reduced models, using exact search");
+            useTreeModel = false;
+        }
+
+        File prunedFile = variantFile(EmbeddingStoreFormat.FILE_EXTENSION);
+        File allWordsFile = allWordsFile();
+        if (options.getMaxWords() > 0 && !allWordsFile.equals(modelFile) && isFresh(prunedFile) && isFresh(allWordsFile)) {
+            try {
+                logger.info("Mapping pruned model file {}", prunedFile);
+                setPhase(LOAD_PHASE_MODEL);
+                BufferEmbeddingStore kept = BufferEmbeddingStore.open(prunedFile);
+                prunedWords = PrunedEmbeddingStore.mapped(kept, allWordsFile);
+                setSearchStore(kept);
+                logger.info("Pruned model file '{}' mapped, {} of {} words", prunedFile, kept.size(), store.size());
+                return;
+            } catch (IOException e) {
+                logger.warn("Unable to map pruned model " + prunedFile + ", reading the model again", e);
+            }
+        }
+
+        if (EmbeddingStoreFormat.isStoreFile(modelFile)) {
+            if (useTreeModel) {
+                logger.warn("Tree model is not available for embedding store files, using exact search");
+            }
+            loadStore();
+        } else if (!useTreeModel && Word2VecBinaryReader.isBinaryModel(modelFile)) {
+            loadBinaryModel(pool);
+        } else {
+            loadWord2VecModel(useTreeModel);
+        }
+    }
+
+    private void loadStore() throws IOException {
+        logger.info("Mapping embedding store file {}", modelFile);
+        setPhase(LOAD_PHASE_MODEL);
+        setStore(BufferEmbeddingStore.open(modelFile));
+        logger.info("Embedding store file '{}' mapped, {} words", modelFile, store.size());
+    }
+
+    private void loadBinaryModel(ForkJoinPool pool) throws IOException {
+        logger.info("Reading binary word2vec model file {} with {} threads", modelFile, pool.getParallelism());
+        setPhase(LOAD_PHASE_MODEL);
+        // rows of other shards are not read at all
+        WordFilter shardFilter = shardFilter();
+        BufferEmbeddingStore model = Word2VecBinaryReader.read(modelFile, pool, progressListener, Integer.MAX_VALUE, shardFilter,
+                partialVersions == null
+                        ? partialStore -> {
+                        }
+                        : this::rowsLoaded);
+        if (options.isSharded()) {
+            logger.info("Vocabulary shard {} of {} holds {} words", options.getShard(), options.getShardCount(), model.size());
+        }
+        setStore(model, options.isSharded());
+        logger.info("Model file '{}' loaded, {} words", modelFile, store.size());
+    }
+
+    /**
+     * Publishes a partial version when the first rows are loaded, and a searchable one once enough rows are loaded.
+     * Later rows are served by the same versions as the store grows
+     */
+    private void rowsLoaded(PartialEmbeddingStore partialStore) {
+        boolean searchable = partialStore.size() >= Math.min(options.getPartialRows(), partialStore.rows());
+        if (partialModel != null && (partialModel.searchable() || !searchable)) {
+            return;
+        }
+
+        logger.info("Serving {} of {} rows of model {}, nearest words {}", partialStore.size(), partialStore.rows(),
+                modelFile, searchable ? "enabled" : "disabled");
+        // the reader closes its store once the model is loaded, the version keeps a view until it is released
+        PartialEmbeddingStore view = partialStore.share();
+        partialModel = new LoadedModel(version, view, new ExactNearestSearch(view), null, null, null,
+                options.getHnswEfSearch(), searchable);
+        partialVersions.accept(partialModel);
+    }
+
+    private WordFilter shardFilter() {
+        return options.isSharded()
+                ? (word, length) -> WordShards.shardOf(word, 0, length, options.getShardCount()) == options.getShard()
+                : null;
+    }
+
+    private void loadWord2VecModel(boolean useTreeModel) throws IOException {
+        logger.info("Loading word2vec model file {}, use tree model {}", modelFile, useTreeModel);
+        setPhase(LOAD_PHASE_MODEL);
+        Word2Vec model = WordVectorSerializer.readWord2VecModel(modelFile, true);
+        setStore(BufferEmbeddingStore.fromWordVectors(model));
+
+        logger.info("Model file '{}' loaded", modelFile);
+
+        if (useTreeModel) {
+            logger.info("Use tree model flag set, warming up model");
+            setPhase(LOAD_PHASE_INDEX);
+
+            ServiceTreeModelUtils modeUtils = new ServiceTreeModelUtils();
+            model.setModelUtils(modeUtils);
+            modeUtils.buildTree();
+            this.treeModel = model;
+        }
+    }
+
+    private void setPhase(String phase) {
+        progress = 0f;
+        this.phase = phase;
+    }
+
+    /**
+     * Loads the HNSW index saved next to the model file or builds it when missing or stale
+     */
+    private void loadHnswIndex(ForkJoinPool pool) {
+        if (options.getIndexType() != ModelOptions.IndexType.HNSW) {
+            return;
+        }
+        setPhase(LOAD_PHASE_INDEX);
+
+        File indexFile = variantFile(reductionSuffix(searchStore.dimension()) + HNSW_INDEX_EXTENSION);
+        if (isFresh(indexFile)) {
+            try {
+                HnswIndex index = HnswIndex.load(searchStore, indexFile);
+                if (index.m() == options.getHnswM()) {
+                    logger.info("HNSW index loaded from {}", indexFile);
+                    hnswIndex = index;
+                    return;
+                }
+                logger.info("HNSW index {} was built with m={}, rebuilding", indexFile, index.m());
+            } catch (IOException e) {
+                logger.warn("Unable to load HNSW index " + indexFile + ", rebuilding", e);
+            }
+        }
+
+        logger.info("Building HNSW index, {}", options);
+        long start = System.currentTimeMillis();
+        hnswIndex = HnswIndex.build(searchStore, options.getHnswM(), options.getHnswEfConstruction(), HNSW_SEED,
+                pool, progressListener);
+        logger.info("HNSW index built in {}ms", System.currentTimeMillis() - start);
+
+        if (options.isPersistIndex()) {
+            try {
+                hnswIndex.save(indexFile);
+                logger.info("HNSW index saved to {}", indexFile);
+            } catch (IOException e) {
+                logger.warn("Unable to save HNSW index to " + indexFile, e);
+            }
+        }
+    }
+
+    /**
+     * Builds the vocabulary trie answering word lookups, see {@link ModelOptions#isWordLookup()}
+     */
+    private void buildWordTrie() {
+        if (!options.isWordLookup()) {
+            return;
+        }
+        setPhase(LOAD_PHASE_INDEX);
+
+        long start = System.currentTimeMillis();
+        // lookups only match the words kept, pruned words are not worth the memory of their trie nodes
+        wordTrie = VocabularyTrie.build(store instanceof PrunedEmbeddingStore ? ((PrunedEmbeddingStore) store).kept() : store);
+        logger.info("Vocabulary trie of {} words built in {}ms, {} bytes", wordTrie.size(),
+                System.currentTimeMillis() - start, wordTrie.bytes());
+    }
+
+    private void setStore(BufferEmbeddingStore model) throws IOException {
+        setStore(model, false);
+    }
+
+    /**
+     * Keeps the vocabulary shard of the model, then the most frequent words, and sets the searched vectors.
+     * Words left out by maxWords are still served from a store of all words, see {@link PrunedEmbeddingStore}
+     *
+     * @param shardRead the model only holds the words of the shard, as read
+     */
+    private void setStore(BufferEmbeddingStore model, boolean shardRead) throws IOException {
+        int keptRows = keptRows(model, shardRead);
+        BufferEmbeddingStore words = model;
+        if (options.isSharded() && !shardRead) {
+            logger.info("Keeping vocabulary shard {} of {}", options.getShard(), options.getShardCount());
+            words = BufferEmbeddingStore.shard(model, options.getShard(), options.getShardCount());
+            logger.info("Vocabulary shard {} of {} holds {} of {} words", options.getShard(), options.getShardCount(),
+                    words.size(), model.size());
+            // the whole model is no longer referenced
+            model.close();
+        }
+        if (keptRows >= words.size()) {
+            setSearchStore(words);
+            return;
+        }
+
+        logger.info("Keeping the {} most frequent of {} words", keptRows, words.size());
+        BufferEmbeddingStore kept = BufferEmbeddingStore.prefix(words, keptRows);
+        File allWordsFile = allWordsFile();
+        // embedding store files are already paged in on demand, so are their pruned words
+        if (allWordsFile.equals(modelFile) || !options.isPersistIndex()) {
+            prunedWords = PrunedEmbeddingStore.of(kept, words);
+            setSearchStore(kept);
+            return;
+        }
+
+        File prunedFile = variantFile(EmbeddingStoreFormat.FILE_EXTENSION);
+        try {
+            EmbeddingStoreWriter.write(kept, prunedFile);
+            if (!isFresh(allWordsFile)) {
+                EmbeddingStoreWriter.write(words, allWordsFile);
+            }
+            logger.info("Pruned model saved to {}, all words to {}", prunedFile, allWordsFile);
+            // the mapped files replace the copy in direct memory, rows are paged in on demand
+            BufferEmbeddingStore mappedKept = BufferEmbeddingStore.open(prunedFile);
+            prunedWords = PrunedEmbeddingStore.mapped(mappedKept, allWordsFile);
+            kept.close();
+            words.close();
+            setSearchStore(mappedKept);
+        } catch (IOException e) {
+            logger.warn("Unable to save pruned model to " + prunedFile, e);
+            prunedWords = PrunedEmbeddingStore.of(kept, words);
+            setSearchStore(kept);
+        }
+    }
+
+    /**
+     * @param shardRead the model only holds the words of the shard, as read
+     * @return number of first rows of the served words that are among the maxWords most frequent words of the model
+     */
+    private int keptRows(BufferEmbeddingStore model, boolean shardRead) throws IOException {
+        int maxWords = options.getMaxWords();
+        if (maxWords <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        if (!options.isSharded()) {
+            return Math.min(maxWords, model.size());
+        }
+        if (shardRead) {
+            return Word2VecBinaryReader.countWords(modelFile, maxWords, shardFilter());
+        }
+
+        int rows = 0;
+        for (int row = 0; row < Math.min(maxWords, model.size()); row++) {
+            if (WordShards.shardOf(model.wordBytes(row), options.getShardCount()) == options.getShard()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param kept store of the kept words, or their quantized vectors
+     * @return store answering lookups, which also serves the pruned words
+     */
+    private EmbeddingStore servedStore(EmbeddingStore kept) {
+        return prunedWords == null ? kept : prunedWords.withKept(kept);
+    }
+
+    private void setSearchStore(EmbeddingStore source) {
+        if (options.getReduction() != ModelOptions.Reduction.NONE) {
+            if (options.getQuantization() != ModelOptions.Quantization.NONE) {
+                logger.warn("Quantization is not available for reduced vectors, searching float32 reduced vectors");
+            }
+            this.store = servedStore(source);
+            this.searchStore = reduce(source);
+            this.searchOnlyStore = searchStore;
+            this.scanSearch = new ExactNearestSearch(searchStore);
+            return;
+        }
+
+        if (options.getQuantization() == ModelOptions.Quantization.NONE) {
+            this.store = servedStore(source);
+            this.searchStore = source;
+            this.scanSearch = new ExactNearestSearch(source);
+            return;
+        }
+
+        logger.info("Quantizing {} vectors of {} elements, {}", source.size(), source.dimension(), options);
+        setPhase(LOAD_PHASE_QUANTIZATION);
+        long start = System.currentTimeMillis();
+        QuantizedEmbeddingStore quantized = options.getQuantization() == ModelOptions.Quantization.PQ
+                ? ProductQuantizedStore.train(source, pqSubspaces(source.dimension()), PQ_TRAINING_ROWS, PQ_ITERATIONS, QUANTIZATION_SEED)
+                : ScalarQuantizedStore.quantize(source);
+        logger.info("Vectors quantized in {}ms, {} bytes of codes", System.currentTimeMillis() - start, quantized.codeBytes());
+
+        // without reranking the source vectors are no longer referenced and are released, the quantized store keeps
+        // its own reference to the words
+        EmbeddingStore original = options.getRerank() > 0 ? source : null;
+        if (original == null) {
+            source.close();
+        }
+        this.store = servedStore(quantized);
+        this.searchStore = quantized;
+        this.searchOnlyStore = original;
+        this.scanSearch = new QuantizedNearestSearch(quantized, original, options.getRerank());
+    }
+
+    /**
+     * Loads the reduced vectors and their projection saved next to the model file, or fits the projection and reduces
+     * the vectors when missing or stale
+     *
+     * @param source vectors to reduce
+     * @return reduced vectors, sets the projection of query vectors
+     */
+    private EmbeddingStore reduce(EmbeddingStore source) {
+        setPhase(LOAD_PHASE_REDUCTION);
+        int dimension = reducedDimension(source.dimension());
+        File reducedFile = variantFile(reductionSuffix(dimension) + EmbeddingStoreFormat.FILE_EXTENSION);
+        File projectionFile = variantFile(reductionSuffix(dimension) + PROJECTION_EXTENSION);
+        if (isFresh(reducedFile) && isFresh(projectionFile)) {
+            try {
+                VectorProjection saved = VectorProjection.load(projectionFile);
+                BufferEmbeddingStore reduced = BufferEmbeddingStore.open(reducedFile);
+                if (saved.dimension() == source.dimension() && reduced.dimension() == dimension
+                        && reduced.size() == source.size()) {
+                    logger.info("Reduced vectors mapped from {}", reducedFile);
+                    this.projection = saved;
+                    return reduced;
+                }
+                reduced.close();
+                logger.info("Reduced vectors {} do not match the model, reducing again", reducedFile);
+            } catch (IOException e) {
+                logger.warn("Unable to load reduced vectors " + reducedFile + ", reducing again", e);
+            }
+        }
+
+        logger.info("Reducing {} vectors from {} to {} elements, {}", source.size(), source.dimension(), dimension, options);
+        long start = System.currentTimeMillis();
+        projection = options.getReduction() == ModelOptions.Reduction.PCA
+                ? VectorProjection.pca(source, dimension, PCA_TRAINING_ROWS)
+                : VectorProjection.random(source.dimension(), dimension, PROJECTION_SEED);
+        EmbeddingStore reduced = projection.apply(source);
+        logger.info("Vectors reduced in {}ms", System.currentTimeMillis() - start);
+
+        if (options.isPersistIndex()) {
+            try {
+                EmbeddingStoreWriter.write(reduced, reducedFile);
+                projection.save(projectionFile);
+                logger.info("Reduced vectors saved to {}", reducedFile);
+                // the mapped file replaces the copy in direct memory
+                BufferEmbeddingStore mapped = BufferEmbeddingStore.open(reducedFile);
+                reduced.close();
+                reduced = mapped;
+            } catch (IOException e) {
+                logger.warn("Unable to save reduced vectors to " + reducedFile, e);
+            }
+        }
+        return reduced;
+    }
+
+    private int reducedDimension(int dimension) {
+        int reduced = options.getReducedDimension() > 0 ? options.getReducedDimension() : dimension / 4;
+        return Math.max(1, Math.min(dimension, reduced));
+    }
+
+    /**
+     * @param dimension dimension of the searched vectors
+     */
+    private String reductionSuffix(int dimension) {
+        return options.getReduction() == ModelOptions.Reduction.NONE
+                ? ""
+                : "." + options.getReduction().name().toLowerCase() + dimension;
+    }
+
+    /**
+     * Files derived from the model are saved next to it, named after the words kept
+     *
+     * @param suffix suffix of the derived file
+     * @return derived file
+     */
+    private File variantFile(String suffix) {
+        String pruneSuffix = options.getMaxWords() > 0 ? ".top" + options.getMaxWords() : "";
+        return new File(modelFile.getPath() + shardSuffix() + pruneSuffix + suffix);
+    }
+
+    /**
+     * @return embedding store file of all the words of the model, or of its vocabulary shard: the model file itself
+     * when it is an embedding store, a file saved next to it otherwise
+     */
+    private File allWordsFile() {
+        if (!options.isSharded() && EmbeddingStoreFormat.isStoreFile(modelFile)) {
+            return modelFile;
+        }
+        return new File(modelFile.getPath() + shardSuffix() + EmbeddingStoreFormat.FILE_EXTENSION);
+    }
+
+    private String shardSuffix() {
+        // shards of the same file keep different words and need their own files
+        return options.isSharded() ? "." + options.getShard() + "-of-" + options.getShardCount() : "";
+    }
+
+    /**
+     * @return true if derived files are reused and the file was saved after the model file was last modified
+     */
+    private boolean isFresh(File file) {
+        return options.isPersistIndex() && file.isFile() && file.lastModified() >= modelFile.lastModified();
+    }
+
+    private int pqSubspaces(int dimension) {
+        int subspaces = options.getPqSubspaces() > 0 ? options.getPqSubspaces() : dimension / 4;
+        return Math.max(1, Math.min(dimension, subspaces));
+    }
+
+    private static class ServiceTreeModelUtils extends TreeModelUtils {
+        void buildTree() {
+            checkTree();
+        }
+
+    }
+}
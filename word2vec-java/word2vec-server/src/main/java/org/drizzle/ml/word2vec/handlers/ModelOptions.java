@@ -0,0 +1,330 @@
+package org.drizzle.ml.word2vec.handlers;
+
+/**
+ * Options used when loading a model, building its nearest words index and serving requests
+ */
+public class ModelOptions {
+
+    public enum IndexType {
+        /**
+         * Brute force scan of all vectors
+         */
+        EXACT,
+        /**
+         * DL4J VP-tree, only available for word2vec model files
+         */
+        TREE,
+        /**
+         * Hierarchical navigable small world graph, approximate results
+         */
+        HNSW
+    }
+
+    public enum Quantization {
+        /**
+         * Float32 vectors
+         */
+        NONE,
+        /**
+         * One signed byte per element with a per vector scale
+         */
+        INT8,
+        /**
+         * Product quantization, one byte per subspace
+         */
+        PQ
+    }
+
+    public enum Reduction {
+        /**
+         * Nearest words are searched with the model vectors
+         */
+        NONE,
+        /**
+         * Projection on the principal components of the most frequent words
+         */
+        PCA,
+        /**
+         * Gaussian random projection, no training
+         */
+        RANDOM_PROJECTION
+    }
+
+    private IndexType indexType = IndexType.EXACT;
+    private Quantization quantization = Quantization.NONE;
+    private int pqSubspaces = 0;
+    private int rerank = 0;
+    private int maxWords = 0;
+    private Reduction reduction = Reduction.NONE;
+    private int reducedDimension = 0;
+    private int hnswM = 16;
+    private int hnswEfConstruction = 200;
+    private int hnswEfSearch = 64;
+    private boolean persistIndex = true;
+    private boolean wordLookup = true;
+    private int loaderThreads = Runtime.getRuntime().availableProcessors();
+    private int partialRows = 0;
+    private long cacheSize = 0;
+    private int streamWindow = 64;
+    private int searchThreads = 0;
+    private int shard = 0;
+    private int shardCount = 1;
+
+    public IndexType getIndexType() {
+        return indexType;
+    }
+
+    public ModelOptions setIndexType(IndexType indexType) {
+        this.indexType = indexType;
+        return this;
+    }
+
+    public int getHnswM() {
+        return hnswM;
+    }
+
+    public ModelOptions setHnswM(int hnswM) {
+        this.hnswM = hnswM;
+        return this;
+    }
+
+    public int getHnswEfConstruction() {
+        return hnswEfConstruction;
+    }
+
+    public ModelOptions setHnswEfConstruction(int hnswEfConstruction) {
+        this.hnswEfConstruction = hnswEfConstruction;
+        return this;
+    }
+
+    public int getHnswEfSearch() {
+        return hnswEfSearch;
+    }
+
+    public ModelOptions setHnswEfSearch(int hnswEfSearch) {
+        this.hnswEfSearch = hnswEfSearch;
+        return this;
+    }
+
+    public Quantization getQuantization() {
+        return quantization;
+    }
+
+    public ModelOptions setQuantization(Quantization quantization) {
+        this.quantization = quantization;
+        return this;
+    }
+
+    /**
+     * @return number of product quantization subspaces, zero for a quarter of the vector dimension
+     */
+    public int getPqSubspaces() {
+        return pqSubspaces;
+    }
+
+    public ModelOptions setPqSubspaces(int pqSubspaces) {
+        this.pqSubspaces = pqSubspaces;
+        return this;
+    }
+
+    /**
+     * @return number of quantized search candidates scored again with the original vectors, zero to drop the original vectors
+     */
+    public int getRerank() {
+        return rerank;
+    }
+
+    public ModelOptions setRerank(int rerank) {
+        this.rerank = rerank;
+        return this;
+    }
+
+    /**
+     * @return number of most frequent words searched for nearest words and indexed, zero to keep all words.
+     * Other words are still served to lookups from the whole model, memory mapped from an embedding store file
+     */
+    public int getMaxWords() {
+        return maxWords;
+    }
+
+    public ModelOptions setMaxWords(int maxWords) {
+        this.maxWords = maxWords;
+        return this;
+    }
+
+    /**
+     * Nearest words are searched with vectors reduced to fewer dimensions, query vectors are reduced the same way.
+     * Word vectors are still returned with the model dimensions
+     *
+     * @return dimension reduction of the vectors searched for nearest words
+     */
+    public Reduction getReduction() {
+        return reduction;
+    }
+
+    public ModelOptions setReduction(Reduction reduction) {
+        this.reduction = reduction;
+        return this;
+    }
+
+    /**
+     * @return dimension of the reduced vectors, zero for a quarter of the vector dimension
+     */
+    public int getReducedDimension() {
+        return reducedDimension;
+    }
+
+    public ModelOptions setReducedDimension(int reducedDimension) {
+        this.reducedDimension = reducedDimension;
+        return this;
+    }
+
+    /**
+     * @return true if a built HNSW index and the pruned or reduced model variants are saved next to the model file
+     * and reused on later loads
+     */
+    public boolean isPersistIndex() {
+        return persistIndex;
+    }
+
+    public ModelOptions setPersistIndex(boolean persistIndex) {
+        this.persistIndex = persistIndex;
+        return this;
+    }
+
+    /**
+     * @return true if a vocabulary trie is built when the model is loaded, serving case-insensitive, prefix and
+     * fuzzy word lookups
+     */
+    public boolean isWordLookup() {
+        return wordLookup;
+    }
+
+    public ModelOptions setWordLookup(boolean wordLookup) {
+        this.wordLookup = wordLookup;
+        return this;
+    }
+
+    /**
+     * @return number of threads decoding the model and building the index
+     */
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    public ModelOptions setLoaderThreads(int loaderThreads) {
+        this.loaderThreads = loaderThreads;
+        return this;
+    }
+
+    /**
+     * Serves a model still loading for the first time: vector lookups are answered as soon as rows are loaded and
+     * nearest words requests once the given number of rows is loaded. Only applies to binary word2vec models read
+     * without shards, pruning nor quantization
+     *
+     * @return rows loaded before nearest words requests are served, zero to serve only fully loaded models
+     */
+    public int getPartialRows() {
+        return partialRows;
+    }
+
+    public ModelOptions setPartialRows(int partialRows) {
+        this.partialRows = partialRows;
+        return this;
+    }
+
+    /**
+     * @return maximum number of cached word vector responses and of cached nearest words responses, zero to disable caching
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public ModelOptions setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * @return maximum number of requests of a stream received and not yet answered
+     */
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    public ModelOptions setStreamWindow(int streamWindow) {
+        this.streamWindow = streamWindow;
+        return this;
+    }
+
+    /**
+     * @return number of threads answering nearest words requests, zero to answer them on the call threads
+     */
+    public int getSearchThreads() {
+        return searchThreads;
+    }
+
+    public ModelOptions setSearchThreads(int searchThreads) {
+        this.searchThreads = searchThreads;
+        return this;
+    }
+
+    /**
+     * @return index of the vocabulary shard kept from the model, see {@link #getShardCount()}
+     */
+    public int getShard() {
+        return shard;
+    }
+
+    /**
+     * Keeps only the words of one vocabulary shard, as assigned by {@link org.drizzle.ml.word2vec.shard.WordShards}
+     *
+     * @param shard      shard index, from 0 to shardCount - 1
+     * @param shardCount number of shards, 1 to keep all words
+     * @return these options
+     */
+    public ModelOptions setShard(int shard, int shardCount) {
+        if (shardCount < 1 || shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shard + " of " + shardCount);
+        }
+        this.shard = shard;
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    /**
+     * @return number of vocabulary shards the model is split in, 1 when the whole model is kept
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    @Override
+    public String toString() {
+        return "ModelOptions{" +
+                "indexType=" + indexType +
+                ", hnswM=" + hnswM +
+                ", hnswEfConstruction=" + hnswEfConstruction +
+                ", hnswEfSearch=" + hnswEfSearch +
+                ", persistIndex=" + persistIndex +
+                ", wordLookup=" + wordLookup +
+                ", quantization=" + quantization +
+                ", pqSubspaces=" + pqSubspaces +
+                ", rerank=" + rerank +
+                ", maxWords=" + maxWords +
+                ", reduction=" + reduction +
+                ", reducedDimension=" + reducedDimension +
+                ", loaderThreads=" + loaderThreads +
+                ", partialRows=" + partialRows +
+                ", cacheSize=" + cacheSize +
+                ", streamWindow=" + streamWindow +
+                ", searchThreads=" + searchThreads +
+                ", shard=" + shard +
+                ", shardCount=" + shardCount +
+                '}';
+    }
+}
@@ -0,0 +1,145 @@
+package org.drizzle.ml.word2vec.handlers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import org.drizzle.ml.word2vec.service.SearchMode;
+import org.drizzle.ml.word2vec.service.VectorEncoding;
+import org.drizzle.ml.word2vec.service.VectorWordList;
+import org.drizzle.ml.word2vec.service.Word;
+import org.drizzle.ml.word2vec.service.WordVector;
+import org.drizzle.ml.word2vec.store.VectorMath;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Caches of built responses for frequent words and nearest words queries, bounded by entry count with W-TinyLFU eviction.
+ * <p>
+ * Word vector responses are keyed by word and encoding, words not in the model included. Nearest words results are keyed
+ * by the query vector normalized and rounded to 16 bits per element, so queries differing by less than the rounding
+ * share their results, together with the limit, search mode and candidate list size.
+ * Responses are immutable protobuf messages, which also keep their computed serialized size.
+ */
+class ResponseCache {
+    private static final float KEY_SCALE = Short.MAX_VALUE;
+
+    private final Cache<WordKey, WordVector> wordVectors;
+    private final Cache<NearestKey, VectorWordList> nearestWords;
+
+    /**
+     * @param maximumSize maximum number of entries of each cache
+     */
+    ResponseCache(long maximumSize) {
+        this.wordVectors = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.nearestWords = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * @param word    requested word
+     * @param builder builds the response on a miss
+     * @return cached or newly built response
+     */
+    WordVector wordVector(Word word, Supplier<WordVector> builder) {
+        return wordVectors.get(new WordKey(word.getWordBytes(), word.getEncoding()), key -> builder.get());
+    }
+
+    /**
+     * @param query   query vector
+     * @param limit   maximum number of nearest words
+     * @param mode    search mode
+     * @param ef      requested candidate list size
+     * @param builder builds the response, without the query vector, on a miss
+     * @return cached or newly built response
+     */
+    VectorWordList nearestWords(float[] query, int limit, SearchMode mode, int ef, Supplier<VectorWordList> builder) {
+        return nearestWords.get(new NearestKey(quantize(query), limit, mode, ef), key -> builder.get());
+    }
+
+    CacheStats wordVectorStats() {
+        return wordVectors.stats();
+    }
+
+    CacheStats nearestWordsStats() {
+        return nearestWords.stats();
+    }
+
+    /**
+     * Drops all entries, keeping the statistics
+     */
+    void invalidateAll() {
+        wordVectors.invalidateAll();
+        nearestWords.invalidateAll();
+    }
+
+    private static ByteString quantize(float[] query) {
+        float scale = VectorMath.inverseNorm(query, 0, query.length) * KEY_SCALE;
+        byte[] key = new byte[query.length * Short.BYTES];
+        for (int i = 0; i < query.length; i++) {
+            int value = Math.round(query[i] * scale);
+            key[2 * i] = (byte) value;
+            key[2 * i + 1] = (byte) (value >> 8);
+        }
+        return UnsafeByteOperations.unsafeWrap(key);
+    }
+
+    private static final class WordKey {
+        private final ByteString word;
+        private final VectorEncoding encoding;
+
+        WordKey(ByteString word, VectorEncoding encoding) {
+            this.word = word;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WordKey)) {
+                return false;
+            }
+            WordKey other = (WordKey) o;
+            return encoding == other.encoding && word.equals(other.word);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * word.hashCode() + encoding.hashCode();
+        }
+    }
+
+    private static final class NearestKey {
+        private final ByteString query;
+        private final int limit;
+        private final SearchMode mode;
+        private final int ef;
+
+        NearestKey(ByteString query, int limit, SearchMode mode, int ef) {
+            this.query = query;
+            this.limit = limit;
+            this.mode = mode;
+            this.ef = ef;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof NearestKey)) {
+                return false;
+            }
+            NearestKey other = (NearestKey) o;
+            return limit == other.limit && ef == other.ef && mode == other.mode && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, limit, mode, ef);
+        }
+    }
+}
@@ -1,163 +1,979 @@
 package org.drizzle.ml.word2vec.handlers;
 
+import com.google.protobuf.ByteString;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
-import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
-import org.deeplearning4j.models.embeddings.reader.impl.TreeModelUtils;
-import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.drizzle.ml.word2vec.codec.VectorCodec;
+import org.drizzle.ml.word2vec.metrics.ServerMetrics;
+import org.drizzle.ml.word2vec.search.*;
 import org.drizzle.ml.word2vec.service.*;
-import org.nd4j.linalg.api.ndarray.INDArray;
+import org.drizzle.ml.word2vec.store.*;
 import org.nd4j.linalg.factory.Nd4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServiceRequestHandler extends Word2VecServiceGrpc.Word2VecServiceImplBase {
     private static final Logger logger = LoggerFactory.getLogger(ServiceRequestHandler.class);
 
-    private final AtomicBoolean modelLoaded = new AtomicBoolean(false);
-    private Word2Vec model;
+    /**
+     * Name of the model serving requests that do not name a model
+     */
+    public static final String DEFAULT_MODEL = "default";
 
+    private final ModelOptions options;
+    private final Map<String, HostedModel> models = new LinkedHashMap<>();
+    // null when nearest words queries run on the call threads
+    private final ExecutorService searchExecutor;
+    private final ServerMetrics metrics;
+
+    /**
+     * Creates a handler and starts loading the model in the background
+     *
+     * @param word2vecModelFile word2vec model or embedding store file
+     * @param useTreeModel      use a tree model for nearest words, not available for embedding store files
+     */
     public ServiceRequestHandler(File word2vecModelFile, boolean useTreeModel) {
-        loadModel(word2vecModelFile, useTreeModel);
+        this(word2vecModelFile, new ModelOptions()
+                .setIndexType(useTreeModel ? ModelOptions.IndexType.TREE : ModelOptions.IndexType.EXACT));
+    }
+
+    /**
+     * Creates a handler and starts loading the model in the background
+     *
+     * @param word2vecModelFile word2vec model or embedding store file
+     * @param options           model and index options
+     */
+    public ServiceRequestHandler(File word2vecModelFile, ModelOptions options) {
+        this(Map.of(DEFAULT_MODEL, word2vecModelFile), options);
+    }
+
+    /**
+     * Creates a handler hosting several models and starts loading them in the background
+     *
+     * @param modelFiles word2vec model or embedding store file of each model name, including {@link #DEFAULT_MODEL}
+     * @param options    model and index options, shared by all models
+     */
+    public ServiceRequestHandler(Map<String, File> modelFiles, ModelOptions options) {
+        this(modelFiles, options, new ServerMetrics());
+    }
+
+    /**
+     * Creates a handler hosting several models, recording stage latencies and model gauges in the given metrics, and
+     * starts loading the models in the background
+     *
+     * @param modelFiles word2vec model or embedding store file of each model name, including {@link #DEFAULT_MODEL}
+     * @param options    model and index options, shared by all models
+     * @param metrics    server metrics, usually shared with a {@link org.drizzle.ml.word2vec.metrics.MetricsInterceptor}
+     */
+    public ServiceRequestHandler(Map<String, File> modelFiles, ModelOptions options, ServerMetrics metrics) {
+        if (!modelFiles.containsKey(DEFAULT_MODEL)) {
+            throw new IllegalArgumentException("Missing file of the " + DEFAULT_MODEL + " model");
+        }
+        this.options = options;
+        this.metrics = metrics;
+        if (options.getSearchThreads() > 0) {
+            ThreadPoolExecutor executor = searchExecutor(options.getSearchThreads());
+            metrics.registerGauge("w2v_search_queue_depth", null, null, () -> executor.getQueue().size());
+            this.searchExecutor = executor;
+        } else {
+            this.searchExecutor = null;
+        }
+
+        // the default model is reported first
+        models.put(DEFAULT_MODEL, new HostedModel(DEFAULT_MODEL, modelFiles.get(DEFAULT_MODEL), options));
+        modelFiles.forEach((name, file) -> models.computeIfAbsent(name, key -> new HostedModel(key, file, options)));
+        models.values().forEach(this::registerGauges);
+        models.values().forEach(HostedModel::reload);
+    }
+
+    private void registerGauges(HostedModel model) {
+        metrics.registerGauge("w2v_model_load_seconds", "model", model.name(), () -> model.lastLoadNanos() / 1e9);
+        metrics.registerGauge("w2v_model_loaded_rows", "model", model.name(),
+                () -> model.current() == null ? 0 : model.current().store().size());
+        metrics.registerGauge("w2v_response_cache_hits", "model", model.name(), () -> {
+            ResponseCache responseCache = model.current() == null ? null : model.current().responseCache();
+            return responseCache == null ? 0
+                    : responseCache.wordVectorStats().hitCount() + responseCache.nearestWordsStats().hitCount();
+        });
+        metrics.registerGauge("w2v_response_cache_misses", "model", model.name(), () -> {
+            ResponseCache responseCache = model.current() == null ? null : model.current().responseCache();
+            return responseCache == null ? 0
+                    : responseCache.wordVectorStats().missCount() + responseCache.nearestWordsStats().missCount();
+        });
+    }
+
+    /**
+     * @return metrics recorded by this handler
+     */
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Loads a new version of a model from its file in the background, the current version serves requests until the
+     * new one is ready
+     *
+     * @param name model name
+     * @return false if a load of the model is already in progress or the handler is closed
+     * @throws IllegalArgumentException if there is no model with that name
+     */
+    public boolean reloadModel(String name) {
+        HostedModel model = models.get(name);
+        if (model == null) {
+            throw new IllegalArgumentException("Unknown model " + name);
+        }
+        return model.reload();
+    }
+
+    /**
+     * Stops the search threads once the searches already queued are done and releases the models. Versions still used
+     * by requests are freed after them, later requests fail as if the models were not loaded
+     */
+    public void close() {
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
+        models.values().forEach(HostedModel::close);
     }
 
     @Override
     public StreamObserver<Word> getVectorMap(StreamObserver<WordVector> responseObserver) {
-        logger.debug("getVectorMap called, model loaded {}", modelLoaded);
+        logger.debug("getVectorMap called");
         return new WordStreamObserver(responseObserver);
     }
 
     @Override
     public StreamObserver<NearestToVector> getNearestWords(StreamObserver<VectorWordList> responseObserver) {
-        logger.debug("getNearestWord called, model loaded {}", modelLoaded);
+        logger.debug("getNearestWord called");
         return new NearestToVectorStreamObserver(responseObserver);
     }
 
+    @Override
+    public StreamObserver<Document> getDocumentVectors(StreamObserver<DocumentVector> responseObserver) {
+        logger.debug("getDocumentVectors called");
+        return new DocumentStreamObserver(responseObserver);
+    }
+
     @Override
     public void getStatus(VoidMessage request, StreamObserver<Status> responseObserver) {
-        logger.debug("getStatus called, model loaded {}", modelLoaded);
-        responseObserver.onNext(Status.newBuilder().setReady(modelLoaded.get()).build());
+        ModelStatus defaultStatus = models.get(DEFAULT_MODEL).status();
+        logger.debug("getStatus called, default model ready {}", defaultStatus.getReady());
+        Status.Builder status = Status.newBuilder()
+                .setReady(defaultStatus.getReady())
+                .setPhase(defaultStatus.getPhase())
+                .setProgress(defaultStatus.getReady() && !defaultStatus.getPartial() ? 1f : defaultStatus.getProgress())
+                .setLoadedRows(defaultStatus.getLoadedRows());
+
+        for (HostedModel model : models.values()) {
+            status.addModels(model.status());
+            LoadedModel current = model.current();
+            // read once, a released version drops its cache
+            ResponseCache responseCache = current == null ? null : current.responseCache();
+            if (responseCache != null) {
+                status.setCacheHits(status.getCacheHits()
+                        + responseCache.wordVectorStats().hitCount() + responseCache.nearestWordsStats().hitCount())
+                        .setCacheMisses(status.getCacheMisses()
+                                + responseCache.wordVectorStats().missCount() + responseCache.nearestWordsStats().missCount());
+            }
+        }
+        responseObserver.onNext(status.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getMetrics(VoidMessage request, StreamObserver<Metrics> responseObserver) {
+        logger.debug("getMetrics called");
+        responseObserver.onNext(metrics.snapshot());
         responseObserver.onCompleted();
     }
 
-    private void loadModel(File word2vecModelFile, boolean treeModel) {
-        Thread loadingThread = new Thread(() -> {
-            logger.info("Loading word2vec model file {}, use tree model {}", word2vecModelFile, treeModel);
-            this.model = WordVectorSerializer.readWord2VecModel(word2vecModelFile, true);
+    @Override
+    public void reloadModel(ModelReload request, StreamObserver<ModelStatus> responseObserver) {
+        String name = modelName(request.getModel());
+        logger.info("reloadModel called for model {}", name);
+        HostedModel model = models.get(name);
+        if (model == null) {
+            responseObserver.onError(unknownModelError(name));
+            return;
+        }
+        if (!model.reload()) {
+            responseObserver.onError(io.grpc.Status.FAILED_PRECONDITION
+                    .withDescription("Model " + name + " is already loading")
+                    .asRuntimeException());
+            return;
+        }
+
+        responseObserver.onNext(model.status());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getVectorsBatch(WordBatch request, StreamObserver<VectorBatch> responseObserver) {
+        logger.debug("getVectorsBatch called for {} words", request.getWordsCount());
+        LoadedModel model = acquire(request.getModel(), responseObserver);
+        if (model == null) {
+            return;
+        }
+
+        try {
+            EmbeddingStore store = model.store();
+            int wordCount = request.getWordsCount();
+            int dimension = store.dimension();
+            // the packed response holds every value in a single byte array
+            long valueCount = (long) wordCount * dimension;
+            if (valueCount * Float.BYTES > Integer.MAX_VALUE) {
+                responseObserver.onError(io.grpc.Status.INVALID_ARGUMENT
+                        .withDescription("Batch of " + wordCount + " words is too large, split it in smaller batches")
+                        .asRuntimeException());
+                return;
+            }
+            VectorBatch.Builder response = VectorBatch.newBuilder();
+
+            // rows of missing words are left as zeros
+            long lookupStart = System.nanoTime();
+            float[] values = new float[(int) valueCount];
+            for (int i = 0; i < wordCount; i++) {
+                int row = store.indexOf(request.getWordsBytes(i));
+                if (row < 0) {
+                    response.addMissing(i);
+                } else {
+                    store.copyRow(row, values, i * dimension);
+                }
+            }
+            metrics.recordStage(ServerMetrics.Stage.LOOKUP, System.nanoTime() - lookupStart);
+            metrics.addMissingWords(response.getMissingCount());
+
+            responseObserver.onNext(response
+                    .setVectors(VectorCodec.encodeMatrix(values, wordCount, dimension, request.getEncoding()))
+                    .build());
+            responseObserver.onCompleted();
+        } finally {
+            model.release();
+        }
+    }
+
+    @Override
+    public void lookupWords(WordLookup request, StreamObserver<WordMatchesBatch> responseObserver) {
+        logger.debug("lookupWords called for {} words", request.getWordsCount());
+        if (request.getMaxEdits() < 0 || request.getMaxEdits() > VocabularyTrie.MAX_EDITS) {
+            responseObserver.onError(io.grpc.Status.INVALID_ARGUMENT
+                    .withDescription("Edits must be between 0 and " + VocabularyTrie.MAX_EDITS + ", got " + request.getMaxEdits())
+                    .asRuntimeException());
+            return;
+        }
 
-            logger.info("Model file '{}' loaded", word2vecModelFile);
+        LoadedModel model = acquire(request.getModel(), responseObserver);
+        if (model == null) {
+            return;
+        }
+        if (model.wordTrie() == null) {
+            model.release();
+            // partial versions do not build the trie
+            responseObserver.onError(model.partial()
+                    ? modelNotLoadedError()
+                    : io.grpc.Status.FAILED_PRECONDITION.withDescription("Word lookups are disabled").asRuntimeException());
+            return;
+        }
+        search(model, responseObserver, () -> lookupWords(model, request, responseObserver));
+    }
 
-            if (treeModel) {
-                logger.info("Use tree model flag set, warming up model");
+    /**
+     * Searches each word in the vocabulary trie and returns the matches with their vectors
+     */
+    private void lookupWords(LoadedModel model, WordLookup request, StreamObserver<WordMatchesBatch> responseObserver) {
+        EmbeddingStore store = model.store();
+        VocabularyTrie trie = model.wordTrie();
+        int dimension = store.dimension();
+        int limit = Math.max(0, Math.min(request.getLimit(), store.size()));
+        int[] rows = new int[limit];
+        int[] edits = new int[limit];
+
+        long lookupStart = System.nanoTime();
+        WordMatchesBatch.Builder response = WordMatchesBatch.newBuilder();
+        for (String word : request.getWordsList()) {
+            int count = word.isEmpty() ? 0
+                    : trie.search(word, request.getMaxEdits(), request.getPrefix(), request.getIgnoreCase(), limit, rows, edits);
+            if (count == 0) {
+                metrics.addMissingWords(1);
+            }
 
-                ServiceTreeModelUtils modeUtils = new ServiceTreeModelUtils();
-                model.setModelUtils(modeUtils);
-                modeUtils.buildTree();
+            WordMatches.Builder matches = WordMatches.newBuilder();
+            float[] values = request.getOmitVectors() ? null : new float[count * dimension];
+            for (int i = 0; i < count; i++) {
+                matches.addWords(Word.newBuilder().setWordBytes(store.wordBytes(rows[i])))
+                        .addEdits(edits[i]);
+                if (values != null) {
+                    store.copyRow(rows[i], values, i * dimension);
+                }
+            }
+            if (values != null) {
+                matches.setVectors(VectorCodec.encodeMatrix(values, count, dimension, request.getEncoding()));
             }
+            response.addResults(matches);
+        }
+        metrics.recordStage(ServerMetrics.Stage.LOOKUP, System.nanoTime() - lookupStart);
 
-            modelLoaded.set(true);
-        }, "Word2Vec-model-loader");
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
 
-        loadingThread.start();
+    @Override
+    public void getNearestWordsBatch(NearestToVectorBatch request, StreamObserver<NearestWordsBatch> responseObserver) {
+        logger.debug("getNearestWordsBatch called for {} vectors", request.getVectors().getRows());
+        LoadedModel model = acquireSearchable(request.getModel(), responseObserver);
+        if (model != null) {
+            search(model, responseObserver, () -> nearestWordsBatch(model, request, responseObserver));
+        }
     }
 
-    private INDArray toINDArray(List<Double> vectorList) {
-        return Nd4j.create(vectorList);
+    @Override
+    public void getNearestToWords(WordAnalogy request, StreamObserver<NearestWords> responseObserver) {
+        logger.debug("getNearestToWords called for {} positive and {} negative words",
+                request.getPositiveCount(), request.getNegativeCount());
+        LoadedModel model = acquireSearchable(request.getModel(), responseObserver);
+        if (model != null) {
+            search(model, responseObserver, () -> nearestToWords(model, request, responseObserver));
+        }
     }
 
     /**
-     * internal classes
+     * Combines the input word vectors from the store and searches their nearest words, leaving the input words out
+     */
+    private void nearestToWords(LoadedModel model, WordAnalogy request, StreamObserver<NearestWords> responseObserver) {
+        EmbeddingStore store = model.store();
+        int dimension = store.dimension();
+        float[] query = new float[dimension];
+        float[] vector = new float[dimension];
+        int[] inputRows = new int[request.getPositiveCount() + request.getNegativeCount()];
+
+        long lookupStart = System.nanoTime();
+        int inputCount = 0;
+        for (int i = 0; i < inputRows.length; i++) {
+            boolean positive = i < request.getPositiveCount();
+            WeightedWord word = positive ? request.getPositive(i) : request.getNegative(i - request.getPositiveCount());
+            int row = store.indexOf(word.getWordBytes());
+            if (row < 0) {
+                metrics.addMissingWords(1);
+                continue;
+            }
+            inputRows[inputCount++] = row;
+
+            float weight = word.getWeight() == 0f ? 1f : word.getWeight();
+            float scale = (positive ? weight : -weight) * store.inverseNorm(row);
+            store.copyRow(row, vector, 0);
+            for (int j = 0; j < dimension; j++) {
+                query[j] += scale * vector[j];
+            }
+        }
+
+        metrics.recordStage(ServerMetrics.Stage.LOOKUP, System.nanoTime() - lookupStart);
+
+        NearestWords.Builder response = NearestWords.newBuilder();
+        int limit = Math.min(request.getLimit(), store.size());
+        if (inputCount > 0 && limit > 0) {
+            // input words are usually among the nearest, search enough rows to fill the limit without them
+            int searchLimit = Math.min(limit + inputCount, store.size());
+            int[] rows = new int[searchLimit];
+            float[] similarities = new float[searchLimit];
+            long scanStart = System.nanoTime();
+            int count = model.nearestRows(query, searchLimit, request.getMode(), request.getEfSearch(), rows, similarities);
+            metrics.recordStage(ServerMetrics.Stage.SCAN, System.nanoTime() - scanStart);
+
+            for (int i = 0; i < count && response.getWordsCount() < limit; i++) {
+                if (!contains(inputRows, inputCount, rows[i])) {
+                    response.addWords(Word.newBuilder().setWordBytes(store.wordBytes(rows[i])))
+                            .addSimilarities(similarities[i]);
+                }
+            }
+        }
+
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void getSimilarities(SimilarityRequest request, StreamObserver<SimilarityBlock> responseObserver) {
+        logger.debug("getSimilarities called for {} x {} words", request.getLeftCount(), request.getRightCount());
+        if (request.getPairs() && request.getLeftCount() != request.getRightCount()) {
+            responseObserver.onError(io.grpc.Status.INVALID_ARGUMENT
+                    .withDescription("Expected as many left as right words but got " + request.getLeftCount()
+                            + " and " + request.getRightCount())
+                    .asRuntimeException());
+            return;
+        }
+        LoadedModel model = acquire(request.getModel(), responseObserver);
+        if (model == null) {
+            return;
+        }
+
+        // the ready and cancel handlers can only be set before this method returns
+        SimilarityBlockSender sender = new SimilarityBlockSender(model, request, responseObserver);
+        if (searchExecutor == null) {
+            sender.start();
+        } else {
+            try {
+                searchExecutor.execute(sender::start);
+            } catch (RejectedExecutionException e) {
+                sender.finish();
+                responseObserver.onError(shuttingDownError());
+            }
+        }
+    }
+
+    private void nearestWordsBatch(LoadedModel model, NearestToVectorBatch request,
+                                   StreamObserver<NearestWordsBatch> responseObserver) {
+        EmbeddingStore store = model.store();
+        PackedMatrix vectors = request.getVectors();
+        if (vectors.getColumns() != store.dimension()) {
+            responseObserver.onError(io.grpc.Status.INVALID_ARGUMENT
+                    .withDescription("Expected vectors of size " + store.dimension() + " but got " + vectors.getColumns())
+                    .asRuntimeException());
+            return;
+        }
+
+        float[] values;
+        try {
+            values = VectorCodec.decodeMatrix(vectors);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(io.grpc.Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+
+        NearestWordsBatch.Builder response = NearestWordsBatch.newBuilder();
+        int limit = Math.min(request.getLimit(), store.size());
+        long scanStart = System.nanoTime();
+        EmbeddingStore keptStore = model.keptStore();
+        if (vectors.getRows() > 0 && limit > 0
+                && (model.useHnsw(request.getMode()) || keptStore instanceof QuantizedEmbeddingStore || model.projected())) {
+            // graph, quantized and reduced searches score one query at a time
+            float[] query = new float[store.dimension()];
+            int[] rows = new int[limit];
+            float[] similarities = new float[limit];
+            for (int r = 0; r < vectors.getRows(); r++) {
+                System.arraycopy(values, r * query.length, query, 0, query.length);
+                int count = model.nearestRows(query, limit, request.getMode(), request.getEfSearch(), rows, similarities);
+                response.addResults(toNearestWords(store, rows, similarities, count));
+            }
+        } else if (vectors.getRows() > 0 && limit > 0) {
+            TopKHeap[] nearest = new BlockedMatrixSearch(keptStore).search(values, vectors.getRows(), limit);
+
+            int[] rows = new int[limit];
+            float[] similarities = new float[limit];
+            for (TopKHeap heap : nearest) {
+                int count = heap.drainDescending(rows, similarities);
+                response.addResults(toNearestWords(store, rows, similarities, count));
+            }
+        } else {
+            for (int i = 0; i < vectors.getRows(); i++) {
+                response.addResults(NearestWords.getDefaultInstance());
+            }
+        }
+        metrics.recordStage(ServerMetrics.Stage.SCAN, System.nanoTime() - scanStart);
+
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    private static NearestWords toNearestWords(EmbeddingStore store, int[] rows, float[] similarities, int count) {
+        NearestWords.Builder words = NearestWords.newBuilder();
+        for (int i = 0; i < count; i++) {
+            words.addWords(Word.newBuilder().setWordBytes(store.wordBytes(rows[i])))
+                    .addSimilarities(similarities[i]);
+        }
+        return words.build();
+    }
+
+    /**
+     * Runs a search on the search executor or on the call thread, releasing the model once done. A failed search
+     * answers the request with an error, as an exception on the executor would otherwise leave the call open
+     */
+    private void search(LoadedModel model, StreamObserver<?> responseObserver, Runnable search) {
+        Runnable task = () -> {
+            try {
+                search.run();
+            } catch (StatusRuntimeException e) {
+                logger.debug("Search request failed", e);
+                responseObserver.onError(e);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                logger.error("Unable to process search request", e);
+                responseObserver.onError(io.grpc.Status.INTERNAL.withDescription(e.getMessage()).withCause(e)
+                        .asRuntimeException());
+            } finally {
+                model.release();
+            }
+        };
+
+        if (searchExecutor == null) {
+            task.run();
+        } else {
+            try {
+                searchExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                model.release();
+                responseObserver.onError(shuttingDownError());
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor searchExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return (ThreadPoolExecutor) Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Word2Vec-search-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static String modelName(String requested) {
+        return requested.isEmpty() ? DEFAULT_MODEL : requested;
+    }
+
+    /**
+     * Acquires the current version of a model for a stream request
+     *
+     * @param requested requested model name, empty for the default model
+     * @return current version, to be released
+     * @throws io.grpc.StatusRuntimeException if there is no model with that name or the model is not loaded yet
      */
+    private LoadedModel acquire(String requested) {
+        String name = modelName(requested);
+        HostedModel hostedModel = models.get(name);
+        if (hostedModel == null) {
+            throw unknownModelError(name);
+        }
+        LoadedModel model = hostedModel.acquire();
+        if (model == null) {
+            throw modelNotLoadedError();
+        }
+        return model;
+    }
 
-    private class ServiceTreeModelUtils extends TreeModelUtils {
-        void buildTree() {
-            checkTree();
+    /**
+     * Acquires the current version of a model for a nearest words stream request
+     *
+     * @param requested requested model name, empty for the default model
+     * @return current version, to be released
+     * @throws io.grpc.StatusRuntimeException if there is no model with that name or the model does not serve nearest
+     *                                        words yet
+     */
+    private LoadedModel acquireSearchable(String requested) {
+        LoadedModel model = acquire(requested);
+        if (!model.searchable()) {
+            model.release();
+            throw modelNotLoadedError();
         }
+        return model;
+    }
 
+    /**
+     * Acquires the current version of a model for a unary request, answering the request with an error when not possible
+     *
+     * @param requested        requested model name, empty for the default model
+     * @param responseObserver response observer of the request
+     * @return current version, to be released, or null if the request was answered with an error
+     */
+    private LoadedModel acquire(String requested, StreamObserver<?> responseObserver) {
+        String name = modelName(requested);
+        HostedModel hostedModel = models.get(name);
+        if (hostedModel == null) {
+            responseObserver.onError(unknownModelError(name));
+            return null;
+        }
+
+        LoadedModel model = hostedModel.acquire();
+        if (model == null) {
+            responseObserver.onError(modelNotLoadedError());
+        }
+        return model;
     }
 
+    /**
+     * Acquires the current version of a model for a nearest words request, answering the request with an error when
+     * the model is not loaded or is partially loaded and does not serve nearest words yet
+     *
+     * @param requested        requested model name, empty for the default model
+     * @param responseObserver response observer of the request
+     * @return current version, to be released, or null if the request was answered with an error
+     */
+    private LoadedModel acquireSearchable(String requested, StreamObserver<?> responseObserver) {
+        LoadedModel model = acquire(requested, responseObserver);
+        if (model != null && !model.searchable()) {
+            model.release();
+            responseObserver.onError(modelNotLoadedError());
+            return null;
+        }
+        return model;
+    }
+
+    private static StatusRuntimeException unknownModelError(String name) {
+        return io.grpc.Status.NOT_FOUND.withDescription("Unknown model " + name).asRuntimeException();
+    }
+
+    private static StatusRuntimeException modelNotLoadedError() {
+        return io.grpc.Status.UNAVAILABLE.withDescription("Model not loaded").asRuntimeException();
+    }
+
+    private static StatusRuntimeException shuttingDownError() {
+        return io.grpc.Status.UNAVAILABLE.withDescription("Server shutting down").asRuntimeException();
+    }
+
+    /**
+     * internal classes
+     */
+
     /**
      * Observer for getVectorMap method
      */
-    private class WordStreamObserver implements StreamObserver<Word> {
-        private final StreamObserver<WordVector> responseObserver;
+    private class WordStreamObserver extends FlowControlledStreamObserver<Word, WordVector> {
+        // per stream buffer, messages of a stream are processed one at a time
+        private float[] vector;
 
         WordStreamObserver(StreamObserver<WordVector> responseObserver) {
-            this.responseObserver = responseObserver;
+            super(responseObserver, options.getStreamWindow(), null);
         }
 
         @Override
-        public void onNext(Word word) {
+        WordVector process(Word word) {
             logger.trace("getVectorMap onNext called for word {}", word);
-            if (modelLoaded.get()) {
-                double[] vector = model.getWordVector(word.getWord());
-
-                WordVector.Builder wordVectorBuilder = WordVector.newBuilder();
-                if (vector != null) {
-                    wordVectorBuilder.setWord(word);
-                    for (double value : vector) {
-                        wordVectorBuilder.addVector(value);
+            LoadedModel model = acquire(word.getModel());
+            try {
+                return model.responseCache() == null
+                        ? wordVector(model.store(), word)
+                        : model.responseCache().wordVector(word, () -> wordVector(model.store(), word));
+            } finally {
+                model.release();
+            }
+        }
+
+        private WordVector wordVector(EmbeddingStore store, Word word) {
+            long lookupStart = System.nanoTime();
+            int row = store.indexOf(word.getWordBytes());
+
+            WordVector.Builder wordVectorBuilder = WordVector.newBuilder();
+            if (row < 0) {
+                metrics.addMissingWords(1);
+            } else {
+                wordVectorBuilder.setWord(word);
+                VectorEncoding encoding = word.getEncoding();
+                if (encoding == VectorEncoding.FLOAT32) {
+                    // row bytes are a view of the store, copied once when the response is serialized
+                    wordVectorBuilder.setPackedVector(PackedVector.newBuilder()
+                            .setEncoding(VectorEncoding.FLOAT32)
+                            .setData(store.rowBytes(row)));
+                } else {
+                    if (vector == null || vector.length != store.dimension()) {
+                        vector = new float[store.dimension()];
+                    }
+                    store.copyRow(row, vector, 0);
+
+                    if (encoding == VectorEncoding.DOUBLE) {
+                        for (float value : vector) {
+                            wordVectorBuilder.addVector(value);
+                        }
+                    } else {
+                        wordVectorBuilder.setPackedVector(VectorCodec.encode(vector, encoding));
                     }
                 }
-
-                responseObserver.onNext(wordVectorBuilder.build());
             }
+            metrics.recordStage(ServerMetrics.Stage.LOOKUP, System.nanoTime() - lookupStart);
+            return wordVectorBuilder.build();
         }
 
         @Override
         public void onError(Throwable throwable) {
             logger.error("Error retrieving word vector", throwable);
         }
+    }
+
+    /**
+     * Sends the similarities of a request. Matrix blocks are sent as the call can take them, each computed only when sent.
+     * The model is released once the last block is sent or the call is cancelled
+     */
+    private class SimilarityBlockSender {
+        private final LoadedModel model;
+        private final SimilarityRequest request;
+        private final StreamObserver<SimilarityBlock> responseObserver;
+        private final ServerCallStreamObserver<SimilarityBlock> serverCall;
+        // set once the words are looked up
+        private SimilarityMatrix matrix;
+        private SimilarityBlock.Builder nextBlock;
+        private int nextIndex;
+        private boolean completed;
+
+        SimilarityBlockSender(LoadedModel model, SimilarityRequest request, StreamObserver<SimilarityBlock> responseObserver) {
+            this.model = model;
+            this.request = request;
+            this.responseObserver = responseObserver;
+            if (responseObserver instanceof ServerCallStreamObserver) {
+                serverCall = (ServerCallStreamObserver<SimilarityBlock>) responseObserver;
+                serverCall.setOnReadyHandler(this::sendBlocks);
+                serverCall.setOnCancelHandler(this::finish);
+            } else {
+                serverCall = null;
+            }
+        }
+
+        void start() {
+            synchronized (this) {
+                if (completed) {
+                    // cancelled while queued
+                    return;
+                }
+            }
+
+            EmbeddingStore store = model.store();
+            SimilarityBlock.Builder firstBlock = SimilarityBlock.newBuilder();
+            int[] left = new int[request.getLeftCount()];
+            for (int i = 0; i < left.length; i++) {
+                left[i] = store.indexOf(request.getLeftBytes(i));
+                if (left[i] < 0) {
+                    firstBlock.addMissingLeft(i);
+                }
+            }
+            int[] right = new int[request.getRightCount()];
+            for (int i = 0; i < right.length; i++) {
+                right[i] = store.indexOf(request.getRightBytes(i));
+                if (right[i] < 0) {
+                    firstBlock.addMissingRight(i);
+                }
+            }
+
+            if (request.getPairs()) {
+                float[] similarities = SimilarityMatrix.pairs(store, left, right);
+                finish();
+                responseObserver.onNext(firstBlock
+                        .setSimilarities(VectorCodec.encodeMatrix(similarities, left.length, 1, request.getEncoding()))
+                        .build());
+                responseObserver.onCompleted();
+                return;
+            }
+
+            synchronized (this) {
+                matrix = new SimilarityMatrix(store, left, right);
+                nextBlock = firstBlock;
+            }
+            sendBlocks();
+        }
+
+        private synchronized void sendBlocks() {
+            if (matrix == null) {
+                return;
+            }
+
+            while (!completed && (serverCall == null || (serverCall.isReady() && !serverCall.isCancelled()))) {
+                // an empty matrix still gets a first block with the missing words
+                int firstRow = nextIndex * matrix.blockRows();
+                int rows = Math.min(matrix.blockRows(), matrix.rows() - firstRow);
+                float[] similarities = rows > 0 ? matrix.block(nextIndex) : new float[0];
+                responseObserver.onNext(nextBlock
+                        .setFirstRow(firstRow)
+                        .setSimilarities(VectorCodec.encodeMatrix(similarities, Math.max(0, rows), matrix.columns(),
+                                request.getEncoding()))
+                        .build());
+                nextBlock = SimilarityBlock.newBuilder();
+                nextIndex++;
+
+                if (nextIndex >= matrix.blockCount()) {
+                    finish();
+                    responseObserver.onCompleted();
+                }
+            }
+        }
+
+        private synchronized void finish() {
+            if (!completed) {
+                completed = true;
+                model.release();
+            }
+        }
+    }
+
+    /**
+     * Observer for getDocumentVectors method
+     */
+    private class DocumentStreamObserver extends FlowControlledStreamObserver<Document, DocumentVector> {
+        // per stream pooler and buffer, messages of a stream are processed one at a time
+        private DocumentPooler pooler;
+        private EmbeddingStore poolerStore;
+        private float[] vector;
+
+        DocumentStreamObserver(StreamObserver<DocumentVector> responseObserver) {
+            super(responseObserver, options.getStreamWindow(), null);
+        }
 
         @Override
-        public void onCompleted() {
-            responseObserver.onCompleted();
+        DocumentVector process(Document document) {
+            logger.trace("getDocumentVectors onNext called for {} tokens", document.getTokensCount());
+            LoadedModel model = acquire(document.getModel());
+            try {
+                return pool(model.store(), document);
+            } finally {
+                model.release();
+            }
+        }
+
+        private DocumentVector pool(EmbeddingStore store, Document document) {
+            if (poolerStore != store) {
+                pooler = new DocumentPooler(store);
+                poolerStore = store;
+                vector = new float[store.dimension()];
+            }
+            List<ByteString> tokens = document.getTokensCount() > 0
+                    ? document.getTokensList().asByteStringList()
+                    : DocumentPooler.tokenize(document.getTextBytes());
+            long lookupStart = System.nanoTime();
+            int found = pooler.pool(tokens, DocumentPooler.Mode.valueOf(document.getPooling().name()), vector);
+            metrics.recordStage(ServerMetrics.Stage.LOOKUP, System.nanoTime() - lookupStart);
+            metrics.addMissingWords(tokens.size() - found);
+
+            DocumentVector.Builder documentVector = DocumentVector.newBuilder().setFoundTokens(found);
+            if (document.getEncoding() == VectorEncoding.DOUBLE) {
+                for (float value : vector) {
+                    documentVector.addVector(value);
+                }
+            } else {
+                documentVector.setPackedVector(VectorCodec.encode(vector, document.getEncoding()));
+            }
+            return documentVector.build();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            logger.error("Error pooling document vectors", throwable);
         }
     }
 
     /**
      * Observer for getNearestWord method
      */
-    private class NearestToVectorStreamObserver implements StreamObserver<NearestToVector> {
-        private final StreamObserver<VectorWordList> responseObserver;
+    private class NearestToVectorStreamObserver extends FlowControlledStreamObserver<NearestToVector, VectorWordList> {
+        // per stream buffers, messages of a stream are processed one at a time
+        private float[] query;
+        private int[] rows;
 
         NearestToVectorStreamObserver(StreamObserver<VectorWordList> responseObserver) {
-            this.responseObserver = responseObserver;
+            super(responseObserver, options.getStreamWindow(), searchExecutor);
         }
 
         @Override
-        public void onNext(NearestToVector nearestToVector) {
+        VectorWordList process(NearestToVector nearestToVector) {
             logger.trace("getNearestWord onNext called with vector {}", nearestToVector);
-            if (modelLoaded.get()) {
-                Collection<String> nearest = model.wordsNearest(toINDArray(nearestToVector.getVectorList()), nearestToVector.getLimit());
-                List<Word> words = new ArrayList<>();
-                for (String nearWord : nearest) {
-                    words.add(Word.newBuilder().setWord(nearWord).build());
+            LoadedModel model = acquireSearchable(nearestToVector.getModel());
+            VectorWordList nearestWords;
+            try {
+                nearestWords = nearestWords(model, nearestToVector);
+            } finally {
+                model.release();
+            }
+            if (nearestToVector.getOmitVector()) {
+                return nearestWords;
+            } else if (nearestToVector.hasPackedVector()) {
+                return nearestWords.toBuilder().setPackedVector(nearestToVector.getPackedVector()).build();
+            }
+            return nearestWords.toBuilder().addAllVector(nearestToVector.getVectorList()).build();
+        }
+
+        /**
+         * Finds the nearest words in the cache or in the index, without the query vector
+         */
+        private VectorWordList nearestWords(LoadedModel model, NearestToVector nearestToVector) {
+            int limit = Math.min(nearestToVector.getLimit(), model.store().size());
+            if (limit <= 0 || !decodeQuery(model.store(), nearestToVector)) {
+                return VectorWordList.getDefaultInstance();
+            }
+
+            if (model.responseCache() == null) {
+                return searchNearestWords(model, nearestToVector, limit);
+            }
+            return model.responseCache().nearestWords(query, limit, nearestToVector.getMode(), nearestToVector.getEfSearch(),
+                    () -> searchNearestWords(model, nearestToVector, limit));
+        }
+
+        /**
+         * Decodes the query vector into the stream buffer
+         *
+         * @return false if the vector size does not match the model
+         * @throws StatusRuntimeException INVALID_ARGUMENT if the packed vector is malformed
+         */
+        private boolean decodeQuery(EmbeddingStore store, NearestToVector nearestToVector) {
+            int dimension = store.dimension();
+            int length;
+            try {
+                length = nearestToVector.hasPackedVector()
+                        ? VectorCodec.dimension(nearestToVector.getPackedVector())
+                        : nearestToVector.getVectorCount();
+            } catch (IllegalArgumentException e) {
+                throw io.grpc.Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException();
+            }
+            if (length != dimension) {
+                return false;
+            }
+
+            if (query == null || query.length != dimension) {
+                query = new float[dimension];
+            }
+            if (nearestToVector.hasPackedVector()) {
+                VectorCodec.decode(nearestToVector.getPackedVector(), query, 0);
+            } else {
+                for (int i = 0; i < dimension; i++) {
+                    query[i] = (float) nearestToVector.getVector(i);
                 }
+            }
+            return true;
+        }
+
+        /**
+         * Searches the nearest words of the decoded query, taking words straight from the store word bytes
+         */
+        private VectorWordList searchNearestWords(LoadedModel model, NearestToVector nearestToVector, int limit) {
+            VectorWordList.Builder vectorWordList = VectorWordList.newBuilder();
+            long scanStart = System.nanoTime();
 
-                VectorWordList vectorWordList = VectorWordList.newBuilder()
-                        .addAllVector(nearestToVector.getVectorList())
-                        .addAllWords(words)
-                        .build();
+            if (model.treeModel() != null && nearestToVector.getMode() != SearchMode.EXACT) {
+                Collection<String> nearest = model.treeModel().wordsNearest(Nd4j.create(query), limit);
+                metrics.recordStage(ServerMetrics.Stage.SCAN, System.nanoTime() - scanStart);
+                for (String nearWord : nearest) {
+                    vectorWordList.addWords(Word.newBuilder().setWord(nearWord));
+                }
+                return vectorWordList.build();
+            }
 
-                responseObserver.onNext(vectorWordList);
+            if (rows == null || rows.length < limit) {
+                rows = new int[limit];
             }
+            int count = model.nearestRows(query, limit, nearestToVector.getMode(), nearestToVector.getEfSearch(), rows, null);
+            metrics.recordStage(ServerMetrics.Stage.SCAN, System.nanoTime() - scanStart);
+            for (int i = 0; i < count; i++) {
+                vectorWordList.addWords(Word.newBuilder().setWordBytes(model.store().wordBytes(rows[i])));
+            }
+            return vectorWordList.build();
         }
 
         @Override
         public void onError(Throwable throwable) {
             logger.error("Error getting nearest word", throwable);
         }
-
-        @Override
-        public void onCompleted() {
-            responseObserver.onCompleted();
-        }
     }
 
 }
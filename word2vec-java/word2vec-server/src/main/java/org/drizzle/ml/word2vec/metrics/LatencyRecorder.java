@@ -0,0 +1,58 @@
+package org.drizzle.ml.word2vec.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.drizzle.ml.word2vec.service.LatencySummary;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histogram in nanoseconds. Recording is wait-free and does not allocate, values are written to the active
+ * interval histogram of a {@link Recorder}. Summaries swap the interval histogram out and add it to the histogram of
+ * all values since creation.
+ */
+public class LatencyRecorder {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    // 1% precision keeps each histogram in tens of kilobytes
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final String name;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private Histogram interval;
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Records a latency, values above 10 minutes are recorded as 10 minutes
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        recorder.recordValue(Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+    }
+
+    /**
+     * @return summary of all values recorded since creation
+     */
+    synchronized LatencySummary summary() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return LatencySummary.newBuilder()
+                .setName(name)
+                .setCount(total.getTotalCount())
+                .setMeanMicros(total.getMean() / 1000d)
+                .setP50Micros(total.getValueAtPercentile(50) / 1000d)
+                .setP90Micros(total.getValueAtPercentile(90) / 1000d)
+                .setP99Micros(total.getValueAtPercentile(99) / 1000d)
+                .setP999Micros(total.getValueAtPercentile(99.9) / 1000d)
+                .setMaxMicros(total.getMaxValue() / 1000d)
+                .build();
+    }
+}
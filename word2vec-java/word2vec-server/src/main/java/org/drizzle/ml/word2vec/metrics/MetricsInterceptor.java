@@ -0,0 +1,84 @@
+package org.drizzle.ml.word2vec.metrics;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Records the latency, status code and message counts of every call, and the serialization time of every message sent
+ */
+public class MetricsInterceptor implements ServerInterceptor {
+    private final ServerMetrics metrics;
+
+    public MetricsInterceptor(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MeteredCall<ReqT, RespT> meteredCall =
+                new MeteredCall<>(call, metrics, metrics.rpc(call.getMethodDescriptor().getFullMethodName()));
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(next.startCall(meteredCall, headers)) {
+            @Override
+            public void onMessage(ReqT message) {
+                meteredCall.rpc.messageReceived();
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onCancel() {
+                meteredCall.closed(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static class MeteredCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<MeteredCall> CLOSED =
+                AtomicIntegerFieldUpdater.newUpdater(MeteredCall.class, "closed");
+
+        private final ServerMetrics metrics;
+        private final ServerMetrics.RpcMetrics rpc;
+        private final long start = System.nanoTime();
+        private volatile int closed;
+
+        MeteredCall(ServerCall<ReqT, RespT> call, ServerMetrics metrics, ServerMetrics.RpcMetrics rpc) {
+            super(call);
+            this.metrics = metrics;
+            this.rpc = rpc;
+            rpc.callStarted();
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            rpc.messageSent();
+            long sendStart = System.nanoTime();
+            // the message is serialized and framed before this returns
+            super.sendMessage(message);
+            metrics.recordStage(ServerMetrics.Stage.SERIALIZATION, System.nanoTime() - sendStart);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            closed(status.getCode());
+            super.close(status, trailers);
+        }
+
+        /**
+         * Records the call once, when closed by the handler or cancelled by the client
+         */
+        void closed(Status.Code code) {
+            if (CLOSED.compareAndSet(this, 0, 1)) {
+                rpc.callClosed(code, System.nanoTime() - start);
+            }
+        }
+    }
+}
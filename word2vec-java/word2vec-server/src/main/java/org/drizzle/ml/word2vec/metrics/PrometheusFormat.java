@@ -0,0 +1,82 @@
+package org.drizzle.ml.word2vec.metrics;
+
+import org.drizzle.ml.word2vec.service.LatencySummary;
+import org.drizzle.ml.word2vec.service.MetricValue;
+import org.drizzle.ml.word2vec.service.Metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Writes metrics in the Prometheus text exposition format. Latencies are written as summaries in seconds
+ */
+public final class PrometheusFormat {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private PrometheusFormat() {
+    }
+
+    public static String write(Metrics metrics) {
+        StringBuilder text = new StringBuilder();
+        writeSummary(text, "w2v_rpc_latency_seconds", "method", "Call latency by RPC method.",
+                metrics.getRpcLatenciesList());
+        writeSummary(text, "w2v_stage_latency_seconds", "stage", "Request processing latency by stage.",
+                metrics.getStageLatenciesList());
+        writeValues(text, "counter", metrics.getCountersList());
+        writeValues(text, "gauge", metrics.getGaugesList());
+        return text.toString();
+    }
+
+    private static void writeSummary(StringBuilder text, String name, String label, String help,
+                                     List<LatencySummary> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" summary\n");
+        for (LatencySummary summary : summaries) {
+            writeQuantile(text, name, label, summary, "0.5", LatencySummary::getP50Micros);
+            writeQuantile(text, name, label, summary, "0.9", LatencySummary::getP90Micros);
+            writeQuantile(text, name, label, summary, "0.99", LatencySummary::getP99Micros);
+            writeQuantile(text, name, label, summary, "0.999", LatencySummary::getP999Micros);
+            String labels = "{" + label + "=\"" + escape(summary.getName()) + "\"}";
+            text.append(name).append("_count").append(labels).append(' ').append(summary.getCount()).append('\n');
+            text.append(name).append("_sum").append(labels).append(' ')
+                    .append(summary.getMeanMicros() * summary.getCount() / 1e6).append('\n');
+        }
+    }
+
+    private static void writeQuantile(StringBuilder text, String name, String label, LatencySummary summary,
+                                      String quantile, ToDoubleFunction<LatencySummary> micros) {
+        text.append(name).append('{').append(label).append("=\"").append(escape(summary.getName()))
+                .append("\",quantile=\"").append(quantile).append("\"} ")
+                .append(micros.applyAsDouble(summary) / 1e6).append('\n');
+    }
+
+    private static void writeValues(StringBuilder text, String type, List<MetricValue> values) {
+        String previousName = null;
+        for (MetricValue value : values) {
+            // values of the same metric are grouped after a single type line
+            if (!value.getName().equals(previousName)) {
+                text.append("# TYPE ").append(value.getName()).append(' ').append(type).append('\n');
+                previousName = value.getName();
+            }
+            text.append(value.getName());
+            if (value.getLabelsCount() > 0) {
+                text.append('{');
+                String separator = "";
+                for (Map.Entry<String, String> label : value.getLabelsMap().entrySet()) {
+                    text.append(separator).append(label.getKey()).append("=\"").append(escape(label.getValue())).append('"');
+                    separator = ",";
+                }
+                text.append('}');
+            }
+            text.append(' ').append(value.getValue()).append('\n');
+        }
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,178 @@
+package org.drizzle.ml.word2vec.metrics;
+
+import io.grpc.Status;
+import org.drizzle.ml.word2vec.service.Metrics;
+import org.drizzle.ml.word2vec.service.MetricValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics of a server: latency of each RPC and processing stage, call and message counters and gauges registered by
+ * the handler. Recording only updates histograms and adders, without locks or allocations, summaries are computed when
+ * the metrics are read.
+ */
+public class ServerMetrics {
+
+    /**
+     * Processing stages of a request
+     */
+    public enum Stage {
+        /**
+         * word lookups in the embedding store and vector copies
+         */
+        LOOKUP,
+        /**
+         * nearest words searches, exact scans and index searches
+         */
+        SCAN,
+        /**
+         * response serialization and framing when a message is sent
+         */
+        SERIALIZATION
+    }
+
+    private final Map<String, RpcMetrics> rpcs = new ConcurrentHashMap<>();
+    private final LatencyRecorder[] stages = new LatencyRecorder[Stage.values().length];
+    private final LongAdder missingWords = new LongAdder();
+    // sorted so metrics are reported in a stable order
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    public ServerMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages[stage.ordinal()] = new LatencyRecorder(stage.name().toLowerCase());
+        }
+    }
+
+    /**
+     * Returns the metrics of an RPC method, created on its first call
+     *
+     * @param fullMethodName full method name, service name included
+     * @return metrics of the method
+     */
+    public RpcMetrics rpc(String fullMethodName) {
+        RpcMetrics metrics = rpcs.get(fullMethodName);
+        return metrics != null ? metrics
+                : rpcs.computeIfAbsent(fullMethodName, name -> new RpcMetrics(name.substring(name.lastIndexOf('/') + 1)));
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Counts words of requests not found in the model
+     *
+     * @param count number of missing words
+     */
+    public void addMissingWords(long count) {
+        missingWords.add(count);
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name and label
+     *
+     * @param name       metric name
+     * @param labelName  label name, null for none
+     * @param labelValue label value
+     * @param value      current value of the gauge
+     */
+    public void registerGauge(String name, String labelName, String labelValue, DoubleSupplier value) {
+        gauges.put(name + "/" + labelName + "/" + labelValue, new Gauge(name, labelName, labelValue, value));
+    }
+
+    /**
+     * @return metrics since the server started
+     */
+    public Metrics snapshot() {
+        Metrics.Builder metrics = Metrics.newBuilder();
+        for (LatencyRecorder stage : stages) {
+            metrics.addStageLatencies(stage.summary());
+        }
+
+        rpcs.values().stream().sorted((a, b) -> a.name.compareTo(b.name)).forEach(rpc -> {
+            metrics.addRpcLatencies(rpc.latency.summary());
+            Status.Code[] codes = Status.Code.values();
+            for (int i = 0; i < codes.length; i++) {
+                long calls = rpc.closedCalls[i].sum();
+                if (calls > 0) {
+                    metrics.addCounters(value("w2v_rpc_calls_total", calls)
+                            .putLabels("method", rpc.name).putLabels("code", codes[i].name()));
+                }
+            }
+            metrics.addCounters(value("w2v_rpc_messages_received_total", rpc.received.sum()).putLabels("method", rpc.name));
+            metrics.addCounters(value("w2v_rpc_messages_sent_total", rpc.sent.sum()).putLabels("method", rpc.name));
+            metrics.addGauges(value("w2v_rpc_in_flight", rpc.inFlight.sum()).putLabels("method", rpc.name));
+        });
+        metrics.addCounters(value("w2v_missing_words_total", missingWords.sum()));
+
+        for (Gauge gauge : gauges.values()) {
+            MetricValue.Builder value = value(gauge.name, gauge.value.getAsDouble());
+            if (gauge.labelName != null) {
+                value.putLabels(gauge.labelName, gauge.labelValue);
+            }
+            metrics.addGauges(value);
+        }
+        return metrics.build();
+    }
+
+    private static MetricValue.Builder value(String name, double value) {
+        return MetricValue.newBuilder().setName(name).setValue(value);
+    }
+
+    /**
+     * Latency and counters of an RPC method
+     */
+    public static class RpcMetrics {
+        private final String name;
+        private final LatencyRecorder latency;
+        private final LongAdder received = new LongAdder();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        // indexed by status code ordinal
+        private final LongAdder[] closedCalls = new LongAdder[Status.Code.values().length];
+
+        RpcMetrics(String name) {
+            this.name = name;
+            this.latency = new LatencyRecorder(name);
+            for (int i = 0; i < closedCalls.length; i++) {
+                closedCalls[i] = new LongAdder();
+            }
+        }
+
+        void callStarted() {
+            inFlight.increment();
+        }
+
+        void callClosed(Status.Code code, long nanos) {
+            latency.record(nanos);
+            closedCalls[code.ordinal()].increment();
+            inFlight.decrement();
+        }
+
+        void messageReceived() {
+            received.increment();
+        }
+
+        void messageSent() {
+            sent.increment();
+        }
+    }
+
+    private static class Gauge {
+        private final String name;
+        private final String labelName;
+        private final String labelValue;
+        private final DoubleSupplier value;
+
+        Gauge(String name, String labelName, String labelValue, DoubleSupplier value) {
+            this.name = name;
+            this.labelName = labelName;
+            this.labelValue = labelValue;
+            this.value = value;
+        }
+    }
+}
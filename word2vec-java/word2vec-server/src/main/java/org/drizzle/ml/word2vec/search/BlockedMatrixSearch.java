@@ -0,0 +1,79 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.drizzle.ml.word2vec.store.VectorMath;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Cosine similarity search for many query vectors at once.
+ * The embedding table is scanned in row blocks, each block scored against all queries with a single matrix multiply,
+ * keeping memory for the block copy and the score matrix bounded regardless of vocabulary size.
+ */
+public class BlockedMatrixSearch {
+    private static final long MAX_SCORES_PER_BLOCK = 4L * 1024 * 1024;
+    private static final long MAX_VALUES_PER_BLOCK = 4L * 1024 * 1024;
+    private static final int MIN_BLOCK_ROWS = 256;
+
+    private final EmbeddingStore store;
+
+    public BlockedMatrixSearch(EmbeddingStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Finds the limit rows with the highest cosine similarity to each query
+     *
+     * @param queries    row-major query matrix, one vector per row
+     * @param queryCount number of query vectors
+     * @param limit      maximum number of rows returned per query
+     * @return one heap per query holding the nearest rows and their similarities
+     */
+    public TopKHeap[] search(float[] queries, int queryCount, int limit) {
+        int dimension = store.dimension();
+        int tableRows = store.size();
+        int k = Math.min(limit, tableRows);
+
+        float[] inverseQueryNorms = new float[queryCount];
+        TopKHeap[] heaps = new TopKHeap[queryCount];
+        for (int q = 0; q < queryCount; q++) {
+            inverseQueryNorms[q] = VectorMath.inverseNorm(queries, q * dimension, dimension);
+            heaps[q] = new TopKHeap(k);
+        }
+
+        INDArray queryMatrix = Nd4j.create(queries, new int[]{queryCount, dimension}, 'c');
+        long scoreRows = Math.max(MIN_BLOCK_ROWS, MAX_SCORES_PER_BLOCK / Math.max(1, queryCount));
+        long valueRows = Math.max(1, MAX_VALUES_PER_BLOCK / Math.max(1, dimension));
+        int blockRows = (int) Math.min(tableRows, Math.min(scoreRows, valueRows));
+        float[] blockValues = new float[blockRows * dimension];
+
+        for (int start = 0; start < tableRows; start += blockRows) {
+            int width = Math.min(tableRows, start + blockRows) - start;
+            for (int i = 0; i < width; i++) {
+                store.copyRow(start + i, blockValues, i * dimension);
+            }
+
+            // the last block is usually shorter, its matrix only covers the rows copied
+            float[] values = width == blockRows ? blockValues : Arrays.copyOf(blockValues, width * dimension);
+            INDArray block = Nd4j.create(values, new int[]{width, dimension}, 'c');
+            float[] scores = queryMatrix.mmul(block.transpose()).dup('c').data().asFloat();
+
+            for (int q = 0; q < queryCount; q++) {
+                TopKHeap heap = heaps[q];
+                float inverseQueryNorm = inverseQueryNorms[q];
+                int offset = q * width;
+
+                for (int i = 0; i < width; i++) {
+                    float similarity = scores[offset + i] * store.inverseNorm(start + i) * inverseQueryNorm;
+                    if (similarity > heap.threshold()) {
+                        heap.offer(start + i, similarity);
+                    }
+                }
+            }
+        }
+
+        return heaps;
+    }
+}
@@ -0,0 +1,92 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.drizzle.ml.word2vec.store.VectorMath;
+
+/**
+ * Exact cosine similarity top-k search over all rows of a store.
+ * Rows are bulk copied in blocks to a per thread scratch array and scored with unrolled dot products against
+ * the normalized query, keeping only the best k in a bounded heap. No sorting other than the final k entries and
+ * no allocation per query once the scratch buffers of a thread are sized.
+ */
+public class ExactNearestSearch implements NearestSearch {
+    private static final int BLOCK_ROWS = 1024;
+
+    private final EmbeddingStore store;
+    private final ThreadLocal<Scratch> scratch;
+
+    public ExactNearestSearch(EmbeddingStore store) {
+        this.store = store;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(store.dimension()));
+    }
+
+    @Override
+    public int search(float[] vector, int limit, int[] rows, float[] similarities) {
+        return search(vector, limit, 0, store.size(), rows, similarities);
+    }
+
+    /**
+     * Finds the rows in [firstRow, endRow) with the highest cosine similarity to a vector
+     *
+     * @param vector       query vector with store.dimension() elements
+     * @param limit        maximum number of rows returned
+     * @param firstRow     first row scanned
+     * @param endRow       row after the last row scanned
+     * @param rows         destination of the row ids, at least limit long
+     * @param similarities destination of the similarities, at least limit long, may be null
+     * @return number of rows found, written by descending similarity
+     */
+    public int search(float[] vector, int limit, int firstRow, int endRow, int[] rows, float[] similarities) {
+        int dimension = store.dimension();
+        Scratch buffers = scratch.get();
+        TopKHeap heap = buffers.heap(Math.min(limit, endRow - firstRow));
+        if (heap.capacity() <= 0) {
+            return 0;
+        }
+
+        float inverseQueryNorm = VectorMath.inverseNorm(vector, 0, dimension);
+        float[] query = buffers.query;
+        for (int i = 0; i < dimension; i++) {
+            query[i] = vector[i] * inverseQueryNorm;
+        }
+
+        float[] block = buffers.block;
+        for (int start = firstRow; start < endRow; start += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, endRow - start);
+            store.copyRows(start, count, block);
+
+            float threshold = heap.threshold();
+            for (int i = 0; i < count; i++) {
+                float similarity = VectorMath.dot(block, i * dimension, query, 0, dimension) * store.inverseNorm(start + i);
+                if (similarity > threshold) {
+                    heap.offer(start + i, similarity);
+                    threshold = heap.threshold();
+                }
+            }
+        }
+
+        return heap.drainDescending(rows, similarities);
+    }
+
+    /**
+     * Per thread buffers
+     */
+    private static final class Scratch {
+        private final float[] query;
+        private final float[] block;
+        private TopKHeap heap = new TopKHeap(16);
+
+        Scratch(int dimension) {
+            this.query = new float[dimension];
+            this.block = new float[BLOCK_ROWS * dimension];
+        }
+
+        TopKHeap heap(int capacity) {
+            if (capacity > heap.maxCapacity()) {
+                heap = new TopKHeap(capacity);
+            }
+            heap.reset(Math.max(0, capacity));
+            return heap;
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.drizzle.ml.word2vec.store.ProgressListener;
+import org.drizzle.ml.word2vec.store.VectorMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Hierarchical navigable small world graph for approximate cosine similarity search.
+ * See Malkov and Yashunin, "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs".
+ * <p>
+ * Neighbour lists are stored in flat int arrays, each list prefixed by its length. Level 0 holds up to 2 * m neighbours
+ * per node, upper levels up to m. Vectors are not copied, distances are computed against the store rows.
+ * <p>
+ * Nodes can be inserted from several threads. Neighbour lists are read and written holding a lock striped by row,
+ * and an insert raising the top level holds the entry point lock until done, as in the reference implementation.
+ */
+public class HnswIndex {
+    private static final Logger logger = LoggerFactory.getLogger(HnswIndex.class);
+
+    private static final int MAGIC = 0x57534e48;
+    private static final int VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+    private static final int PROGRESS_LOG_INTERVAL = 100_000;
+    private static final int LOCK_STRIPES = 1 << 12;
+
+    private final EmbeddingStore store;
+    private final int m;
+    private final int maxNeighbours0;
+    private final int efConstruction;
+    private final byte[] levels;
+    private final int[] level0;
+    private final int[][] upperLevels;
+    private final ThreadLocal<Scratch> scratch;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ReentrantLock entryPointLock = new ReentrantLock();
+
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+
+    private HnswIndex(EmbeddingStore store, int m, int efConstruction) {
+        this.store = store;
+        this.m = m;
+        this.maxNeighbours0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levels = new byte[store.size()];
+        this.level0 = new int[store.size() * (maxNeighbours0 + 1)];
+        this.upperLevels = new int[store.size()][];
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(store.dimension(), Math.max(efConstruction, maxNeighbours0)));
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Builds an index with all rows of a store
+     *
+     * @param store          vectors to index
+     * @param m              number of neighbours per node on upper levels, twice as many on level 0
+     * @param efConstruction size of the candidate list used when inserting nodes
+     * @param seed           seed for the random level assignment
+     * @return index
+     */
+    public static HnswIndex build(EmbeddingStore store, int m, int efConstruction, long seed) {
+        HnswIndex index = index(store, m, efConstruction, seed);
+        for (int row = 1; row < store.size(); row++) {
+            index.insert(row);
+            logProgress(row + 1, store.size());
+        }
+        return index;
+    }
+
+    /**
+     * Builds an index with all rows of a store, inserting rows in parallel.
+     * Levels are still assigned from the seed, but the graph depends on the order threads insert rows in
+     *
+     * @param store          vectors to index
+     * @param m              number of neighbours per node on upper levels, twice as many on level 0
+     * @param efConstruction size of the candidate list used when inserting nodes
+     * @param seed           seed for the random level assignment
+     * @param pool           pool running the inserts
+     * @param listener       notified of the number of rows inserted
+     * @return index
+     */
+    public static HnswIndex build(EmbeddingStore store, int m, int efConstruction, long seed,
+                                  ForkJoinPool pool, ProgressListener listener) {
+        HnswIndex index = index(store, m, efConstruction, seed);
+        AtomicInteger inserted = new AtomicInteger(Math.min(1, store.size()));
+
+        try {
+            pool.submit(() -> IntStream.range(1, store.size()).parallel().forEach(row -> {
+                index.insert(row);
+                int done = inserted.incrementAndGet();
+                logProgress(done, store.size());
+                listener.progress(done, store.size());
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted building HNSW index", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to build HNSW index", e.getCause());
+        }
+        return index;
+    }
+
+    /**
+     * Creates an index with levels assigned to all rows and the first row as entry point
+     */
+    private static HnswIndex index(EmbeddingStore store, int m, int efConstruction, long seed) {
+        HnswIndex index = new HnswIndex(store, m, efConstruction);
+        Random random = new Random(seed);
+        double levelMultiplier = 1d / Math.log(m);
+
+        for (int row = 0; row < store.size(); row++) {
+            int level = (int) Math.min(MAX_LEVEL, Math.floor(-Math.log(1d - random.nextDouble()) * levelMultiplier));
+            index.levels[row] = (byte) level;
+            if (level > 0) {
+                index.upperLevels[row] = index.newUpperLevels(level);
+            }
+        }
+
+        if (store.size() > 0) {
+            index.entryPoint = 0;
+            index.maxLevel = index.levels[0];
+        }
+        return index;
+    }
+
+    private static void logProgress(int inserted, int rows) {
+        if (inserted % PROGRESS_LOG_INTERVAL == 0) {
+            logger.info("HNSW index built for {} of {} words", inserted, rows);
+        }
+    }
+
+    /**
+     * Loads an index saved with {@link #save(File)}
+     *
+     * @param store store the index was built for
+     * @param file  index file
+     * @return index
+     * @throws IOException if the file cannot be read or was not built for a store of the same size
+     */
+    public static HnswIndex load(EmbeddingStore store, File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException(file + " is not a HNSW index file");
+            }
+
+            int rows = input.readInt();
+            if (rows != store.size()) {
+                throw new IOException("HNSW index " + file + " has " + rows + " words, model has " + store.size());
+            }
+
+            HnswIndex index = new HnswIndex(store, input.readInt(), input.readInt());
+            index.maxLevel = input.readInt();
+            index.entryPoint = input.readInt();
+
+            input.readFully(index.levels);
+            for (int i = 0; i < index.level0.length; i++) {
+                index.level0[i] = input.readInt();
+            }
+            for (int row = 0; row < rows; row++) {
+                if (index.levels[row] > 0) {
+                    int[] upper = index.newUpperLevels(index.levels[row]);
+                    for (int i = 0; i < upper.length; i++) {
+                        upper[i] = input.readInt();
+                    }
+                    index.upperLevels[row] = upper;
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Saves the index, which can be loaded later for the same store
+     *
+     * @param file destination file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(store.size());
+            output.writeInt(m);
+            output.writeInt(efConstruction);
+            output.writeInt(maxLevel);
+            output.writeInt(entryPoint);
+
+            output.write(levels);
+            for (int value : level0) {
+                output.writeInt(value);
+            }
+            for (int[] upper : upperLevels) {
+                if (upper != null) {
+                    for (int value : upper) {
+                        output.writeInt(value);
+                    }
+                }
+            }
+        }
+    }
+
+    public int m() {
+        return m;
+    }
+
+    public int efConstruction() {
+        return efConstruction;
+    }
+
+    /**
+     * Finds rows with high cosine similarity to a vector
+     *
+     * @param vector       query vector with store.dimension() elements
+     * @param limit        maximum number of rows returned
+     * @param ef           size of the candidate list, larger values improve recall at the cost of latency
+     * @param rows         destination of the row ids, at least limit long
+     * @param similarities destination of the similarities, at least limit long, may be null
+     * @return number of rows found, written by descending similarity
+     */
+    public int search(float[] vector, int limit, int ef, int[] rows, float[] similarities) {
+        if (entryPoint < 0 || limit <= 0) {
+            return 0;
+        }
+
+        Scratch buffers = scratch.get();
+        float[] query = buffers.normalizedQuery(vector);
+
+        int current = entryPoint;
+        float currentSimilarity = similarity(current, query);
+        for (int level = maxLevel; level > 0; level--) {
+            current = greedyClosest(query, current, currentSimilarity, level);
+            currentSimilarity = similarity(current, query);
+        }
+
+        int found = searchLevel(buffers, query, current, currentSimilarity, Math.max(ef, limit), 0);
+        int count = Math.min(found, limit);
+        System.arraycopy(buffers.resultRows, 0, rows, 0, count);
+        if (similarities != null) {
+            System.arraycopy(buffers.resultSimilarities, 0, similarities, 0, count);
+        }
+        return count;
+    }
+
+    private void insert(int row) {
+        int level = levels[row];
+        int currentMaxLevel = maxLevel;
+        boolean raisesLevel = level > currentMaxLevel;
+        if (raisesLevel) {
+            entryPointLock.lock();
+            currentMaxLevel = maxLevel;
+            raisesLevel = level > currentMaxLevel;
+            if (!raisesLevel) {
+                entryPointLock.unlock();
+            }
+        }
+
+        try {
+            insert(row, level, entryPoint, currentMaxLevel);
+            if (raisesLevel) {
+                entryPoint = row;
+                maxLevel = level;
+            }
+        } finally {
+            if (raisesLevel) {
+                entryPointLock.unlock();
+            }
+        }
+    }
+
+    private void insert(int row, int level, int entry, int topLevel) {
+        Scratch buffers = scratch.get();
+        store.copyRow(row, buffers.query, 0);
+        float[] query = buffers.normalizedQuery(buffers.query);
+
+        int current = entry;
+        float currentSimilarity = similarity(current, query);
+        for (int l = topLevel; l > level; l--) {
+            current = greedyClosest(query, current, currentSimilarity, l);
+            currentSimilarity = similarity(current, query);
+        }
+
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            int found = searchLevel(buffers, query, current, currentSimilarity, efConstruction, l);
+            int maxNeighbours = l == 0 ? maxNeighbours0 : m;
+
+            int[] candidates = buffers.resultRows.clone();
+            float[] candidateSimilarities = buffers.resultSimilarities.clone();
+            int selected = selectNeighbours(buffers, candidates, candidateSimilarities, found, maxNeighbours);
+
+            int[] neighbours = neighbourArray(row, l);
+            int offset = neighbourOffset(row, l);
+            synchronized (lock(row)) {
+                neighbours[offset] = selected;
+                System.arraycopy(candidates, 0, neighbours, offset + 1, selected);
+            }
+
+            for (int i = 0; i < selected; i++) {
+                link(buffers, candidates[i], row, candidateSimilarities[i], l);
+            }
+
+            current = candidates[0];
+            currentSimilarity = candidateSimilarities[0];
+        }
+    }
+
+    /**
+     * Adds target to the neighbours of node, pruning the list with the selection heuristic when full
+     */
+    private void link(Scratch buffers, int node, int target, float similarity, int level) {
+        synchronized (lock(node)) {
+            linkLocked(buffers, node, target, similarity, level);
+        }
+    }
+
+    private void linkLocked(Scratch buffers, int node, int target, float similarity, int level) {
+        int[] neighbours = neighbourArray(node, level);
+        int offset = neighbourOffset(node, level);
+        int count = neighbours[offset];
+        int maxNeighbours = level == 0 ? maxNeighbours0 : m;
+
+        if (count < maxNeighbours) {
+            neighbours[offset + 1 + count] = target;
+            neighbours[offset] = count + 1;
+            return;
+        }
+
+        float[] nodeVector = buffers.normalizedRow(node);
+        int[] candidates = buffers.pruneRows;
+        float[] candidateSimilarities = buffers.pruneSimilarities;
+        TopKHeap heap = buffers.pruneHeap;
+        heap.reset(count + 1);
+        for (int i = 0; i < count; i++) {
+            int neighbour = neighbours[offset + 1 + i];
+            heap.offer(neighbour, similarity(neighbour, nodeVector));
+        }
+        heap.offer(target, similarity);
+        int candidateCount = heap.drainDescending(candidates, candidateSimilarities);
+
+        int selected = selectNeighbours(buffers, candidates, candidateSimilarities, candidateCount, maxNeighbours);
+        neighbours[offset] = selected;
+        System.arraycopy(candidates, 0, neighbours, offset + 1, selected);
+    }
+
+    /**
+     * Neighbour selection heuristic, keeping candidates closer to the base node than to any already selected neighbour.
+     * Candidates must be ordered by descending similarity to the base node. Selected rows are moved to the start of
+     * the arrays, discarded candidates fill the remaining slots if fewer than maxNeighbours are selected.
+     *
+     * @return number of selected candidates
+     */
+    private int selectNeighbours(Scratch buffers, int[] candidates, float[] similarities, int count, int maxNeighbours) {
+        if (count <= maxNeighbours) {
+            return count;
+        }
+
+        int selected = 0;
+        int discarded = 0;
+        int[] discardedRows = buffers.discardedRows;
+        float[] discardedSimilarities = buffers.discardedSimilarities;
+
+        for (int i = 0; i < count && selected < maxNeighbours; i++) {
+            int candidate = candidates[i];
+            float[] candidateVector = buffers.normalizedRow(candidate);
+
+            boolean keep = true;
+            for (int j = 0; j < selected; j++) {
+                if (similarity(candidates[j], candidateVector) > similarities[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+
+            if (keep) {
+                candidates[selected] = candidate;
+                similarities[selected] = similarities[i];
+                selected++;
+            } else {
+                discardedRows[discarded] = candidate;
+                discardedSimilarities[discarded] = similarities[i];
+                discarded++;
+            }
+        }
+
+        for (int i = 0; i < discarded && selected < maxNeighbours; i++) {
+            candidates[selected] = discardedRows[i];
+            similarities[selected] = discardedSimilarities[i];
+            selected++;
+        }
+        return selected;
+    }
+
+    private int greedyClosest(float[] query, int current, float currentSimilarity, int level) {
+        int[] neighbours = scratch.get().neighbours;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int count = copyNeighbours(current, level, neighbours);
+
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbours[i];
+                float similarity = similarity(neighbour, query);
+                if (similarity > currentSimilarity) {
+                    current = neighbour;
+                    currentSimilarity = similarity;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best first search on one level, leaving the ef closest nodes found in the scratch result arrays
+     *
+     * @return number of nodes found
+     */
+    private int searchLevel(Scratch buffers, float[] query, int entry, float entrySimilarity, int ef, int level) {
+        VisitedSet visited = buffers.visited;
+        CandidateQueue candidates = buffers.candidates;
+        TopKHeap results = buffers.results(ef);
+        int[] neighbours = buffers.neighbours;
+        visited.clear();
+        candidates.clear();
+
+        visited.add(entry);
+        candidates.push(entry, entrySimilarity);
+        results.offer(entry, entrySimilarity);
+
+        while (candidates.size() > 0) {
+            if (candidates.topSimilarity() < results.threshold()) {
+                break;
+            }
+            int node = candidates.pop();
+
+            int count = copyNeighbours(node, level, neighbours);
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbours[i];
+                if (visited.add(neighbour)) {
+                    float similarity = similarity(neighbour, query);
+                    if (similarity > results.threshold()) {
+                        candidates.push(neighbour, similarity);
+                        results.offer(neighbour, similarity);
+                    }
+                }
+            }
+        }
+
+        return results.drainDescending(buffers.resultRows, buffers.resultSimilarities);
+    }
+
+    private float similarity(int row, float[] normalizedVector) {
+        return store.dot(row, normalizedVector) * store.inverseNorm(row);
+    }
+
+    /**
+     * Copies a neighbour list holding its lock, as other threads may be updating it while the index is built
+     *
+     * @return number of neighbours
+     */
+    private int copyNeighbours(int row, int level, int[] target) {
+        int[] neighbours = neighbourArray(row, level);
+        int offset = neighbourOffset(row, level);
+        synchronized (lock(row)) {
+            int count = neighbours[offset];
+            System.arraycopy(neighbours, offset + 1, target, 0, count);
+            return count;
+        }
+    }
+
+    private Object lock(int row) {
+        return locks[row & (LOCK_STRIPES - 1)];
+    }
+
+    private int[] neighbourArray(int row, int level) {
+        return level == 0 ? level0 : upperLevels[row];
+    }
+
+    private int neighbourOffset(int row, int level) {
+        return level == 0 ? row * (maxNeighbours0 + 1) : (level - 1) * (m + 1);
+    }
+
+    private int[] newUpperLevels(int level) {
+        return new int[level * (m + 1)];
+    }
+
+    /**
+     * Per thread buffers
+     */
+    private final class Scratch {
+        private final float[] query;
+        private final float[] row;
+        private final VisitedSet visited = new VisitedSet(1024);
+        private final CandidateQueue candidates = new CandidateQueue(256);
+        private final int[] neighbours = new int[maxNeighbours0];
+        private TopKHeap results;
+        private int[] resultRows;
+        private float[] resultSimilarities;
+        private final TopKHeap pruneHeap;
+        private final int[] pruneRows;
+        private final float[] pruneSimilarities;
+        private final int[] discardedRows;
+        private final float[] discardedSimilarities;
+
+        Scratch(int dimension, int capacity) {
+            this.query = new float[dimension];
+            this.row = new float[dimension];
+            this.results = new TopKHeap(capacity);
+            this.resultRows = new int[capacity];
+            this.resultSimilarities = new float[capacity];
+            this.pruneHeap = new TopKHeap(maxNeighbours0 + 1);
+            this.pruneRows = new int[maxNeighbours0 + 1];
+            this.pruneSimilarities = new float[maxNeighbours0 + 1];
+            this.discardedRows = new int[capacity + 1];
+            this.discardedSimilarities = new float[capacity + 1];
+        }
+
+        TopKHeap results(int ef) {
+            if (ef > results.maxCapacity()) {
+                results = new TopKHeap(ef);
+                resultRows = new int[ef];
+                resultSimilarities = new float[ef];
+            }
+            results.reset(ef);
+            return results;
+        }
+
+        float[] normalizedQuery(float[] vector) {
+            float inverseNorm = VectorMath.inverseNorm(vector, 0, query.length);
+            for (int i = 0; i < query.length; i++) {
+                query[i] = vector[i] * inverseNorm;
+            }
+            return query;
+        }
+
+        float[] normalizedRow(int node) {
+            store.copyRow(node, row, 0);
+            float inverseNorm = store.inverseNorm(node);
+            for (int i = 0; i < row.length; i++) {
+                row[i] *= inverseNorm;
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Growable max-heap of candidate nodes ordered by similarity
+     */
+    private static final class CandidateQueue {
+        private int[] rows;
+        private float[] similarities;
+        private int size;
+
+        CandidateQueue(int capacity) {
+            rows = new int[capacity];
+            similarities = new float[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        float topSimilarity() {
+            return similarities[0];
+        }
+
+        void push(int row, float similarity) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                similarities = Arrays.copyOf(similarities, size * 2);
+            }
+
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (similarities[parent] >= similarity) {
+                    break;
+                }
+                rows[index] = rows[parent];
+                similarities[index] = similarities[parent];
+                index = parent;
+            }
+            rows[index] = row;
+            similarities[index] = similarity;
+        }
+
+        int pop() {
+            int top = rows[0];
+            size--;
+            int row = rows[size];
+            float similarity = similarities[size];
+
+            int index = 0;
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && similarities[child + 1] > similarities[child]) {
+                    child++;
+                }
+                if (similarity >= similarities[child]) {
+                    break;
+                }
+                rows[index] = rows[child];
+                similarities[index] = similarities[child];
+                index = child;
+            }
+            if (size > 0) {
+                rows[index] = row;
+                similarities[index] = similarity;
+            }
+            return top;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.drizzle.ml.word2vec.search;
+
+/**
+ * Top-k cosine similarity search over all rows of a store
+ */
+public interface NearestSearch {
+
+    /**
+     * Finds the rows with the highest cosine similarity to a vector
+     *
+     * @param vector       query vector with store.dimension() elements
+     * @param limit        maximum number of rows returned
+     * @param rows         destination of the row ids, at least limit long
+     * @param similarities destination of the similarities, at least limit long, may be null
+     * @return number of rows found, written by descending similarity
+     */
+    int search(float[] vector, int limit, int[] rows, float[] similarities);
+}
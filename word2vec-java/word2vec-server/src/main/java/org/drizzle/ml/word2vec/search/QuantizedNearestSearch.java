@@ -0,0 +1,108 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.drizzle.ml.word2vec.store.QuantizedEmbeddingStore;
+import org.drizzle.ml.word2vec.store.VectorMath;
+
+/**
+ * Cosine similarity top-k search over the codes of a quantized store.
+ * Similarities are approximated from the codes. When the original vectors are available, the best rerank candidates
+ * are scored again with the original vectors and the top k of those returned.
+ */
+public class QuantizedNearestSearch implements NearestSearch {
+    private static final int BLOCK_ROWS = 1024;
+
+    private final QuantizedEmbeddingStore store;
+    private final EmbeddingStore original;
+    private final int rerank;
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * @param store    quantized store scanned for candidates
+     * @param original store with the original vectors used to rerank candidates, null to return approximate results
+     * @param rerank   number of candidates reranked with the original vectors, ignored without original vectors
+     */
+    public QuantizedNearestSearch(QuantizedEmbeddingStore store, EmbeddingStore original, int rerank) {
+        this.store = store;
+        this.original = original;
+        this.rerank = original == null ? 0 : rerank;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(store.dimension()));
+    }
+
+    @Override
+    public int search(float[] vector, int limit, int[] rows, float[] similarities) {
+        int dimension = store.dimension();
+        int resultSize = Math.min(limit, store.size());
+        if (resultSize <= 0) {
+            return 0;
+        }
+
+        Scratch buffers = scratch.get();
+        float inverseQueryNorm = VectorMath.inverseNorm(vector, 0, dimension);
+        float[] query = buffers.query;
+        for (int i = 0; i < dimension; i++) {
+            query[i] = vector[i] * inverseQueryNorm;
+        }
+
+        int candidateCount = Math.min(Math.max(resultSize, rerank), store.size());
+        TopKHeap heap = buffers.heap(candidateCount);
+        QuantizedEmbeddingStore.RowScorer scorer = store.scorer(query);
+
+        float[] dots = buffers.dots;
+        for (int start = 0; start < store.size(); start += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, store.size() - start);
+            scorer.score(start, count, dots);
+
+            float threshold = heap.threshold();
+            for (int i = 0; i < count; i++) {
+                float similarity = dots[i] * store.inverseNorm(start + i);
+                if (similarity > threshold) {
+                    heap.offer(start + i, similarity);
+                    threshold = heap.threshold();
+                }
+            }
+        }
+
+        if (rerank <= 0) {
+            return heap.drainDescending(rows, similarities);
+        }
+
+        int[] candidates = buffers.candidates(candidateCount);
+        int found = heap.drainDescending(candidates, null);
+        heap.reset(resultSize);
+        for (int i = 0; i < found; i++) {
+            int row = candidates[i];
+            heap.offer(row, original.dot(row, query) * original.inverseNorm(row));
+        }
+        return heap.drainDescending(rows, similarities);
+    }
+
+    /**
+     * Per thread buffers
+     */
+    private static final class Scratch {
+        private final float[] query;
+        private final float[] dots = new float[BLOCK_ROWS];
+        private TopKHeap heap = new TopKHeap(16);
+        private int[] candidates = new int[16];
+
+        Scratch(int dimension) {
+            this.query = new float[dimension];
+        }
+
+        TopKHeap heap(int capacity) {
+            if (capacity > heap.maxCapacity()) {
+                heap = new TopKHeap(capacity);
+            }
+            heap.reset(capacity);
+            return heap;
+        }
+
+        int[] candidates(int capacity) {
+            if (capacity > candidates.length) {
+                candidates = new int[capacity];
+            }
+            return candidates;
+        }
+    }
+}
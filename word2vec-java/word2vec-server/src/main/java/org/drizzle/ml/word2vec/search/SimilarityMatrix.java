@@ -0,0 +1,118 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Cosine similarities between every row of a left set and every row of a right set of store rows.
+ * Right rows are normalized once, left rows are normalized and multiplied against them in blocks of consecutive rows,
+ * one matrix multiply per block, so the matrix can be produced and sent a block at a time.
+ * Missing rows, given as -1, have zero similarity to everything.
+ */
+public class SimilarityMatrix {
+    // 1MB of float32 similarities, well below the default gRPC message size limit
+    private static final int MAX_SIMILARITIES_PER_BLOCK = 256 * 1024;
+
+    private final EmbeddingStore store;
+    private final int[] left;
+    private final int columns;
+    private final int blockRows;
+    private final INDArray rightTransposed;
+
+    /**
+     * @param store embedding store
+     * @param left  row ids of the matrix rows, -1 for missing rows
+     * @param right row ids of the matrix columns, -1 for missing rows
+     */
+    public SimilarityMatrix(EmbeddingStore store, int[] left, int[] right) {
+        this.store = store;
+        this.left = left;
+        this.columns = right.length;
+        this.blockRows = Math.max(1, Math.min(left.length, MAX_SIMILARITIES_PER_BLOCK / Math.max(1, columns)));
+        this.rightTransposed = columns == 0 ? null
+                : Nd4j.create(normalizedRows(store, right, 0, columns), new int[]{columns, store.dimension()}, 'c').transpose();
+    }
+
+    /**
+     * @return number of left rows in each block, the last block may have fewer
+     */
+    public int blockRows() {
+        return blockRows;
+    }
+
+    /**
+     * @return number of blocks covering all left rows
+     */
+    public int blockCount() {
+        return (left.length + blockRows - 1) / blockRows;
+    }
+
+    /**
+     * @return number of rows, the size of the left set
+     */
+    public int rows() {
+        return left.length;
+    }
+
+    /**
+     * @return number of columns, the size of the right set
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Computes a block of the matrix
+     *
+     * @param index block index
+     * @return row-major similarities of the block left rows to all right rows
+     */
+    public float[] block(int index) {
+        int firstRow = index * blockRows;
+        int rows = Math.min(blockRows, left.length - firstRow);
+        if (columns == 0) {
+            return new float[0];
+        }
+
+        INDArray leftBlock = Nd4j.create(normalizedRows(store, left, firstRow, rows), new int[]{rows, store.dimension()}, 'c');
+        return leftBlock.mmul(rightTransposed).dup('c').data().asFloat();
+    }
+
+    /**
+     * Cosine similarities of row pairs
+     *
+     * @param store embedding store
+     * @param left  first row of each pair, -1 for missing rows
+     * @param right second row of each pair, -1 for missing rows
+     * @return similarity of each pair
+     */
+    public static float[] pairs(EmbeddingStore store, int[] left, int[] right) {
+        float[] similarities = new float[left.length];
+        float[] vector = new float[store.dimension()];
+        for (int i = 0; i < left.length; i++) {
+            if (left[i] >= 0 && right[i] >= 0) {
+                store.copyRow(left[i], vector, 0);
+                similarities[i] = store.dot(right[i], vector) * store.inverseNorm(left[i]) * store.inverseNorm(right[i]);
+            }
+        }
+        return similarities;
+    }
+
+    private static float[] normalizedRows(EmbeddingStore store, int[] rows, int first, int count) {
+        int dimension = store.dimension();
+        float[] values = new float[count * dimension];
+        for (int i = 0; i < count; i++) {
+            int row = rows[first + i];
+            if (row < 0) {
+                continue;
+            }
+            store.copyRow(row, values, i * dimension);
+            float inverseNorm = store.inverseNorm(row);
+            for (int j = i * dimension; j < (i + 1) * dimension; j++) {
+                values[j] *= inverseNorm;
+            }
+        }
+        return values;
+    }
+}
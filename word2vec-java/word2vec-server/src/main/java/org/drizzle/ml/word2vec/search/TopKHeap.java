@@ -0,0 +1,152 @@
+package org.drizzle.ml.word2vec.search;
+
+/**
+ * Bounded min-heap of (row, score) pairs keeping the k highest scores seen.
+ * Backed by primitive arrays, no allocation after construction.
+ */
+public final class TopKHeap {
+    private int capacity;
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+
+    public TopKHeap(int capacity) {
+        this.capacity = capacity;
+        this.rows = new int[capacity];
+        this.scores = new float[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Empties the heap and changes the number of entries kept
+     *
+     * @param capacity number of entries kept, up to the capacity the heap was created with
+     */
+    public void reset(int capacity) {
+        if (capacity > rows.length) {
+            throw new IllegalArgumentException("Capacity " + capacity + " larger than " + rows.length);
+        }
+        this.capacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * @return largest capacity accepted by reset
+     */
+    public int maxCapacity() {
+        return rows.length;
+    }
+
+    /**
+     * Lowest score that can still enter the heap. Negative infinity while the heap is not full
+     *
+     * @return admission threshold
+     */
+    public float threshold() {
+        return size < capacity ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Offers a candidate row
+     *
+     * @param row   row id
+     * @param score candidate score, higher is better
+     * @return true if the candidate was kept
+     */
+    public boolean offer(int row, float score) {
+        if (size < capacity) {
+            rows[size] = row;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+
+        if (capacity == 0 || score <= scores[0]) {
+            return false;
+        }
+
+        rows[0] = row;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * Empties the heap writing its content ordered by descending score
+     *
+     * @param rowsOut   destination of row ids, at least size() long
+     * @param scoresOut destination of scores, at least size() long, may be null
+     * @return number of entries written
+     */
+    public int drainDescending(int[] rowsOut, float[] scoresOut) {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            rowsOut[i] = rows[0];
+            if (scoresOut != null) {
+                scoresOut[i] = scores[0];
+            }
+
+            size--;
+            rows[0] = rows[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    private void siftUp(int index) {
+        int row = rows[index];
+        float score = scores[index];
+
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= score) {
+                break;
+            }
+            rows[index] = rows[parent];
+            scores[index] = scores[parent];
+            index = parent;
+        }
+
+        rows[index] = row;
+        scores[index] = score;
+    }
+
+    private void siftDown(int index) {
+        if (size == 0) {
+            return;
+        }
+
+        int row = rows[index];
+        float score = scores[index];
+        int half = size >>> 1;
+
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && scores[right] < scores[child]) {
+                child = right;
+            }
+            if (score <= scores[child]) {
+                break;
+            }
+            rows[index] = rows[child];
+            scores[index] = scores[child];
+            index = child;
+        }
+
+        rows[index] = row;
+        scores[index] = score;
+    }
+}
@@ -0,0 +1,77 @@
+package org.drizzle.ml.word2vec.search;
+
+import java.util.Arrays;
+
+/**
+ * Set of row ids with constant time clear, used to track visited nodes during graph searches.
+ * Slots are stamped with the generation they were written in, clearing only increments the generation.
+ */
+final class VisitedSet {
+    private int[] keys;
+    private int[] stamps;
+    private int mask;
+    private int size;
+    private int generation = 1;
+
+    VisitedSet(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity) * 2 - 1);
+        keys = new int[capacity];
+        stamps = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    void clear() {
+        size = 0;
+        generation++;
+        if (generation == 0) {
+            // stamps wrapped around, old stamps could collide with new generations
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @param row row id
+     * @return true if the row was not in the set
+     */
+    boolean add(int row) {
+        if (size * 2 >= keys.length) {
+            grow();
+        }
+
+        for (int slot = mix(row) & mask; ; slot = (slot + 1) & mask) {
+            if (stamps[slot] != generation) {
+                stamps[slot] = generation;
+                keys[slot] = row;
+                size++;
+                return true;
+            }
+            if (keys[slot] == row) {
+                return false;
+            }
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldStamps = stamps;
+        int oldGeneration = generation;
+
+        keys = new int[oldKeys.length * 2];
+        stamps = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        generation = 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStamps[i] == oldGeneration) {
+                add(oldKeys[i]);
+            }
+        }
+    }
+
+    private static int mix(int value) {
+        int hash = value * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,49 @@
+package org.drizzle.ml.word2vec.server;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.drizzle.ml.word2vec.store.EmbeddingStoreWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(description = "Converts a word2vec model to an embedding store file", name = "w2v-convert")
+public class ConvertApplication implements Callable<ConvertApplication> {
+    private static final Logger logger = LoggerFactory.getLogger(ConvertApplication.class);
+
+    @CommandLine.Option(names = {"--help"}, description = "Show help.")
+    private boolean showHelp;
+
+    @CommandLine.Option(names = {"-f", "--file"}, required = true,
+            description = "Path to google vector file. See https://code.google.com/archive/p/word2vec for more information.")
+    private File word2vecModelFile;
+
+    @CommandLine.Option(names = {"-o", "--output"}, required = true,
+            description = "Path of the embedding store file to create.")
+    private File storeFile;
+
+    public static void main(String[] args) {
+        CommandLine.call(new ConvertApplication(), args);
+    }
+
+    @Override
+    public ConvertApplication call() throws Exception {
+        if (showHelp) {
+            CommandLine.usage(this, System.out);
+            return this;
+        }
+
+        logger.info("Loading word2vec model file {}", word2vecModelFile);
+        Word2Vec model = WordVectorSerializer.readWord2VecModel(word2vecModelFile, true);
+        BufferEmbeddingStore store = BufferEmbeddingStore.fromWordVectors(model);
+
+        logger.info("Writing {} words to embedding store file {}", store.size(), storeFile);
+        EmbeddingStoreWriter.write(store, storeFile);
+        logger.info("Embedding store file {} created", storeFile);
+        return this;
+    }
+}
@@ -1,11 +1,15 @@
 package org.drizzle.ml.word2vec.server;
 
-import io.grpc.ServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import org.drizzle.ml.word2vec.handlers.ModelOptions;
+import org.drizzle.ml.word2vec.handlers.ServiceRequestHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(description = "Word2Vec server", name = "w2v-server")
@@ -19,14 +23,98 @@ public class ServerApplication implements Callable<ServerApplication> {
     private int port = 8080;
 
     @CommandLine.Option(names = {"-f", "--file"}, required = true,
-            description = "Path to google vector file. See https://code.google.com/archive/p/word2vec for more information.")
+            description = "Path to google vector file or embedding store file. See https://code.google.com/archive/p/word2vec for more information.")
     private File word2vecModelFile;
 
-    @CommandLine.Option(names = {"-t", "--tree"}, description = "Use tree model for faster lookup. Uses more memory. Default false.")
+    @CommandLine.Option(names = {"-m", "--model"}, paramLabel = "NAME=FILE",
+            description = "Additional model served to requests naming it, the --file model is named default. Can be repeated.")
+    private Map<String, File> additionalModelFiles = new LinkedHashMap<>();
+
+    @CommandLine.Option(names = {"-t", "--tree"}, description = "Use tree model for faster lookup. Uses more memory. Same as --index=tree. Default false.")
     private boolean useTreeModel = false;
 
+    @CommandLine.Option(names = {"--index"}, description = "Nearest words index: exact, tree or hnsw. Default exact.")
+    private ModelOptions.IndexType indexType = ModelOptions.IndexType.EXACT;
+
+    @CommandLine.Option(names = {"--hnsw-m"}, description = "HNSW neighbours per node, twice as many on the bottom layer. Default 16.")
+    private int hnswM = 16;
+
+    @CommandLine.Option(names = {"--hnsw-ef-construction"}, description = "HNSW candidate list size when building the index. Default 200.")
+    private int hnswEfConstruction = 200;
+
+    @CommandLine.Option(names = {"--hnsw-ef-search"}, description = "HNSW candidate list size when searching, higher values improve recall. Default 64.")
+    private int hnswEfSearch = 64;
+
+    @CommandLine.Option(names = {"--no-index-file"}, description = "Do not save or load the HNSW index and the pruned or reduced model variants next to the model file.")
+    private boolean noIndexFile = false;
+
+    @CommandLine.Option(names = {"--no-word-lookup"}, description = "Do not build the vocabulary trie serving LookupWords.")
+    private boolean noWordLookup = false;
+
+    @CommandLine.Option(names = {"--quantization"}, description = "Vector compression: none, int8 or pq. Default none.")
+    private ModelOptions.Quantization quantization = ModelOptions.Quantization.NONE;
+
+    @CommandLine.Option(names = {"--pq-subspaces"}, description = "Product quantization subspaces, bytes per vector. Default a quarter of the vector size.")
+    private int pqSubspaces = 0;
+
+    @CommandLine.Option(names = {"--rerank"}, description = "Quantized search candidates scored again with the original vectors. Keeps the original vectors. Default 0.")
+    private int rerank = 0;
+
+    @CommandLine.Option(names = {"--max-words"}, description = "Search only this many of the most frequent words, other words are still served to lookups. Default 0, all words.")
+    private int maxWords = 0;
+
+    @CommandLine.Option(names = {"--reduction"}, description = "Dimension reduction of the vectors searched for nearest words: none, pca or random_projection. Default none.")
+    private ModelOptions.Reduction reduction = ModelOptions.Reduction.NONE;
+
+    @CommandLine.Option(names = {"--reduced-dimension"}, description = "Dimension of the reduced vectors. Default a quarter of the vector size.")
+    private int reducedDimension = 0;
+
+    @CommandLine.Option(names = {"--loader-threads"}, description = "Threads decoding the model and building the index. Default number of processors.")
+    private int loaderThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--partial-rows"}, description = "Serve binary models while they load: vectors of the rows loaded so far, nearest words once this many rows are loaded. Default 0, serve fully loaded models only.")
+    private int partialRows = 0;
+
+    @CommandLine.Option(names = {"--cache-size"}, description = "Frequent word vector and nearest words responses kept in memory, per request type. Default 0, no cache.")
+    private long cacheSize = 0;
+
+    @CommandLine.Option(names = {"--stream-window"}, description = "Requests of a stream read ahead of the responses sent. Default 64.")
+    private int streamWindow = 64;
+
+    @CommandLine.Option(names = {"--search-threads"}, description = "Threads answering nearest words requests, apart from vector lookups. Default 0, answered on the call threads.")
+    private int searchThreads = 0;
+
+    @CommandLine.Option(names = {"--shard"}, description = "Vocabulary shard served, from 0 to --shard-count - 1. Default 0.")
+    private int shard = 0;
+
+    @CommandLine.Option(names = {"--shard-count"}, description = "Number of vocabulary shards the model is split in across servers. Default 1, the whole model.")
+    private int shardCount = 1;
+
+    @CommandLine.Option(names = {"--executor-threads"}, description = "Threads running calls. Default 0, an unbounded pool.")
+    private int executorThreads = 0;
+
+    @CommandLine.Option(names = {"--boss-threads"}, description = "Netty threads accepting connections. Default 1.")
+    private int bossThreads = 0;
+
+    @CommandLine.Option(names = {"--worker-threads"}, description = "Netty event loop threads reading and writing connections. Default twice the number of processors.")
+    private int workerThreads = 0;
+
+    @CommandLine.Option(names = {"--max-calls-per-connection"}, description = "Maximum concurrent calls on a connection. Default 0, unlimited.")
+    private int maxCallsPerConnection = 0;
+
+    @CommandLine.Option(names = {"--flow-control-window"}, description = "HTTP/2 flow control window in bytes. Default 1048576.")
+    private int flowControlWindow = 0;
+
+    @CommandLine.Option(names = {"--max-inbound-message-size"}, description = "Largest request accepted in bytes. Default 4194304.")
+    private int maxInboundMessageSize = 0;
+
+    @CommandLine.Option(names = {"--metrics-port"}, description = "Port serving Prometheus metrics on /metrics. Default 0, no metrics server.")
+    private int metricsPort = 0;
+
     public static void main(String[] args) {
-        CommandLine.call(new ServerApplication(), args);
+        new CommandLine(new ServerApplication())
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .parseWithHandler(new CommandLine.RunLast(), args);
     }
 
     @Override
@@ -36,10 +124,44 @@ public class ServerApplication implements Callable<ServerApplication> {
             return this;
         }
 
+        ModelOptions modelOptions = new ModelOptions()
+                .setIndexType(useTreeModel ? ModelOptions.IndexType.TREE : indexType)
+                .setHnswM(hnswM)
+                .setHnswEfConstruction(hnswEfConstruction)
+                .setHnswEfSearch(hnswEfSearch)
+                .setPersistIndex(!noIndexFile)
+                .setWordLookup(!noWordLookup)
+                .setQuantization(quantization)
+                .setPqSubspaces(pqSubspaces)
+                .setRerank(rerank)
+                .setMaxWords(maxWords)
+                .setReduction(reduction)
+                .setReducedDimension(reducedDimension)
+                .setLoaderThreads(loaderThreads)
+                .setPartialRows(partialRows)
+                .setCacheSize(cacheSize)
+                .setStreamWindow(streamWindow)
+                .setSearchThreads(searchThreads)
+                .setShard(shard, shardCount);
+
+        TransportOptions transportOptions = new TransportOptions()
+                .setExecutorThreads(executorThreads)
+                .setBossThreads(bossThreads)
+                .setWorkerThreads(workerThreads)
+                .setMaxConcurrentCallsPerConnection(maxCallsPerConnection)
+                .setFlowControlWindow(flowControlWindow)
+                .setMaxInboundMessageSize(maxInboundMessageSize)
+                .setMetricsPort(metricsPort);
+
+        Map<String, File> modelFiles = new LinkedHashMap<>();
+        modelFiles.put(ServiceRequestHandler.DEFAULT_MODEL, word2vecModelFile);
+        modelFiles.putAll(additionalModelFiles);
+
         ServerRunner runner = new ServerRunner(
-                ServerBuilder.forPort(port),
-                word2vecModelFile,
-                useTreeModel
+                NettyServerBuilder.forPort(port),
+                modelFiles,
+                modelOptions,
+                transportOptions
         );
         runner.start();
         runner.awaitTermination();
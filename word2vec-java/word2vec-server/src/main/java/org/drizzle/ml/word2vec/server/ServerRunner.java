@@ -2,31 +2,135 @@ package org.drizzle.ml.word2vec.server;
 
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import org.drizzle.ml.word2vec.handlers.ModelOptions;
 import org.drizzle.ml.word2vec.handlers.ServiceRequestHandler;
+import org.drizzle.ml.word2vec.metrics.MetricsHttpServer;
+import org.drizzle.ml.word2vec.metrics.MetricsInterceptor;
+import org.drizzle.ml.word2vec.metrics.ServerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class ServerRunner {
     private final Logger logger = LoggerFactory.getLogger(ServerRunner.class);
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000L;
+
     private final Server server;
+    private final ServiceRequestHandler handler;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final int metricsPort;
+    private MetricsHttpServer metricsServer;
+    // created for the server and shut down with it
+    private ExecutorService callExecutor;
+    private final List<EventLoopGroup> eventLoopGroups = new ArrayList<>();
 
     public ServerRunner(ServerBuilder<?> serverBuilder, File word2vecModelFile, boolean useTreeModel) {
-        server = serverBuilder.addService(new ServiceRequestHandler(word2vecModelFile, useTreeModel))
+        this(serverBuilder, word2vecModelFile, new ModelOptions()
+                .setIndexType(useTreeModel ? ModelOptions.IndexType.TREE : ModelOptions.IndexType.EXACT));
+    }
+
+    public ServerRunner(ServerBuilder<?> serverBuilder, File word2vecModelFile, ModelOptions modelOptions) {
+        this(serverBuilder, word2vecModelFile, modelOptions, new TransportOptions());
+    }
+
+    public ServerRunner(ServerBuilder<?> serverBuilder, File word2vecModelFile, ModelOptions modelOptions,
+                        TransportOptions transportOptions) {
+        this(serverBuilder, Map.of(ServiceRequestHandler.DEFAULT_MODEL, word2vecModelFile), modelOptions, transportOptions);
+    }
+
+    /**
+     * Creates a server hosting several models
+     *
+     * @param serverBuilder    server builder
+     * @param modelFiles       model file of each model name, including {@link ServiceRequestHandler#DEFAULT_MODEL}
+     * @param modelOptions     model and index options, shared by all models
+     * @param transportOptions threading and HTTP/2 options
+     */
+    public ServerRunner(ServerBuilder<?> serverBuilder, Map<String, File> modelFiles, ModelOptions modelOptions,
+                        TransportOptions transportOptions) {
+        configure(serverBuilder, transportOptions);
+        metricsPort = transportOptions.getMetricsPort();
+        handler = new ServiceRequestHandler(modelFiles, modelOptions, metrics);
+        server = serverBuilder.addService(ServerInterceptors.intercept(handler, new MetricsInterceptor(metrics)))
                 .build();
 
-        logger.info("Created server {}", server);
+        logger.info("Created server {}, {}", server, transportOptions);
+    }
+
+    private void configure(ServerBuilder<?> serverBuilder, TransportOptions transportOptions) {
+        if (transportOptions.getExecutorThreads() > 0) {
+            callExecutor = Executors.newFixedThreadPool(transportOptions.getExecutorThreads(),
+                    new DefaultThreadFactory("Word2Vec-call", true));
+            serverBuilder.executor(callExecutor);
+        }
+        if (transportOptions.getMaxInboundMessageSize() > 0) {
+            serverBuilder.maxInboundMessageSize(transportOptions.getMaxInboundMessageSize());
+        }
+
+        if (!(serverBuilder instanceof NettyServerBuilder)) {
+            return;
+        }
+        NettyServerBuilder nettyBuilder = (NettyServerBuilder) serverBuilder;
+
+        if (transportOptions.hasEventLoopThreads()) {
+            // netty requires both groups and the channel type when any of them is set
+            EventLoopGroup bossGroup = new NioEventLoopGroup(Math.max(1, transportOptions.getBossThreads()),
+                    new DefaultThreadFactory("Word2Vec-boss", true));
+            EventLoopGroup workerGroup = new NioEventLoopGroup(transportOptions.getWorkerThreads(),
+                    new DefaultThreadFactory("Word2Vec-worker", true));
+            eventLoopGroups.add(bossGroup);
+            eventLoopGroups.add(workerGroup);
+            nettyBuilder.bossEventLoopGroup(bossGroup)
+                    .workerEventLoopGroup(workerGroup)
+                    .channelType(NioServerSocketChannel.class);
+        }
+        if (transportOptions.getMaxConcurrentCallsPerConnection() > 0) {
+            nettyBuilder.maxConcurrentCallsPerConnection(transportOptions.getMaxConcurrentCallsPerConnection());
+        }
+        if (transportOptions.getFlowControlWindow() > 0) {
+            nettyBuilder.flowControlWindow(transportOptions.getFlowControlWindow());
+        }
     }
 
     public void start() throws IOException {
         server.start();
         logger.info("Server started on port {}", server.getPort());
+        if (metricsPort > 0) {
+            metricsServer = new MetricsHttpServer(metricsPort, metrics);
+            metricsServer.start();
+        }
 
         Runtime.getRuntime().addShutdownHook(shutdownOnStopHook());
     }
 
+    /**
+     * @return port the server listens on, -1 if it does not listen on a port
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
+    /**
+     * @return metrics of the calls served
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
     public void awaitTermination() throws InterruptedException {
         server.awaitTermination();
     }
@@ -45,6 +149,20 @@ public class ServerRunner {
     public void stop() {
         logger.info("Shutting down server");
         server.shutdown();
+        try {
+            server.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (callExecutor != null) {
+            callExecutor.shutdown();
+        }
+        handler.close();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        eventLoopGroups.forEach(EventLoopGroup::shutdownGracefully);
         logger.info("Server shutdown");
     }
 
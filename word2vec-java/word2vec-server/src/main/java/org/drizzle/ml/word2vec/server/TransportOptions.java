@@ -0,0 +1,113 @@
+package org.drizzle.ml.word2vec.server;
+
+/**
+ * Threading and HTTP/2 options of the gRPC server. Zero values keep the gRPC defaults.
+ * Event loop, connection and window options only apply to Netty servers
+ */
+public class TransportOptions {
+    private int executorThreads = 0;
+    private int bossThreads = 0;
+    private int workerThreads = 0;
+    private int maxConcurrentCallsPerConnection = 0;
+    private int flowControlWindow = 0;
+    private int maxInboundMessageSize = 0;
+    private int metricsPort = 0;
+
+    /**
+     * @return number of threads running calls, zero for an unbounded cached pool
+     */
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    public TransportOptions setExecutorThreads(int executorThreads) {
+        this.executorThreads = executorThreads;
+        return this;
+    }
+
+    /**
+     * @return number of threads accepting connections
+     */
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    public TransportOptions setBossThreads(int bossThreads) {
+        this.bossThreads = bossThreads;
+        return this;
+    }
+
+    /**
+     * @return number of threads reading and writing connections
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public TransportOptions setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    public int getMaxConcurrentCallsPerConnection() {
+        return maxConcurrentCallsPerConnection;
+    }
+
+    public TransportOptions setMaxConcurrentCallsPerConnection(int maxConcurrentCallsPerConnection) {
+        this.maxConcurrentCallsPerConnection = maxConcurrentCallsPerConnection;
+        return this;
+    }
+
+    /**
+     * @return HTTP/2 flow control window of each stream in bytes
+     */
+    public int getFlowControlWindow() {
+        return flowControlWindow;
+    }
+
+    public TransportOptions setFlowControlWindow(int flowControlWindow) {
+        this.flowControlWindow = flowControlWindow;
+        return this;
+    }
+
+    /**
+     * @return largest request accepted in bytes, batch requests of many vectors may need more than the 4 MiB gRPC default
+     */
+    public int getMaxInboundMessageSize() {
+        return maxInboundMessageSize;
+    }
+
+    public TransportOptions setMaxInboundMessageSize(int maxInboundMessageSize) {
+        this.maxInboundMessageSize = maxInboundMessageSize;
+        return this;
+    }
+
+    /**
+     * @return port of the HTTP server answering Prometheus scrapes on /metrics, zero for no metrics server
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public TransportOptions setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+        return this;
+    }
+
+    boolean hasEventLoopThreads() {
+        return bossThreads > 0 || workerThreads > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TransportOptions{" +
+                "executorThreads=" + executorThreads +
+                ", bossThreads=" + bossThreads +
+                ", workerThreads=" + workerThreads +
+                ", maxConcurrentCallsPerConnection=" + maxConcurrentCallsPerConnection +
+                ", flowControlWindow=" + flowControlWindow +
+                ", maxInboundMessageSize=" + maxInboundMessageSize +
+                ", metricsPort=" + metricsPort +
+                '}';
+    }
+}
@@ -0,0 +1,285 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import org.drizzle.ml.word2vec.shard.WordShards;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Embedding store backed by byte buffers outside the java heap, either memory mapped from an embedding store file
+ * or copied from a loaded model.
+ * Mapped stores are served straight from the page cache, so processes mapping the same file share its memory.
+ * <p>
+ * Stores sharing memory, such as prefixes, hold a reference to it: the memory is freed or unmapped once every one of
+ * them is closed.
+ */
+public final class BufferEmbeddingStore implements EmbeddingStore {
+    private static final int COPY_BLOCK_ROWS = 4096;
+
+    private final WordTable words;
+    private final VectorTable vectors;
+    private final FloatBuffer inverseNorms;
+    private final BufferMemory inverseNormsMemory;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param inverseNorms little-endian inverse norms, returned by allocateDirect or map. The store owns the tables and
+     *                     the buffer, they are released when it is closed
+     */
+    BufferEmbeddingStore(WordTable words, VectorTable vectors, ByteBuffer inverseNorms) {
+        this(words, vectors, inverseNorms.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(), new BufferMemory(inverseNorms));
+    }
+
+    BufferEmbeddingStore(WordTable words, VectorTable vectors, FloatBuffer inverseNorms, BufferMemory inverseNormsMemory) {
+        this.words = words;
+        this.vectors = vectors;
+        this.inverseNorms = inverseNorms;
+        this.inverseNormsMemory = inverseNormsMemory;
+    }
+
+    /**
+     * Memory maps an embedding store file. See {@link EmbeddingStoreFormat} for the file layout
+     *
+     * @param file embedding store file
+     * @return mapped store
+     * @throws IOException if the file cannot be read or is not an embedding store
+     */
+    public static BufferEmbeddingStore open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(EmbeddingStoreFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Truncated embedding store header in " + file);
+                }
+            }
+            header.flip();
+
+            if (header.getInt() != EmbeddingStoreFormat.MAGIC) {
+                throw new IOException(file + " is not an embedding store file");
+            }
+
+            int version = header.getInt();
+            if (version != EmbeddingStoreFormat.VERSION) {
+                throw new IOException("Unsupported embedding store version " + version + " in " + file);
+            }
+
+            int rows = header.getInt();
+            int dimension = header.getInt();
+            long wordOffsetsPosition = header.getLong();
+            long wordBytesPosition = header.getLong();
+            long wordBytesLength = header.getLong();
+            long vectorsPosition = header.getLong();
+            long inverseNormsPosition = header.getLong();
+
+            WordTable words = WordTable.map(channel, wordOffsetsPosition, wordBytesPosition, wordBytesLength, rows);
+            VectorTable vectors = VectorTable.map(channel, vectorsPosition, rows, dimension);
+            ByteBuffer inverseNorms = channel.map(FileChannel.MapMode.READ_ONLY, inverseNormsPosition, (long) rows * Float.BYTES);
+
+            // mappings remain valid after the channel is closed
+            return new BufferEmbeddingStore(words, vectors, inverseNorms);
+        }
+    }
+
+    /**
+     * Copies the vectors of a loaded model to direct memory
+     *
+     * @param model model to copy
+     * @return store with the same words and vectors as the model
+     */
+    public static BufferEmbeddingStore fromWordVectors(WordVectors model) {
+        INDArray syn0 = ((InMemoryLookupTable<?>) model.lookupTable()).getSyn0();
+        int rows = model.vocab().numWords();
+        int dimension = syn0.columns();
+
+        String[] vocabulary = new String[rows];
+        for (int row = 0; row < rows; row++) {
+            vocabulary[row] = model.vocab().wordAtIndex(row);
+        }
+
+        VectorTable vectors = VectorTable.allocate(rows, dimension);
+        ByteBuffer inverseNormBytes = ByteBuffer.allocateDirect(rows * Float.BYTES);
+        FloatBuffer inverseNorms = inverseNormBytes.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+        for (int start = 0; start < rows; start += COPY_BLOCK_ROWS) {
+            int end = Math.min(rows, start + COPY_BLOCK_ROWS);
+            float[] block = syn0.get(NDArrayIndex.interval(start, end), NDArrayIndex.all()).dup('c').data().asFloat();
+
+            for (int row = start; row < end; row++) {
+                int offset = (row - start) * dimension;
+                vectors.setRow(row, block, offset);
+                inverseNorms.put(row, VectorMath.inverseNorm(block, offset, dimension));
+            }
+        }
+
+        return new BufferEmbeddingStore(WordTable.of(vocabulary), vectors, inverseNormBytes);
+    }
+
+    /**
+     * Copies words and a row-major vector matrix to direct memory
+     *
+     * @param vocabulary words, one per row
+     * @param values     row-major vectors, vocabulary.length * dimension elements
+     * @param dimension  vector dimension
+     * @return store holding the words and vectors
+     */
+    public static BufferEmbeddingStore of(String[] vocabulary, float[] values, int dimension) {
+        int rows = vocabulary.length;
+        VectorTable vectors = VectorTable.allocate(rows, dimension);
+        ByteBuffer inverseNormBytes = ByteBuffer.allocateDirect(rows * Float.BYTES);
+        FloatBuffer inverseNorms = inverseNormBytes.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+        for (int row = 0; row < rows; row++) {
+            vectors.setRow(row, values, row * dimension);
+            inverseNorms.put(row, VectorMath.inverseNorm(values, row * dimension, dimension));
+        }
+
+        return new BufferEmbeddingStore(WordTable.of(vocabulary), vectors, inverseNormBytes);
+    }
+
+    /**
+     * Copies the rows of the words assigned to a vocabulary shard to direct memory, keeping their order
+     *
+     * @param source     store holding all words
+     * @param shard      shard index, from 0 to shardCount - 1
+     * @param shardCount number of shards
+     * @return store holding the words of the shard, see {@link WordShards}
+     */
+    public static BufferEmbeddingStore shard(EmbeddingStore source, int shard, int shardCount) {
+        int[] shardRows = new int[source.size()];
+        int rows = 0;
+        for (int row = 0; row < source.size(); row++) {
+            if (WordShards.shardOf(source.wordBytes(row), shardCount) == shard) {
+                shardRows[rows++] = row;
+            }
+        }
+
+        int dimension = source.dimension();
+        String[] vocabulary = new String[rows];
+        VectorTable vectors = VectorTable.allocate(rows, dimension);
+        ByteBuffer inverseNormBytes = ByteBuffer.allocateDirect(rows * Float.BYTES);
+        FloatBuffer inverseNorms = inverseNormBytes.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+        float[] vector = new float[dimension];
+        for (int row = 0; row < rows; row++) {
+            int sourceRow = shardRows[row];
+            vocabulary[row] = source.wordAt(sourceRow);
+            source.copyRow(sourceRow, vector, 0);
+            vectors.setRow(row, vector, 0);
+            inverseNorms.put(row, source.inverseNorm(sourceRow));
+        }
+
+        return new BufferEmbeddingStore(WordTable.of(vocabulary), vectors, inverseNormBytes);
+    }
+
+    /**
+     * Keeps the first rows of a store, which for word2vec models are the most frequent words. The prefix shares the
+     * store memory, so mapped files only page in the rows kept, and is closed separately
+     *
+     * @param source store holding all words
+     * @param rows   number of rows kept
+     * @return a view of the first rows of the source, all of them if it has no more rows
+     */
+    public static BufferEmbeddingStore prefix(BufferEmbeddingStore source, int rows) {
+        int prefixRows = Math.min(rows, source.size());
+        return new BufferEmbeddingStore(source.words.prefix(prefixRows), source.vectors.prefix(prefixRows),
+                source.inverseNorms, source.inverseNormsMemory.retain());
+    }
+
+    /**
+     * @return the words of this store, shared until the returned table is closed
+     */
+    WordTable shareWords() {
+        return words.share();
+    }
+
+    /**
+     * @return true once the store is closed
+     */
+    public boolean closed() {
+        return closed.get();
+    }
+
+    @Override
+    public int size() {
+        return vectors.rows();
+    }
+
+    @Override
+    public int dimension() {
+        return vectors.dimension();
+    }
+
+    @Override
+    public String wordAt(int row) {
+        return words.wordAt(row);
+    }
+
+    @Override
+    public ByteString wordBytes(int row) {
+        return words.wordBytes(row);
+    }
+
+    @Override
+    public int indexOf(String word) {
+        return words.indexOf(word);
+    }
+
+    @Override
+    public int indexOf(ByteString word) {
+        return words.indexOf(word);
+    }
+
+    @Override
+    public void copyRow(int row, float[] target, int offset) {
+        vectors.copyRow(row, target, offset);
+    }
+
+    @Override
+    public ByteString rowBytes(int row) {
+        return vectors.rowBytes(row);
+    }
+
+    @Override
+    public void copyRows(int firstRow, int count, float[] target) {
+        vectors.copyRows(firstRow, count, target);
+    }
+
+    @Override
+    public void addRow(int row, float weight, float[] target) {
+        vectors.addRow(row, weight, target);
+    }
+
+    @Override
+    public float inverseNorm(int row) {
+        return inverseNorms.get(row);
+    }
+
+    @Override
+    public float dot(int row, float[] vector) {
+        return vectors.dot(row, vector);
+    }
+
+    /**
+     * Frees the direct memory or unmaps the file of the store once every store sharing it is closed. Words and rows
+     * returned as byte strings share that memory and must not be read after
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            words.close();
+            vectors.close();
+            inverseNormsMemory.release();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.drizzle.ml.word2vec.store;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Direct or memory mapped buffers shared by the tables viewing them.
+ * <p>
+ * Each table holds a reference and releases it when its store is closed. The buffers are freed, or unmapped, after the
+ * last reference instead of whenever the garbage collector finds them unreachable, which for a model of several GB may
+ * be long after the version using it was replaced. Buffers of a JVM not allowing it are left to the garbage collector.
+ */
+final class BufferMemory {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // buffers are left to the garbage collector
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final ByteBuffer[] buffers;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * @param buffers buffers returned by allocateDirect or map, not views of them
+     */
+    BufferMemory(ByteBuffer... buffers) {
+        this.buffers = buffers;
+    }
+
+    /**
+     * Acquires a reference for a table sharing the buffers
+     *
+     * @return this memory
+     * @throws IllegalStateException if the buffers were already freed
+     */
+    BufferMemory retain() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                throw new IllegalStateException("Buffers already freed");
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference, freeing the buffers after the last one. Views of the buffers must no longer be read
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            for (ByteBuffer buffer : buffers) {
+                free(buffer);
+            }
+        }
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+}
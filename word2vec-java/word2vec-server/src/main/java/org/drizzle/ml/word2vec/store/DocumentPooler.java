@@ -0,0 +1,154 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pools the vectors of the tokens of a document into a single vector, accumulating rows straight from the store.
+ * <p>
+ * Weighted modes need word frequencies, which embedding stores do not keep. Rows of word2vec models are ordered by
+ * descending frequency, so the probability of the word in row r is estimated with Zipf's law as 1 / ((r + 1) * H(n)),
+ * H(n) being the harmonic number of the vocabulary size.
+ * <p>
+ * Not thread safe, poolers keep a buffer for max pooling.
+ */
+public final class DocumentPooler {
+    // smoothing parameter of smooth inverse frequency weights, as suggested by Arora et al.
+    private static final double SIF_SMOOTHING = 1e-3;
+    private static final double EULER_GAMMA = 0.5772156649;
+
+    public enum Mode {
+        /**
+         * Average of the token vectors
+         */
+        MEAN,
+        /**
+         * Sum of the token vectors
+         */
+        SUM,
+        /**
+         * Element-wise maximum of the token vectors
+         */
+        MAX,
+        /**
+         * Average weighted by inverse document frequency, log(1 / p(w)), so frequent words count less
+         */
+        IDF,
+        /**
+         * Average weighted by smooth inverse frequency, a / (a + p(w)). Removing the common component of the
+         * resulting vectors, the second step of SIF, needs a set of documents and is left to the caller
+         */
+        SIF
+    }
+
+    private final EmbeddingStore store;
+    private final double harmonicNumber;
+    private float[] vector;
+
+    public DocumentPooler(EmbeddingStore store) {
+        this.store = store;
+        // asymptotic expansion, exact enough for any vocabulary size. Ranks cover rows still loading in partial stores
+        int n = Math.max(1, store instanceof PartialEmbeddingStore ? ((PartialEmbeddingStore) store).rows() : store.size());
+        this.harmonicNumber = Math.log(n) + EULER_GAMMA + 1d / (2d * n);
+    }
+
+    /**
+     * Pools the vectors of the tokens found in the store, tokens not found are skipped
+     *
+     * @param tokens UTF-8 encoded tokens
+     * @param mode   pooling mode
+     * @param target destination with dimension() elements, set to zero when no token is found
+     * @return number of tokens found
+     */
+    public int pool(List<ByteString> tokens, Mode mode, float[] target) {
+        Arrays.fill(target, 0f);
+        if (mode == Mode.MAX) {
+            return maxPool(tokens, target);
+        }
+
+        int found = 0;
+        double totalWeight = 0d;
+        for (ByteString token : tokens) {
+            int row = store.indexOf(token);
+            if (row < 0) {
+                continue;
+            }
+            float weight = weight(row, mode);
+            store.addRow(row, weight, target);
+            totalWeight += weight;
+            found++;
+        }
+
+        if (found > 0 && mode != Mode.SUM) {
+            // SIF averages over the token count, IDF normalizes its weights
+            float scale = (float) (1d / (mode == Mode.IDF ? totalWeight : found));
+            for (int i = 0; i < target.length; i++) {
+                target[i] *= scale;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Splits UTF-8 text on ASCII whitespace, sharing the bytes of the text
+     *
+     * @param text UTF-8 encoded text
+     * @return tokens
+     */
+    public static List<ByteString> tokenize(ByteString text) {
+        List<ByteString> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < text.size(); i++) {
+            boolean whitespace = isWhitespace(text.byteAt(i));
+            if (whitespace && start >= 0) {
+                tokens.add(text.substring(start, i));
+                start = -1;
+            } else if (!whitespace && start < 0) {
+                start = i;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(text.substring(start));
+        }
+        return tokens;
+    }
+
+    private int maxPool(List<ByteString> tokens, float[] target) {
+        if (vector == null) {
+            vector = new float[store.dimension()];
+        }
+
+        int found = 0;
+        for (ByteString token : tokens) {
+            int row = store.indexOf(token);
+            if (row < 0) {
+                continue;
+            }
+            store.copyRow(row, vector, 0);
+            for (int i = 0; i < target.length; i++) {
+                target[i] = found == 0 ? vector[i] : Math.max(target[i], vector[i]);
+            }
+            found++;
+        }
+        return found;
+    }
+
+    private float weight(int row, Mode mode) {
+        switch (mode) {
+            case IDF:
+                return (float) Math.log((row + 1) * harmonicNumber);
+            case SIF:
+                double probability = 1d / ((row + 1) * harmonicNumber);
+                return (float) (SIF_SMOOTHING / (SIF_SMOOTHING + probability));
+            default:
+                return 1f;
+        }
+    }
+
+    private static boolean isWhitespace(byte value) {
+        return value == ' ' || value == '\t' || value == '\n' || value == '\r' || value == '\f';
+    }
+}
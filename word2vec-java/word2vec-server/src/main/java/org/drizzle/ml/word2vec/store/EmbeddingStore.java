@@ -0,0 +1,124 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Read only table of word vectors, one row per word.
+ * Rows keep the order of the source model, which for word2vec models is by descending word frequency.
+ */
+public interface EmbeddingStore extends Closeable {
+
+    /**
+     * @return number of words
+     */
+    int size();
+
+    /**
+     * @return number of elements in each vector
+     */
+    int dimension();
+
+    /**
+     * @param row row id
+     * @return word stored in the row
+     */
+    String wordAt(int row);
+
+    /**
+     * @param row row id
+     * @return UTF-8 bytes of the word stored in the row, without copying them where the store allows
+     */
+    default ByteString wordBytes(int row) {
+        return ByteString.copyFromUtf8(wordAt(row));
+    }
+
+    /**
+     * @param word word to find
+     * @return row id of the word or -1 if not found
+     */
+    int indexOf(String word);
+
+    /**
+     * Finds a word from its UTF-8 bytes, without decoding it
+     *
+     * @param word UTF-8 encoded word
+     * @return row id of the word or -1 if not found
+     */
+    int indexOf(ByteString word);
+
+    /**
+     * Copies a vector to an array
+     *
+     * @param row    row id
+     * @param target destination array
+     * @param offset index of the first element written to target
+     */
+    void copyRow(int row, float[] target, int offset);
+
+    /**
+     * Returns a vector as packed little-endian float32 values, the layout of a FLOAT32 PackedVector.
+     * Stores holding float32 rows return a view of their memory, so the vector is only copied when the message is serialized
+     *
+     * @param row row id
+     * @return vector bytes
+     */
+    default ByteString rowBytes(int row) {
+        float[] vector = new float[dimension()];
+        copyRow(row, vector, 0);
+        ByteBuffer bytes = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(vector);
+        return UnsafeByteOperations.unsafeWrap(bytes.array());
+    }
+
+    /**
+     * Copies consecutive vectors to an array, back to back
+     *
+     * @param firstRow first row id
+     * @param count    number of rows
+     * @param target   destination array with at least count * dimension() elements
+     */
+    default void copyRows(int firstRow, int count, float[] target) {
+        int dimension = dimension();
+        for (int i = 0; i < count; i++) {
+            copyRow(firstRow + i, target, i * dimension);
+        }
+    }
+
+    /**
+     * Adds a scaled vector to an array, target += weight * row
+     *
+     * @param row    row id
+     * @param weight factor applied to the row elements
+     * @param target array with dimension() elements
+     */
+    default void addRow(int row, float weight, float[] target) {
+        float[] vector = new float[dimension()];
+        copyRow(row, vector, 0);
+        for (int i = 0; i < vector.length; i++) {
+            target[i] += weight * vector[i];
+        }
+    }
+
+    /**
+     * @param row row id
+     * @return 1 / L2 norm of the row vector, or zero for zero vectors
+     */
+    float inverseNorm(int row);
+
+    /**
+     * Dot product between a row and a vector
+     *
+     * @param row    row id
+     * @param vector vector with dimension() elements
+     * @return dot product
+     */
+    float dot(int row, float[] vector);
+
+    @Override
+    void close();
+}
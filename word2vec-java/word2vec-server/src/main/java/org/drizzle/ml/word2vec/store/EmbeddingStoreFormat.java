@@ -0,0 +1,53 @@
+package org.drizzle.ml.word2vec.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Layout of embedding store files. All values are little-endian.
+ *
+ * <pre>
+ * header (64 bytes)
+ *   int  magic
+ *   int  version
+ *   int  rows
+ *   int  dimension
+ *   long position of word offsets: rows + 1 ints, offset of each word in the word bytes
+ *   long position of word bytes: UTF-8 words back to back
+ *   long length of word bytes
+ *   long position of vectors: rows * dimension floats, row-major
+ *   long position of inverse norms: rows floats
+ * </pre>
+ * <p>
+ * Sections are aligned to {@link #ALIGNMENT} bytes.
+ */
+public final class EmbeddingStoreFormat {
+    public static final int MAGIC = 0x53563257;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int ALIGNMENT = 64;
+    public static final String FILE_EXTENSION = ".w2vs";
+
+    private EmbeddingStoreFormat() {
+
+    }
+
+    /**
+     * Checks whether a file is an embedding store, as opposed to a word2vec model
+     *
+     * @param file file to check
+     * @return true if the file starts with the embedding store magic number
+     */
+    public static boolean isStoreFile(File file) {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            return input.length() >= HEADER_SIZE && Integer.reverseBytes(input.readInt()) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,116 @@
+package org.drizzle.ml.word2vec.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes embedding stores to files in the format described in {@link EmbeddingStoreFormat}
+ */
+public final class EmbeddingStoreWriter {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private EmbeddingStoreWriter() {
+
+    }
+
+    /**
+     * Writes a store to a file, replacing its content
+     *
+     * @param store store to write
+     * @param file  destination file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(EmbeddingStore store, File file) throws IOException {
+        int rows = store.size();
+        int dimension = store.dimension();
+
+        byte[][] words = new byte[rows][];
+        long wordBytesLength = 0;
+        for (int row = 0; row < rows; row++) {
+            words[row] = store.wordAt(row).getBytes(StandardCharsets.UTF_8);
+            wordBytesLength += words[row].length;
+        }
+
+        long wordOffsetsPosition = EmbeddingStoreFormat.HEADER_SIZE;
+        long wordBytesPosition = EmbeddingStoreFormat.align(wordOffsetsPosition + (rows + 1L) * Integer.BYTES);
+        long vectorsPosition = EmbeddingStoreFormat.align(wordBytesPosition + wordBytesLength);
+        long inverseNormsPosition = EmbeddingStoreFormat.align(vectorsPosition + (long) rows * dimension * Float.BYTES);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(EmbeddingStoreFormat.MAGIC)
+                    .putInt(EmbeddingStoreFormat.VERSION)
+                    .putInt(rows)
+                    .putInt(dimension)
+                    .putLong(wordOffsetsPosition)
+                    .putLong(wordBytesPosition)
+                    .putLong(wordBytesLength)
+                    .putLong(vectorsPosition)
+                    .putLong(inverseNormsPosition);
+            pad(channel, buffer, wordOffsetsPosition);
+
+            int offset = 0;
+            for (int row = 0; row < rows; row++) {
+                ensureRemaining(channel, buffer, Integer.BYTES);
+                buffer.putInt(offset);
+                offset += words[row].length;
+            }
+            ensureRemaining(channel, buffer, Integer.BYTES);
+            buffer.putInt(offset);
+            pad(channel, buffer, wordBytesPosition);
+
+            for (byte[] word : words) {
+                ensureRemaining(channel, buffer, word.length);
+                buffer.put(word);
+            }
+            pad(channel, buffer, vectorsPosition);
+
+            float[] vector = new float[dimension];
+            for (int row = 0; row < rows; row++) {
+                store.copyRow(row, vector, 0);
+                ensureRemaining(channel, buffer, dimension * Float.BYTES);
+                for (float value : vector) {
+                    buffer.putFloat(value);
+                }
+            }
+            pad(channel, buffer, inverseNormsPosition);
+
+            for (int row = 0; row < rows; row++) {
+                ensureRemaining(channel, buffer, Float.BYTES);
+                buffer.putFloat(store.inverseNorm(row));
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Pads with zeros until the file position, including buffered bytes, reaches position
+     */
+    private static void pad(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (channel.position() + buffer.position() < position) {
+            ensureRemaining(channel, buffer, 1);
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
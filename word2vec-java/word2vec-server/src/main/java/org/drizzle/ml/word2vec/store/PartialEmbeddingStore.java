@@ -0,0 +1,154 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedding store of a model being read, holding the rows loaded so far.
+ * <p>
+ * Rows are published in order as they are decoded, so the store grows from the most frequent words of word2vec models.
+ * {@link #size()} only covers published rows, lookups of words not published yet return -1 and searches over
+ * [0, size()) only see complete rows. Once every row is published, {@link #complete()} returns the full store sharing
+ * the same memory.
+ * <p>
+ * The reader owns the store it publishes rows to, and closes it once done. Partial versions keep serving rows from
+ * their own {@link #share() views} of it, the memory is freed once the reader and every view are closed.
+ */
+public final class PartialEmbeddingStore implements EmbeddingStore {
+    private final WordTable words;
+    private final VectorTable vectors;
+    private final FloatBuffer inverseNorms;
+    private final BufferMemory inverseNormsMemory;
+    // shared with the views of the store
+    private final AtomicInteger loadedRows;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param inverseNorms little-endian inverse norms, returned by allocateDirect. The store owns the tables and the
+     *                     buffer, they are released when it is closed
+     */
+    PartialEmbeddingStore(WordTable words, VectorTable vectors, ByteBuffer inverseNorms) {
+        this(words, vectors, inverseNorms.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(), new BufferMemory(inverseNorms),
+                new AtomicInteger());
+    }
+
+    private PartialEmbeddingStore(WordTable words, VectorTable vectors, FloatBuffer inverseNorms,
+                                  BufferMemory inverseNormsMemory, AtomicInteger loadedRows) {
+        this.words = words;
+        this.vectors = vectors;
+        this.inverseNorms = inverseNorms;
+        this.inverseNormsMemory = inverseNormsMemory;
+        this.loadedRows = loadedRows;
+    }
+
+    /**
+     * Publishes the first rows, their words and vectors must be written before
+     */
+    void publish(int rows) {
+        loadedRows.set(rows);
+    }
+
+    /**
+     * @return view growing with this store as rows are published, sharing its memory until both are closed
+     */
+    public PartialEmbeddingStore share() {
+        return new PartialEmbeddingStore(words.share(), vectors.share(), inverseNorms, inverseNormsMemory.retain(), loadedRows);
+    }
+
+    /**
+     * @return number of rows of the model once fully loaded
+     */
+    public int rows() {
+        return vectors.rows();
+    }
+
+    /**
+     * @return the full store, sharing the memory of this store until both are closed
+     * @throws IllegalStateException if some rows are not loaded yet
+     */
+    public BufferEmbeddingStore complete() {
+        if (loadedRows.get() != vectors.rows()) {
+            throw new IllegalStateException("Loaded " + loadedRows.get() + " of " + vectors.rows() + " rows");
+        }
+        return new BufferEmbeddingStore(words.share(), vectors.share(), inverseNorms, inverseNormsMemory.retain());
+    }
+
+    @Override
+    public int size() {
+        return loadedRows.get();
+    }
+
+    @Override
+    public int dimension() {
+        return vectors.dimension();
+    }
+
+    @Override
+    public String wordAt(int row) {
+        return words.wordAt(row);
+    }
+
+    @Override
+    public ByteString wordBytes(int row) {
+        return words.wordBytes(row);
+    }
+
+    @Override
+    public int indexOf(String word) {
+        return indexOf(UnsafeByteOperations.unsafeWrap(word.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public int indexOf(ByteString word) {
+        return words.indexOf(word, loadedRows.get());
+    }
+
+    @Override
+    public void copyRow(int row, float[] target, int offset) {
+        vectors.copyRow(row, target, offset);
+    }
+
+    @Override
+    public ByteString rowBytes(int row) {
+        return vectors.rowBytes(row);
+    }
+
+    @Override
+    public void copyRows(int firstRow, int count, float[] target) {
+        vectors.copyRows(firstRow, count, target);
+    }
+
+    @Override
+    public void addRow(int row, float weight, float[] target) {
+        vectors.addRow(row, weight, target);
+    }
+
+    @Override
+    public float inverseNorm(int row) {
+        return inverseNorms.get(row);
+    }
+
+    @Override
+    public float dot(int row, float[] vector) {
+        return vectors.dot(row, vector);
+    }
+
+    /**
+     * Releases the memory of the store, freed once the complete store and every view are closed too
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            words.close();
+            vectors.close();
+            inverseNormsMemory.release();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.drizzle.ml.word2vec.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Product quantized store. Vectors are split in subspaces of consecutive elements and each sub-vector is replaced by
+ * the index of its nearest centroid in a per subspace codebook of up to 256 entries, one byte per subspace.
+ * A 300 element vector with 75 subspaces takes 75 bytes instead of 1200.
+ * <p>
+ * Dot products with a query use asymmetric distance computation: the query is not quantized, its dot product with
+ * every centroid is computed once per query and each row then costs one table lookup per subspace.
+ */
+public final class ProductQuantizedStore extends QuantizedEmbeddingStore {
+    private static final Logger logger = LoggerFactory.getLogger(ProductQuantizedStore.class);
+
+    private static final int MAX_CENTROIDS = 256;
+    private static final int BLOCK_ROWS = 1024;
+
+    private final int subspaces;
+    private final int centroidCount;
+    // first element of each subspace, subspaces + 1 entries
+    private final int[] subspaceStart;
+    // per subspace row-major centroids, centroidCount x subspace size
+    private final float[][] centroids;
+    private final byte[] codes;
+
+    private ProductQuantizedStore(EmbeddingStore source, int subspaces) {
+        super(source);
+        if (subspaces <= 0 || subspaces > dimension) {
+            throw new IllegalArgumentException("Subspaces must be between 1 and " + dimension + ", got " + subspaces);
+        }
+        if ((long) rows * subspaces > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many codes, " + rows + " x " + subspaces);
+        }
+
+        this.subspaces = subspaces;
+        this.centroidCount = Math.max(1, Math.min(MAX_CENTROIDS, rows));
+        this.subspaceStart = new int[subspaces + 1];
+        for (int s = 0; s <= subspaces; s++) {
+            subspaceStart[s] = (int) ((long) s * dimension / subspaces);
+        }
+        this.centroids = new float[subspaces][];
+        this.codes = new byte[rows * subspaces];
+    }
+
+    /**
+     * Trains codebooks with k-means on a sample of the store vectors and encodes all rows
+     *
+     * @param source       store to quantize
+     * @param subspaces    number of subspaces, bytes per encoded vector
+     * @param trainingRows maximum number of rows sampled for training
+     * @param iterations   k-means iterations
+     * @param seed         seed for sampling and centroid initialization
+     * @return quantized store, independent of the source vectors
+     */
+    public static ProductQuantizedStore train(EmbeddingStore source, int subspaces, int trainingRows, int iterations, long seed) {
+        ProductQuantizedStore store = new ProductQuantizedStore(source, subspaces);
+
+        float[] sample = sample(source, Math.min(trainingRows, store.rows), seed);
+        int sampleRows = sample.length / store.dimension;
+        logger.info("Training {} codebooks of {} centroids on {} rows", subspaces, store.centroidCount, sampleRows);
+
+        IntStream.range(0, subspaces).parallel()
+                .forEach(s -> store.centroids[s] = store.kMeans(sample, sampleRows, s, iterations));
+
+        logger.info("Encoding {} rows", store.rows);
+        float[][] norms = new float[subspaces][store.centroidCount];
+        for (int s = 0; s < subspaces; s++) {
+            store.centroidNorms(store.centroids[s], store.subspaceStart[s + 1] - store.subspaceStart[s], norms[s]);
+        }
+        int blocks = (store.rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        IntStream.range(0, blocks).parallel().forEach(block -> store.encodeBlock(source, block, norms));
+        return store;
+    }
+
+    public int subspaces() {
+        return subspaces;
+    }
+
+    @Override
+    public RowScorer scorer(float[] query) {
+        float[] table = new float[subspaces * centroidCount];
+        for (int s = 0; s < subspaces; s++) {
+            int start = subspaceStart[s];
+            int length = subspaceStart[s + 1] - start;
+            for (int c = 0; c < centroidCount; c++) {
+                table[s * centroidCount + c] = VectorMath.dot(centroids[s], c * length, query, start, length);
+            }
+        }
+
+        return (firstRow, count, dots) -> {
+            int base = firstRow * subspaces;
+            for (int i = 0; i < count; i++, base += subspaces) {
+                float sum = 0f;
+                for (int s = 0, offset = 0; s < subspaces; s++, offset += centroidCount) {
+                    sum += table[offset + (codes[base + s] & 0xff)];
+                }
+                dots[i] = sum;
+            }
+        };
+    }
+
+    @Override
+    public long codeBytes() {
+        long centroidBytes = (long) dimension * centroidCount * Float.BYTES;
+        return codes.length + centroidBytes;
+    }
+
+    @Override
+    public void copyRow(int row, float[] target, int offset) {
+        int base = row * subspaces;
+        for (int s = 0; s < subspaces; s++) {
+            int start = subspaceStart[s];
+            int length = subspaceStart[s + 1] - start;
+            System.arraycopy(centroids[s], (codes[base + s] & 0xff) * length, target, offset + start, length);
+        }
+    }
+
+    @Override
+    public float dot(int row, float[] vector) {
+        int base = row * subspaces;
+        float sum = 0f;
+        for (int s = 0; s < subspaces; s++) {
+            int start = subspaceStart[s];
+            int length = subspaceStart[s + 1] - start;
+            sum += VectorMath.dot(centroids[s], (codes[base + s] & 0xff) * length, vector, start, length);
+        }
+        return sum;
+    }
+
+    private static float[] sample(EmbeddingStore source, int count, long seed) {
+        int rows = source.size();
+        int dimension = source.dimension();
+        float[] sample = new float[count * dimension];
+
+        // partial Fisher-Yates shuffle of the row ids, k-means initialization relies on the random order
+        Random random = new Random(seed);
+        int[] ids = IntStream.range(0, rows).toArray();
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(rows - i);
+            int id = ids[j];
+            ids[j] = ids[i];
+            ids[i] = id;
+            source.copyRow(id, sample, i * dimension);
+        }
+        return sample;
+    }
+
+    /**
+     * Lloyd's k-means on one subspace of the sample. Centroids start as the first sampled rows, which are in random
+     * order, and centroids left without rows keep their previous value
+     */
+    private float[] kMeans(float[] sample, int sampleRows, int subspace, int iterations) {
+        int start = subspaceStart[subspace];
+        int length = subspaceStart[subspace + 1] - start;
+
+        float[] points = new float[sampleRows * length];
+        for (int i = 0; i < sampleRows; i++) {
+            System.arraycopy(sample, i * dimension + start, points, i * length, length);
+        }
+
+        float[] means = new float[centroidCount * length];
+        System.arraycopy(points, 0, means, 0, Math.min(means.length, points.length));
+
+        float[] norms = new float[centroidCount];
+        double[] sums = new double[centroidCount * length];
+        int[] counts = new int[centroidCount];
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            centroidNorms(means, length, norms);
+            Arrays.fill(sums, 0d);
+            Arrays.fill(counts, 0);
+
+            for (int i = 0; i < sampleRows; i++) {
+                int nearest = nearestCentroid(points, i * length, means, norms, length);
+                counts[nearest]++;
+                for (int j = 0; j < length; j++) {
+                    sums[nearest * length + j] += points[i * length + j];
+                }
+            }
+
+            for (int c = 0; c < centroidCount; c++) {
+                if (counts[c] > 0) {
+                    for (int j = 0; j < length; j++) {
+                        means[c * length + j] = (float) (sums[c * length + j] / counts[c]);
+                    }
+                }
+            }
+        }
+        return means;
+    }
+
+    private void encodeBlock(EmbeddingStore source, int block, float[][] norms) {
+        int firstRow = block * BLOCK_ROWS;
+        int count = Math.min(BLOCK_ROWS, rows - firstRow);
+        float[] vectors = new float[count * dimension];
+        source.copyRows(firstRow, count, vectors);
+
+        for (int i = 0; i < count; i++) {
+            int base = (firstRow + i) * subspaces;
+            for (int s = 0; s < subspaces; s++) {
+                int start = subspaceStart[s];
+                int length = subspaceStart[s + 1] - start;
+                codes[base + s] = (byte) nearestCentroid(vectors, i * dimension + start, centroids[s], norms[s], length);
+            }
+        }
+    }
+
+    /**
+     * Squared distance ordering, |x - c|^2 = |x|^2 - 2 x.c + |c|^2 where |x|^2 is the same for all centroids
+     */
+    private int nearestCentroid(float[] vector, int offset, float[] means, float[] norms, int length) {
+        int nearest = 0;
+        float best = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < centroidCount; c++) {
+            float distance = norms[c] - 2f * VectorMath.dot(means, c * length, vector, offset, length);
+            if (distance < best) {
+                best = distance;
+                nearest = c;
+            }
+        }
+        return nearest;
+    }
+
+    private void centroidNorms(float[] means, int length, float[] norms) {
+        for (int c = 0; c < centroidCount; c++) {
+            norms[c] = VectorMath.dot(means, c * length, means, c * length, length);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.drizzle.ml.word2vec.store;
+
+/**
+ * Receives progress of long running load and build steps. May be called from several threads
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    ProgressListener NONE = (done, total) -> {
+    };
+
+    /**
+     * @param done  units of work completed
+     * @param total total units of work
+     */
+    void progress(long done, long total);
+}
@@ -0,0 +1,187 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+
+/**
+ * Embedding store of a pruned model: the most frequent words are served by the kept store, searched for nearest words,
+ * and the pruned words by the store of all words, only read when one of them is requested.
+ * <p>
+ * The kept rows are the first rows of the store of all words, so rows have the same id in both stores and
+ * {@link #size()} covers every word. A store of all words given as a file is only mapped on the first lookup of a word
+ * that is not kept.
+ */
+public final class PrunedEmbeddingStore implements EmbeddingStore {
+    private final EmbeddingStore kept;
+    private final int rows;
+    // null when the store of all words was given already open
+    private final File allWordsFile;
+    private volatile BufferEmbeddingStore allWords;
+
+    private PrunedEmbeddingStore(EmbeddingStore kept, int rows, File allWordsFile, BufferEmbeddingStore allWords) {
+        this.kept = kept;
+        this.rows = rows;
+        this.allWordsFile = allWordsFile;
+        this.allWords = allWords;
+    }
+
+    /**
+     * @param kept     store of the most frequent words, the first rows of allWords
+     * @param allWords store of all words
+     * @return store serving kept words from kept and the other words from allWords
+     */
+    public static PrunedEmbeddingStore of(EmbeddingStore kept, BufferEmbeddingStore allWords) {
+        checkKept(kept, allWords.size(), allWords.dimension());
+        return new PrunedEmbeddingStore(kept, allWords.size(), null, allWords);
+    }
+
+    /**
+     * Reads the header of an embedding store file of all words, mapped when a word that is not kept is first requested
+     *
+     * @param kept         store of the most frequent words, the first rows of the file
+     * @param allWordsFile embedding store file of all words
+     * @return store serving kept words from kept and the other words from the file
+     * @throws IOException if the file cannot be read, is not an embedding store or does not start with the kept rows
+     */
+    public static PrunedEmbeddingStore mapped(EmbeddingStore kept, File allWordsFile) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(allWordsFile, "r")) {
+            if (input.length() < EmbeddingStoreFormat.HEADER_SIZE || Integer.reverseBytes(input.readInt()) != EmbeddingStoreFormat.MAGIC) {
+                throw new IOException(allWordsFile + " is not an embedding store file");
+            }
+            int version = Integer.reverseBytes(input.readInt());
+            if (version != EmbeddingStoreFormat.VERSION) {
+                throw new IOException("Unsupported embedding store version " + version + " in " + allWordsFile);
+            }
+            int rows = Integer.reverseBytes(input.readInt());
+            int dimension = Integer.reverseBytes(input.readInt());
+            try {
+                checkKept(kept, rows, dimension);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(allWordsFile + " does not match the kept words", e);
+            }
+            return new PrunedEmbeddingStore(kept, rows, allWordsFile, null);
+        }
+    }
+
+    /**
+     * @param kept store of the most frequent words, the first rows of the same store of all words
+     * @return store serving kept words from kept and the other words from the store of all words of this store
+     */
+    public PrunedEmbeddingStore withKept(EmbeddingStore kept) {
+        if (kept == this.kept) {
+            return this;
+        }
+        checkKept(kept, rows, dimension());
+        return new PrunedEmbeddingStore(kept, rows, allWordsFile, allWords);
+    }
+
+    /**
+     * @return store of the most frequent words
+     */
+    public EmbeddingStore kept() {
+        return kept;
+    }
+
+    private static void checkKept(EmbeddingStore kept, int rows, int dimension) {
+        if (kept.size() > rows || kept.dimension() != dimension) {
+            throw new IllegalArgumentException("Kept store of " + kept.size() + " x " + kept.dimension()
+                    + " is not a prefix of a store of " + rows + " x " + dimension);
+        }
+    }
+
+    private BufferEmbeddingStore allWords() {
+        BufferEmbeddingStore store = allWords;
+        if (store == null) {
+            synchronized (this) {
+                store = allWords;
+                if (store == null) {
+                    try {
+                        store = BufferEmbeddingStore.open(allWordsFile);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Unable to map pruned words from " + allWordsFile, e);
+                    }
+                    allWords = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    @Override
+    public int dimension() {
+        return kept.dimension();
+    }
+
+    @Override
+    public String wordAt(int row) {
+        return row < kept.size() ? kept.wordAt(row) : allWords().wordAt(row);
+    }
+
+    @Override
+    public ByteString wordBytes(int row) {
+        return row < kept.size() ? kept.wordBytes(row) : allWords().wordBytes(row);
+    }
+
+    @Override
+    public int indexOf(String word) {
+        int row = kept.indexOf(word);
+        return row >= 0 ? row : allWords().indexOf(word);
+    }
+
+    @Override
+    public int indexOf(ByteString word) {
+        int row = kept.indexOf(word);
+        return row >= 0 ? row : allWords().indexOf(word);
+    }
+
+    @Override
+    public void copyRow(int row, float[] target, int offset) {
+        if (row < kept.size()) {
+            kept.copyRow(row, target, offset);
+        } else {
+            allWords().copyRow(row, target, offset);
+        }
+    }
+
+    @Override
+    public ByteString rowBytes(int row) {
+        return row < kept.size() ? kept.rowBytes(row) : allWords().rowBytes(row);
+    }
+
+    @Override
+    public void addRow(int row, float weight, float[] target) {
+        if (row < kept.size()) {
+            kept.addRow(row, weight, target);
+        } else {
+            allWords().addRow(row, weight, target);
+        }
+    }
+
+    @Override
+    public float inverseNorm(int row) {
+        return row < kept.size() ? kept.inverseNorm(row) : allWords().inverseNorm(row);
+    }
+
+    @Override
+    public float dot(int row, float[] vector) {
+        return row < kept.size() ? kept.dot(row, vector) : allWords().dot(row, vector);
+    }
+
+    @Override
+    public void close() {
+        kept.close();
+        BufferEmbeddingStore store = allWords;
+        if (store != null) {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Embedding store keeping compressed codes instead of float vectors.
+ * Vectors returned by copyRow are reconstructed from the codes, dot products are approximated from them.
+ * Words and inverse norms are those of the source vectors, so similarities keep the original normalization.
+ */
+public abstract class QuantizedEmbeddingStore implements EmbeddingStore {
+    private final WordTable words;
+    private final float[] inverseNorms;
+    final int rows;
+    final int dimension;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    QuantizedEmbeddingStore(EmbeddingStore source) {
+        this.rows = source.size();
+        this.dimension = source.dimension();
+        this.words = wordsOf(source);
+        this.inverseNorms = new float[rows];
+        for (int row = 0; row < rows; row++) {
+            inverseNorms[row] = source.inverseNorm(row);
+        }
+    }
+
+    /**
+     * Approximate dot products between a query and consecutive rows
+     */
+    public interface RowScorer {
+        /**
+         * @param firstRow first row id
+         * @param count    number of rows
+         * @param dots     destination of the dot products, at least count long
+         */
+        void score(int firstRow, int count, float[] dots);
+    }
+
+    /**
+     * Prepares a query for scoring many rows, precomputing whatever the codes need
+     *
+     * @param query query vector with dimension() elements
+     * @return scorer for the query, not thread safe
+     */
+    public abstract RowScorer scorer(float[] query);
+
+    /**
+     * @return bytes used by the codes and their dequantization data, excluding the vocabulary
+     */
+    public abstract long codeBytes();
+
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public String wordAt(int row) {
+        return words.wordAt(row);
+    }
+
+    @Override
+    public ByteString wordBytes(int row) {
+        return words.wordBytes(row);
+    }
+
+    @Override
+    public int indexOf(String word) {
+        return words.indexOf(word);
+    }
+
+    @Override
+    public int indexOf(ByteString word) {
+        return words.indexOf(word);
+    }
+
+    @Override
+    public float inverseNorm(int row) {
+        return inverseNorms[row];
+    }
+
+    /**
+     * Releases the words, which may be shared with the source store. Codes are on the java heap
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            words.close();
+        }
+    }
+
+    private static WordTable wordsOf(EmbeddingStore source) {
+        if (source instanceof BufferEmbeddingStore) {
+            return ((BufferEmbeddingStore) source).shareWords();
+        }
+
+        String[] vocabulary = new String[source.size()];
+        for (int row = 0; row < vocabulary.length; row++) {
+            vocabulary[row] = source.wordAt(row);
+        }
+        return WordTable.of(vocabulary);
+    }
+}
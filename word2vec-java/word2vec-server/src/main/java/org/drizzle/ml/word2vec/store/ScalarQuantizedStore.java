@@ -0,0 +1,95 @@
+package org.drizzle.ml.word2vec.store;
+
+/**
+ * Store holding each vector as signed bytes with a per row scale, a quarter of the size of float32 vectors.
+ * Element i of a row is reconstructed as code[i] * scale, with scale = max(|v|) / 127.
+ */
+public final class ScalarQuantizedStore extends QuantizedEmbeddingStore {
+    private static final int BLOCK_ROWS = 1024;
+
+    private final byte[] codes;
+    private final float[] scales;
+
+    private ScalarQuantizedStore(EmbeddingStore source) {
+        super(source);
+        if ((long) rows * dimension > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many elements to quantize, " + rows + " x " + dimension);
+        }
+        this.codes = new byte[rows * dimension];
+        this.scales = new float[rows];
+    }
+
+    /**
+     * Quantizes all vectors of a store
+     *
+     * @param source store to quantize
+     * @return quantized store, independent of the source vectors
+     */
+    public static ScalarQuantizedStore quantize(EmbeddingStore source) {
+        ScalarQuantizedStore store = new ScalarQuantizedStore(source);
+        int dimension = store.dimension;
+        float[] block = new float[BLOCK_ROWS * dimension];
+
+        for (int start = 0; start < store.rows; start += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, store.rows - start);
+            source.copyRows(start, count, block);
+
+            for (int i = 0; i < count; i++) {
+                int offset = i * dimension;
+                float maxAbs = 0f;
+                for (int j = 0; j < dimension; j++) {
+                    maxAbs = Math.max(maxAbs, Math.abs(block[offset + j]));
+                }
+
+                float scale = maxAbs == 0f ? 0f : maxAbs / 127f;
+                float inverseScale = scale == 0f ? 0f : 1f / scale;
+                int codeOffset = (start + i) * dimension;
+                for (int j = 0; j < dimension; j++) {
+                    store.codes[codeOffset + j] = (byte) Math.round(block[offset + j] * inverseScale);
+                }
+                store.scales[start + i] = scale;
+            }
+        }
+        return store;
+    }
+
+    @Override
+    public RowScorer scorer(float[] query) {
+        return (firstRow, count, dots) -> {
+            for (int i = 0; i < count; i++) {
+                dots[i] = dot(firstRow + i, query);
+            }
+        };
+    }
+
+    @Override
+    public long codeBytes() {
+        return codes.length + (long) scales.length * Float.BYTES;
+    }
+
+    @Override
+    public void copyRow(int row, float[] target, int offset) {
+        int base = row * dimension;
+        float scale = scales[row];
+        for (int i = 0; i < dimension; i++) {
+            target[offset + i] = codes[base + i] * scale;
+        }
+    }
+
+    @Override
+    public float dot(int row, float[] vector) {
+        int base = row * dimension;
+        float s0 = 0f;
+        float s1 = 0f;
+
+        int i = 0;
+        for (; i + 1 < dimension; i += 2) {
+            s0 += codes[base + i] * vector[i];
+            s1 += codes[base + i + 1] * vector[i + 1];
+        }
+        for (; i < dimension; i++) {
+            s0 += codes[base + i] * vector[i];
+        }
+        return (s0 + s1) * scales[row];
+    }
+}
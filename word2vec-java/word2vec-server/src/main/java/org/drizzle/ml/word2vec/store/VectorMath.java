@@ -0,0 +1,55 @@
+package org.drizzle.ml.word2vec.store;
+
+/**
+ * Small vector helpers over float arrays
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+
+    }
+
+    /**
+     * @param vector array holding the vector
+     * @param offset index of the first element
+     * @param length number of elements
+     * @return 1 / L2 norm of the vector, or zero for zero vectors
+     */
+    public static float inverseNorm(float[] vector, int offset, int length) {
+        double sum = 0d;
+        for (int i = offset; i < offset + length; i++) {
+            sum += vector[i] * vector[i];
+        }
+        return sum == 0d ? 0f : (float) (1d / Math.sqrt(sum));
+    }
+
+    /**
+     * Dot product with four independent accumulators, letting the JIT pipeline the multiply-adds
+     *
+     * @param a       first vector array
+     * @param aOffset index of the first element of a
+     * @param b       second vector array
+     * @param bOffset index of the first element of b
+     * @param length  number of elements
+     * @return dot product
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+
+        return (s0 + s1) + (s2 + s3);
+    }
+}
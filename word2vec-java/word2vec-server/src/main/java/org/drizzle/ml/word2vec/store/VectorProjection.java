@@ -0,0 +1,380 @@
+package org.drizzle.ml.word2vec.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Linear map of vectors to fewer dimensions, y = W (x - mean), fitted with PCA or drawn as a Gaussian random projection.
+ * <p>
+ * PCA keeps the directions of largest variance of a sample of rows and centers the vectors on the sample mean.
+ * Random projections need no training and preserve dot products in expectation, at the cost of more dimensions for the
+ * same accuracy.
+ */
+public final class VectorProjection {
+    private static final Logger logger = LoggerFactory.getLogger(VectorProjection.class);
+
+    private static final int MAGIC = 0x4a525057;
+    private static final int VERSION = 1;
+    private static final int BLOCK_ROWS = 1024;
+    private static final int MAX_SWEEPS = 50;
+
+    private final int dimension;
+    private final int targetDimension;
+    // row-major, targetDimension x dimension
+    private final float[] matrix;
+    private final float[] mean;
+    // W mean, subtracted from W x so vectors are not centered one by one
+    private final float[] projectedMean;
+
+    private VectorProjection(int dimension, int targetDimension, float[] matrix, float[] mean) {
+        this.dimension = dimension;
+        this.targetDimension = targetDimension;
+        this.matrix = matrix;
+        this.mean = mean;
+        this.projectedMean = new float[targetDimension];
+        for (int k = 0; k < targetDimension; k++) {
+            projectedMean[k] = VectorMath.dot(matrix, k * dimension, mean, 0, dimension);
+        }
+    }
+
+    /**
+     * Draws a random projection with independent N(0, 1 / targetDimension) elements
+     *
+     * @param dimension       dimension of the source vectors
+     * @param targetDimension dimension of the projected vectors
+     * @param seed            random seed
+     * @return projection
+     */
+    public static VectorProjection random(int dimension, int targetDimension, long seed) {
+        checkDimensions(dimension, targetDimension);
+        Random random = new Random(seed);
+        float scale = (float) (1d / Math.sqrt(targetDimension));
+        float[] matrix = new float[targetDimension * dimension];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = (float) random.nextGaussian() * scale;
+        }
+        return new VectorProjection(dimension, targetDimension, matrix, new float[dimension]);
+    }
+
+    /**
+     * Fits a PCA projection on the first rows of a store, which for word2vec models are the most frequent words
+     *
+     * @param store           source store
+     * @param targetDimension number of principal components kept
+     * @param sampleRows      maximum number of rows used to estimate the covariance
+     * @return projection on the principal components, largest variance first
+     */
+    public static VectorProjection pca(EmbeddingStore store, int targetDimension, int sampleRows) {
+        int dimension = store.dimension();
+        checkDimensions(dimension, targetDimension);
+        int rows = Math.min(sampleRows, store.size());
+        if (rows == 0) {
+            throw new IllegalArgumentException("PCA requires at least one row");
+        }
+
+        double[] mean = new double[dimension];
+        float[] vector = new float[dimension];
+        for (int row = 0; row < rows; row++) {
+            store.copyRow(row, vector, 0);
+            for (int i = 0; i < dimension; i++) {
+                mean[i] += vector[i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            mean[i] /= rows;
+        }
+
+        logger.info("Estimating the covariance of {} dimensions on {} rows", dimension, rows);
+        int blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        double[] covariance = IntStream.range(0, blocks).parallel()
+                .mapToObj(block -> scatter(store, mean, block * BLOCK_ROWS, Math.min(BLOCK_ROWS, rows - block * BLOCK_ROWS)))
+                .reduce(new double[dimension * dimension], VectorProjection::sum);
+        // scatter only fills the upper triangle
+        for (int i = 0; i < dimension; i++) {
+            for (int j = i; j < dimension; j++) {
+                covariance[i * dimension + j] /= rows;
+                covariance[j * dimension + i] = covariance[i * dimension + j];
+            }
+        }
+
+        double[] eigenvectors = new double[dimension * dimension];
+        double[] eigenvalues = jacobiEigen(covariance, dimension, eigenvectors);
+
+        Integer[] order = IntStream.range(0, dimension).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, (a, b) -> Double.compare(eigenvalues[b], eigenvalues[a]));
+
+        double total = 0d;
+        double kept = 0d;
+        float[] matrix = new float[targetDimension * dimension];
+        for (int k = 0; k < dimension; k++) {
+            total += Math.max(0d, eigenvalues[k]);
+        }
+        for (int k = 0; k < targetDimension; k++) {
+            int component = order[k];
+            kept += Math.max(0d, eigenvalues[component]);
+            for (int i = 0; i < dimension; i++) {
+                matrix[k * dimension + i] = (float) eigenvectors[i * dimension + component];
+            }
+        }
+        logger.info("{} principal components keep {}% of the variance", targetDimension,
+                total == 0d ? 100 : Math.round(kept * 100d / total));
+
+        float[] floatMean = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            floatMean[i] = (float) mean[i];
+        }
+        return new VectorProjection(dimension, targetDimension, matrix, floatMean);
+    }
+
+    /**
+     * Loads a projection saved with {@link #save(File)}
+     *
+     * @param file projection file
+     * @return projection
+     * @throws IOException if the file cannot be read or is not a projection file
+     */
+    public static VectorProjection load(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException(file + " is not a vector projection file");
+            }
+
+            int dimension = input.readInt();
+            int targetDimension = input.readInt();
+            if (dimension <= 0 || targetDimension <= 0 || targetDimension > dimension) {
+                throw new IOException("Invalid projection of " + dimension + " to " + targetDimension + " dimensions in " + file);
+            }
+
+            float[] mean = new float[dimension];
+            for (int i = 0; i < mean.length; i++) {
+                mean[i] = input.readFloat();
+            }
+            float[] matrix = new float[targetDimension * dimension];
+            for (int i = 0; i < matrix.length; i++) {
+                matrix[i] = input.readFloat();
+            }
+            return new VectorProjection(dimension, targetDimension, matrix, mean);
+        }
+    }
+
+    /**
+     * Saves the projection, which can be loaded later with {@link #load(File)}
+     *
+     * @param file destination file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(dimension);
+            output.writeInt(targetDimension);
+            for (float value : mean) {
+                output.writeFloat(value);
+            }
+            for (float value : matrix) {
+                output.writeFloat(value);
+            }
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int targetDimension() {
+        return targetDimension;
+    }
+
+    /**
+     * Projects a vector
+     *
+     * @param vector       array holding the source vector
+     * @param vectorOffset index of the first element of the source vector
+     * @param target       destination array
+     * @param offset       index of the first element written to target
+     */
+    public void project(float[] vector, int vectorOffset, float[] target, int offset) {
+        for (int k = 0; k < targetDimension; k++) {
+            target[offset + k] = VectorMath.dot(matrix, k * dimension, vector, vectorOffset, dimension) - projectedMean[k];
+        }
+    }
+
+    /**
+     * Projects every row of a store to direct memory
+     *
+     * @param source store to project
+     * @return store with the same words as the source and projected vectors, sharing the source words when it is a
+     * {@link BufferEmbeddingStore}
+     */
+    public BufferEmbeddingStore apply(EmbeddingStore source) {
+        if (source.dimension() != dimension) {
+            throw new IllegalArgumentException("Expected vectors of size " + dimension + " but got " + source.dimension());
+        }
+
+        int rows = source.size();
+        VectorTable vectors = VectorTable.allocate(rows, targetDimension);
+        ByteBuffer inverseNormBytes = ByteBuffer.allocateDirect(rows * Float.BYTES);
+        FloatBuffer inverseNorms = inverseNormBytes.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+        int blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            int firstRow = block * BLOCK_ROWS;
+            int count = Math.min(BLOCK_ROWS, rows - firstRow);
+            float[] values = new float[count * dimension];
+            float[] projected = new float[targetDimension];
+            source.copyRows(firstRow, count, values);
+            for (int i = 0; i < count; i++) {
+                project(values, i * dimension, projected, 0);
+                vectors.setRow(firstRow + i, projected, 0);
+                inverseNorms.put(firstRow + i, VectorMath.inverseNorm(projected, 0, targetDimension));
+            }
+        });
+
+        WordTable words;
+        if (source instanceof BufferEmbeddingStore) {
+            words = ((BufferEmbeddingStore) source).shareWords();
+        } else {
+            String[] vocabulary = new String[rows];
+            for (int row = 0; row < rows; row++) {
+                vocabulary[row] = source.wordAt(row);
+            }
+            words = WordTable.of(vocabulary);
+        }
+        return new BufferEmbeddingStore(words, vectors, inverseNormBytes);
+    }
+
+    /**
+     * Upper triangle of the scatter matrix of a block of centered rows
+     */
+    private static double[] scatter(EmbeddingStore store, double[] mean, int firstRow, int count) {
+        int dimension = mean.length;
+        float[] vectors = new float[count * dimension];
+        store.copyRows(firstRow, count, vectors);
+
+        double[] scatter = new double[dimension * dimension];
+        double[] centered = new double[dimension];
+        for (int r = 0; r < count; r++) {
+            for (int i = 0; i < dimension; i++) {
+                centered[i] = vectors[r * dimension + i] - mean[i];
+            }
+            for (int i = 0; i < dimension; i++) {
+                double value = centered[i];
+                int base = i * dimension;
+                for (int j = i; j < dimension; j++) {
+                    scatter[base + j] += value * centered[j];
+                }
+            }
+        }
+        return scatter;
+    }
+
+    private static double[] sum(double[] a, double[] b) {
+        double[] sum = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            sum[i] = a[i] + b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Cyclic Jacobi eigen decomposition of a symmetric matrix. Each rotation zeroes one off-diagonal element, sweeps
+     * repeat until the off-diagonal elements are negligible
+     *
+     * @param a            row-major symmetric matrix, overwritten
+     * @param n            matrix size
+     * @param eigenvectors destination of the eigenvectors, one per column
+     * @return eigenvalues, in the order of the eigenvector columns
+     */
+    static double[] jacobiEigen(double[] a, int n, double[] eigenvectors) {
+        for (int i = 0; i < n; i++) {
+            eigenvectors[i * n + i] = 1d;
+        }
+
+        double norm = 0d;
+        for (double value : a) {
+            norm += value * value;
+        }
+        double tolerance = 1e-22 * norm;
+
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double offDiagonal = 0d;
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    offDiagonal += a[p * n + q] * a[p * n + q];
+                }
+            }
+            if (offDiagonal <= tolerance) {
+                break;
+            }
+
+            for (int p = 0; p < n - 1; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    double apq = a[p * n + q];
+                    if (apq == 0d) {
+                        continue;
+                    }
+                    double theta = (a[q * n + q] - a[p * n + p]) / (2d * apq);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1d));
+                    if (theta == 0d) {
+                        t = 1d;
+                    }
+                    double c = 1d / Math.sqrt(t * t + 1d);
+                    double s = t * c;
+                    rotate(a, eigenvectors, n, p, q, c, s);
+                }
+            }
+        }
+
+        double[] eigenvalues = new double[n];
+        for (int i = 0; i < n; i++) {
+            eigenvalues[i] = a[i * n + i];
+        }
+        return eigenvalues;
+    }
+
+    /**
+     * A = J^T A J and V = V J, with J the rotation of columns p and q
+     */
+    private static void rotate(double[] a, double[] v, int n, int p, int q, double c, double s) {
+        for (int k = 0; k < n; k++) {
+            double akp = a[k * n + p];
+            double akq = a[k * n + q];
+            a[k * n + p] = c * akp - s * akq;
+            a[k * n + q] = s * akp + c * akq;
+        }
+        for (int k = 0; k < n; k++) {
+            double apk = a[p * n + k];
+            double aqk = a[q * n + k];
+            a[p * n + k] = c * apk - s * aqk;
+            a[q * n + k] = s * apk + c * aqk;
+        }
+        for (int k = 0; k < n; k++) {
+            double vkp = v[k * n + p];
+            double vkq = v[k * n + q];
+            v[k * n + p] = c * vkp - s * vkq;
+            v[k * n + q] = s * vkp + c * vkq;
+        }
+    }
+
+    private static void checkDimensions(int dimension, int targetDimension) {
+        if (targetDimension <= 0 || targetDimension > dimension) {
+            throw new IllegalArgumentException("Target dimension must be between 1 and " + dimension + ", got " + targetDimension);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Row-major float matrix held in little-endian byte buffers outside the java heap.
+ * Buffers are limited to 2GB, so large tables are split in segments holding a power of two number of rows.
+ */
+final class VectorTable {
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    private final int rows;
+    private final int dimension;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final ByteBuffer[] byteSegments;
+    private final FloatBuffer[] floatSegments;
+    private final BufferMemory memory;
+
+    private VectorTable(int rows, int dimension, ByteBuffer[] segments, BufferMemory memory) {
+        this.rows = rows;
+        this.memory = memory;
+        this.dimension = dimension;
+        this.segmentShift = Integer.numberOfTrailingZeros(rowsPerSegment(dimension));
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.byteSegments = segments;
+        this.floatSegments = new FloatBuffer[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            floatSegments[i] = segments[i].asFloatBuffer();
+        }
+    }
+
+    /**
+     * Maps a table stored in a file
+     */
+    static VectorTable map(FileChannel channel, long position, int rows, int dimension) throws IOException {
+        int rowsPerSegment = rowsPerSegment(dimension);
+        long rowBytes = (long) dimension * Float.BYTES;
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(rows, rowsPerSegment)];
+
+        for (int i = 0; i < segments.length; i++) {
+            int segmentRows = Math.min(rowsPerSegment, rows - i * rowsPerSegment);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position + i * rowsPerSegment * rowBytes,
+                    segmentRows * rowBytes);
+        }
+        return new VectorTable(rows, dimension, segments, new BufferMemory(segments));
+    }
+
+    /**
+     * Allocates a zeroed table in direct memory
+     */
+    static VectorTable allocate(int rows, int dimension) {
+        int rowsPerSegment = rowsPerSegment(dimension);
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(rows, rowsPerSegment)];
+
+        for (int i = 0; i < segments.length; i++) {
+            int segmentRows = Math.min(rowsPerSegment, rows - i * rowsPerSegment);
+            segments[i] = ByteBuffer.allocateDirect(segmentRows * dimension * Float.BYTES);
+        }
+        return new VectorTable(rows, dimension, segments, new BufferMemory(segments));
+    }
+
+    /**
+     * @return table of the first rows, sharing this table memory until both are closed
+     */
+    VectorTable prefix(int rows) {
+        if (rows > this.rows) {
+            throw new IllegalArgumentException("Prefix of " + rows + " rows of a table of " + this.rows + " rows");
+        }
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(rows, segmentMask + 1)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = byteSegments[i].duplicate();
+        }
+        return new VectorTable(rows, dimension, segments, memory.retain());
+    }
+
+    /**
+     * @return table of the same rows, sharing this table memory until both are closed
+     */
+    VectorTable share() {
+        return prefix(rows);
+    }
+
+    /**
+     * Releases the table memory, freed once every table sharing it is closed. Called once per table
+     */
+    void close() {
+        memory.release();
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    void setRow(int row, float[] source, int offset) {
+        FloatBuffer segment = floatSegments[row >>> segmentShift];
+        int base = (row & segmentMask) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            segment.put(base + i, source[offset + i]);
+        }
+    }
+
+    void copyRow(int row, float[] target, int offset) {
+        FloatBuffer segment = floatSegments[row >>> segmentShift];
+        int base = (row & segmentMask) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            target[offset + i] = segment.get(base + i);
+        }
+    }
+
+    /**
+     * Bulk copy of consecutive rows, which may span segments
+     */
+    void copyRows(int firstRow, int count, float[] target) {
+        int copied = 0;
+        while (copied < count) {
+            int row = firstRow + copied;
+            int segmentRow = row & segmentMask;
+            int rowsInSegment = Math.min(count - copied, (segmentMask + 1) - segmentRow);
+
+            FloatBuffer segment = floatSegments[row >>> segmentShift].duplicate();
+            segment.position(segmentRow * dimension);
+            segment.get(target, copied * dimension, rowsInSegment * dimension);
+            copied += rowsInSegment;
+        }
+    }
+
+    /**
+     * @return little-endian float32 bytes of a row, sharing the table memory
+     */
+    ByteString rowBytes(int row) {
+        ByteBuffer bytes = byteSegments[row >>> segmentShift].duplicate();
+        int start = (row & segmentMask) * dimension * Float.BYTES;
+        bytes.limit(start + dimension * Float.BYTES).position(start);
+        return UnsafeByteOperations.unsafeWrap(bytes.slice());
+    }
+
+    void addRow(int row, float weight, float[] target) {
+        FloatBuffer segment = floatSegments[row >>> segmentShift];
+        int base = (row & segmentMask) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            target[i] += weight * segment.get(base + i);
+        }
+    }
+
+    float dot(int row, float[] vector) {
+        FloatBuffer segment = floatSegments[row >>> segmentShift];
+        int base = (row & segmentMask) * dimension;
+        float sum = 0f;
+        for (int i = 0; i < dimension; i++) {
+            sum += segment.get(base + i) * vector[i];
+        }
+        return sum;
+    }
+
+    private static int rowsPerSegment(int dimension) {
+        return Integer.highestOneBit(Math.max(1, MAX_SEGMENT_BYTES / (dimension * Float.BYTES)));
+    }
+
+    private static int segmentCount(int rows, int rowsPerSegment) {
+        return (rows + rowsPerSegment - 1) / rowsPerSegment;
+    }
+}
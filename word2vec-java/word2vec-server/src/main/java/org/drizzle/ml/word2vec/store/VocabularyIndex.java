@@ -0,0 +1,162 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Maps UTF-8 encoded words to rows without allocating.
+ * Open addressing hash table with linear probing over a single long array, each slot holding the word hash in the
+ * high 32 bits and row + 1 in the low 32 bits. Words are compared against the byte arena of the word table,
+ * so no per word objects are kept.
+ */
+final class VocabularyIndex {
+    private static final long ROW_MASK = 0xffffffffL;
+
+    private final IntBuffer offsets;
+    private final ByteBuffer bytes;
+    private final long[] slots;
+    private final int slotMask;
+
+    /**
+     * Indexes rows in [0, rows). If a word appears more than once, the first row is kept
+     *
+     * @param offsets offset of each word in bytes, rows + 1 entries
+     * @param bytes   UTF-8 words back to back
+     * @param rows    number of words
+     */
+    VocabularyIndex(IntBuffer offsets, ByteBuffer bytes, int rows) {
+        this(offsets, bytes, rows, rows);
+    }
+
+    /**
+     * Indexes rows in [0, rows), sized for capacity rows so that more rows can be added with {@link #add(int)}
+     */
+    VocabularyIndex(IntBuffer offsets, ByteBuffer bytes, int rows, int capacity) {
+        this.offsets = offsets;
+        this.bytes = bytes;
+        this.slots = new long[capacityFor(capacity)];
+        this.slotMask = slots.length - 1;
+
+        for (int row = 0; row < rows; row++) {
+            add(row);
+        }
+    }
+
+    /**
+     * @param word UTF-8 encoded word
+     * @return row of the word or -1 if not found
+     */
+    int indexOf(ByteString word) {
+        return indexOf(word, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds a word among the rows below a limit. Rows at or above the limit may still be written by
+     * {@link #add(int)} on another thread and are skipped
+     *
+     * @param word     UTF-8 encoded word
+     * @param rowLimit rows readers can see, published after the rows were added
+     * @return row of the word or -1 if not found
+     */
+    int indexOf(ByteString word, int rowLimit) {
+        int length = word.size();
+        int hash = hash(word, length);
+
+        for (int slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            long entry = slots[slot];
+            if (entry == 0L) {
+                return -1;
+            }
+
+            int row = (int) (entry & ROW_MASK) - 1;
+            if (row < rowLimit && (int) (entry >>> 32) == hash && matches(row, word, length)) {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Adds a row, called from a single thread. If its word is already indexed the first row is kept
+     */
+    void add(int row) {
+        int start = offsets.get(row);
+        int length = offsets.get(row + 1) - start;
+        int hash = hash(start, length);
+
+        int slot = hash & slotMask;
+        for (long entry = slots[slot]; entry != 0L; entry = slots[slot]) {
+            int existing = (int) (entry & ROW_MASK) - 1;
+            if ((int) (entry >>> 32) == hash && sameWord(existing, start, length)) {
+                return;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+
+        slots[slot] = ((long) hash << 32) | (row + 1L);
+    }
+
+    private boolean matches(int row, ByteString word, int length) {
+        int start = offsets.get(row);
+        if (offsets.get(row + 1) - start != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(start + i) != word.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameWord(int row, int start, int length) {
+        int rowStart = offsets.get(row);
+        if (offsets.get(row + 1) - rowStart != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(rowStart + i) != bytes.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a followed by a murmur3 finalizer, so low bits are usable as slot index
+     */
+    private static int hash(ByteString word, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (word.byteAt(i) & 0xff)) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    private int hash(int start, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = start; i < start + length; i++) {
+            hash = (hash ^ (bytes.get(i) & 0xff)) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * Power of two capacity keeping the load factor at or below 0.5
+     */
+    private static int capacityFor(int rows) {
+        return Integer.highestOneBit(Math.max(2, rows) * 4 - 1);
+    }
+}
@@ -0,0 +1,310 @@
+package org.drizzle.ml.word2vec.store;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Sorted array trie over the words of a store, answering case-insensitive, prefix and bounded edit distance lookups.
+ * <p>
+ * Words are kept in lexicographic order as UTF-16 characters back to back, with no node objects: the words sharing a
+ * prefix are a contiguous range of the sorted words, and the children of a prefix are found by binary search on the
+ * next character. Lookups walk the trie computing one row of the edit distance table per prefix, the optimal string
+ * alignment distance counting insertions, deletions, substitutions and transpositions of adjacent characters, and skip
+ * the prefixes whose row has no distance within the bound. For 3 million words the trie takes about 8 bytes per word
+ * plus 2 bytes per character.
+ */
+public final class VocabularyTrie {
+    /**
+     * Maximum number of edits of a lookup, each edit widens the explored part of the trie
+     */
+    public static final int MAX_EDITS = 2;
+
+    // words back to back in sorted order
+    private final char[] keys;
+    // offset of each sorted word in keys, words + 1 entries
+    private final int[] offsets;
+    // store row of each sorted word
+    private final int[] rows;
+
+    private VocabularyTrie(char[] keys, int[] offsets, int[] rows) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    /**
+     * Builds the trie of the words of a store
+     *
+     * @param store store holding the words
+     * @return trie
+     */
+    public static VocabularyTrie build(EmbeddingStore store) {
+        int size = store.size();
+        String[] words = new String[size];
+        long length = 0;
+        for (int row = 0; row < size; row++) {
+            words[row] = store.wordAt(row);
+            length += words[row].length();
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Vocabulary too large, " + length + " characters");
+        }
+
+        Integer[] order = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+        Arrays.parallelSort(order, (a, b) -> words[a].compareTo(words[b]));
+
+        char[] keys = new char[(int) length];
+        int[] offsets = new int[size + 1];
+        int[] rows = new int[size];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            String word = words[order[i]];
+            word.getChars(0, word.length(), keys, offset);
+            offsets[i] = offset;
+            rows[i] = order[i];
+            offset += word.length();
+        }
+        offsets[size] = offset;
+        return new VocabularyTrie(keys, offsets, rows);
+    }
+
+    /**
+     * @return number of words
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * @return memory used by the trie arrays
+     */
+    public long bytes() {
+        return (long) keys.length * Character.BYTES + ((long) offsets.length + rows.length) * Integer.BYTES;
+    }
+
+    /**
+     * Finds the vocabulary words matching a word. Matches are ordered by number of edits, then whole words before
+     * words only matched by their prefix, then words with the same case as the word before others, then by row, which
+     * for word2vec models puts the most frequent words first
+     *
+     * @param word       word to find
+     * @param maxEdits   maximum number of edits, from 0 to {@link #MAX_EDITS}
+     * @param prefix     also match the words starting with a prefix within maxEdits edits of the word
+     * @param ignoreCase compare characters regardless of case
+     * @param limit      maximum number of matches
+     * @param matchRows  destination of the rows of the matches, at least limit elements
+     * @param edits      destination of the number of edits of the matches, at least limit elements
+     * @return number of matches
+     */
+    public int search(String word, int maxEdits, boolean prefix, boolean ignoreCase, int limit, int[] matchRows, int[] edits) {
+        if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+            throw new IllegalArgumentException("Edits must be between 0 and " + MAX_EDITS + ", got " + maxEdits);
+        }
+        if (limit <= 0 || rows.length == 0) {
+            return 0;
+        }
+
+        Lookup lookup = new Lookup(word, maxEdits, prefix, ignoreCase, Math.min(limit, rows.length));
+        walk(lookup, 0, rows.length, 0, word.length());
+        return lookup.drain(matchRows, edits);
+    }
+
+    /**
+     * Visits the words of the range, which share their first depth characters
+     *
+     * @param best fewest edits between the word and a prefix of the path, only used by prefix lookups
+     */
+    private void walk(Lookup lookup, int lo, int hi, int depth, int best) {
+        int[] row = lookup.table[depth];
+        int n = lookup.word.length;
+
+        // the word equal to the path comes first
+        while (lo < hi && length(lo) == depth) {
+            int distance = lookup.prefix ? best : row[n];
+            if (distance <= lookup.maxEdits) {
+                lookup.add(lo, distance, distance < row[n]);
+            }
+            lo++;
+        }
+        if (lo >= hi) {
+            return;
+        }
+
+        int rowMin = Integer.MAX_VALUE;
+        for (int value : row) {
+            rowMin = Math.min(rowMin, value);
+        }
+        if (lookup.prefix && best <= lookup.maxEdits && rowMin >= best) {
+            // distances only grow along a path, no longer prefix comes closer to the word
+            for (int i = lo; i < hi; i++) {
+                lookup.add(i, best, true);
+            }
+            return;
+        }
+        if (rowMin > lookup.maxEdits) {
+            return;
+        }
+
+        while (lo < hi) {
+            char c = keys[offsets[lo] + depth];
+            int end = childEnd(lo, hi, depth, c);
+            int[] next = nextRow(lookup, lo, depth, c);
+            walk(lookup, lo, end, depth + 1, Math.min(best, next[n]));
+            lo = end;
+        }
+    }
+
+    /**
+     * Fills the edit distance row of the path extended with a character
+     */
+    private int[] nextRow(Lookup lookup, int first, int depth, char c) {
+        char[] word = lookup.word;
+        int[] previous = lookup.table[depth];
+        int[] next = lookup.table[depth + 1];
+        char folded = lookup.fold(c);
+        char previousChar = depth > 0 ? lookup.fold(keys[offsets[first] + depth - 1]) : 0;
+
+        next[0] = depth + 1;
+        for (int j = 1; j <= word.length; j++) {
+            int cost = word[j - 1] == folded ? 0 : 1;
+            int distance = Math.min(Math.min(previous[j] + 1, next[j - 1] + 1), previous[j - 1] + cost);
+            if (depth > 0 && j > 1 && word[j - 2] == folded && word[j - 1] == previousChar) {
+                distance = Math.min(distance, lookup.table[depth - 1][j - 2] + 1);
+            }
+            next[j] = distance;
+        }
+        return next;
+    }
+
+    /**
+     * @return end of the range of words of [lo, hi) with the character c at depth, the words being sorted
+     */
+    private int childEnd(int lo, int hi, int depth, char c) {
+        int low = lo + 1;
+        int high = hi;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[offsets[middle] + depth] <= c) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int length(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * State of one lookup: the searched word, its edit distance table and the best matches found so far
+     */
+    private final class Lookup {
+        private final char[] word;
+        private final char[] original;
+        private final int maxEdits;
+        private final boolean prefix;
+        private final boolean ignoreCase;
+        // one row per path length, the path never gets longer than the word and its edits
+        private final int[][] table;
+        // max-heap of match keys, see key()
+        private final long[] heap;
+        private int count;
+
+        Lookup(String word, int maxEdits, boolean prefix, boolean ignoreCase, int limit) {
+            this.original = word.toCharArray();
+            this.word = word.toCharArray();
+            this.maxEdits = maxEdits;
+            this.prefix = prefix;
+            this.ignoreCase = ignoreCase;
+            for (int i = 0; i < this.word.length; i++) {
+                this.word[i] = fold(this.word[i]);
+            }
+
+            this.table = new int[this.word.length + maxEdits + 2][this.word.length + 1];
+            for (int j = 0; j <= this.word.length; j++) {
+                table[0][j] = j;
+            }
+            this.heap = new long[limit];
+        }
+
+        char fold(char c) {
+            return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+        }
+
+        /**
+         * Keeps a match if it is among the best limit matches
+         */
+        void add(int index, int distance, boolean partial) {
+            long key = key(index, distance, partial);
+            if (count < heap.length) {
+                heap[count] = key;
+                siftUp(count++);
+            } else if (key < heap[0]) {
+                heap[0] = key;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Match ordering packed in a long: edits, prefix match, case difference, then row
+         */
+        private long key(int index, int distance, boolean partial) {
+            boolean otherCase = false;
+            if (ignoreCase && distance == 0) {
+                int start = offsets[index];
+                int length = Math.min(original.length, length(index));
+                for (int i = 0; i < length && !otherCase; i++) {
+                    otherCase = keys[start + i] != original[i];
+                }
+            }
+            return (long) distance << 34 | (partial ? 1L << 33 : 0L) | (otherCase ? 1L << 32 : 0L) | rows[index];
+        }
+
+        /**
+         * Writes the matches best first
+         */
+        int drain(int[] matchRows, int[] edits) {
+            long[] sorted = Arrays.copyOf(heap, count);
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                matchRows[i] = (int) sorted[i];
+                edits[i] = (int) (sorted[i] >>> 34);
+            }
+            return sorted.length;
+        }
+
+        private void siftUp(int index) {
+            long key = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heap[parent] >= key) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = key;
+        }
+
+        private void siftDown(int index) {
+            long key = heap[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= count) {
+                    break;
+                }
+                if (child + 1 < count && heap[child + 1] > heap[child]) {
+                    child++;
+                }
+                if (heap[child] <= key) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = key;
+        }
+    }
+}
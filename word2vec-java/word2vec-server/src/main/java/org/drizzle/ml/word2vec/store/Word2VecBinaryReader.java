@@ -0,0 +1,457 @@
+package org.drizzle.ml.word2vec.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Reads models in the binary format of the original word2vec tool straight into an embedding store.
+ * <p>
+ * The format is a "rows dimension" text line followed, for each word, by the word, a space and dimension little-endian
+ * float32 values, usually followed by a line break. Words have variable length, so a sequential pass only reads
+ * the words and skips over the vectors, recording where each vector starts. Each chunk of rows read is handed to the
+ * pool, which decodes the vectors in parallel with the reading of the next chunks, computing their norms on the way.
+ */
+public final class Word2VecBinaryReader {
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int CHUNK_ROWS = 4096;
+    private static final int MAX_HEADER_LENGTH = 64;
+    private static final int MAX_WORD_LENGTH = 1 << 16;
+
+    private Word2VecBinaryReader() {
+
+    }
+
+    /**
+     * Checks whether a file looks like a binary word2vec model: a numeric header line and non text bytes after the first word
+     *
+     * @param file file to check
+     * @return true if the file can be read with {@link #read(File, ForkJoinPool, ProgressListener)}
+     */
+    public static boolean isBinaryModel(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+
+        try (SequentialReader reader = new SequentialReader(file)) {
+            int[] header = reader.readHeader();
+            if (header[0] <= 0 || header[1] <= 0) {
+                return false;
+            }
+
+            reader.readWord();
+            int length = Math.min(header[1] * Float.BYTES, 64);
+            for (int i = 0; i < length; i++) {
+                int value = reader.read();
+                if (value < 0) {
+                    return false;
+                }
+                boolean text = value == '\t' || value == '\n' || value == '\r' || (value >= ' ' && value < 127);
+                if (!text) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a binary word2vec model into direct memory
+     *
+     * @param file     model file
+     * @param pool     pool decoding the vectors
+     * @param listener notified of progress, counting each row twice: once when its word is read and once when its vector is decoded
+     * @return store with the model words and vectors
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static BufferEmbeddingStore read(File file, ForkJoinPool pool, ProgressListener listener) throws IOException {
+        return read(file, pool, listener, partialStore -> {
+        });
+    }
+
+    /**
+     * Reads a binary word2vec model into direct memory, publishing rows as they are loaded. Each chunk of words is
+     * decoded on the pool while the next chunk is read, and rows are published once every chunk up to theirs is decoded.
+     *
+     * @param file     model file
+     * @param pool     pool decoding the vectors
+     * @param listener notified of progress, counting each row twice: once when its word is read and once when its vector is decoded
+     * @param loaded   called with the store of the rows loaded so far each time more rows are published, one call at a time
+     *                 but from the reading and decoding threads. Not called once this method returns, which closes the
+     *                 store: callers keep a {@link PartialEmbeddingStore#share() view} to read it afterwards
+     * @return store with the model words and vectors
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static BufferEmbeddingStore read(File file, ForkJoinPool pool, ProgressListener listener,
+                                            Consumer<PartialEmbeddingStore> loaded) throws IOException {
+        return read(file, pool, listener, Integer.MAX_VALUE, loaded);
+    }
+
+    /**
+     * Reads the first rows of a binary word2vec model into direct memory, publishing rows as they are loaded.
+     * Rows after maxRows, the least frequent words of word2vec models, are not read
+     *
+     * @param file     model file
+     * @param pool     pool decoding the vectors
+     * @param listener notified of progress, counting each row read twice: once when its word is read and once when its vector is decoded
+     * @param maxRows  maximum number of rows read
+     * @param loaded   called with the store of the rows loaded so far each time more rows are published, one call at a time
+     *                 but from the reading and decoding threads. Not called once this method returns, which closes the
+     *                 store: callers keep a {@link PartialEmbeddingStore#share() view} to read it afterwards
+     * @return store with the words and vectors of the rows read
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static BufferEmbeddingStore read(File file, ForkJoinPool pool, ProgressListener listener, int maxRows,
+                                            Consumer<PartialEmbeddingStore> loaded) throws IOException {
+        return read(file, pool, listener, maxRows, null, loaded);
+    }
+
+    /**
+     * Reads the rows of the words accepted by a filter among the first rows of a binary word2vec model into direct
+     * memory, publishing rows as they are loaded. The vectors of other words are never read or allocated, so a
+     * vocabulary shard only takes the memory of its own rows
+     *
+     * @param file     model file
+     * @param pool     pool decoding the vectors
+     * @param listener notified of progress, counting each row kept twice: once when its word is read and once when its vector is decoded
+     * @param maxRows  maximum number of rows read, before filtering
+     * @param filter   words kept, in file order, null to keep every word
+     * @param loaded   called with the store of the rows loaded so far each time more rows are published, one call at a time
+     *                 but from the reading and decoding threads. Not called once this method returns, which closes the
+     *                 store: callers keep a {@link PartialEmbeddingStore#share() view} to read it afterwards
+     * @return store with the words and vectors of the rows kept
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static BufferEmbeddingStore read(File file, ForkJoinPool pool, ProgressListener listener, int maxRows,
+                                            WordFilter filter, Consumer<PartialEmbeddingStore> loaded) throws IOException {
+        List<ForkJoinTask<?>> decodes = new ArrayList<>();
+        PartialEmbeddingStore store = null;
+        try (SequentialReader reader = new SequentialReader(file);
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int[] header = reader.readHeader();
+            int dimension = header[1];
+            if (header[0] < 0 || dimension <= 0) {
+                throw new IOException("Invalid word2vec header in " + file + ": " + header[0] + " " + dimension);
+            }
+            int fileRows = Math.min(header[0], Math.max(0, maxRows));
+
+            long vectorBytes = (long) dimension * Float.BYTES;
+            int rows;
+            long maxWordBytes;
+            if (filter == null && fileRows == header[0]) {
+                // words and their separators take what the vectors leave of the file
+                rows = fileRows;
+                maxWordBytes = reader.size() - reader.position() - rows * vectorBytes;
+            } else {
+                long[] kept = scanWords(file, fileRows, vectorBytes, filter);
+                rows = Math.toIntExact(kept[0]);
+                maxWordBytes = kept[1];
+            }
+            if (maxWordBytes < 0) {
+                throw new IOException("Truncated word2vec file " + file + ", expected " + rows + " vectors");
+            }
+
+            VectorTable vectors = VectorTable.allocate(rows, dimension);
+            ByteBuffer inverseNormBytes = ByteBuffer.allocateDirect(rows * Float.BYTES);
+            FloatBuffer inverseNorms = inverseNormBytes.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            WordTable words = WordTable.allocate(rows, maxWordBytes);
+            store = new PartialEmbeddingStore(words, vectors, inverseNormBytes);
+            RowPublisher publisher = new RowPublisher(store, loaded);
+
+            AtomicLong done = new AtomicLong();
+            int fileRow = 0;
+            for (int chunkStart = 0; chunkStart < rows; chunkStart += CHUNK_ROWS) {
+                int firstRow = chunkStart;
+                int count = Math.min(CHUNK_ROWS, rows - firstRow);
+                long[] vectorPositions = new long[count];
+                for (int i = 0; i < count; fileRow++) {
+                    if (fileRow >= fileRows) {
+                        throw new IOException("Word2vec file " + file + " changed while reading it");
+                    }
+                    int length = reader.readWordBytes();
+                    long vectorPosition = reader.position();
+                    reader.skip(vectorBytes);
+                    if (filter != null && !filter.accept(reader.word, length)) {
+                        continue;
+                    }
+                    if (words.bytesLeft() < length) {
+                        throw new IOException("Truncated word2vec file " + file + ", expected " + rows + " vectors");
+                    }
+                    words.append(reader.word, length);
+                    vectorPositions[i++] = vectorPosition;
+                }
+
+                if (vectorPositions[count - 1] + vectorBytes > reader.size()) {
+                    throw new IOException("Truncated word2vec file " + file + ", expected " + rows + " vectors");
+                }
+                listener.progress(done.addAndGet(count), 2L * rows);
+
+                decodes.add(pool.submit(() -> {
+                    decodeChunk(channel, vectorPositions, firstRow, count, dimension, vectors, inverseNorms);
+                    listener.progress(done.addAndGet(count), 2L * rows);
+                    publisher.decoded(firstRow, count);
+                }));
+            }
+
+            for (ForkJoinTask<?> decode : decodes) {
+                decode.get();
+            }
+            return store.complete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted reading " + file, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to decode vectors of " + file, e.getCause());
+        } finally {
+            // no chunk is decoded or published after a failure returns
+            decodes.forEach(ForkJoinTask::quietlyJoin);
+            if (store != null) {
+                // the complete store and the partial versions hold their own references to the memory
+                store.close();
+            }
+        }
+    }
+
+    /**
+     * Counts the words accepted by a filter among the first rows of a binary word2vec model, without reading their vectors
+     *
+     * @param file    model file
+     * @param maxRows maximum number of rows scanned, before filtering
+     * @param filter  words counted, in file order
+     * @return number of words accepted
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static int countWords(File file, int maxRows, WordFilter filter) throws IOException {
+        int[] header;
+        long vectorBytes;
+        try (SequentialReader reader = new SequentialReader(file)) {
+            header = reader.readHeader();
+            vectorBytes = (long) header[1] * Float.BYTES;
+        }
+        return Math.toIntExact(scanWords(file, Math.min(header[0], Math.max(0, maxRows)), vectorBytes, filter)[0]);
+    }
+
+    /**
+     * Scans the words of the first rows of a model, skipping their vectors
+     *
+     * @param filter words kept, null to keep every word
+     * @return number of words kept and their length in bytes
+     */
+    private static long[] scanWords(File file, int rows, long vectorBytes, WordFilter filter) throws IOException {
+        try (SequentialReader reader = new SequentialReader(file)) {
+            reader.readHeader();
+            long kept = 0;
+            long length = 0;
+            for (int row = 0; row < rows; row++) {
+                int wordLength = reader.readWordBytes();
+                reader.skip(vectorBytes);
+                if (filter == null || filter.accept(reader.word, wordLength)) {
+                    kept++;
+                    length += wordLength;
+                }
+            }
+            return new long[]{kept, length};
+        }
+    }
+
+    /**
+     * Reads the bytes spanning a chunk of rows with a positional read, which channels allow from several threads.
+     * Chunks of filtered rows spread over much more of the file than their vectors are read one vector at a time
+     *
+     * @param vectorPositions file position of the vector of each row of the chunk
+     */
+    private static void decodeChunk(FileChannel channel, long[] vectorPositions, int firstRow, int count, int dimension,
+                                    VectorTable vectors, FloatBuffer inverseNorms) {
+        int vectorBytes = dimension * Float.BYTES;
+        long start = vectorPositions[0];
+        long end = vectorPositions[count - 1] + vectorBytes;
+        boolean contiguous = end - start <= 2L * count * vectorBytes;
+        ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(contiguous ? end - start : (long) count * vectorBytes))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (contiguous) {
+                readFully(channel, bytes, start);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    bytes.limit((i + 1) * vectorBytes);
+                    readFully(channel, bytes, vectorPositions[i] - i * vectorBytes);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        float[] vector = new float[dimension];
+        for (int row = firstRow; row < firstRow + count; row++) {
+            int offset = contiguous ? (int) (vectorPositions[row - firstRow] - start) : (row - firstRow) * vectorBytes;
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = bytes.getFloat(offset + i * Float.BYTES);
+            }
+            vectors.setRow(row, vector, 0);
+            inverseNorms.put(row, VectorMath.inverseNorm(vector, 0, dimension));
+        }
+    }
+
+    /**
+     * Fills the buffer up to its limit with a positional read of the file
+     *
+     * @param position file position of the start of the buffer
+     */
+    private static void readFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (position + bytes.position()));
+            }
+        }
+    }
+
+    /**
+     * Publishes the rows of the decoded chunks preceded only by decoded chunks, chunks being decoded out of order
+     */
+    private static final class RowPublisher {
+        private final PartialEmbeddingStore store;
+        private final Consumer<PartialEmbeddingStore> loaded;
+        private final BitSet decodedChunks = new BitSet();
+        private int publishedChunks;
+
+        RowPublisher(PartialEmbeddingStore store, Consumer<PartialEmbeddingStore> loaded) {
+            this.store = store;
+            this.loaded = loaded;
+        }
+
+        synchronized void decoded(int firstRow, int count) {
+            decodedChunks.set(firstRow / CHUNK_ROWS);
+            int chunks = decodedChunks.nextClearBit(publishedChunks);
+            if (chunks > publishedChunks) {
+                publishedChunks = chunks;
+                store.publish(Math.min(store.rows(), chunks * CHUNK_ROWS));
+                loaded.accept(store);
+            }
+        }
+    }
+
+    /**
+     * Buffered reader over a file channel that keeps track of its position and can skip without reading
+     */
+    private static final class SequentialReader implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private long bufferPosition;
+        private byte[] word = new byte[64];
+
+        SequentialReader(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            buffer.limit(0);
+        }
+
+        long position() {
+            return bufferPosition + buffer.position();
+        }
+
+        long size() throws IOException {
+            return channel.size();
+        }
+
+        int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        void skip(long bytes) {
+            if (bytes <= buffer.remaining()) {
+                buffer.position(buffer.position() + (int) bytes);
+            } else {
+                bufferPosition = position() + bytes;
+                buffer.limit(0);
+            }
+        }
+
+        /**
+         * @return rows and dimension from the header line
+         */
+        int[] readHeader() throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int value = read(); value != '\n'; value = read()) {
+                if (value < 0 || line.length() > MAX_HEADER_LENGTH) {
+                    throw new IOException("Invalid word2vec header");
+                }
+                line.append((char) value);
+            }
+
+            String[] fields = line.toString().trim().split("\\s+");
+            if (fields.length != 2) {
+                throw new IOException("Invalid word2vec header " + line);
+            }
+            try {
+                return new int[]{Integer.parseInt(fields[0]), Integer.parseInt(fields[1])};
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid word2vec header " + line, e);
+            }
+        }
+
+        String readWord() throws IOException {
+            int length = readWordBytes();
+            return new String(word, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads a word up to the space separating it from its vector, skipping the line break ending the previous vector
+         *
+         * @return length of the word, its bytes are at the start of the word array
+         */
+        int readWordBytes() throws IOException {
+            int value = read();
+            while (value == '\n' || value == '\r') {
+                value = read();
+            }
+
+            int length = 0;
+            while (value != ' ') {
+                if (value < 0) {
+                    throw new IOException("Unexpected end of file at " + position());
+                }
+                if (length == word.length) {
+                    if (length >= MAX_WORD_LENGTH) {
+                        throw new IOException("Word longer than " + MAX_WORD_LENGTH + " bytes at " + position());
+                    }
+                    word = Arrays.copyOf(word, length * 2);
+                }
+                word[length++] = (byte) value;
+                value = read();
+            }
+            return length;
+        }
+
+        private boolean fill() throws IOException {
+            bufferPosition += buffer.limit();
+            buffer.clear();
+            int read = channel.read(buffer, bufferPosition);
+            buffer.flip();
+            return read > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
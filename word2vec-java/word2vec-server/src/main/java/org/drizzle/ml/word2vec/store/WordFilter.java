@@ -0,0 +1,14 @@
+package org.drizzle.ml.word2vec.store;
+
+/**
+ * Selects the words kept when reading a model, called with the words in file order
+ */
+@FunctionalInterface
+public interface WordFilter {
+    /**
+     * @param word   UTF-8 bytes of the word, at the start of the array
+     * @param length length of the word in bytes
+     * @return true to keep the row of the word
+     */
+    boolean accept(byte[] word, int length);
+}
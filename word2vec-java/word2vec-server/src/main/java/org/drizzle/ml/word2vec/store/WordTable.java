@@ -0,0 +1,193 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Vocabulary of an embedding store, UTF-8 words packed in a single buffer and indexed by row
+ */
+final class WordTable {
+    private final int rows;
+    private final IntBuffer offsets;
+    private final ByteBuffer bytes;
+    private final VocabularyIndex index;
+    private final BufferMemory memory;
+    // rows written so far by append
+    private int appendedRows;
+
+    private WordTable(int rows, IntBuffer offsets, ByteBuffer bytes, BufferMemory memory) {
+        this.rows = rows;
+        this.offsets = offsets;
+        this.bytes = bytes;
+        this.index = new VocabularyIndex(offsets, bytes, rows);
+        this.memory = memory;
+        this.appendedRows = rows;
+    }
+
+    private WordTable(int rows, IntBuffer offsets, ByteBuffer bytes, VocabularyIndex index, BufferMemory memory, int appendedRows) {
+        this.rows = rows;
+        this.offsets = offsets;
+        this.bytes = bytes;
+        this.index = index;
+        this.memory = memory;
+        this.appendedRows = appendedRows;
+    }
+
+    /**
+     * Maps a word table stored in a file
+     */
+    static WordTable map(FileChannel channel, long offsetsPosition, long bytesPosition, long bytesLength, int rows) throws IOException {
+        ByteBuffer offsetBytes = channel.map(FileChannel.MapMode.READ_ONLY, offsetsPosition, (rows + 1L) * Integer.BYTES);
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, bytesPosition, bytesLength);
+        return new WordTable(rows, offsetBytes.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), bytes,
+                new BufferMemory(offsetBytes, bytes));
+    }
+
+    /**
+     * Builds a word table in direct memory
+     */
+    static WordTable of(String[] words) {
+        byte[][] encoded = new byte[words.length][];
+        long length = 0;
+        for (int i = 0; i < words.length; i++) {
+            encoded[i] = words[i].getBytes(StandardCharsets.UTF_8);
+            length += encoded[i].length;
+        }
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Vocabulary too large, " + length + " bytes");
+        }
+
+        ByteBuffer offsetBytes = ByteBuffer.allocateDirect((words.length + 1) * Integer.BYTES);
+        IntBuffer offsets = offsetBytes.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        ByteBuffer bytes = ByteBuffer.allocateDirect((int) length);
+
+        for (int i = 0; i < words.length; i++) {
+            offsets.put(i, bytes.position());
+            bytes.put(encoded[i]);
+        }
+        offsets.put(words.length, bytes.position());
+        bytes.clear();
+
+        return new WordTable(words.length, offsets, bytes, new BufferMemory(offsetBytes, bytes));
+    }
+
+    /**
+     * Allocates an empty word table in direct memory, filled row by row with {@link #append(byte[], int)}
+     *
+     * @param rows     number of words
+     * @param maxBytes upper bound of the UTF-8 length of all words
+     */
+    static WordTable allocate(int rows, long maxBytes) {
+        if (maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Vocabulary too large, up to " + maxBytes + " bytes");
+        }
+
+        ByteBuffer offsetBytes = ByteBuffer.allocateDirect((rows + 1) * Integer.BYTES);
+        IntBuffer offsets = offsetBytes.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        ByteBuffer bytes = ByteBuffer.allocateDirect((int) maxBytes);
+        return new WordTable(rows, offsets, bytes, new VocabularyIndex(offsets, bytes, 0, rows),
+                new BufferMemory(offsetBytes, bytes), 0);
+    }
+
+    /**
+     * @return table of the first rows, sharing this table memory and index until both are closed
+     */
+    WordTable prefix(int rows) {
+        if (rows > appendedRows) {
+            throw new IllegalArgumentException("Prefix of " + rows + " rows of a table of " + appendedRows + " rows");
+        }
+        return new WordTable(rows, offsets, bytes, index, memory.retain(), rows);
+    }
+
+    /**
+     * @return table of the same rows, including rows not appended yet, sharing this table memory and index until
+     * both are closed
+     */
+    WordTable share() {
+        return new WordTable(rows, offsets, bytes, index, memory.retain(), appendedRows);
+    }
+
+    /**
+     * Releases the table memory, freed once every table sharing it is closed. Called once per table
+     */
+    void close() {
+        memory.release();
+    }
+
+    /**
+     * Writes and indexes the word of the next row, called from a single thread.
+     * Readers only see the row once its row count is published, see {@link #indexOf(ByteString, int)}
+     *
+     * @param word   UTF-8 bytes of the word
+     * @param length number of bytes of the word
+     */
+    void append(byte[] word, int length) {
+        if (appendedRows == rows) {
+            throw new IllegalStateException("Word table full, " + rows + " words");
+        }
+        int start = offsets.get(appendedRows);
+        if ((long) start + length > bytes.capacity()) {
+            throw new IllegalStateException("Word table full, " + bytes.capacity() + " bytes");
+        }
+
+        for (int i = 0; i < length; i++) {
+            bytes.put(start + i, word[i]);
+        }
+        offsets.put(appendedRows + 1, start + length);
+        index.add(appendedRows);
+        appendedRows++;
+    }
+
+    /**
+     * @return bytes left for the words of the rows still to append
+     */
+    long bytesLeft() {
+        return bytes.capacity() - offsets.get(appendedRows);
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    String wordAt(int row) {
+        int start = offsets.get(row);
+        byte[] word = new byte[offsets.get(row + 1) - start];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = bytes.get(start + i);
+        }
+        return new String(word, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return UTF-8 bytes of a word, sharing the table memory
+     */
+    ByteString wordBytes(int row) {
+        ByteBuffer word = bytes.duplicate();
+        word.limit(offsets.get(row + 1)).position(offsets.get(row));
+        return UnsafeByteOperations.unsafeWrap(word.slice());
+    }
+
+    int indexOf(String word) {
+        return indexOf(UnsafeByteOperations.unsafeWrap(word.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    int indexOf(ByteString word) {
+        // prefixes share the index of all rows
+        return index.indexOf(word, rows);
+    }
+
+    /**
+     * Finds a word among the first rows of a table being appended to
+     */
+    int indexOf(ByteString word, int rowLimit) {
+        return index.indexOf(word, rowLimit);
+    }
+}
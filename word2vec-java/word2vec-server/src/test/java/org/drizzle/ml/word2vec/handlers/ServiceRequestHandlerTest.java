@@ -1,13 +1,26 @@
 package org.drizzle.ml.word2vec.handlers;
 
+import com.google.protobuf.ByteString;
 import io.grpc.stub.StreamObserver;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import org.drizzle.ml.word2vec.codec.VectorCodec;
 import org.drizzle.ml.word2vec.service.*;
+import org.drizzle.ml.word2vec.shard.WordShards;
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
 import org.drizzle.ml.word2vec.test.WordTestUtils;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -38,14 +51,808 @@ public class ServiceRequestHandlerTest {
         verifyGetNearestWord(true);
     }
 
+    @Test
+    public void getVectorMapMappedStore(@TempDir Path tempDir) throws IOException {
+        verifyGetVectorMap(new ServiceRequestHandler(WordTestUtils.createStoreFile(tempDir), false));
+    }
+
+    @Test
+    public void getNearestWordMappedStore(@TempDir Path tempDir) throws IOException {
+        verifyGetNearestWord(new ServiceRequestHandler(WordTestUtils.createStoreFile(tempDir), false));
+    }
+
+    @Test
+    public void getVectorMapBinaryModel(@TempDir Path tempDir) throws IOException {
+        verifyGetVectorMap(new ServiceRequestHandler(WordTestUtils.createBinaryModelFile(tempDir), false));
+    }
+
+    @Test
+    public void servesPartiallyLoadedModel(@TempDir Path tempDir) throws IOException {
+        int rows = 10_000;
+        int dimension = 8;
+        File binaryFile = WordTestUtils.createSyntheticBinaryModelFile(tempDir, rows, dimension);
+        ModelOptions options = new ModelOptions().setPartialRows(5000).setCacheSize(100);
+
+        List<LoadedModel> partialVersions = new ArrayList<>();
+        List<Integer> partialSizes = new ArrayList<>();
+        LoadedModel loaded = new ModelLoader(binaryFile, options).load(1, false, partialVersion -> {
+            partialVersions.add(partialVersion);
+            partialSizes.add(partialVersion.store().size());
+        });
+
+        // a version serving vector lookups only may precede the searchable one, chunks being decoded out of order
+        assertTrue(partialVersions.size() == 1 || partialVersions.size() == 2);
+        LoadedModel searchable = partialVersions.get(partialVersions.size() - 1);
+        assertTrue(searchable.searchable() && searchable.partial());
+        assertNull(searchable.responseCache());
+        assertTrue(partialSizes.get(partialSizes.size() - 1) >= 5000);
+        if (partialVersions.size() == 2) {
+            assertFalse(partialVersions.get(0).searchable());
+            assertTrue(partialSizes.get(0) < 5000);
+        }
+        assertFalse(loaded.partial());
+        assertEquals(rows, loaded.rows());
+
+        ServiceRequestHandler handler = new ServiceRequestHandler(binaryFile, options);
+        assertWaitForReady(handler);
+        ModelStatus status = null;
+        for (long start = System.currentTimeMillis(); System.currentTimeMillis() - start < MAX_WAIT_FOR_READY_TIME_MS; ) {
+            SingleResponseObserver<Status> statusObserver = new SingleResponseObserver<>();
+            handler.getStatus(VoidMessage.getDefaultInstance(), statusObserver);
+            status = statusObserver.getResponse().getModels(0);
+            assertTrue(status.getLoadedRows() >= 5000);
+            if (!status.getPartial()) {
+                break;
+            }
+            quietlySleep(10L);
+        }
+        assertFalse(status.getPartial());
+        assertEquals(rows, status.getLoadedRows());
+        assertEquals(rows, status.getRows());
+    }
+
+    @Test
+    public void servesPrunedAndReducedModel(@TempDir Path tempDir) throws IOException {
+        File binaryFile = WordTestUtils.createBinaryModelFile(tempDir);
+        LoadedModel full = new ModelLoader(binaryFile, new ModelOptions()).load(1, false);
+        int maxWords = full.store().size() / 2;
+        int dimension = full.store().dimension();
+        ModelOptions options = new ModelOptions()
+                .setMaxWords(maxWords)
+                .setReduction(ModelOptions.Reduction.PCA)
+                .setReducedDimension(dimension / 2);
+
+        LoadedModel pruned = new ModelLoader(binaryFile, options).load(1, true);
+        assertTrue(pruned.projected());
+        assertEquals(maxWords, pruned.keptStore().size());
+        // lookups return the model vectors, pruned words included
+        assertEquals(dimension, pruned.store().dimension());
+        assertArrayEquals(rowVector(full, maxWords - 1), rowVector(pruned, maxWords - 1));
+        assertPrunedWordsServed(pruned, full, maxWords);
+        int[] nearest = assertNearestSelf(pruned, full);
+
+        String variant = binaryFile.getPath() + ".top" + maxWords;
+        File reducedFile = new File(variant + ".pca" + dimension / 2 + ".w2vs");
+        assertTrue(new File(variant + ".w2vs").isFile());
+        assertTrue(new File(binaryFile.getPath() + ".w2vs").isFile());
+        assertTrue(new File(variant + ".pca" + dimension / 2 + ".proj").isFile());
+        assertTrue(reducedFile.isFile());
+        long saved = reducedFile.lastModified();
+
+        // the second load maps the saved variants
+        LoadedModel reloaded = new ModelLoader(binaryFile, options).load(2, false);
+        assertEquals(saved, reducedFile.lastModified());
+        assertArrayEquals(nearest, assertNearestSelf(reloaded, full));
+        assertPrunedWordsServed(reloaded, full, maxWords);
+    }
+
+    @Test
+    public void servesPrunedWordsOfStoreFile(@TempDir Path tempDir) throws IOException {
+        File storeFile = WordTestUtils.createStoreFile(tempDir);
+        LoadedModel full = new ModelLoader(storeFile, new ModelOptions()).load(1, false);
+        int maxWords = full.store().size() / 2;
+
+        LoadedModel pruned = new ModelLoader(storeFile, new ModelOptions().setMaxWords(maxWords)).load(1, false);
+        assertEquals(maxWords, pruned.keptStore().size());
+        assertPrunedWordsServed(pruned, full, maxWords);
+        assertNearestSelf(pruned, full);
+        // store files are mapped as they are, no variant is saved
+        assertFalse(new File(storeFile.getPath() + ".top" + maxWords + ".w2vs").exists());
+    }
+
+    @Test
+    public void servesPrunedWordsOfShard(@TempDir Path tempDir) throws IOException {
+        File binaryFile = WordTestUtils.createBinaryModelFile(tempDir);
+        LoadedModel full = new ModelLoader(binaryFile, new ModelOptions()).load(1, false);
+        LoadedModel shard = new ModelLoader(binaryFile, new ModelOptions().setShard(1, 2)).load(1, false);
+        int maxWords = full.store().size() / 2;
+        // the shard keeps its words among the most frequent words of the whole model
+        int keptRows = (int) IntStream.range(0, maxWords)
+                .filter(row -> WordShards.shardOf(full.store().wordBytes(row), 2) == 1)
+                .count();
+
+        ModelOptions options = new ModelOptions().setShard(1, 2).setMaxWords(maxWords);
+        LoadedModel pruned = new ModelLoader(binaryFile, options).load(1, false);
+        assertEquals(keptRows, pruned.keptStore().size());
+        assertPrunedWordsServed(pruned, shard, keptRows);
+        assertTrue(new File(binaryFile.getPath() + ".1-of-2.w2vs").isFile());
+
+        LoadedModel reloaded = new ModelLoader(binaryFile, options).load(2, false);
+        assertEquals(keptRows, reloaded.keptStore().size());
+        assertPrunedWordsServed(reloaded, shard, keptRows);
+    }
+
+    /**
+     * Words after the kept ones are found with the model vectors, and never returned as nearest words
+     */
+    private static void assertPrunedWordsServed(LoadedModel pruned, LoadedModel full, int maxWords) {
+        assertEquals(full.store().size(), pruned.store().size());
+        for (int row = maxWords; row < full.store().size(); row += 7) {
+            assertEquals(row, pruned.store().indexOf(full.store().wordAt(row)));
+            assertEquals(full.store().wordAt(row), pruned.store().wordAt(row));
+            assertArrayEquals(rowVector(full, row), rowVector(pruned, row));
+        }
+        assertEquals(-1, pruned.store().indexOf("notavalidword"));
+
+        int[] rows = new int[10];
+        int count = pruned.nearestRows(rowVector(full, full.store().size() - 1), rows.length, SearchMode.EXACT, 0, rows, null);
+        assertTrue(Arrays.stream(rows, 0, count).allMatch(row -> row < maxWords));
+    }
+
+    /**
+     * Searches the vectors of the first words, each word must be among the nearest words of its own vector
+     *
+     * @return nearest row of each vector
+     */
+    private static int[] assertNearestSelf(LoadedModel model, LoadedModel full) {
+        int[] nearest = new int[20];
+        int[] rows = new int[5];
+        for (int row = 0; row < nearest.length; row++) {
+            int count = model.nearestRows(rowVector(full, row), rows.length, SearchMode.EXACT, 0, rows, null);
+            int expected = row;
+            assertTrue(Arrays.stream(rows, 0, count).anyMatch(found -> found == expected), "row " + row);
+            nearest[row] = rows[0];
+        }
+        return nearest;
+    }
+
+    private static float[] rowVector(LoadedModel model, int row) {
+        float[] vector = new float[model.store().dimension()];
+        model.store().copyRow(row, vector, 0);
+        return vector;
+    }
+
+    @Test
+    public void getNearestWordHnswIndex(@TempDir Path tempDir) throws IOException {
+        File storeFile = WordTestUtils.createStoreFile(tempDir);
+        ModelOptions options = new ModelOptions().setIndexType(ModelOptions.IndexType.HNSW);
+
+        verifyGetNearestWord(new ServiceRequestHandler(storeFile, options));
+        assertTrue(new File(storeFile.getPath() + ".hnsw").isFile());
+
+        // second load reuses the saved index
+        verifyGetNearestWord(new ServiceRequestHandler(storeFile, options));
+    }
+
+    @Test
+    public void getNearestWordsBatchHnswIndex() {
+        ModelOptions options = new ModelOptions()
+                .setIndexType(ModelOptions.IndexType.HNSW)
+                .setPersistIndex(false);
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, options);
+        assertWaitForReady(handler);
+
+        for (SearchMode mode : SearchMode.values()) {
+            if (mode == SearchMode.UNRECOGNIZED) {
+                continue;
+            }
+            DoubleArrayList vector = wordMap.get(testWords.get(0));
+            float[] values = new float[vector.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (float) vector.getDouble(i);
+            }
+
+            SingleResponseObserver<NearestWordsBatch> callObserver = new SingleResponseObserver<>();
+            handler.getNearestWordsBatch(NearestToVectorBatch.newBuilder()
+                    .setVectors(VectorCodec.encodeMatrix(values, 1, values.length, VectorEncoding.FLOAT32))
+                    .setLimit(2)
+                    .setMode(mode)
+                    .setEfSearch(16)
+                    .build(), callObserver);
+
+            NearestWords nearest = callObserver.getResponse().getResults(0);
+            assertEquals(2, nearest.getWordsCount());
+            assertEquals(testWords.get(0), nearest.getWords(0).getWord());
+        }
+    }
+
+    @Test
+    public void getNearestWordProductQuantized() {
+        ModelOptions options = new ModelOptions()
+                .setQuantization(ModelOptions.Quantization.PQ)
+                .setRerank(50);
+        verifyGetNearestWord(new ServiceRequestHandler(WordTestUtils.modelFile, options));
+    }
+
+    @Test
+    public void getVectorMapScalarQuantized() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile,
+                new ModelOptions().setQuantization(ModelOptions.Quantization.INT8));
+        assertWaitForReady(handler);
+
+        WordVectorResponseObserver callObserver = new WordVectorResponseObserver();
+        StreamObserver<Word> wordList = handler.getVectorMap(callObserver);
+        for (String word : testWords) {
+            wordList.onNext(Word.newBuilder().setWord(word).build());
+        }
+        wordList.onCompleted();
+
+        // reconstructed vectors are within half a quantization step of the originals
+        for (WordVector wordVector : callObserver.getWordVecs()) {
+            DoubleArrayList expected = wordMap.get(wordVector.getWord().getWord());
+            double maxAbs = 0d;
+            for (int i = 0; i < expected.size(); i++) {
+                maxAbs = Math.max(maxAbs, Math.abs(expected.getDouble(i)));
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.getDouble(i), wordVector.getVector(i), maxAbs / 254d + 1e-6);
+            }
+        }
+        verifyGetNearestWord(handler);
+    }
+
+    @Test
+    public void getVectorMapPackedFloat32() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        WordVectorResponseObserver callObserver = new WordVectorResponseObserver();
+        StreamObserver<Word> wordList = handler.getVectorMap(callObserver);
+        for (String word : testWords) {
+            wordList.onNext(Word.newBuilder().setWord(word).setEncoding(VectorEncoding.FLOAT32).build());
+        }
+        wordList.onCompleted();
+
+        assertEquals(testWords.size(), callObserver.getWordVecs().size());
+        for (WordVector wordVector : callObserver.getWordVecs()) {
+            assertEquals(0, wordVector.getVectorCount());
+            assertEquals(VectorEncoding.FLOAT32, wordVector.getPackedVector().getEncoding());
+
+            float[] actual = VectorCodec.decode(wordVector.getPackedVector());
+            DoubleArrayList expected = wordMap.get(wordVector.getWord().getWord());
+            assertEquals(expected.size(), actual.length);
+            for (int i = 0; i < actual.length; i++) {
+                assertEquals(expected.getDouble(i), actual[i], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void getNearestWordPackedVector() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        VectorWordListResponseObserver callObserver = new VectorWordListResponseObserver();
+        StreamObserver<NearestToVector> nearestWords = handler.getNearestWords(callObserver);
+        for (DoubleArrayList vector : wordMap.values()) {
+            nearestWords.onNext(NearestToVector.newBuilder()
+                    .setPackedVector(VectorCodec.encode(vector.toDoubleArray(), VectorEncoding.FLOAT16))
+                    .setLimit(1)
+                    .build());
+        }
+        nearestWords.onCompleted();
+
+        Set<String> actualWords = callObserver.getWordList()
+                .stream()
+                .peek(wordList -> assertEquals(VectorEncoding.FLOAT16, wordList.getPackedVector().getEncoding()))
+                .flatMap(wordList -> wordList.getWordsList().stream())
+                .map(Word::getWord)
+                .collect(Collectors.toSet());
+
+        assertEquals(wordMap.keySet(), actualWords);
+    }
+
+    @Test
+    public void getNearestWordRejectsMalformedVector() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        PackedVector vector = VectorCodec.encode(wordMap.get("fire").toDoubleArray(), VectorEncoding.FLOAT32);
+        for (PackedVector malformed : List.of(vector.toBuilder().setData(vector.getData().substring(1)).build(),
+                vector.toBuilder().setEncoding(VectorEncoding.DOUBLE).build())) {
+            ErrorResponseObserver<VectorWordList> callObserver = new ErrorResponseObserver<>();
+            StreamObserver<NearestToVector> nearestWords = handler.getNearestWords(callObserver);
+            nearestWords.onNext(NearestToVector.newBuilder().setPackedVector(malformed).setLimit(1).build());
+            nearestWords.onCompleted();
+            assertEquals(io.grpc.Status.Code.INVALID_ARGUMENT, io.grpc.Status.fromThrowable(callObserver.getError()).getCode());
+        }
+    }
+
+    @Test
+    public void getNearestWordOmitVector() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        VectorWordListResponseObserver callObserver = new VectorWordListResponseObserver();
+        StreamObserver<NearestToVector> nearestWords = handler.getNearestWords(callObserver);
+        for (String word : testWords) {
+            nearestWords.onNext(NearestToVector.newBuilder()
+                    .addAllVector(wordMap.get(word))
+                    .setLimit(2)
+                    .setOmitVector(true)
+                    .build());
+        }
+        nearestWords.onCompleted();
+
+        List<VectorWordList> responses = callObserver.getWordList();
+        assertEquals(testWords.size(), responses.size());
+        for (int i = 0; i < testWords.size(); i++) {
+            VectorWordList response = responses.get(i);
+            assertEquals(0, response.getVectorCount());
+            assertFalse(response.hasPackedVector());
+            assertEquals(2, response.getWordsCount());
+            assertEquals(testWords.get(i), response.getWords(0).getWord());
+        }
+    }
+
+    @Test
+    public void getVectorsBatch() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        List<String> words = new ArrayList<>(testWords);
+        words.add(1, "notavalidword");
+
+        SingleResponseObserver<VectorBatch> callObserver = new SingleResponseObserver<>();
+        handler.getVectorsBatch(WordBatch.newBuilder().addAllWords(words).setEncoding(VectorEncoding.FLOAT32).build(), callObserver);
+
+        VectorBatch batch = callObserver.getResponse();
+        assertEquals(List.of(1), batch.getMissingList());
+        assertEquals(words.size(), batch.getVectors().getRows());
+
+        int columns = batch.getVectors().getColumns();
+        float[] values = VectorCodec.decodeMatrix(batch.getVectors());
+        for (int row = 0; row < words.size(); row++) {
+            DoubleArrayList expected = wordMap.get(words.get(row));
+            for (int i = 0; i < columns; i++) {
+                assertEquals(expected == null ? 0d : expected.getDouble(i), values[row * columns + i], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void getNearestWordsBatch() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        int columns = wordMap.get(testWords.get(0)).size();
+        float[] values = new float[testWords.size() * columns];
+        for (int row = 0; row < testWords.size(); row++) {
+            DoubleArrayList vector = wordMap.get(testWords.get(row));
+            for (int i = 0; i < columns; i++) {
+                values[row * columns + i] = (float) vector.getDouble(i);
+            }
+        }
+
+        SingleResponseObserver<NearestWordsBatch> callObserver = new SingleResponseObserver<>();
+        handler.getNearestWordsBatch(NearestToVectorBatch.newBuilder()
+                .setVectors(VectorCodec.encodeMatrix(values, testWords.size(), columns, VectorEncoding.FLOAT32))
+                .setLimit(3)
+                .build(), callObserver);
+
+        NearestWordsBatch batch = callObserver.getResponse();
+        assertEquals(testWords.size(), batch.getResultsCount());
+        for (int row = 0; row < testWords.size(); row++) {
+            NearestWords nearest = batch.getResults(row);
+            assertEquals(3, nearest.getWordsCount());
+            assertEquals(testWords.get(row), nearest.getWords(0).getWord());
+            assertEquals(1f, nearest.getSimilarities(0), 1e-5);
+            assertTrue(nearest.getSimilarities(1) <= nearest.getSimilarities(0));
+            assertTrue(nearest.getSimilarities(2) <= nearest.getSimilarities(1));
+        }
+    }
+
+    @Test
+    public void failedSearchClosesCall() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile,
+                new ModelOptions().setSearchThreads(2));
+        assertWaitForReady(handler);
+
+        // two rows announced, a few bytes sent
+        int columns = wordMap.get(testWords.get(0)).size();
+        ErrorResponseObserver<NearestWordsBatch> callObserver = new ErrorResponseObserver<>();
+        handler.getNearestWordsBatch(NearestToVectorBatch.newBuilder()
+                .setVectors(PackedMatrix.newBuilder()
+                        .setEncoding(VectorEncoding.FLOAT32)
+                        .setRows(2)
+                        .setColumns(columns)
+                        .setData(ByteString.copyFrom(new byte[6])))
+                .setLimit(3)
+                .build(), callObserver);
+        assertNotEquals(io.grpc.Status.Code.OK, io.grpc.Status.fromThrowable(callObserver.getError()).getCode());
+    }
+
+    @Test
+    public void closedHandlerNoLongerServesModels() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile,
+                new ModelOptions().setSearchThreads(2));
+        assertWaitForReady(handler);
+        handler.close();
+
+        int columns = wordMap.get(testWords.get(0)).size();
+        ErrorResponseObserver<NearestWordsBatch> callObserver = new ErrorResponseObserver<>();
+        handler.getNearestWordsBatch(NearestToVectorBatch.newBuilder()
+                .setVectors(VectorCodec.encodeMatrix(new float[columns], 1, columns, VectorEncoding.FLOAT32))
+                .setLimit(3)
+                .build(), callObserver);
+        assertEquals(io.grpc.Status.Code.UNAVAILABLE, io.grpc.Status.fromThrowable(callObserver.getError()).getCode());
+        assertFalse(handler.reloadModel(ServiceRequestHandler.DEFAULT_MODEL));
+    }
+
+    @Test
+    public void getNearestWordsBatchValidatesRequest() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        int columns = wordMap.get(testWords.get(0)).size();
+        float[] values = new float[2 * columns];
+        PackedMatrix int8 = VectorCodec.encodeMatrix(values, 2, columns, VectorEncoding.INT8);
+        List<PackedMatrix> malformed = List.of(
+                int8.toBuilder().setData(int8.getData().substring(1)).build(),
+                int8.toBuilder().clearScales().addScales(1f).build(),
+                VectorCodec.encodeMatrix(values, 2, columns, VectorEncoding.FLOAT16).toBuilder().setRows(3).build());
+        for (PackedMatrix vectors : malformed) {
+            ErrorResponseObserver<NearestWordsBatch> callObserver = new ErrorResponseObserver<>();
+            handler.getNearestWordsBatch(NearestToVectorBatch.newBuilder().setVectors(vectors).setLimit(3).build(), callObserver);
+            assertEquals(io.grpc.Status.Code.INVALID_ARGUMENT, io.grpc.Status.fromThrowable(callObserver.getError()).getCode());
+        }
+
+        // limits beyond the vocabulary return every word
+        values[0] = 1f;
+        SingleResponseObserver<NearestWordsBatch> callObserver = new SingleResponseObserver<>();
+        handler.getNearestWordsBatch(NearestToVectorBatch.newBuilder()
+                .setVectors(VectorCodec.encodeMatrix(values, 1, columns, VectorEncoding.FLOAT32))
+                .setLimit(Integer.MAX_VALUE)
+                .build(), callObserver);
+        SingleResponseObserver<Status> statusObserver = new SingleResponseObserver<>();
+        handler.getStatus(VoidMessage.getDefaultInstance(), statusObserver);
+        assertEquals(statusObserver.getResponse().getModels(0).getRows(), callObserver.getResponse().getResults(0).getWordsCount());
+    }
+
     @Test
     public void testStatus() {
         ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
         assertWaitForReady(handler);
+
+        SingleResponseObserver<Status> callObserver = new SingleResponseObserver<>();
+        handler.getStatus(VoidMessage.getDefaultInstance(), callObserver);
+        assertEquals("ready", callObserver.getResponse().getPhase());
+        assertEquals(1f, callObserver.getResponse().getProgress());
+    }
+
+    @Test
+    public void getNearestToWords() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        // a single positive word finds its own nearest words, minus itself
+        String word = testWords.get(0);
+        SingleResponseObserver<NearestWordsBatch> batchObserver = new SingleResponseObserver<>();
+        DoubleArrayList vector = wordMap.get(word);
+        float[] values = new float[vector.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) vector.getDouble(i);
+        }
+        handler.getNearestWordsBatch(NearestToVectorBatch.newBuilder()
+                .setVectors(VectorCodec.encodeMatrix(values, 1, values.length, VectorEncoding.FLOAT32))
+                .setLimit(4)
+                .build(), batchObserver);
+        List<String> expected = batchObserver.getResponse().getResults(0).getWordsList().stream()
+                .map(Word::getWord)
+                .filter(nearWord -> !nearWord.equals(word))
+                .collect(Collectors.toList());
+
+        SingleResponseObserver<NearestWords> callObserver = new SingleResponseObserver<>();
+        handler.getNearestToWords(WordAnalogy.newBuilder()
+                .addPositive(WeightedWord.newBuilder().setWord(word))
+                .addNegative(WeightedWord.newBuilder().setWord("notavalidword"))
+                .setLimit(3)
+                .build(), callObserver);
+        NearestWords nearest = callObserver.getResponse();
+        assertEquals(expected, nearest.getWordsList().stream().map(Word::getWord).collect(Collectors.toList()));
+        assertEquals(3, nearest.getSimilaritiesCount());
+
+        // input words are left out of combined queries
+        callObserver = new SingleResponseObserver<>();
+        handler.getNearestToWords(WordAnalogy.newBuilder()
+                .addPositive(WeightedWord.newBuilder().setWord(testWords.get(0)))
+                .addPositive(WeightedWord.newBuilder().setWord(testWords.get(1)).setWeight(0.5f))
+                .addNegative(WeightedWord.newBuilder().setWord(testWords.get(2)))
+                .setLimit(5)
+                .build(), callObserver);
+        List<String> analogy = callObserver.getResponse().getWordsList().stream()
+                .map(Word::getWord)
+                .collect(Collectors.toList());
+        assertEquals(5, analogy.size());
+        assertTrue(Collections.disjoint(testWords, analogy));
+
+        callObserver = new SingleResponseObserver<>();
+        handler.getNearestToWords(WordAnalogy.newBuilder()
+                .addPositive(WeightedWord.newBuilder().setWord("notavalidword"))
+                .setLimit(3)
+                .build(), callObserver);
+        assertEquals(0, callObserver.getResponse().getWordsCount());
+    }
+
+    @Test
+    public void getDocumentVectors() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        DocumentVectorResponseObserver callObserver = new DocumentVectorResponseObserver();
+        StreamObserver<Document> documents = handler.getDocumentVectors(callObserver);
+        documents.onNext(Document.newBuilder().addAllTokens(testWords).addTokens("notavalidword")
+                .setEncoding(VectorEncoding.FLOAT32).build());
+        documents.onNext(Document.newBuilder().setText(String.join(" ", testWords)).setEncoding(VectorEncoding.DOUBLE).build());
+        documents.onNext(Document.newBuilder().setText(testWords.get(0)).setPooling(Pooling.MAX)
+                .setEncoding(VectorEncoding.FLOAT32).build());
+        documents.onNext(Document.newBuilder().setText("notavalidword").setPooling(Pooling.SIF)
+                .setEncoding(VectorEncoding.FLOAT32).build());
+        documents.onCompleted();
+
+        List<DocumentVector> responses = callObserver.getDocumentVectors();
+        assertEquals(4, responses.size());
+
+        // mean of the test word vectors, from tokens and from text
+        float[] mean = VectorCodec.decode(responses.get(0).getPackedVector());
+        assertEquals(testWords.size(), responses.get(0).getFoundTokens());
+        assertEquals(testWords.size(), responses.get(1).getFoundTokens());
+        for (int i = 0; i < mean.length; i++) {
+            double expected = 0d;
+            for (String word : testWords) {
+                expected += wordMap.get(word).getDouble(i) / testWords.size();
+            }
+            assertEquals(expected, mean[i], 1e-5);
+            assertEquals(expected, responses.get(1).getVector(i), 1e-5);
+        }
+
+        float[] max = VectorCodec.decode(responses.get(2).getPackedVector());
+        for (int i = 0; i < max.length; i++) {
+            assertEquals((float) wordMap.get(testWords.get(0)).getDouble(i), max[i]);
+        }
+
+        assertEquals(0, responses.get(3).getFoundTokens());
+        assertArrayEquals(new float[mean.length], VectorCodec.decode(responses.get(3).getPackedVector()));
+    }
+
+    @Test
+    public void getVectorMapAndNearestWordCached() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile,
+                new ModelOptions().setCacheSize(100));
+
+        // second round is served from the cache with the same responses
+        verifyGetVectorMap(handler);
+        verifyGetNearestWord(handler);
+        verifyGetVectorMap(handler);
+        verifyGetNearestWord(handler);
+
+        SingleResponseObserver<Status> callObserver = new SingleResponseObserver<>();
+        handler.getStatus(VoidMessage.getDefaultInstance(), callObserver);
+        assertEquals(2 * testWords.size(), callObserver.getResponse().getCacheHits());
+        assertEquals(2 * testWords.size(), callObserver.getResponse().getCacheMisses());
+    }
+
+    @Test
+    public void getSimilarities() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        SimilarityRequest request = SimilarityRequest.newBuilder()
+                .addAllLeft(testWords)
+                .addLeft("notavalidword")
+                .addAllRight(List.of("water", "notavalidword"))
+                .setEncoding(VectorEncoding.FLOAT32)
+                .build();
+        SimilarityBlockResponseObserver callObserver = new SimilarityBlockResponseObserver();
+        handler.getSimilarities(request, callObserver);
+
+        SimilarityBlock block = callObserver.getResponse();
+        assertEquals(0, block.getFirstRow());
+        assertEquals(List.of(3), block.getMissingLeftList());
+        assertEquals(List.of(1), block.getMissingRightList());
+        float[] similarities = VectorCodec.decodeMatrix(block.getSimilarities());
+        assertEquals(8, similarities.length);
+        assertEquals(1f, similarities[4], 1e-5f);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0f, similarities[i * 2 + 1]);
+        }
+        assertEquals(0f, similarities[6]);
+
+        ErrorResponseObserver<SimilarityBlock> pairsObserver = new ErrorResponseObserver<>();
+        handler.getSimilarities(request.toBuilder().setPairs(true).build(), pairsObserver);
+        assertEquals(io.grpc.Status.Code.INVALID_ARGUMENT, io.grpc.Status.fromThrowable(pairsObserver.getError()).getCode());
+    }
+
+    @Test
+    public void reloadReleasesPreviousVersionAfterItsRequests() {
+        HostedModel model = new HostedModel("test", WordTestUtils.modelFile, new ModelOptions());
+        assertNull(model.acquire());
+        assertTrue(model.reload());
+        waitForVersion(model, 1);
+
+        LoadedModel first = model.acquire();
+        assertTrue(model.reload());
+        waitForVersion(model, 2);
+
+        // the replaced version keeps serving the request holding it
+        assertTrue(first.store().indexOf("fire") >= 0);
+        LoadedModel second = model.acquire();
+        assertEquals(2, second.version());
+        assertEquals(2, model.status().getVersion());
+        assertTrue(model.status().getReady());
+
+        first.release();
+        assertFalse(first.retain());
+        assertTrue(second.retain());
+        second.release();
+        second.release();
+    }
+
+    @Test
+    public void reloadClosesPreviousVersionAfterItsLastRequest() {
+        HostedModel model = new HostedModel("test", WordTestUtils.modelFile, new ModelOptions().setCacheSize(100));
+        assertTrue(model.reload());
+        waitForVersion(model, 1);
+
+        LoadedModel first = model.acquire();
+        BufferEmbeddingStore firstStore = (BufferEmbeddingStore) first.store();
+        assertTrue(model.reload());
+        waitForVersion(model, 2);
+
+        // the request holding the replaced version still reads its store and indexes
+        assertFalse(firstStore.closed());
+        assertNotNull(first.responseCache());
+        assertNotNull(first.wordTrie());
+
+        first.release();
+        assertTrue(firstStore.closed());
+        assertNull(first.responseCache());
+        assertNull(first.wordTrie());
+
+        LoadedModel second = model.acquire();
+        assertFalse(((BufferEmbeddingStore) second.store()).closed());
+        assertTrue(second.store().indexOf("fire") >= 0);
+        second.release();
+    }
+
+    @Test
+    public void closeReleasesCurrentVersionAfterItsRequests() {
+        HostedModel model = new HostedModel("test", WordTestUtils.modelFile, new ModelOptions());
+        assertTrue(model.reload());
+        waitForVersion(model, 1);
+
+        LoadedModel version = model.acquire();
+        BufferEmbeddingStore store = (BufferEmbeddingStore) version.store();
+        model.close();
+        assertNull(model.acquire());
+        assertFalse(model.reload());
+        assertFalse(store.closed());
+
+        version.release();
+        assertTrue(store.closed());
+    }
+
+    @Test
+    public void streamEndsWithErrorWhenRequestRunsOutOfMemory() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ErrorResponseObserver<String> responseObserver = new ErrorResponseObserver<>();
+            StreamObserver<String> requestObserver = new FlowControlledStreamObserver<String, String>(responseObserver, 4, executor) {
+                @Override
+                String process(String request) {
+                    throw new OutOfMemoryError("Java heap space");
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+
+                }
+            };
+            requestObserver.onNext("fire");
+            requestObserver.onCompleted();
+            assertEquals(io.grpc.Status.Code.INTERNAL, io.grpc.Status.fromThrowable(responseObserver.getError()).getCode());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void streamEndsWithErrorWhenExecutorRejectsRequest() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        ErrorResponseObserver<String> responseObserver = new ErrorResponseObserver<>();
+        StreamObserver<String> requestObserver = new FlowControlledStreamObserver<String, String>(responseObserver, 4, executor) {
+            @Override
+            String process(String request) {
+                return request;
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+
+            }
+        };
+        requestObserver.onNext("fire");
+        requestObserver.onCompleted();
+        assertEquals(io.grpc.Status.Code.INTERNAL, io.grpc.Status.fromThrowable(responseObserver.getError()).getCode());
+    }
+
+    @Test
+    public void unknownModel() {
+        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, false);
+        assertWaitForReady(handler);
+
+        ErrorResponseObserver<VectorBatch> batchObserver = new ErrorResponseObserver<>();
+        handler.getVectorsBatch(WordBatch.newBuilder().addAllWords(testWords).setModel("missing").build(), batchObserver);
+        assertEquals(io.grpc.Status.Code.NOT_FOUND, io.grpc.Status.fromThrowable(batchObserver.getError()).getCode());
+
+        ErrorResponseObserver<WordVector> streamObserver = new ErrorResponseObserver<>();
+        StreamObserver<Word> requestObserver = handler.getVectorMap(streamObserver);
+        requestObserver.onNext(Word.newBuilder().setWord("fire").setModel("missing").build());
+        requestObserver.onCompleted();
+        assertEquals(io.grpc.Status.Code.NOT_FOUND, io.grpc.Status.fromThrowable(streamObserver.getError()).getCode());
+
+        assertThrows(IllegalArgumentException.class, () -> handler.reloadModel("missing"));
+    }
+
+    @Test
+    public void streamsFailWhileModelNotLoaded(@TempDir Path tempDir) {
+        // the model never loads, stream requests are answered with an error instead of being dropped
+        ServiceRequestHandler handler = new ServiceRequestHandler(tempDir.resolve("missing.bin").toFile(), false);
+
+        ErrorResponseObserver<WordVector> vectorObserver = new ErrorResponseObserver<>();
+        StreamObserver<Word> words = handler.getVectorMap(vectorObserver);
+        words.onNext(Word.newBuilder().setWord("fire").build());
+        words.onCompleted();
+        assertEquals(io.grpc.Status.Code.UNAVAILABLE, io.grpc.Status.fromThrowable(vectorObserver.getError()).getCode());
+
+        ErrorResponseObserver<VectorWordList> nearestObserver = new ErrorResponseObserver<>();
+        StreamObserver<NearestToVector> vectors = handler.getNearestWords(nearestObserver);
+        vectors.onNext(NearestToVector.newBuilder().addAllVector(wordMap.get("fire")).setLimit(1).build());
+        vectors.onCompleted();
+        assertEquals(io.grpc.Status.Code.UNAVAILABLE, io.grpc.Status.fromThrowable(nearestObserver.getError()).getCode());
+
+        ErrorResponseObserver<DocumentVector> documentObserver = new ErrorResponseObserver<>();
+        StreamObserver<Document> documents = handler.getDocumentVectors(documentObserver);
+        documents.onNext(Document.newBuilder().setText("fire water").build());
+        documents.onCompleted();
+        assertEquals(io.grpc.Status.Code.UNAVAILABLE, io.grpc.Status.fromThrowable(documentObserver.getError()).getCode());
+    }
+
+    @Test
+    public void testStatusLoadFailure(@TempDir Path tempDir) {
+        ServiceRequestHandler handler = new ServiceRequestHandler(tempDir.resolve("missing.bin").toFile(), false);
+
+        final long startTime = System.currentTimeMillis();
+        SingleResponseObserver<Status> callObserver = new SingleResponseObserver<>();
+        handler.getStatus(VoidMessage.getDefaultInstance(), callObserver);
+        while (!"failed".equals(callObserver.getResponse().getPhase())
+                && System.currentTimeMillis() - startTime < MAX_WAIT_FOR_READY_TIME_MS) {
+            quietlySleep(100L);
+            callObserver = new SingleResponseObserver<>();
+            handler.getStatus(VoidMessage.getDefaultInstance(), callObserver);
+        }
+
+        assertEquals("failed", callObserver.getResponse().getPhase());
+        assertFalse(callObserver.getResponse().getReady());
     }
 
     private void verifyGetVectorMap(boolean useTreeModel) {
-        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, useTreeModel);
+        verifyGetVectorMap(new ServiceRequestHandler(WordTestUtils.modelFile, useTreeModel));
+    }
+
+    private void verifyGetVectorMap(ServiceRequestHandler handler) {
         assertWaitForReady(handler);
 
         WordVectorResponseObserver callObserver = new WordVectorResponseObserver();
@@ -69,7 +876,10 @@ public class ServiceRequestHandlerTest {
     }
 
     private void verifyGetNearestWord(boolean useTreeModel) {
-        ServiceRequestHandler handler = new ServiceRequestHandler(WordTestUtils.modelFile, useTreeModel);
+        verifyGetNearestWord(new ServiceRequestHandler(WordTestUtils.modelFile, useTreeModel));
+    }
+
+    private void verifyGetNearestWord(ServiceRequestHandler handler) {
         assertWaitForReady(handler);
 
         VectorWordListResponseObserver callObserver = new VectorWordListResponseObserver();
@@ -93,6 +903,14 @@ public class ServiceRequestHandlerTest {
     }
 
 
+    private void waitForVersion(HostedModel model, long version) {
+        final long startTime = System.currentTimeMillis();
+        while (model.status().getVersion() < version && System.currentTimeMillis() - startTime < MAX_WAIT_FOR_READY_TIME_MS) {
+            quietlySleep(100L);
+        }
+        assertEquals(version, model.status().getVersion());
+    }
+
     private void assertWaitForReady(ServiceRequestHandler handler) {
         final long startTime = System.currentTimeMillis();
 
@@ -168,6 +986,55 @@ public class ServiceRequestHandlerTest {
         }
     }
 
+    class SingleResponseObserver<T> implements StreamObserver<T> {
+        private T response;
+        private boolean completed = false;
+
+        @Override
+        public void onNext(T value) {
+            assertNull(response);
+            response = value;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+
+        public T getResponse() {
+            assertTrue(completed);
+            return response;
+        }
+    }
+
+    class DocumentVectorResponseObserver implements StreamObserver<DocumentVector> {
+        private final List<DocumentVector> documentVectors = new ArrayList<>();
+
+        @Override
+        public void onNext(DocumentVector documentVector) {
+            documentVectors.add(documentVector);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+
+        }
+
+        public List<DocumentVector> getDocumentVectors() {
+            return documentVectors;
+        }
+    }
+
     class VectorWordListResponseObserver implements StreamObserver<VectorWordList> {
         private final List<VectorWordList> wordList = new ArrayList<>();
 
@@ -191,4 +1058,62 @@ public class ServiceRequestHandlerTest {
         }
     }
 
+
+    class SimilarityBlockResponseObserver implements StreamObserver<SimilarityBlock> {
+        private final List<SimilarityBlock> blocks = new ArrayList<>();
+        private boolean completed = false;
+
+        @Override
+        public void onNext(SimilarityBlock block) {
+            blocks.add(block);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+
+        public SimilarityBlock getResponse() {
+            assertTrue(completed);
+            assertEquals(1, blocks.size());
+            return blocks.get(0);
+        }
+    }
+
+    class ErrorResponseObserver<T> implements StreamObserver<T> {
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private volatile Throwable error;
+
+        @Override
+        public void onNext(T value) {
+
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            closed.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            closed.countDown();
+        }
+
+        public Throwable getError() {
+            // requests on the search executor are answered asynchronously
+            try {
+                assertTrue(closed.await(MAX_WAIT_FOR_READY_TIME_MS, TimeUnit.MILLISECONDS), "call not closed");
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+            assertNotNull(error);
+            return error;
+        }
+    }
 }
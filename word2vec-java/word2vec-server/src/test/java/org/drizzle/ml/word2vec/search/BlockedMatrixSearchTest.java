@@ -0,0 +1,57 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BlockedMatrixSearchTest {
+    // wide enough rows that the table is scanned in two blocks and a shorter last one
+    private static final int ROWS = 2500;
+    private static final int DIMENSION = 4096;
+
+    private final Random random = new Random(7);
+    private final EmbeddingStore store = BufferEmbeddingStore.of(
+            IntStream.range(0, ROWS).mapToObj(i -> "w" + i).toArray(String[]::new), randomVectors(ROWS), DIMENSION);
+
+    @Test
+    public void matchesExactSearchAcrossBlocks() {
+        int queryCount = 3;
+        int limit = 10;
+        float[] queries = randomVectors(queryCount);
+        // the last queries are table rows, found in the last block
+        store.copyRow(ROWS - 1, queries, DIMENSION);
+        store.copyRow(1500, queries, 2 * DIMENSION);
+
+        TopKHeap[] heaps = new BlockedMatrixSearch(store).search(queries, queryCount, limit);
+        ExactNearestSearch exact = new ExactNearestSearch(store);
+        for (int q = 0; q < queryCount; q++) {
+            float[] query = new float[DIMENSION];
+            System.arraycopy(queries, q * DIMENSION, query, 0, DIMENSION);
+            int[] expected = new int[limit];
+            exact.search(query, limit, expected, null);
+
+            int[] rows = new int[limit];
+            assertEquals(limit, heaps[q].drainDescending(rows, new float[limit]));
+            assertArrayEquals(expected, rows);
+            if (q == 1) {
+                assertEquals(ROWS - 1, rows[0]);
+            } else if (q == 2) {
+                assertEquals(1500, rows[0]);
+            }
+        }
+    }
+
+    private float[] randomVectors(int count) {
+        float[] vectors = new float[count * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
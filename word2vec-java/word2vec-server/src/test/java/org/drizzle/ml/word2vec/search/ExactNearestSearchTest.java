@@ -0,0 +1,84 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ExactNearestSearchTest {
+    private static final int ROWS = 3000;
+    private static final int DIMENSION = 37;
+
+    private final Random random = new Random(7);
+    private final float[] values = randomVectors(ROWS);
+    private final EmbeddingStore store = BufferEmbeddingStore.of(
+            IntStream.range(0, ROWS).mapToObj(i -> "w" + i).toArray(String[]::new), values, DIMENSION);
+    private final ExactNearestSearch search = new ExactNearestSearch(store);
+
+    @Test
+    public void matchesFullSort() {
+        for (int query = 0; query < 10; query++) {
+            float[] vector = randomVectors(1);
+            for (int limit : new int[]{1, 5, 50}) {
+                int[] rows = new int[limit];
+                float[] similarities = new float[limit];
+                assertEquals(limit, search.search(vector, limit, rows, similarities));
+
+                int[] expected = IntStream.range(0, ROWS)
+                        .boxed()
+                        .sorted(Comparator.comparingDouble((Integer row) -> cosine(vector, row)).reversed())
+                        .limit(limit)
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+                assertArrayEquals(expected, rows);
+                for (int i = 0; i < limit; i++) {
+                    assertEquals(cosine(vector, rows[i]), similarities[i], 1e-5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsOwnVector() {
+        float[] vector = new float[DIMENSION];
+        store.copyRow(1234, vector, 0);
+
+        int[] rows = new int[1];
+        assertEquals(1, search.search(vector, 1, rows, null));
+        assertEquals(1234, rows[0]);
+    }
+
+    @Test
+    public void limitLargerThanRange() {
+        int[] rows = new int[10];
+        assertEquals(3, search.search(randomVectors(1), 10, 100, 103, rows, null));
+        assertEquals(0, search.search(randomVectors(1), 0, rows, null));
+    }
+
+    private double cosine(float[] vector, int row) {
+        double dot = 0d;
+        double queryNorm = 0d;
+        double rowNorm = 0d;
+        for (int i = 0; i < DIMENSION; i++) {
+            float value = values[row * DIMENSION + i];
+            dot += vector[i] * value;
+            queryNorm += vector[i] * vector[i];
+            rowNorm += value * value;
+        }
+        return dot / Math.sqrt(queryNorm * rowNorm);
+    }
+
+    private float[] randomVectors(int count) {
+        float[] vectors = new float[count * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
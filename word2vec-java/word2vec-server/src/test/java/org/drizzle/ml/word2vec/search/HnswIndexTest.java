@@ -0,0 +1,133 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HnswIndexTest {
+    private static final int ROWS = 5000;
+    private static final int DIMENSION = 32;
+    private static final int LIMIT = 10;
+    private static final int QUERIES = 50;
+
+    private static final Random random = new Random(11);
+    // built once, construction dominates the test time
+    private static final EmbeddingStore store = BufferEmbeddingStore.of(
+            IntStream.range(0, ROWS).mapToObj(i -> "w" + i).toArray(String[]::new), randomVectors(ROWS), DIMENSION);
+    private static final HnswIndex index = HnswIndex.build(store, 12, 100, 1);
+
+    private final ExactNearestSearch exactSearch = new ExactNearestSearch(store);
+
+    @Test
+    public void recallAgainstExactSearch() {
+        double lowEfRecall = recall(index, LIMIT);
+        double highEfRecall = recall(index, 100);
+        assertTrue(lowEfRecall > 0.5);
+        assertTrue(highEfRecall > 0.95);
+        assertTrue(highEfRecall >= lowEfRecall);
+    }
+
+    @Test
+    public void parallelBuildRecall() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AtomicLong inserted = new AtomicLong();
+            HnswIndex parallelIndex = HnswIndex.build(store, 12, 100, 1, pool,
+                    (done, total) -> inserted.accumulateAndGet(done, Math::max));
+
+            assertEquals(ROWS, inserted.get());
+            assertTrue(recall(parallelIndex, 100) > 0.95);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void findsOwnVector() {
+        float[] vector = new float[DIMENSION];
+        int[] rows = new int[1];
+        float[] similarities = new float[1];
+        for (int row = 0; row < ROWS; row += 97) {
+            store.copyRow(row, vector, 0);
+            assertEquals(1, index.search(vector, 1, 64, rows, similarities));
+            assertEquals(row, rows[0]);
+            assertEquals(1f, similarities[0], 1e-5);
+        }
+    }
+
+    @Test
+    public void descendingSimilarities() {
+        int[] rows = new int[LIMIT];
+        float[] similarities = new float[LIMIT];
+        assertEquals(LIMIT, index.search(randomVectors(1), LIMIT, 32, rows, similarities));
+        for (int i = 1; i < LIMIT; i++) {
+            assertTrue(similarities[i] <= similarities[i - 1]);
+        }
+        assertEquals(0, index.search(randomVectors(1), 0, 32, rows, similarities));
+    }
+
+    @Test
+    public void saveAndLoad(@TempDir Path tempDir) throws IOException {
+        File file = tempDir.resolve("index.hnsw").toFile();
+        index.save(file);
+        HnswIndex loaded = HnswIndex.load(store, file);
+
+        assertEquals(index.m(), loaded.m());
+        assertEquals(index.efConstruction(), loaded.efConstruction());
+
+        int[] expected = new int[LIMIT];
+        int[] actual = new int[LIMIT];
+        for (int query = 0; query < 10; query++) {
+            float[] vector = randomVectors(1);
+            assertEquals(index.search(vector, LIMIT, 50, expected, null), loaded.search(vector, LIMIT, 50, actual, null));
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void loadRejectsDifferentStore(@TempDir Path tempDir) throws IOException {
+        File file = tempDir.resolve("index.hnsw").toFile();
+        index.save(file);
+
+        EmbeddingStore smaller = BufferEmbeddingStore.of(new String[]{"a"}, randomVectors(1), DIMENSION);
+        assertThrows(IOException.class, () -> HnswIndex.load(smaller, file));
+    }
+
+    private double recall(HnswIndex index, int ef) {
+        int[] expected = new int[LIMIT];
+        int[] actual = new int[LIMIT];
+        int found = 0;
+        for (int query = 0; query < QUERIES; query++) {
+            float[] vector = randomVectors(1);
+            exactSearch.search(vector, LIMIT, expected, null);
+            int count = index.search(vector, LIMIT, ef, actual, null);
+            for (int i = 0; i < count; i++) {
+                for (int row : expected) {
+                    if (row == actual[i]) {
+                        found++;
+                    }
+                }
+            }
+        }
+        return found / (double) (QUERIES * LIMIT);
+    }
+
+    private static float[] randomVectors(int count) {
+        float[] vectors = new float[count * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,95 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.drizzle.ml.word2vec.store.ProductQuantizedStore;
+import org.drizzle.ml.word2vec.store.QuantizedEmbeddingStore;
+import org.drizzle.ml.word2vec.store.ScalarQuantizedStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuantizedNearestSearchTest {
+    private static final int ROWS = 3000;
+    private static final int DIMENSION = 32;
+    private static final int LIMIT = 10;
+    private static final int QUERIES = 30;
+
+    private static final Random random = new Random(5);
+    private static final EmbeddingStore store = BufferEmbeddingStore.of(
+            IntStream.range(0, ROWS).mapToObj(i -> "w" + i).toArray(String[]::new), randomVectors(ROWS), DIMENSION);
+    private static final ProductQuantizedStore productQuantized = ProductQuantizedStore.train(store, 8, 3000, 8, 1);
+
+    private final ExactNearestSearch exactSearch = new ExactNearestSearch(store);
+
+    @Test
+    public void scalarQuantizedRecall() {
+        assertTrue(recall(new QuantizedNearestSearch(ScalarQuantizedStore.quantize(store), null, 0)) > 0.9);
+    }
+
+    @Test
+    public void productQuantizedRecall() {
+        QuantizedNearestSearch approximate = new QuantizedNearestSearch(productQuantized, null, 0);
+        QuantizedNearestSearch reranked = new QuantizedNearestSearch(productQuantized, store, 200);
+
+        double approximateRecall = recall(approximate);
+        double rerankedRecall = recall(reranked);
+        assertTrue(approximateRecall > 0.2, "approximate recall " + approximateRecall);
+        assertTrue(rerankedRecall > 0.9, "reranked recall " + rerankedRecall);
+    }
+
+    @Test
+    public void rerankedSimilaritiesAreExact() {
+        QuantizedNearestSearch reranked = new QuantizedNearestSearch(productQuantized, store, 100);
+        float[] vector = new float[DIMENSION];
+        store.copyRow(77, vector, 0);
+
+        int[] rows = new int[LIMIT];
+        float[] similarities = new float[LIMIT];
+        assertEquals(LIMIT, reranked.search(vector, LIMIT, rows, similarities));
+        assertEquals(77, rows[0]);
+        assertEquals(1f, similarities[0], 1e-5);
+        for (int i = 1; i < LIMIT; i++) {
+            assertTrue(similarities[i] <= similarities[i - 1]);
+        }
+    }
+
+    @Test
+    public void limitLargerThanStore() {
+        QuantizedEmbeddingStore small = ScalarQuantizedStore.quantize(BufferEmbeddingStore.of(
+                new String[]{"a", "b"}, randomVectors(2), DIMENSION));
+        int[] rows = new int[5];
+        assertEquals(2, new QuantizedNearestSearch(small, null, 0).search(randomVectors(1), 5, rows, null));
+        assertEquals(0, new QuantizedNearestSearch(small, null, 0).search(randomVectors(1), 0, rows, null));
+    }
+
+    private double recall(NearestSearch search) {
+        int[] expected = new int[LIMIT];
+        int[] actual = new int[LIMIT];
+        int found = 0;
+        for (int query = 0; query < QUERIES; query++) {
+            float[] vector = randomVectors(1);
+            exactSearch.search(vector, LIMIT, expected, null);
+            int count = search.search(vector, LIMIT, actual, null);
+            for (int i = 0; i < count; i++) {
+                for (int row : expected) {
+                    if (row == actual[i]) {
+                        found++;
+                    }
+                }
+            }
+        }
+        return found / (double) (QUERIES * LIMIT);
+    }
+
+    private static float[] randomVectors(int count) {
+        float[] vectors = new float[count * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,84 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.drizzle.ml.word2vec.store.EmbeddingStore;
+import org.drizzle.ml.word2vec.store.VectorMath;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimilarityMatrixTest {
+    private static final int ROWS = 500;
+    private static final int DIMENSION = 16;
+
+    private final Random random = new Random(11);
+    private final float[] values = randomVectors();
+    private final EmbeddingStore store = BufferEmbeddingStore.of(
+            IntStream.range(0, ROWS).mapToObj(i -> "w" + i).toArray(String[]::new), values, DIMENSION);
+
+    @Test
+    public void matrixMatchesCosine() {
+        int[] left = {3, -1, 7, 499, 0};
+        int[] right = random.ints(300, 0, ROWS).toArray();
+        right[5] = -1;
+
+        SimilarityMatrix matrix = new SimilarityMatrix(store, left, right);
+        assertEquals(1, matrix.blockCount());
+        float[] similarities = matrix.block(0);
+        assertEquals(left.length * right.length, similarities.length);
+
+        for (int i = 0; i < left.length; i++) {
+            for (int j = 0; j < right.length; j++) {
+                assertEquals(cosine(left[i], right[j]), similarities[i * right.length + j], 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void largeMatricesAreSplitInBlocks() {
+        int[] left = IntStream.range(0, ROWS).toArray();
+        int[] right = IntStream.range(0, 1000).map(i -> i % ROWS).toArray();
+
+        SimilarityMatrix matrix = new SimilarityMatrix(store, left, right);
+        assertTrue(matrix.blockCount() > 1);
+        int rows = 0;
+        for (int b = 0; b < matrix.blockCount(); b++) {
+            float[] block = matrix.block(b);
+            for (int i = 0; i < block.length / right.length; i++, rows++) {
+                assertEquals(1f, block[i * right.length + rows], 1e-5f);
+            }
+        }
+        assertEquals(ROWS, rows);
+    }
+
+    @Test
+    public void pairsMatchCosine() {
+        int[] left = {1, 2, -1, 400};
+        int[] right = {1, 300, 5, -1};
+
+        float[] similarities = SimilarityMatrix.pairs(store, left, right);
+        for (int i = 0; i < left.length; i++) {
+            assertEquals(cosine(left[i], right[i]), similarities[i], 1e-5f);
+        }
+    }
+
+    private float cosine(int a, int b) {
+        if (a < 0 || b < 0) {
+            return 0f;
+        }
+        return VectorMath.dot(values, a * DIMENSION, values, b * DIMENSION, DIMENSION)
+                * VectorMath.inverseNorm(values, a * DIMENSION, DIMENSION)
+                * VectorMath.inverseNorm(values, b * DIMENSION, DIMENSION);
+    }
+
+    private float[] randomVectors() {
+        float[] vectors = new float[ROWS * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,62 @@
+package org.drizzle.ml.word2vec.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopKHeapTest {
+
+    @Test
+    public void keepsHighestScores() {
+        Random random = new Random(42);
+        float[] scores = new float[1000];
+        TopKHeap heap = new TopKHeap(10);
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextFloat();
+            heap.offer(i, scores[i]);
+        }
+
+        int[] expected = IntStream.range(0, scores.length)
+                .boxed()
+                .sorted((a, b) -> Float.compare(scores[b], scores[a]))
+                .limit(10)
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        int[] rows = new int[10];
+        float[] drained = new float[10];
+        assertEquals(10, heap.drainDescending(rows, drained));
+        assertArrayEquals(expected, rows);
+        for (int i = 0; i < rows.length; i++) {
+            assertEquals(scores[rows[i]], drained[i]);
+        }
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    public void partiallyFilled() {
+        TopKHeap heap = new TopKHeap(5);
+        heap.offer(7, 0.5f);
+        heap.offer(3, 0.9f);
+        assertEquals(Float.NEGATIVE_INFINITY, heap.threshold());
+
+        int[] rows = new int[5];
+        assertEquals(2, heap.drainDescending(rows, null));
+        assertEquals(3, rows[0]);
+        assertEquals(7, rows[1]);
+    }
+
+    @Test
+    public void rejectsBelowThreshold() {
+        TopKHeap heap = new TopKHeap(2);
+        assertTrue(heap.offer(1, 0.5f));
+        assertTrue(heap.offer(2, 0.7f));
+        assertEquals(0.5f, heap.threshold());
+        assertFalse(heap.offer(3, 0.1f));
+        assertTrue(heap.offer(4, 0.6f));
+        assertEquals(0.6f, heap.threshold());
+    }
+}
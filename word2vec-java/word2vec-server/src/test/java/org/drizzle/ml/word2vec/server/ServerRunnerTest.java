@@ -1,27 +1,61 @@
 package org.drizzle.ml.word2vec.server;
 
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.StatusRuntimeException;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import org.drizzle.ml.word2vec.client.ClientOptions;
 import org.drizzle.ml.word2vec.client.Word2VecClient;
+import org.drizzle.ml.word2vec.handlers.ModelOptions;
+import org.drizzle.ml.word2vec.handlers.ServiceRequestHandler;
 import org.drizzle.ml.word2vec.models.Nd4jVectorWordList;
 import org.drizzle.ml.word2vec.models.Nd4jWordVector;
+import org.drizzle.ml.word2vec.service.LatencySummary;
+import org.drizzle.ml.word2vec.service.MetricValue;
+import org.drizzle.ml.word2vec.service.Metrics;
+import org.drizzle.ml.word2vec.service.Pooling;
+import org.drizzle.ml.word2vec.service.SearchMode;
+import org.drizzle.ml.word2vec.service.VectorEncoding;
 import org.drizzle.ml.word2vec.test.WordTestUtils;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ServerRunnerTest {
@@ -66,6 +100,22 @@ public class ServerRunnerTest {
         assertEquals(testWordMap.keySet(), actual);
     }
 
+    @Test
+    public void getVectorMapInt8() throws InterruptedException {
+        Map<String, INDArray> expected = client.getVectorMap(testWords, VectorEncoding.FLOAT32).stream()
+                .collect(Collectors.toMap(Nd4jWordVector::getWord, Nd4jWordVector::getVector));
+        List<Nd4jWordVector> wordVecMap = client.getVectorMap(testWords, VectorEncoding.INT8);
+
+        assertEquals(testWords.size(), wordVecMap.size());
+        for (Nd4jWordVector wordVector : wordVecMap) {
+            INDArray expectedVector = expected.get(wordVector.getWord());
+            double maxAbs = expectedVector.amaxNumber().doubleValue();
+            for (int i = 0; i < expectedVector.length(); i++) {
+                assertEquals(expectedVector.getDouble(i), wordVector.getVector().getDouble(i), maxAbs / 127d);
+            }
+        }
+    }
+
     @Test
     public void getNearestWords() throws InterruptedException {
         List<INDArray> vectorList = testWordMap.values().stream()
@@ -80,7 +130,529 @@ public class ServerRunnerTest {
         assertEquals(Set.copyOf(testWords), actualWords);
     }
 
+    @Test
+    public void asyncCalls() throws InterruptedException, ExecutionException, TimeoutException {
+        assertEquals(client.getVectorMap(testWords), client.getVectorMapAsync(testWords).get(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        List<INDArray> vectorList = testWords.stream()
+                .map(word -> Nd4j.create(testWordMap.get(word)))
+                .collect(Collectors.toList());
+        assertEquals(client.getNearestWords(vectorList, 2),
+                client.getNearestWordsAsync(vectorList, 2, SearchMode.DEFAULT).get(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> client.forModel("missing").getVectorMapAsync(testWords).get(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(io.grpc.Status.Code.NOT_FOUND, ((StatusRuntimeException) error.getCause()).getStatus().getCode());
+    }
+
+    @Test
+    public void streamNearestWords() throws InterruptedException, ExecutionException, TimeoutException {
+        List<String> words = new ArrayList<>();
+        List<INDArray> vectorList = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String word = testWords.get(i % testWords.size());
+            words.add(word);
+            vectorList.add(Nd4j.create(testWordMap.get(word)));
+        }
+
+        // one response requested at a time
+        List<String> nearestWords = new ArrayList<>();
+        CompletableFuture<List<String>> completed = new CompletableFuture<>();
+        client.streamNearestWords(vectorList, 1, SearchMode.DEFAULT).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Nd4jVectorWordList item) {
+                nearestWords.add(item.getWords().get(0));
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(nearestWords);
+            }
+        });
+
+        assertEquals(words, completed.get(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void publisherDeadlineStartsWhenSubscribed() throws InterruptedException, ExecutionException, TimeoutException {
+        Word2VecClient shortTimeoutClient = client.withTimeout(500L);
+        Flow.Publisher<Nd4jWordVector> publisher = shortTimeoutClient.streamVectorMap(testWords, VectorEncoding.FLOAT32);
+        // longer than the timeout, a deadline started with the publisher would already be exceeded
+        Thread.sleep(700L);
+
+        List<String> words = new ArrayList<>();
+        CompletableFuture<List<String>> completed = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Nd4jWordVector item) {
+                words.add(item.getWord());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(words);
+            }
+        });
+
+        assertEquals(testWords, completed.get(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void publisherSendsNothingBeforeRequested() throws InterruptedException, ExecutionException, TimeoutException {
+        Flow.Publisher<Nd4jWordVector> publisher = client.withTimeout(ASYNC_TIMEOUT_MS * 10)
+                .streamVectorMap(testWords, VectorEncoding.FLOAT32);
+
+        List<String> words = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+        CompletableFuture<List<String>> completed = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscribed.complete(subscription);
+            }
+
+            @Override
+            public void onNext(Nd4jWordVector item) {
+                words.add(item.getWord());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(words);
+            }
+        });
+
+        // the server answers while nothing is requested, the response is held by the publisher
+        Flow.Subscription subscription = subscribed.get(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        Thread.sleep(500L);
+        assertEquals(List.of(), words);
+        assertFalse(completed.isDone());
+
+        subscription.request(1);
+        assertEquals(testWords.subList(0, 1), words);
+        subscription.request(Long.MAX_VALUE);
+        assertEquals(testWords, completed.get(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void timedOutVectorMapIsEmpty() throws InterruptedException {
+        // the call deadline expires while the client still waits for the stream to complete
+        Word2VecClient timedOutClient = new Word2VecClient(
+                InProcessChannelBuilder.forName(IN_PROCESS_SERVICE_NAME).intercept(new ClientInterceptor() {
+                    @Override
+                    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                               CallOptions callOptions, Channel next) {
+                        return next.newCall(method, callOptions.withDeadlineAfter(100L, TimeUnit.MILLISECONDS));
+                    }
+                }), ASYNC_TIMEOUT_MS * 10);
+        try {
+            // streaming this many words takes longer than the deadline, responses received before it are not returned
+            List<String> words = Collections.nCopies(200000, "enterprise");
+            assertEquals(List.of(), timedOutClient.getVectorMap(words));
+        } finally {
+            timedOutClient.shutdown();
+        }
+    }
+
+    @Test
+    public void getVectorsBatch() {
+        List<String> words = List.of("enterprise", "notavalidword", "poet");
+        List<Nd4jWordVector> wordVecs = client.getVectorsBatch(words);
+
+        assertEquals(List.of("enterprise", "poet"),
+                wordVecs.stream().map(Nd4jWordVector::getWord).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void getNearestWordsBatch() {
+        INDArray vectors = Nd4j.vstack(testWordMap.values().stream()
+                .map(Nd4j::create)
+                .collect(Collectors.toList()));
+
+        List<Nd4jVectorWordList> nearestWords = client.getNearestWordsBatch(vectors, 1);
+        assertEquals(testWords.size(), nearestWords.size());
+
+        Set<String> actualWords = nearestWords.stream()
+                .flatMap(wordList -> wordList.getWords().stream())
+                .collect(Collectors.toSet());
+        assertEquals(Set.copyOf(testWords), actualWords);
+    }
+
+    @Test
+    public void getNearestToWords() {
+        List<String> nearestWords = client.getNearestToWords(List.of("enterprise", "public"), List.of("poet"), 3);
+
+        assertEquals(3, nearestWords.size());
+        assertTrue(Collections.disjoint(testWords, nearestWords));
+    }
+
+    @Test
+    public void getDocumentVectors() throws InterruptedException {
+        List<INDArray> documentVectors = client.getDocumentVectors(List.of(testWords, List.of("poet")), Pooling.MEAN);
+        List<INDArray> textVectors = client.getTextVectors(List.of(String.join(" ", testWords), "poet"), Pooling.MEAN);
+
+        assertEquals(2, documentVectors.size());
+        assertEquals(documentVectors, textVectors);
+        DoubleArrayList poet = testWordMap.get("poet");
+        for (int i = 0; i < poet.size(); i++) {
+            assertEquals(poet.getDouble(i), documentVectors.get(1).getDouble(i), 1e-6);
+        }
+    }
+
+    @Test
+    public void getSimilarities() {
+        assertEquals(1f, client.getSimilarity("poet", "poet"), 1e-5f);
+        assertEquals(0f, client.getSimilarity("poet", "notavalidword"));
+
+        List<String> right = List.of("poet", "notavalidword", "enterprise");
+        INDArray matrix = client.getSimilarityMatrix(testWords, right);
+        float[] pairs = client.getPairSimilarities(testWords, List.of("poet", "poet", "poet"));
+
+        assertEquals(testWords.size(), matrix.rows());
+        assertEquals(right.size(), matrix.columns());
+        for (int i = 0; i < testWords.size(); i++) {
+            assertEquals(0d, matrix.getDouble(i, 1));
+            assertEquals(pairs[i], matrix.getDouble(i, 0), 1e-5);
+            assertEquals(client.getSimilarity(testWords.get(i), "enterprise"), matrix.getDouble(i, 2), 1e-5);
+        }
+        assertEquals(1d, matrix.getDouble(2, 0), 1e-5);
+    }
+
+    @Test
+    public void streamsWithSmallWindows() throws IOException, InterruptedException, URISyntaxException {
+        File modelFile = new File(ServerRunnerTest.class.getResource("/w2vmodel.bin").toURI());
+        String serviceName = IN_PROCESS_SERVICE_NAME + "-windowed";
+        ServerRunner windowedRunner = new ServerRunner(InProcessServerBuilder.forName(serviceName), modelFile,
+                new ModelOptions().setStreamWindow(2).setSearchThreads(2));
+        windowedRunner.start();
+        try {
+            Word2VecClient windowedClient = new Word2VecClient(InProcessChannelBuilder.forName(serviceName), ASYNC_TIMEOUT_MS * 10, 3);
+            waitForReady(windowedClient);
+
+            List<String> words = new ArrayList<>();
+            List<INDArray> vectors = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                String word = testWords.get(i % testWords.size());
+                words.add(word);
+                vectors.add(Nd4j.create(testWordMap.get(word)));
+            }
+
+            // responses keep the request order
+            List<Nd4jWordVector> wordVecs = windowedClient.getVectorMap(words);
+            assertEquals(words, wordVecs.stream().map(Nd4jWordVector::getWord).collect(Collectors.toList()));
+
+            List<Nd4jVectorWordList> nearestWords = windowedClient.getNearestWords(vectors, 1);
+            assertEquals(words, nearestWords.stream().map(wordList -> wordList.getWords().get(0)).collect(Collectors.toList()));
+        } finally {
+            windowedRunner.stop();
+        }
+    }
+
+    @Test
+    public void hostedModelsAndReload(@TempDir Path tempDir) throws IOException, InterruptedException, URISyntaxException {
+        File modelFile = new File(ServerRunnerTest.class.getResource("/w2vmodel.bin").toURI());
+        Map<String, File> modelFiles = Map.of(ServiceRequestHandler.DEFAULT_MODEL, modelFile,
+                "store", WordTestUtils.createStoreFile(tempDir));
+        String serviceName = IN_PROCESS_SERVICE_NAME + "-models";
+        ServerRunner modelsRunner = new ServerRunner(InProcessServerBuilder.forName(serviceName), modelFiles,
+                new ModelOptions(), new TransportOptions());
+        modelsRunner.start();
+        try {
+            Word2VecClient defaultClient = new Word2VecClient(InProcessChannelBuilder.forName(serviceName), ASYNC_TIMEOUT_MS);
+            Word2VecClient storeClient = defaultClient.forModel("store");
+            waitForReady(defaultClient);
+            waitForReady(storeClient);
+
+            assertEquals(2, defaultClient.getStatus().getModelsCount());
+            assertEquals(defaultClient.getVectorsBatch(testWords), storeClient.getVectorsBatch(testWords));
+
+            assertEquals(1, storeClient.reloadModel().getVersion());
+            final long startTime = System.currentTimeMillis();
+            while (storeVersion(defaultClient) < 2 && System.currentTimeMillis() - startTime < MAX_CONNECT_TIME_MS) {
+                // the current version keeps serving while the new one loads
+                assertEquals(testWords.size(), storeClient.getVectorsBatch(testWords).size());
+                Thread.sleep(50L);
+            }
+            assertEquals(2, storeVersion(defaultClient));
+            assertEquals(defaultClient.getVectorsBatch(testWords), storeClient.getVectorsBatch(testWords));
+
+            StatusRuntimeException error = assertThrows(StatusRuntimeException.class,
+                    () -> defaultClient.forModel("missing").getVectorsBatch(testWords));
+            assertEquals(io.grpc.Status.Code.NOT_FOUND, error.getStatus().getCode());
+        } finally {
+            modelsRunner.stop();
+        }
+    }
+
+    private static long storeVersion(Word2VecClient client) {
+        return client.getStatus().getModelsList().stream()
+                .filter(modelStatus -> modelStatus.getModel().equals("store"))
+                .findFirst()
+                .orElseThrow()
+                .getVersion();
+    }
+
+    @Test
+    public void balancesCallsOverChannels() {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        Word2VecClient pooledClient = new Word2VecClient(
+                List.of(countingChannel(first), countingChannel(second)),
+                new ClientOptions().setAsyncTimeoutMs(ASYNC_TIMEOUT_MS).setChannelsPerAddress(2));
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(testWords.size(), pooledClient.getVectorsBatch(testWords).size());
+            }
+            assertEquals(10, first.get());
+            assertEquals(10, second.get());
+        } finally {
+            pooledClient.shutdown();
+        }
+    }
+
+    @Test
+    public void hedgedNearestWords() {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        Word2VecClient hedgedClient = new Word2VecClient(
+                List.of(countingChannel(first), countingChannel(second)),
+                new ClientOptions().setAsyncTimeoutMs(ASYNC_TIMEOUT_MS * 10)
+                        .setLoadBalancing(ClientOptions.LoadBalancing.LEAST_OUTSTANDING)
+                        .setHedgingPercentile(50)
+                        .setMinHedgingDelayMs(0));
+        INDArray vectors = Nd4j.vstack(testWords.stream()
+                .map(word -> Nd4j.create(testWordMap.get(word)))
+                .collect(Collectors.toList()));
+        try {
+            int calls = 200;
+            for (int i = 0; i < calls; i++) {
+                List<String> nearestWords = hedgedClient.getNearestWordsBatch(vectors, 1).stream()
+                        .map(wordList -> wordList.getWords().get(0))
+                        .collect(Collectors.toList());
+                assertEquals(testWords, nearestWords);
+            }
+            // calls slower than the median of the recent calls are sent twice
+            assertTrue(first.get() + second.get() > calls);
+        } finally {
+            hedgedClient.shutdown();
+        }
+    }
+
+    @Test
+    public void cachedVectors() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        int dimension = testWordMap.get("poet").size();
+        Word2VecClient cachedClient = new Word2VecClient(List.of(countingChannel(calls)),
+                new ClientOptions().setAsyncTimeoutMs(ASYNC_TIMEOUT_MS).setVectorCacheBytes(2L * Float.BYTES * dimension));
+        try {
+            List<String> words = List.of("poet", "public", "poet");
+            assertEquals(client.getVectorMap(words), cachedClient.getVectorMap(words));
+            assertEquals(1, calls.get());
+            assertEquals(client.getVectorMap(words), cachedClient.getVectorMap(words));
+            assertEquals(1, calls.get());
+
+            // missing words are requested again
+            List<String> batchWords = List.of("public", "notavalidword", "poet");
+            assertEquals(client.getVectorsBatch(batchWords), cachedClient.getVectorsBatch(batchWords));
+            assertEquals(2, calls.get());
+            assertEquals(5, cachedClient.getVectorCacheHits());
+            assertEquals(4, cachedClient.getVectorCacheMisses());
+
+            // the least recently used word is evicted
+            assertEquals(client.getVectorsBatch(testWords), cachedClient.getVectorsBatch(testWords));
+            assertEquals(3, calls.get());
+            cachedClient.getVectorsBatch(List.of("public"));
+            assertEquals(4, calls.get());
+
+            cachedClient.invalidateVectorCache();
+            cachedClient.getVectorsBatch(List.of("poet"));
+            assertEquals(5, calls.get());
+        } finally {
+            cachedClient.shutdown();
+        }
+    }
+
+    private static ManagedChannelBuilder<?> countingChannel(AtomicInteger calls) {
+        return InProcessChannelBuilder.forName(IN_PROCESS_SERVICE_NAME).intercept(new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions, Channel next) {
+                calls.incrementAndGet();
+                return next.newCall(method, callOptions);
+            }
+        });
+    }
+
+    @Test
+    public void lookupWords() {
+        List<List<Nd4jWordVector>> matches = client.lookupWords(List.of("Enterprise", "entreprise", "poe"), 3, true, true, 1);
+        assertEquals(3, matches.size());
+        assertEquals("enterprise", matches.get(0).get(0).getWord());
+        // the transposed letters count as one edit
+        assertEquals("enterprise", matches.get(1).get(0).getWord());
+        assertTrue(matches.get(2).stream().anyMatch(match -> match.getWord().equals("poet")));
+        assertTrue(matches.get(2).size() <= 3);
+        INDArray expected = Nd4j.create(testWordMap.get("enterprise"));
+        assertEquals(expected.length(), matches.get(0).get(0).getVector().length());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.getDouble(i), matches.get(0).get(0).getVector().getDouble(i), 1e-6);
+        }
+
+        assertTrue(client.lookupWords(List.of("Enterprise"), 3, false, false, 0).get(0).isEmpty());
+        StatusRuntimeException error = assertThrows(StatusRuntimeException.class,
+                () -> client.lookupWords(List.of("enterprise"), 3, false, false, 3));
+        assertEquals(io.grpc.Status.Code.INVALID_ARGUMENT, error.getStatus().getCode());
+    }
+
+    @Test
+    public void metrics() {
+        List<String> words = List.of("enterprise", "poet", "notawordinthemodel");
+        client.getVectorsBatch(words);
+        client.getNearestToWords(List.of("enterprise"), List.of(), 3);
+
+        Metrics metrics = client.getMetrics();
+        LatencySummary batchLatency = metrics.getRpcLatenciesList().stream()
+                .filter(summary -> summary.getName().equals("GetVectorsBatch"))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(batchLatency.getCount() >= 1);
+        assertTrue(batchLatency.getP50Micros() > 0 && batchLatency.getP50Micros() <= batchLatency.getMaxMicros());
+
+        Map<String, Long> stageCounts = metrics.getStageLatenciesList().stream()
+                .collect(Collectors.toMap(LatencySummary::getName, LatencySummary::getCount));
+        assertTrue(stageCounts.get("lookup") >= 2);
+        assertTrue(stageCounts.get("scan") >= 1);
+        assertTrue(stageCounts.get("serialization") >= 2);
+
+        assertTrue(counter(metrics, "w2v_missing_words_total", Map.of()) >= 1);
+        assertTrue(counter(metrics, "w2v_rpc_calls_total", Map.of("method", "GetVectorsBatch", "code", "OK")) >= 1);
+        assertTrue(counter(metrics, "w2v_rpc_messages_sent_total", Map.of("method", "GetNearestToWords")) >= 1);
+    }
+
+    private static double counter(Metrics metrics, String name, Map<String, String> labels) {
+        return metrics.getCountersList().stream()
+                .filter(value -> value.getName().equals(name) && value.getLabelsMap().equals(labels))
+                .mapToDouble(MetricValue::getValue)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Test
+    public void nettyServerWithTransportOptions() throws IOException, InterruptedException, URISyntaxException {
+        File modelFile = new File(ServerRunnerTest.class.getResource("/w2vmodel.bin").toURI());
+        int metricsPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            metricsPort = socket.getLocalPort();
+        }
+        TransportOptions transportOptions = new TransportOptions()
+                .setExecutorThreads(2)
+                .setBossThreads(1)
+                .setWorkerThreads(2)
+                .setMaxConcurrentCallsPerConnection(8)
+                .setFlowControlWindow(64 * 1024)
+                .setMetricsPort(metricsPort);
+        ServerRunner nettyRunner = new ServerRunner(NettyServerBuilder.forPort(0), modelFile,
+                new ModelOptions().setSearchThreads(2), transportOptions);
+        nettyRunner.start();
+        try {
+            Word2VecClient nettyClient = new Word2VecClient(
+                    ManagedChannelBuilder.forAddress("localhost", nettyRunner.getPort()).usePlaintext(), ASYNC_TIMEOUT_MS);
+            waitForReady(nettyClient);
+
+            Set<String> actual = nettyClient.getVectorMap(testWords).stream()
+                    .map(Nd4jWordVector::getWord)
+                    .collect(Collectors.toSet());
+            assertEquals(testWordMap.keySet(), actual);
+
+            INDArray vectors = Nd4j.vstack(testWordMap.values().stream()
+                    .map(Nd4j::create)
+                    .collect(Collectors.toList()));
+            Set<String> nearestWords = nettyClient.getNearestWordsBatch(vectors, 1).stream()
+                    .flatMap(wordList -> wordList.getWords().stream())
+                    .collect(Collectors.toSet());
+            assertEquals(Set.copyOf(testWords), nearestWords);
+
+            HttpResponse<String> scrape = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + metricsPort + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, scrape.statusCode());
+            assertTrue(scrape.body().contains("w2v_rpc_latency_seconds_count{method=\"GetNearestWordsBatch\"} 1"));
+            assertTrue(scrape.body().contains("w2v_rpc_calls_total{"));
+            assertTrue(scrape.body().contains("w2v_search_queue_depth 0.0"));
+            assertTrue(scrape.body().contains("w2v_model_load_seconds{model=\"default\"}"));
+        } finally {
+            nettyRunner.stop();
+        }
+    }
+
+    @Test
+    public void batchesLargerThanDefaultMessageSize() throws IOException, InterruptedException, URISyntaxException {
+        File modelFile = new File(ServerRunnerTest.class.getResource("/w2vmodel.bin").toURI());
+        int maxMessageSize = 16 * 1024 * 1024;
+        ServerRunner nettyRunner = new ServerRunner(NettyServerBuilder.forPort(0), modelFile, new ModelOptions(),
+                new TransportOptions().setMaxInboundMessageSize(maxMessageSize));
+        nettyRunner.start();
+        Word2VecClient defaultClient = new Word2VecClient(
+                ManagedChannelBuilder.forAddress("localhost", nettyRunner.getPort()).usePlaintext(), ASYNC_TIMEOUT_MS * 10);
+        Word2VecClient largeClient = new Word2VecClient(
+                List.of(ManagedChannelBuilder.forAddress("localhost", nettyRunner.getPort()).usePlaintext()),
+                new ClientOptions().setAsyncTimeoutMs(ASYNC_TIMEOUT_MS * 10).setMaxInboundMessageSize(maxMessageSize));
+        try {
+            waitForReady(largeClient);
+            int dimension = client.getVectorsBatch(testWords).get(0).getVector().columns();
+            // packed float32 vectors above the 4 MiB gRPC default
+            int wordCount = 4 * 1024 * 1024 / (dimension * Float.BYTES) + 1000;
+
+            List<String> words = Collections.nCopies(wordCount, "poet");
+            assertThrows(StatusRuntimeException.class, () -> defaultClient.getVectorsBatch(words));
+            List<Nd4jWordVector> wordVecs = largeClient.getVectorsBatch(words);
+            assertEquals(wordCount, wordVecs.size());
+
+            INDArray vectors = Nd4j.vstack(wordVecs.stream().map(Nd4jWordVector::getVector).collect(Collectors.toList()));
+            List<Nd4jVectorWordList> nearestWords = largeClient.getNearestWordsBatch(vectors, 1);
+            assertEquals(wordCount, nearestWords.size());
+            assertEquals(List.of("poet"), nearestWords.get(wordCount - 1).getWords());
+        } finally {
+            defaultClient.shutdown();
+            largeClient.shutdown();
+            nettyRunner.stop();
+        }
+    }
+
     private static void waitForReady() throws InterruptedException {
+        waitForReady(client);
+    }
+
+    private static void waitForReady(Word2VecClient client) throws InterruptedException {
         final long startTime = System.currentTimeMillis();
         boolean isServiceReady = client.isReady();
         while (System.currentTimeMillis() - startTime < MAX_CONNECT_TIME_MS && !isServiceReady) {
@@ -0,0 +1,118 @@
+package org.drizzle.ml.word2vec.server;
+
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.drizzle.ml.word2vec.client.ShardedWord2VecClient;
+import org.drizzle.ml.word2vec.client.Word2VecClient;
+import org.drizzle.ml.word2vec.handlers.ModelOptions;
+import org.drizzle.ml.word2vec.models.Nd4jVectorWordList;
+import org.drizzle.ml.word2vec.models.Nd4jWordVector;
+import org.drizzle.ml.word2vec.test.WordTestUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedServerTest {
+    private static final String IN_PROCESS_SERVICE_NAME = "inprocess-w2v-sharded";
+    private static final int SHARD_COUNT = 3;
+    private static final long MAX_CONNECT_TIME_MS = 10000L;
+    private static final long ASYNC_TIMEOUT_MS = 5000L;
+    private final List<String> testWords = List.of("enterprise", "public", "poet", "notavalidword");
+
+    private static final List<ServerRunner> runners = new ArrayList<>();
+    private static Word2VecClient client;
+    private static ShardedWord2VecClient shardedClient;
+
+    @BeforeAll
+    public static void setup() throws IOException, InterruptedException {
+        runners.add(new ServerRunner(InProcessServerBuilder.forName(IN_PROCESS_SERVICE_NAME), WordTestUtils.modelFile,
+                new ModelOptions()));
+        List<Word2VecClient> shardClients = new ArrayList<>();
+        for (int shard = 0; shard < SHARD_COUNT; shard++) {
+            String serviceName = IN_PROCESS_SERVICE_NAME + "-" + shard;
+            runners.add(new ServerRunner(InProcessServerBuilder.forName(serviceName), WordTestUtils.modelFile,
+                    new ModelOptions().setShard(shard, SHARD_COUNT)));
+            shardClients.add(new Word2VecClient(InProcessChannelBuilder.forName(serviceName), ASYNC_TIMEOUT_MS));
+        }
+        for (ServerRunner runner : runners) {
+            runner.start();
+        }
+
+        client = new Word2VecClient(InProcessChannelBuilder.forName(IN_PROCESS_SERVICE_NAME), ASYNC_TIMEOUT_MS);
+        shardedClient = new ShardedWord2VecClient(shardClients);
+
+        final long startTime = System.currentTimeMillis();
+        while (System.currentTimeMillis() - startTime < MAX_CONNECT_TIME_MS && !(client.isReady() && shardedClient.isReady())) {
+            Thread.sleep(200L);
+        }
+        assertTrue(client.isReady());
+        assertTrue(shardedClient.isReady());
+    }
+
+    @AfterAll
+    public static void tearDown() throws InterruptedException {
+        client.shutdown();
+        shardedClient.shutdown();
+        assertTrue(client.awaitTermination(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(shardedClient.awaitTermination(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        runners.forEach(ServerRunner::stop);
+    }
+
+    @Test
+    public void getVectorsBatch() {
+        assertEquals(client.getVectorsBatch(testWords), shardedClient.getVectorsBatch(testWords));
+    }
+
+    @Test
+    public void getNearestWordsBatch() {
+        List<Nd4jWordVector> wordVectors = client.getVectorsBatch(testWords);
+        INDArray vectors = Nd4j.vstack(wordVectors.stream().map(Nd4jWordVector::getVector).collect(Collectors.toList()));
+
+        List<Nd4jVectorWordList> expected = client.getNearestWordsBatch(vectors, 10);
+        List<Nd4jVectorWordList> actual = shardedClient.getNearestWordsBatch(vectors, 10);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getWords(), actual.get(i).getWords());
+            for (int j = 0; j < expected.get(i).getSimilarities().size(); j++) {
+                assertEquals(expected.get(i).getSimilarities().get(j), actual.get(i).getSimilarities().get(j), 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void getNearestToWords() {
+        List<String> expected = client.getNearestToWords(List.of("poet", "public"), List.of("enterprise"), 5);
+        List<String> actual = shardedClient.getNearestToWords(List.of("poet", "public"), List.of("enterprise"), 5);
+
+        assertEquals(5, actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void shardsMustMatchTheirPosition() throws InterruptedException {
+        List<Word2VecClient> shardClients = new ArrayList<>();
+        for (int shard = SHARD_COUNT - 1; shard >= 0; shard--) {
+            shardClients.add(new Word2VecClient(InProcessChannelBuilder.forName(IN_PROCESS_SERVICE_NAME + "-" + shard),
+                    ASYNC_TIMEOUT_MS));
+        }
+
+        ShardedWord2VecClient reversedClient = new ShardedWord2VecClient(shardClients);
+        try {
+            assertThrows(IllegalStateException.class, reversedClient::isReady);
+        } finally {
+            reversedClient.shutdown();
+            assertTrue(reversedClient.awaitTermination(ASYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+}
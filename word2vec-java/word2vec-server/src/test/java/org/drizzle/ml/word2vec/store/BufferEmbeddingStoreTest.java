@@ -0,0 +1,275 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.drizzle.ml.word2vec.shard.WordShards;
+import org.drizzle.ml.word2vec.test.WordTestUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferEmbeddingStoreTest {
+    private static Word2Vec model;
+
+    @BeforeAll
+    public static void loadModel() {
+        model = WordVectorSerializer.readWord2VecModel(WordTestUtils.modelFile, true);
+    }
+
+    @Test
+    public void copiesModel() {
+        BufferEmbeddingStore store = BufferEmbeddingStore.fromWordVectors(model);
+        assertStoreMatchesModel(store);
+    }
+
+    @Test
+    public void splitsVocabularyInShards() {
+        BufferEmbeddingStore store = BufferEmbeddingStore.fromWordVectors(model);
+        int shardCount = 3;
+        int words = 0;
+        float[] expected = new float[store.dimension()];
+        float[] actual = new float[store.dimension()];
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            BufferEmbeddingStore shardStore = BufferEmbeddingStore.shard(store, shard, shardCount);
+            assertTrue(shardStore.size() > 0);
+            words += shardStore.size();
+
+            int previousRow = -1;
+            for (int row = 0; row < shardStore.size(); row++) {
+                String word = shardStore.wordAt(row);
+                int storeRow = store.indexOf(word);
+                assertEquals(shard, WordShards.shardOf(word, shardCount));
+                // rows keep the model order
+                assertTrue(storeRow > previousRow);
+                previousRow = storeRow;
+
+                store.copyRow(storeRow, expected, 0);
+                shardStore.copyRow(row, actual, 0);
+                assertArrayEquals(expected, actual);
+                assertEquals(store.inverseNorm(storeRow), shardStore.inverseNorm(row));
+            }
+        }
+        assertEquals(store.size(), words);
+    }
+
+    @Test
+    public void writesAndMapsStoreFile(@TempDir Path tempDir) throws IOException {
+        File storeFile = tempDir.resolve("model" + EmbeddingStoreFormat.FILE_EXTENSION).toFile();
+        EmbeddingStoreWriter.write(BufferEmbeddingStore.fromWordVectors(model), storeFile);
+
+        assertTrue(EmbeddingStoreFormat.isStoreFile(storeFile));
+        assertFalse(EmbeddingStoreFormat.isStoreFile(WordTestUtils.modelFile));
+
+        assertStoreMatchesModel(BufferEmbeddingStore.open(storeFile));
+    }
+
+    @Test
+    public void rejectsOtherFiles(@TempDir Path tempDir) throws IOException {
+        File file = tempDir.resolve("notastore").toFile();
+        Files.write(file.toPath(), new byte[EmbeddingStoreFormat.HEADER_SIZE]);
+
+        assertThrows(IOException.class, () -> BufferEmbeddingStore.open(file));
+    }
+
+    @Test
+    public void readsBinaryModelInParallel(@TempDir Path tempDir) throws IOException {
+        File binaryFile = WordTestUtils.createBinaryModelFile(tempDir);
+        assertTrue(Word2VecBinaryReader.isBinaryModel(binaryFile));
+        assertFalse(Word2VecBinaryReader.isBinaryModel(WordTestUtils.modelFile));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AtomicLong progress = new AtomicLong();
+            BufferEmbeddingStore store = Word2VecBinaryReader.read(binaryFile, pool, (done, total) -> {
+                assertEquals(2L * model.vocab().numWords(), total);
+                progress.accumulateAndGet(done, Math::max);
+            });
+
+            assertStoreMatchesModel(store);
+            assertEquals(2L * store.size(), progress.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void publishesRowsWhileReading(@TempDir Path tempDir) throws IOException {
+        int rows = 10_000;
+        int dimension = 8;
+        File binaryFile = WordTestUtils.createSyntheticBinaryModelFile(tempDir, rows, dimension);
+
+        // size, row of the last published word and row of the first word not published, at each publication
+        List<int[]> publications = new CopyOnWriteArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BufferEmbeddingStore store = Word2VecBinaryReader.read(binaryFile, pool, ProgressListener.NONE, partialStore -> {
+                int size = partialStore.size();
+                publications.add(new int[]{size, partialStore.indexOf("w" + (size - 1)), partialStore.indexOf("w" + size)});
+                assertEquals(rows, partialStore.rows());
+            });
+
+            assertEquals(rows, store.size());
+            assertEquals(rows - 1, store.indexOf("w" + (rows - 1)));
+            float[] vector = new float[dimension];
+            store.copyRow(rows - 1, vector, 0);
+            assertEquals(rows - 1 + dimension - 1, vector[dimension - 1]);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertFalse(publications.isEmpty());
+        int previousSize = 0;
+        for (int[] publication : publications) {
+            assertTrue(publication[0] > previousSize);
+            assertEquals(publication[0] - 1, publication[1]);
+            assertEquals(-1, publication[2]);
+            previousSize = publication[0];
+        }
+        assertEquals(rows, previousSize);
+    }
+
+    @Test
+    public void keepsMostFrequentRows(@TempDir Path tempDir) throws IOException {
+        int rows = 1000;
+        int dimension = 4;
+        File binaryFile = WordTestUtils.createSyntheticBinaryModelFile(tempDir, rows, dimension);
+
+        BufferEmbeddingStore store = Word2VecBinaryReader.read(binaryFile, ForkJoinPool.commonPool(), ProgressListener.NONE,
+                300, partialStore -> {
+                });
+        BufferEmbeddingStore prefix = BufferEmbeddingStore.prefix(Word2VecBinaryReader.read(binaryFile,
+                ForkJoinPool.commonPool(), ProgressListener.NONE), 300);
+
+        float[] vector = new float[dimension];
+        for (BufferEmbeddingStore pruned : List.of(store, prefix)) {
+            assertEquals(300, pruned.size());
+            assertEquals(299, pruned.indexOf("w299"));
+            assertEquals(-1, pruned.indexOf("w300"));
+            pruned.copyRow(299, vector, 0);
+            assertEquals(299 + dimension - 1, vector[dimension - 1]);
+        }
+    }
+
+    @Test
+    public void sharedMemoryOutlivesClosedStores(@TempDir Path tempDir) throws IOException {
+        int rows = 1000;
+        int dimension = 4;
+        File binaryFile = WordTestUtils.createSyntheticBinaryModelFile(tempDir, rows, dimension);
+
+        List<PartialEmbeddingStore> views = new CopyOnWriteArrayList<>();
+        BufferEmbeddingStore store = Word2VecBinaryReader.read(binaryFile, ForkJoinPool.commonPool(), ProgressListener.NONE,
+                partialStore -> views.add(partialStore.share()));
+        BufferEmbeddingStore prefix = BufferEmbeddingStore.prefix(store, 300);
+        store.close();
+        // closing twice does not release the memory of the other stores
+        store.close();
+        assertTrue(store.closed());
+
+        float[] vector = new float[dimension];
+        assertEquals(299, prefix.indexOf("w299"));
+        prefix.copyRow(299, vector, 0);
+        assertEquals(299 + dimension - 1, vector[dimension - 1]);
+        prefix.close();
+
+        // the reader closed its partial store once done, views keep serving every row
+        PartialEmbeddingStore view = views.get(views.size() - 1);
+        assertEquals(rows, view.size());
+        assertEquals(rows - 1, view.indexOf("w" + (rows - 1)));
+        view.copyRow(rows - 1, vector, 0);
+        assertEquals(rows - 1 + dimension - 1, vector[dimension - 1]);
+        views.forEach(PartialEmbeddingStore::close);
+    }
+
+    @Test
+    public void readsShardRows(@TempDir Path tempDir) throws IOException {
+        // chunks of a shard span several times their vectors in the file
+        int rows = 20_000;
+        int dimension = 4;
+        int shardCount = 3;
+        File binaryFile = WordTestUtils.createSyntheticBinaryModelFile(tempDir, rows, dimension);
+        BufferEmbeddingStore full = Word2VecBinaryReader.read(binaryFile, ForkJoinPool.commonPool(), ProgressListener.NONE);
+
+        float[] expected = new float[dimension];
+        float[] actual = new float[dimension];
+        for (int shard = 0; shard < shardCount; shard++) {
+            int shardIndex = shard;
+            BufferEmbeddingStore read = Word2VecBinaryReader.read(binaryFile, ForkJoinPool.commonPool(), ProgressListener.NONE,
+                    Integer.MAX_VALUE, (word, length) -> WordShards.shardOf(word, 0, length, shardCount) == shardIndex,
+                    partialStore -> {
+                    });
+            BufferEmbeddingStore copied = BufferEmbeddingStore.shard(full, shard, shardCount);
+
+            assertEquals(copied.size(), read.size());
+            for (int row = 0; row < read.size(); row++) {
+                assertEquals(copied.wordAt(row), read.wordAt(row));
+                copied.copyRow(row, expected, 0);
+                read.copyRow(row, actual, 0);
+                assertArrayEquals(expected, actual);
+                assertEquals(copied.inverseNorm(row), read.inverseNorm(row));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsOtherBinaryModels(@TempDir Path tempDir) throws IOException {
+        File textModel = tempDir.resolve("model.txt").toFile();
+        Files.write(textModel.toPath(), "2 3\nfire 0.1 0.2 0.3\nwater 0.4 0.5 0.6\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(Word2VecBinaryReader.isBinaryModel(textModel));
+
+        File storeFile = tempDir.resolve("model" + EmbeddingStoreFormat.FILE_EXTENSION).toFile();
+        EmbeddingStoreWriter.write(BufferEmbeddingStore.fromWordVectors(model), storeFile);
+        assertFalse(Word2VecBinaryReader.isBinaryModel(storeFile));
+
+        byte[] binary = Files.readAllBytes(WordTestUtils.createBinaryModelFile(tempDir).toPath());
+        File truncated = tempDir.resolve("truncated.bin").toFile();
+        Files.write(truncated.toPath(), Arrays.copyOf(binary, binary.length / 2));
+        assertThrows(IOException.class, () -> Word2VecBinaryReader.read(truncated, ForkJoinPool.commonPool(), ProgressListener.NONE));
+    }
+
+    private void assertStoreMatchesModel(EmbeddingStore store) {
+        assertEquals(model.vocab().numWords(), store.size());
+        assertEquals(model.getLayerSize(), store.dimension());
+
+        float[] vector = new float[store.dimension()];
+        for (int row = 0; row < store.size(); row++) {
+            String word = model.vocab().wordAtIndex(row);
+            assertEquals(word, store.wordAt(row));
+            assertEquals(row, store.indexOf(word));
+
+            assertEquals(ByteString.copyFromUtf8(word), store.wordBytes(row));
+
+            double[] expected = model.getWordVector(word);
+            store.copyRow(row, vector, 0);
+            ByteBuffer rowBytes = store.rowBytes(row).asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(vector.length * Float.BYTES, rowBytes.remaining());
+            double norm = 0d;
+            for (int i = 0; i < vector.length; i++) {
+                assertEquals(expected[i], vector[i]);
+                assertEquals(vector[i], rowBytes.getFloat(i * Float.BYTES));
+                norm += expected[i] * expected[i];
+            }
+
+            assertEquals(1d / Math.sqrt(norm), store.inverseNorm(row), 1e-6);
+            assertEquals(norm, store.dot(row, vector), 1e-4);
+        }
+
+        assertEquals(-1, store.indexOf("notavalidword"));
+    }
+}
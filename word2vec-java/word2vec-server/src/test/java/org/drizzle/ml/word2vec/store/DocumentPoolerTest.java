@@ -0,0 +1,69 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentPoolerTest {
+    private final EmbeddingStore store = BufferEmbeddingStore.of(new String[]{"the", "cat", "sat"},
+            new float[]{
+                    1f, 0f, 2f,
+                    0f, 4f, -2f,
+                    3f, 2f, 0f},
+            3);
+    private final DocumentPooler pooler = new DocumentPooler(store);
+    private final float[] vector = new float[3];
+
+    @Test
+    public void poolsUnweighted() {
+        assertEquals(3, pooler.pool(tokens("the", "cat", "missing", "sat"), DocumentPooler.Mode.SUM, vector));
+        assertArrayEquals(new float[]{4f, 6f, 0f}, vector);
+
+        assertEquals(2, pooler.pool(tokens("cat", "sat"), DocumentPooler.Mode.MEAN, vector));
+        assertArrayEquals(new float[]{1.5f, 3f, -1f}, vector);
+
+        assertEquals(2, pooler.pool(tokens("the", "cat"), DocumentPooler.Mode.MAX, vector));
+        assertArrayEquals(new float[]{1f, 4f, 2f}, vector);
+
+        assertEquals(0, pooler.pool(tokens("missing"), DocumentPooler.Mode.MAX, vector));
+        assertArrayEquals(new float[3], vector);
+    }
+
+    @Test
+    public void frequentWordsWeighLess() {
+        // "the" is the most frequent word, pooled vectors are closer to "sat"
+        float[] the = {1f, 0f, 2f};
+        float[] sat = {3f, 2f, 0f};
+        for (DocumentPooler.Mode mode : List.of(DocumentPooler.Mode.IDF, DocumentPooler.Mode.SIF)) {
+            assertEquals(2, pooler.pool(tokens("the", "sat"), mode, vector));
+            assertTrue(cosine(vector, sat) > cosine(vector, the), mode.toString());
+        }
+
+        // IDF is a weighted average, identical tokens keep their vector
+        pooler.pool(tokens("cat", "cat"), DocumentPooler.Mode.IDF, vector);
+        assertArrayEquals(new float[]{0f, 4f, -2f}, vector, 1e-6f);
+    }
+
+    @Test
+    public void tokenizesOnWhitespace() {
+        List<String> tokens = DocumentPooler.tokenize(ByteString.copyFromUtf8("  the cat\tsat\n on  the mät "))
+                .stream()
+                .map(ByteString::toStringUtf8)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("the", "cat", "sat", "on", "the", "mät"), tokens);
+        assertTrue(DocumentPooler.tokenize(ByteString.copyFromUtf8(" \n")).isEmpty());
+    }
+
+    private static float cosine(float[] a, float[] b) {
+        return VectorMath.dot(a, 0, b, 0, a.length) * VectorMath.inverseNorm(a, 0, a.length) * VectorMath.inverseNorm(b, 0, b.length);
+    }
+
+    private static List<ByteString> tokens(String... words) {
+        return List.of(words).stream().map(ByteString::copyFromUtf8).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,101 @@
+package org.drizzle.ml.word2vec.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuantizedEmbeddingStoreTest {
+    private static final int ROWS = 2000;
+    private static final int DIMENSION = 40;
+
+    private final Random random = new Random(3);
+    private final float[] values = randomVectors(ROWS);
+    private final EmbeddingStore source = BufferEmbeddingStore.of(
+            IntStream.range(0, ROWS).mapToObj(i -> "w" + i).toArray(String[]::new), values, DIMENSION);
+
+    @Test
+    public void scalarReconstructsVectors() {
+        ScalarQuantizedStore store = ScalarQuantizedStore.quantize(source);
+        assertSameWords(store);
+        assertEquals(ROWS * DIMENSION + ROWS * Float.BYTES, store.codeBytes());
+
+        float[] vector = new float[DIMENSION];
+        for (int row = 0; row < ROWS; row += 13) {
+            store.copyRow(row, vector, 0);
+            float maxAbs = 0f;
+            for (int i = 0; i < DIMENSION; i++) {
+                maxAbs = Math.max(maxAbs, Math.abs(values[row * DIMENSION + i]));
+            }
+            for (int i = 0; i < DIMENSION; i++) {
+                assertEquals(values[row * DIMENSION + i], vector[i], maxAbs / 254f + 1e-6f);
+            }
+        }
+        assertScorerMatchesDot(store);
+    }
+
+    @Test
+    public void productQuantizationApproximatesVectors() {
+        ProductQuantizedStore store = ProductQuantizedStore.train(source, 10, 1000, 8, 5);
+        assertSameWords(store);
+        assertEquals(10, store.subspaces());
+        assertTrue(store.codeBytes() < (long) ROWS * DIMENSION * Float.BYTES);
+
+        // quantization error must be well below the spread of the vectors
+        float[] vector = new float[DIMENSION];
+        double error = 0d;
+        double energy = 0d;
+        for (int row = 0; row < ROWS; row++) {
+            store.copyRow(row, vector, 0);
+            for (int i = 0; i < DIMENSION; i++) {
+                double difference = vector[i] - values[row * DIMENSION + i];
+                error += difference * difference;
+                energy += values[row * DIMENSION + i] * values[row * DIMENSION + i];
+            }
+        }
+        assertTrue(error / energy < 0.6, "relative error " + error / energy);
+        assertScorerMatchesDot(store);
+    }
+
+    @Test
+    public void productQuantizationUnevenSubspaces() {
+        ProductQuantizedStore store = ProductQuantizedStore.train(source, 7, 500, 2, 5);
+        assertScorerMatchesDot(store);
+        assertThrows(IllegalArgumentException.class, () -> ProductQuantizedStore.train(source, DIMENSION + 1, 500, 2, 5));
+    }
+
+    private void assertSameWords(QuantizedEmbeddingStore store) {
+        assertEquals(ROWS, store.size());
+        assertEquals(DIMENSION, store.dimension());
+        assertEquals("w42", store.wordAt(42));
+        assertEquals(42, store.indexOf("w42"));
+        assertEquals(source.inverseNorm(42), store.inverseNorm(42));
+    }
+
+    /**
+     * Scorers, dot and copyRow must describe the same reconstructed vectors
+     */
+    private void assertScorerMatchesDot(QuantizedEmbeddingStore store) {
+        float[] query = randomVectors(1);
+        float[] dots = new float[100];
+        float[] vector = new float[DIMENSION];
+        store.scorer(query).score(500, 100, dots);
+
+        for (int i = 0; i < 100; i++) {
+            store.copyRow(500 + i, vector, 0);
+            float expected = VectorMath.dot(vector, 0, query, 0, DIMENSION);
+            assertEquals(expected, dots[i], 1e-3);
+            assertEquals(expected, store.dot(500 + i, query), 1e-3);
+        }
+    }
+
+    private float[] randomVectors(int count) {
+        float[] vectors = new float[count * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
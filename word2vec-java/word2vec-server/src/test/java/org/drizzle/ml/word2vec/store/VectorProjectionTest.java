@@ -0,0 +1,130 @@
+package org.drizzle.ml.word2vec.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorProjectionTest {
+    private static final int ROWS = 2000;
+    private static final int DIMENSION = 20;
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void pcaKeepsPrincipalSubspace() {
+        // vectors spanning 3 directions around a common offset, plus noise far below their spread
+        int components = 3;
+        float[] basis = gaussian(components * DIMENSION, 1f);
+        float[] offset = gaussian(DIMENSION, 2f);
+        float[] values = new float[ROWS * DIMENSION];
+        for (int row = 0; row < ROWS; row++) {
+            float[] weights = gaussian(components, 1f);
+            for (int i = 0; i < DIMENSION; i++) {
+                float value = offset[i] + 1e-3f * (float) random.nextGaussian();
+                for (int c = 0; c < components; c++) {
+                    value += weights[c] * basis[c * DIMENSION + i];
+                }
+                values[row * DIMENSION + i] = value;
+            }
+        }
+        EmbeddingStore store = store(values, DIMENSION);
+
+        VectorProjection projection = VectorProjection.pca(store, components, ROWS);
+        assertEquals(DIMENSION, projection.dimension());
+        assertEquals(components, projection.targetDimension());
+
+        // dot products of centered vectors survive the projection on the principal components
+        float[] mean = new float[DIMENSION];
+        for (int row = 0; row < ROWS; row++) {
+            for (int i = 0; i < DIMENSION; i++) {
+                mean[i] += values[row * DIMENSION + i] / ROWS;
+            }
+        }
+        float[] a = new float[components];
+        float[] b = new float[components];
+        for (int row = 0; row + 1 < ROWS; row += 97) {
+            projection.project(values, row * DIMENSION, a, 0);
+            projection.project(values, (row + 1) * DIMENSION, b, 0);
+            double expected = 0d;
+            for (int i = 0; i < DIMENSION; i++) {
+                expected += (values[row * DIMENSION + i] - mean[i]) * (values[(row + 1) * DIMENSION + i] - mean[i]);
+            }
+            assertEquals(expected, VectorMath.dot(a, 0, b, 0, components), 1e-2 * Math.max(1d, Math.abs(expected)));
+        }
+    }
+
+    @Test
+    public void randomProjectionPreservesSimilarities() {
+        int dimension = 200;
+        int target = 100;
+        VectorProjection projection = VectorProjection.random(dimension, target, 11);
+
+        double error = 0d;
+        int pairs = 200;
+        float[] a = new float[target];
+        float[] b = new float[target];
+        for (int pair = 0; pair < pairs; pair++) {
+            // correlated pairs, cosine around 0.7
+            float[] x = gaussian(dimension, 1f);
+            float[] y = gaussian(dimension, 1f);
+            for (int i = 0; i < dimension; i++) {
+                y[i] += x[i];
+            }
+            projection.project(x, 0, a, 0);
+            projection.project(y, 0, b, 0);
+            error += Math.abs(cosine(x, y) - cosine(a, b));
+        }
+        assertTrue(error / pairs < 0.1, "mean cosine error " + error / pairs);
+    }
+
+    @Test
+    public void projectsStoreRows(@TempDir Path tempDir) throws IOException {
+        float[] values = gaussian(ROWS * DIMENSION, 1f);
+        BufferEmbeddingStore store = store(values, DIMENSION);
+        VectorProjection projection = VectorProjection.pca(store, 5, 500);
+
+        BufferEmbeddingStore reduced = projection.apply(store);
+        assertEquals(ROWS, reduced.size());
+        assertEquals(5, reduced.dimension());
+
+        File file = tempDir.resolve("projection").toFile();
+        projection.save(file);
+        VectorProjection loaded = VectorProjection.load(file);
+
+        float[] expected = new float[5];
+        float[] actual = new float[5];
+        for (int row = 0; row < ROWS; row += 101) {
+            assertEquals(row, reduced.indexOf("w" + row));
+            loaded.project(values, row * DIMENSION, expected, 0);
+            reduced.copyRow(row, actual, 0);
+            assertArrayEquals(expected, actual, 1e-6f);
+            assertEquals(VectorMath.inverseNorm(actual, 0, 5), reduced.inverseNorm(row), 1e-6f);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> VectorProjection.random(DIMENSION, DIMENSION + 1, 1));
+    }
+
+    private static BufferEmbeddingStore store(float[] values, int dimension) {
+        return BufferEmbeddingStore.of(IntStream.range(0, values.length / dimension).mapToObj(i -> "w" + i)
+                .toArray(String[]::new), values, dimension);
+    }
+
+    private float[] gaussian(int length, float scale) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = scale * (float) random.nextGaussian();
+        }
+        return values;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        return VectorMath.dot(a, 0, b, 0, a.length) * VectorMath.inverseNorm(a, 0, a.length) * VectorMath.inverseNorm(b, 0, b.length);
+    }
+}
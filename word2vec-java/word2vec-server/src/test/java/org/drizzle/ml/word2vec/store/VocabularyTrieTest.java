@@ -0,0 +1,118 @@
+package org.drizzle.ml.word2vec.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VocabularyTrieTest {
+    private static final String[] WORDS = {"the", "The", "house", "horse", "houses", "hose", "THE", "mouse", "household", "ho"};
+
+    private final VocabularyTrie trie = VocabularyTrie.build(BufferEmbeddingStore.of(WORDS, new float[WORDS.length], 1));
+
+    @Test
+    public void ordersMatches() {
+        assertEquals(List.of("The"), search("The", 0, false, false));
+        // same case first, then by row
+        assertEquals(List.of("The", "the", "THE"), search("The", 0, false, true));
+        assertEquals(List.of("house", "houses", "household"), search("hous", 0, true, false));
+        // whole words before prefix matches with as many edits
+        assertEquals(List.of("house", "houses", "household", "horse", "hose", "mouse"), search("house", 1, true, false));
+        assertEquals(List.of("ho", "house", "horse", "houses", "hose", "household"), search("ho", 0, true, false));
+        assertEquals(List.of(), search("houze", 0, false, false));
+    }
+
+    @Test
+    public void countsEdits() {
+        int[] rows = new int[WORDS.length];
+        int[] edits = new int[WORDS.length];
+        // transposition, substitution and deletion
+        int count = trie.search("hosue", 2, false, false, WORDS.length, rows, edits);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            words.add(WORDS[rows[i]]);
+            assertEquals(distance("hosue", WORDS[rows[i]]), edits[i]);
+        }
+        assertEquals(List.of("house", "hose", "horse", "houses", "mouse"), words);
+        assertThrows(IllegalArgumentException.class, () -> trie.search("house", 3, false, false, 1, rows, edits));
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(5);
+        Set<String> vocabulary = new LinkedHashSet<>();
+        while (vocabulary.size() < 2000) {
+            vocabulary.add(randomWord(random));
+        }
+        String[] words = vocabulary.toArray(new String[0]);
+        VocabularyTrie randomTrie = VocabularyTrie.build(BufferEmbeddingStore.of(words, new float[words.length], 1));
+
+        int[] rows = new int[words.length];
+        int[] edits = new int[words.length];
+        for (int query = 0; query < 50; query++) {
+            String word = randomWord(random);
+            for (int maxEdits = 0; maxEdits <= VocabularyTrie.MAX_EDITS; maxEdits++) {
+                List<Integer> expected = new ArrayList<>();
+                for (int row = 0; row < words.length; row++) {
+                    if (distance(word, words[row]) <= maxEdits) {
+                        expected.add(row);
+                    }
+                }
+                expected.sort((a, b) -> distance(word, words[a]) != distance(word, words[b])
+                        ? Integer.compare(distance(word, words[a]), distance(word, words[b]))
+                        : Integer.compare(a, b));
+
+                int count = randomTrie.search(word, maxEdits, false, false, words.length, rows, edits);
+                assertEquals(expected, Arrays.stream(rows, 0, count).boxed().collect(Collectors.toList()),
+                        word + " within " + maxEdits);
+            }
+        }
+    }
+
+    private List<String> search(String word, int maxEdits, boolean prefix, boolean ignoreCase) {
+        int[] rows = new int[WORDS.length];
+        int[] edits = new int[WORDS.length];
+        int count = trie.search(word, maxEdits, prefix, ignoreCase, WORDS.length, rows, edits);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            words.add(WORDS[rows[i]]);
+        }
+        return words;
+    }
+
+    private static String randomWord(Random random) {
+        char[] word = new char[2 + random.nextInt(5)];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (char) ('a' + random.nextInt(4));
+        }
+        return new String(word);
+    }
+
+    /**
+     * Optimal string alignment distance
+     */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                    continue;
+                }
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
@@ -0,0 +1,47 @@
+package org.drizzle.ml.word2vec.store;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class WordTableTest {
+
+    @Test
+    public void findsAllWords() {
+        String[] words = new String[50_000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "word" + i;
+        }
+
+        WordTable table = WordTable.of(words);
+        for (int row = 0; row < words.length; row++) {
+            assertEquals(words[row], table.wordAt(row));
+            assertEquals(row, table.indexOf(words[row]));
+            assertEquals(row, table.indexOf(ByteString.copyFromUtf8(words[row])));
+        }
+
+        assertEquals(-1, table.indexOf("word"));
+        assertEquals(-1, table.indexOf("word50000"));
+        assertEquals(-1, table.indexOf(ByteString.copyFromUtf8("word1 ")));
+    }
+
+    @Test
+    public void findsMultiByteAndEmptyWords() {
+        WordTable table = WordTable.of(new String[]{"café", "", "日本", "cafe"});
+
+        assertEquals(0, table.indexOf(ByteString.copyFromUtf8("café")));
+        assertEquals(1, table.indexOf(ByteString.EMPTY));
+        assertEquals(2, table.indexOf("日本"));
+        assertEquals(3, table.indexOf("cafe"));
+        assertEquals("日本", table.wordAt(2));
+    }
+
+    @Test
+    public void keepsFirstOfDuplicateWords() {
+        WordTable table = WordTable.of(new String[]{"a", "b", "a"});
+
+        assertEquals(0, table.indexOf("a"));
+        assertEquals(1, table.indexOf("b"));
+    }
+}
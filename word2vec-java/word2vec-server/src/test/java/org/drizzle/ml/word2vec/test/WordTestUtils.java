@@ -3,8 +3,15 @@ package org.drizzle.ml.word2vec.test;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.drizzle.ml.word2vec.store.BufferEmbeddingStore;
+import org.drizzle.ml.word2vec.store.EmbeddingStoreWriter;
 
-import java.io.File;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,4 +35,62 @@ public class WordTestUtils {
         return result;
     }
 
+    /**
+     * Writes the test model in the binary format of the original word2vec tool
+     */
+    public static File createBinaryModelFile(Path directory) throws IOException {
+        Word2Vec model = WordVectorSerializer.readWord2VecModel(modelFile, true);
+        File binaryFile = directory.resolve("w2vmodel-google.bin").toFile();
+
+        int rows = model.vocab().numWords();
+        int dimension = model.getLayerSize();
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(binaryFile))) {
+            output.write((rows + " " + dimension + "\n").getBytes(StandardCharsets.UTF_8));
+
+            ByteBuffer vector = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int row = 0; row < rows; row++) {
+                String word = model.vocab().wordAtIndex(row);
+                output.write((word + " ").getBytes(StandardCharsets.UTF_8));
+
+                vector.clear();
+                for (double value : model.getWordVector(word)) {
+                    vector.putFloat((float) value);
+                }
+                output.write(vector.array());
+                output.write('\n');
+            }
+        }
+        return binaryFile;
+    }
+
+    /**
+     * Writes a binary word2vec model of words w0, w1... with vectors where element i of row r is r + i
+     */
+    public static File createSyntheticBinaryModelFile(Path directory, int rows, int dimension) throws IOException {
+        File binaryFile = directory.resolve("synthetic-" + rows + "x" + dimension + ".bin").toFile();
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(binaryFile))) {
+            output.write((rows + " " + dimension + "\n").getBytes(StandardCharsets.UTF_8));
+
+            ByteBuffer vector = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int row = 0; row < rows; row++) {
+                output.write(("w" + row + " ").getBytes(StandardCharsets.UTF_8));
+
+                vector.clear();
+                for (int i = 0; i < dimension; i++) {
+                    vector.putFloat(row + i);
+                }
+                output.write(vector.array());
+                output.write('\n');
+            }
+        }
+        return binaryFile;
+    }
+
+    public static File createStoreFile(Path directory) throws IOException {
+        Word2Vec model = WordVectorSerializer.readWord2VecModel(modelFile, true);
+        File storeFile = directory.resolve("w2vmodel.w2vs").toFile();
+        EmbeddingStoreWriter.write(BufferEmbeddingStore.fromWordVectors(model), storeFile);
+        return storeFile;
+    }
+
 }